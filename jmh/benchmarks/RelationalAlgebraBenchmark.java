@@ -0,0 +1,44 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs the benchmarks of {@code Benchmarks} under JMH, on the tables in the working directory: the sample ones, or the ones in
+ * {@code -PbenchmarkTables=<directory>} (which {@code gradle generateBenchmarkTables} can make as big as you like).
+ * <p>
+ * JMH won't take benchmarks in the default package, where everything else is, and nothing in a package can see the default package, so the
+ * operations come over as plain {@link Callable}s, looked up by name once per trial. Calling one through the interface costs next to
+ * nothing next to the operations themselves.
+ * <p>
+ * Run them all with {@code gradle jmh}, or just some with something like {@code gradle jmh -Pjmh.includes=Relational}. The results (with
+ * the allocation rate from the gc profiler) end up in build/results/jmh/results.json.
+ */
+@State(Scope.Benchmark)
+public class RelationalAlgebraBenchmark{
+    /**
+     * The operators' benchmarks and the whole RAqueries.txt workload. A single query works too, as "query " followed by the query.
+     */
+    @Param({"load Play", "selectWhere Payment > 80", "project ANO", "joinWith ACTORS * Play", "crossWith ACTORS X MOVIES", "minus well paid - badly paid",
+            "unionWith well paid U badly paid", "toCSV Play", "workload RAqueries.txt"})
+    public String benchmark;
+
+    private Callable<Object> operation;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception{
+        Map<String, Callable<Object>> operations = (Map<String, Callable<Object>>) Class.forName("Benchmarks").getMethod("getOperations").invoke(null);
+        this.operation = operations.get(this.benchmark);
+        if(this.operation == null){
+            throw new IllegalArgumentException("There's no benchmark called \"" + this.benchmark + "\". There's " + operations.keySet() + ".");
+        }
+    }
+
+    @Benchmark
+    public Object run() throws Exception{
+        return this.operation.call(); // JMH's blackhole gets whatever it gives back
+    }
+}
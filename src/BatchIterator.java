@@ -0,0 +1,30 @@
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+
+/**
+ * A pull-based operator that hands out its result a batch of rows at a time instead of all at once.
+ * Call {@link #open()} once, then {@link #next()} until it returns null, then {@link #close()}.
+ * Each batch is a small {@link DataTable}, so the regular DataTable operators can be run on it.
+ */
+public interface BatchIterator extends AutoCloseable{
+    /**
+     * Gets the operator ready to hand out rows. Blocking operators (like the build side of a hash join) do all their reading here.
+     */
+    void open() throws DataFormatException, IOException;
+
+    /**
+     * @return The columns of every batch this operator hands out. Only valid after {@link #open()}.
+     */
+    String[] getColumnNames();
+
+    /**
+     * @return The next batch of rows, which is never empty, or null once there are no more rows.
+     */
+    DataTable next() throws DataFormatException, IOException;
+
+    /**
+     * Lets go of whatever the operator is holding on to (open files, hash tables). Safe to call more than once.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,179 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+
+/**
+ * Runs a whole batch of queries (like the lines of RAqueries.txt) several at a time, and hands back their results in the order the queries
+ * were in. Each query succeeds or fails on its own: one that fails just gets its error handed back in its place, and the rest carry on.
+ * <p>
+ * Only a limited number of queries run ahead of the one whose result is due next, so a slow query holds up how many results are waiting
+ * to be handed back, not how much memory they take.
+ */
+public final class BatchRunner{
+    /**
+     * How many queries can be running or waiting to be handed back per thread.
+     */
+    private static final int QUERIES_IN_FLIGHT_PER_THREAD = 2;
+
+    /**
+     * What happened to one query of the batch: either its result or why it doesn't have one.
+     *
+     * @param profile The plan and its measurements, if the query was an EXPLAIN (in which case they're the result too). Null otherwise.
+     */
+    public record QueryOutcome(int queryNumber, String query, DataTable result, Exception error, QueryProfiler.OperatorProfile profile){
+        public boolean isSuccessful(){
+            return this.error == null;
+        }
+
+        /**
+         * @return What went wrong, in a form that's fit to print.
+         */
+        public String getErrorMessage(){
+            return Main.getErrorMessage(this.error);
+        }
+    }
+
+    /**
+     * Gets the outcome of each query, one at a time, in query order, on the thread that called {@link #run(List, OutcomeHandler)}.
+     */
+    @FunctionalInterface
+    public interface OutcomeHandler{
+        void handle(QueryOutcome outcome) throws IOException;
+    }
+
+    /**
+     * What an EXPLAIN query plans to.
+     */
+    private record ExplainedPlan(PlanNode plan, boolean isAnalyzing){
+    }
+
+    private final QueryExecutor executor;
+    private final SubplanCache  subplanCache;
+    private final int           numberOfThreads;
+
+    /**
+     * @param executor        What runs each query's plan. It has to be fine with running several plans at once, which a {@link QueryExecutor} is.
+     * @param subplanCache    Where the subplans the queries have in common get counted, or null not to bother. It should be the executor's.
+     * @param numberOfThreads How many queries to run at the same time.
+     */
+    public BatchRunner(final QueryExecutor executor, final SubplanCache subplanCache, final int numberOfThreads){
+        if(numberOfThreads < 1){
+            throw new IllegalArgumentException("A batch needs at least 1 thread, not " + numberOfThreads + ".");
+        }
+
+        this.executor = executor;
+        this.subplanCache = subplanCache;
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * Plans every query first (so the subplans they share get counted before any of them runs), then runs them.
+     *
+     * @param queries The queries, one per line, none of them blank.
+     * @param handler Gets each query's outcome, in the same order as the queries.
+     * @throws IOException whatever the handler threw. The queries after it don't get run.
+     */
+    public void run(final List<String> queries, final OutcomeHandler handler) throws InterruptedException, IOException{
+        ExecutorService threads = Executors.newFixedThreadPool(this.numberOfThreads, runnable -> {
+            Thread thread = new Thread(runnable, "Batch query runner");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try{
+            List<Object> plans = this.planAll(queries, threads);
+
+            ArrayDeque<Future<QueryOutcome>> pendingOutcomes = new ArrayDeque<>();
+            int numberOfQueriesStarted = 0;
+            for(int queryNumber = 0; queryNumber < queries.size(); queryNumber++){
+                while(numberOfQueriesStarted < queries.size() && pendingOutcomes.size() < this.numberOfThreads * QUERIES_IN_FLIGHT_PER_THREAD){
+                    int startedQueryNumber = numberOfQueriesStarted++;
+                    pendingOutcomes.add(threads.submit(() -> this.runQuery(startedQueryNumber, queries.get(startedQueryNumber), plans.get(startedQueryNumber))));
+                }
+
+                handler.handle(getOutcome(pendingOutcomes.remove()));
+            }
+        }
+        finally{
+            threads.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Each query's plan, or the exception that planning it threw.
+     */
+    private List<Object> planAll(final List<String> queries, final ExecutorService threads) throws InterruptedException{
+        ArrayList<Future<Object>> futurePlans = new ArrayList<>(queries.size());
+        for(String query : queries){
+            futurePlans.add(threads.submit(() -> {
+                try{
+                    QueryProfiler.ExplainRequest explainRequest = QueryProfiler.ExplainRequest.parse(query);
+                    if(explainRequest != null){
+                        return new ExplainedPlan(new QueryOptimizer().optimize(QueryParser.parse(explainRequest.query())), explainRequest.isAnalyzing());
+                    }
+
+                    return new QueryOptimizer().optimize(QueryParser.parse(query));
+                }
+                catch(DataFormatException | FileNotFoundException | RuntimeException exception){
+                    return exception;
+                }
+            }));
+        }
+
+        ArrayList<Object> plans = new ArrayList<>(queries.size());
+        for(Future<Object> futurePlan : futurePlans){
+            Object plan = getOutcome(futurePlan);
+            if(plan instanceof PlanNode planNode && this.subplanCache != null){
+                try{
+                    this.subplanCache.addUses(planNode);
+                }
+                catch(RuntimeException exception){
+                    plan = exception; // A condition the cache can't make sense of won't run either, so this is just finding out early
+                }
+            }
+            plans.add(plan);
+        }
+
+        return plans;
+    }
+
+    private QueryOutcome runQuery(final int queryNumber, final String query, final Object plan){
+        if(plan instanceof Exception planningError){
+            return new QueryOutcome(queryNumber, query, null, planningError, null);
+        }
+
+        try{
+            if(plan instanceof ExplainedPlan explainedPlan){
+                QueryProfiler.OperatorProfile profile = QueryProfiler.profile(explainedPlan.plan(), explainedPlan.isAnalyzing(), this.executor);
+                return new QueryOutcome(queryNumber, query, profile.toTable(explainedPlan.isAnalyzing()), null, profile);
+            }
+
+            return new QueryOutcome(queryNumber, query, this.executor.execute((PlanNode) plan), null, null);
+        }
+        catch(DataFormatException | FileNotFoundException | RuntimeException exception){
+            return new QueryOutcome(queryNumber, query, null, exception, null);
+        }
+    }
+
+    /**
+     * Waits for a task that handles its own exceptions. Anything else it throws (like running out of memory) is passed on.
+     */
+    private static <T> T getOutcome(final Future<T> future) throws InterruptedException{
+        try{
+            return future.get();
+        }
+        catch(ExecutionException exception){
+            if(exception.getCause() instanceof Error error){
+                throw error;
+            }
+            throw new IllegalStateException("A query blew up in a way it isn't supposed to be able to.", exception.getCause());
+        }
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.zip.DataFormatException;
+
+/**
+ * Times the operators of {@link DataTable} and whole queries on the ACTORS, MOVIES and Play tables in the working directory (which
+ * {@link DataGenerator} can make as big as you like), and writes the results to RAbenchmark.csv.
+ * <p>
+ * Each benchmark runs for a while without being timed, so the JIT has compiled it by the time it counts, then (after a garbage collection,
+ * so the warmup's garbage doesn't get billed to it) runs for a while longer one operation at a time. For each one you get its throughput,
+ * percentiles of how long an operation took, how much it allocated and how much garbage collection went on. Allocation is only counted on
+ * the thread running the benchmark, so use {@code --threads=1} to see all of it for the operators that can go parallel.
+ * <p>
+ * This is the quick way to get numbers, in the same JVM as everything else. The same benchmarks also run under JMH, with forks and
+ * warmup iterations of their own, through {@code gradle jmh} (see jmh/benchmarks/RelationalAlgebraBenchmark.java); those numbers are the
+ * ones to compare between machines and commits, and these aren't comparable with them.
+ */
+public final class Benchmarks{
+    /**
+     * Pass this with a number of seconds (like {@code --warmup=5}) to change how long each benchmark warms up for.
+     */
+    public static final String WARMUP_OPTION = "--warmup=";
+
+    /**
+     * Pass this with a number of seconds (like {@code --time=10}) to change how long each benchmark gets timed for.
+     */
+    public static final String TIME_OPTION = "--time=";
+
+    /**
+     * Pass this with some text (like {@code --only=join}) to only run the benchmarks with it in their names.
+     */
+    public static final String ONLY_OPTION = "--only=";
+
+    public static final double DEFAULT_WARMUP_SECONDS      = 2;
+    public static final double DEFAULT_MEASUREMENT_SECONDS = 5;
+
+    /**
+     * However slow an operation is, it's run at least this many times while warming up and while being timed.
+     */
+    public static final int MINIMUM_OPERATIONS = 5;
+
+    /**
+     * How many rows of each side go into the cross product benchmark, so it stays the same size whatever the tables are.
+     */
+    public static final int CROSS_PRODUCT_ROWS = 1000;
+
+    public static final String RESULTS_FILE_NAME = "RAbenchmark.csv";
+
+    /**
+     * @param operation Runs the operation once, and gives back whatever it made, so it can't be optimized away.
+     */
+    record Benchmark(String name, Callable<Object> operation){
+    }
+
+    record Result(String name, long operations, double operationsPerSecond, double meanMilliseconds, double p50Milliseconds, double p90Milliseconds,
+                  double p99Milliseconds, double maximumMilliseconds, double bytesAllocatedPerOperation, double megabytesAllocatedPerSecond, long garbageCollections,
+                  long garbageCollectionMilliseconds){
+        static final String CSV_HEADER = "Benchmark,Operations,Operations/s,Mean ms,p50 ms,p90 ms,p99 ms,Max ms,Bytes allocated/op,MB allocated/s,GCs,GC ms";
+
+        /**
+         * @return The result as a line of plain CSV (no spaces after the commas, unlike the table files), with the name quoted if it needs to be.
+         */
+        String toCSV(){
+            String quotedName = (this.name.contains(",") || this.name.contains("\"")) ? "\"" + this.name.replace("\"", "\"\"") + "\"" : this.name;
+            return String.join(",", quotedName, String.valueOf(this.operations), format(this.operationsPerSecond), format(this.meanMilliseconds), format(this.p50Milliseconds),
+                               format(this.p90Milliseconds), format(this.p99Milliseconds), format(this.maximumMilliseconds), format(this.bytesAllocatedPerOperation),
+                               format(this.megabytesAllocatedPerSecond), String.valueOf(this.garbageCollections), String.valueOf(this.garbageCollectionMilliseconds));
+        }
+
+        private static String format(final double value){
+            return String.format("%.3f", value);
+        }
+    }
+
+    /**
+     * What every operation's result gets folded into, so the JIT can't tell nobody looks at it.
+     */
+    private static volatile int blackhole;
+
+    private Benchmarks(){
+    }
+
+    /**
+     * Runs the benchmarks picked out by the arguments, printing each result as it's done, and writes them all to RAbenchmark.csv.
+     */
+    public static void run(final String[] args) throws DataFormatException, IOException{
+        double warmupSeconds = DEFAULT_WARMUP_SECONDS;
+        double measurementSeconds = DEFAULT_MEASUREMENT_SECONDS;
+        String onlyBenchmarksWith = "";
+        for(String arg : args){
+            if(arg.startsWith(WARMUP_OPTION)){
+                warmupSeconds = Double.parseDouble(arg.substring(WARMUP_OPTION.length()));
+            }
+            else if(arg.startsWith(TIME_OPTION)){
+                measurementSeconds = Double.parseDouble(arg.substring(TIME_OPTION.length()));
+            }
+            else if(arg.startsWith(ONLY_OPTION)){
+                onlyBenchmarksWith = arg.substring(ONLY_OPTION.length());
+            }
+        }
+
+        ArrayList<Result> results = new ArrayList<>();
+        for(Benchmark benchmark : getBenchmarks()){
+            if(benchmark.name().contains(onlyBenchmarksWith)){
+                Result result = measure(benchmark, warmupSeconds, measurementSeconds);
+                results.add(result);
+                System.out.println(result.toCSV());
+            }
+        }
+
+        try(PrintWriter writer = new PrintWriter(new File(RESULTS_FILE_NAME), StandardCharsets.UTF_8)){
+            writer.println(Result.CSV_HEADER);
+            for(Result result : results){
+                writer.println(result.toCSV());
+            }
+        }
+        System.out.println("Wrote " + results.size() + " results to " + RESULTS_FILE_NAME + ".");
+    }
+
+    /**
+     * For the JMH benchmarks, which can't see anything in the default package, so they get the operations with nothing but JDK types.
+     *
+     * @return The operation of each of the {@link #getBenchmarks() benchmarks}, by name, in order.
+     */
+    public static Map<String, Callable<Object>> getOperations() throws DataFormatException, IOException{
+        LinkedHashMap<String, Callable<Object>> operations = new LinkedHashMap<>();
+        for(Benchmark benchmark : getBenchmarks()){
+            operations.put(benchmark.name(), benchmark.operation());
+        }
+
+        return operations;
+    }
+
+    /**
+     * @return One benchmark for each operator, then one for each query in RAqueries.txt (if there is one) and one for all of them in a row.
+     *         The names of the operators' ones stay the same whatever the tables are, so JMH can ask for them by name.
+     */
+    static List<Benchmark> getBenchmarks() throws DataFormatException, IOException{
+        File playFile = QueryExecutor.getTableFile("Play");
+        DataTable actors = new DataTable(QueryExecutor.getTableFile("ACTORS"));
+        DataTable movies = new DataTable(QueryExecutor.getTableFile("MOVIES"));
+        DataTable play = new DataTable(playFile);
+
+        DataTable someActors = actors.gatherRows(Column.getRowsBetween(0, Math.min(CROSS_PRODUCT_ROWS, actors.getRowCount())));
+        DataTable someMovies = movies.gatherRows(Column.getRowsBetween(0, Math.min(CROSS_PRODUCT_ROWS, movies.getRowCount())));
+        DataTable wellPaidActors = play.selectWhere("Payment > 80").project(new String[]{"ANO"});
+        DataTable badlyPaidActors = play.selectWhere("Payment < 70").project(new String[]{"ANO"});
+
+        ArrayList<Benchmark> benchmarks = new ArrayList<>(List.of(
+                new Benchmark("load Play", () -> new DataTable(playFile)),
+                new Benchmark("selectWhere Payment > 80", () -> play.selectWhere("Payment > 80")),
+                new Benchmark("project ANO", () -> play.project(new String[]{"ANO"})),
+                new Benchmark("joinWith ACTORS * Play", () -> actors.joinWith(play)),
+                new Benchmark("crossWith ACTORS X MOVIES", () -> someActors.crossWith(someMovies)), // At most CROSS_PRODUCT_ROWS of each
+                new Benchmark("minus well paid - badly paid", () -> wellPaidActors.minus(badlyPaidActors)),
+                new Benchmark("unionWith well paid U badly paid", () -> wellPaidActors.unionWith(badlyPaidActors)),
+                new Benchmark("toCSV Play", play::toCSV)));
+
+        File queriesFile = new File("RAqueries.txt");
+        if(queriesFile.exists()){
+            List<String> queries = new ArrayList<>();
+            for(String query : Files.readAllLines(queriesFile.toPath(), StandardCharsets.UTF_8)){
+                if(!query.isBlank()){
+                    queries.add(query.trim());
+                }
+            }
+
+            for(String query : queries){
+                benchmarks.add(new Benchmark("query " + query, () -> Main.executeQuery(query)));
+            }
+            benchmarks.add(new Benchmark("workload RAqueries.txt", () -> {
+                int totalRowCount = 0;
+                for(String query : queries){
+                    totalRowCount += Main.executeQuery(query).getRowCount();
+                }
+                return totalRowCount;
+            }));
+        }
+
+        return benchmarks;
+    }
+
+    static Result measure(final Benchmark benchmark, final double warmupSeconds, final double measurementSeconds) throws IOException{
+        try{
+            long warmupEnd = System.nanoTime() + (long)(warmupSeconds * 1e9);
+            for(int i = 0; i < MINIMUM_OPERATIONS || System.nanoTime() < warmupEnd; i++){
+                consume(benchmark.operation().call());
+            }
+            System.gc();
+
+            long[] durations = new long[64];
+            int operations = 0;
+            long gcCountBefore = getGarbageCollectionCount();
+            long gcTimeBefore = getGarbageCollectionMilliseconds();
+            long allocatedBefore = QueryProfiler.getAllocatedBytes();
+            long start = System.nanoTime();
+            long measurementEnd = start + (long)(measurementSeconds * 1e9);
+            while(operations < MINIMUM_OPERATIONS || System.nanoTime() < measurementEnd){
+                long operationStart = System.nanoTime();
+                Object result = benchmark.operation().call();
+                long operationEnd = System.nanoTime();
+                consume(result);
+
+                if(operations == durations.length){
+                    durations = Arrays.copyOf(durations, durations.length * 2);
+                }
+                durations[operations++] = operationEnd - operationStart;
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = QueryProfiler.getAllocatedBytes() - allocatedBefore;
+
+            durations = Arrays.copyOf(durations, operations);
+            long totalDuration = 0;
+            for(long duration : durations){
+                totalDuration += duration;
+            }
+            Arrays.sort(durations);
+
+            return new Result(benchmark.name(), operations, operations / (elapsed / 1e9), totalDuration / 1e6 / operations, getPercentile(durations, 50) / 1e6,
+                              getPercentile(durations, 90) / 1e6, getPercentile(durations, 99) / 1e6, durations[operations - 1] / 1e6, (double)allocated / operations,
+                              allocated / 1e6 / (elapsed / 1e9), getGarbageCollectionCount() - gcCountBefore, getGarbageCollectionMilliseconds() - gcTimeBefore);
+        }
+        catch(IOException | RuntimeException exception){
+            throw exception;
+        }
+        catch(Exception exception){
+            throw new IOException("The benchmark \"" + benchmark.name() + "\" failed: " + Main.getErrorMessage(exception), exception);
+        }
+    }
+
+    private static void consume(final Object result){
+        if(result instanceof DataTable table){
+            blackhole ^= table.getRowCount();
+        }
+        else{
+            blackhole ^= System.identityHashCode(result);
+        }
+    }
+
+    /**
+     * @param sortedValues In ascending order.
+     * @return The value that percent of them are at or under (by the nearest-rank method).
+     */
+    static long getPercentile(final long[] sortedValues, final double percent){
+        int rank = (int)Math.ceil(percent / 100 * sortedValues.length);
+        return sortedValues[Math.max(0, rank - 1)];
+    }
+
+    private static long getGarbageCollectionCount(){
+        long count = 0;
+        for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()){
+            count += Math.max(0, collector.getCollectionCount());
+        }
+
+        return count;
+    }
+
+    private static long getGarbageCollectionMilliseconds(){
+        long milliseconds = 0;
+        for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()){
+            milliseconds += Math.max(0, collector.getCollectionTime());
+        }
+
+        return milliseconds;
+    }
+}
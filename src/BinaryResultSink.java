@@ -0,0 +1,89 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a result in binary, column by column, so another program can read it back without parsing any text.
+ * <p>
+ * Layout: a magic number ("RARS") and format version, the number of columns and each column's name (its length in bytes, then the UTF-8 bytes),
+ * then the batches. Each batch is its row count, then for every column its type, the length of its section and the section, laid out exactly
+ * like a column section of a {@link TableCache} file. A row count of -1 ends the result. Batches are split so none has more than
+ * {@link #MAXIMUM_BATCH_ROWS} rows, and several results can follow each other in the same channel.
+ */
+public final class BinaryResultSink implements ResultSink{
+    public static final int MAGIC_NUMBER       = 0x52415253; // "RARS"
+    public static final int FORMAT_VERSION     = 1;
+    public static final int END_OF_RESULT      = -1;
+    public static final int MAXIMUM_BATCH_ROWS = Morsels.MORSEL_SIZE;
+
+    private final DataOutputStream      output;
+    private final ByteArrayOutputStream section      = new ByteArrayOutputStream();
+    private       long                  numberOfRows = 0;
+
+    /**
+     * @param channel Where to write to. It doesn't get closed.
+     */
+    public BinaryResultSink(final WritableByteChannel channel){
+        this.output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+    }
+
+    @Override
+    public void start(final String[] columnNames) throws IOException{
+        this.numberOfRows = 0;
+        this.output.writeInt(MAGIC_NUMBER);
+        this.output.writeInt(FORMAT_VERSION);
+        this.output.writeInt(columnNames.length);
+        for(String columnName : columnNames){
+            byte[] name = columnName.getBytes(StandardCharsets.UTF_8);
+            this.output.writeInt(name.length);
+            this.output.write(name);
+        }
+    }
+
+    @Override
+    public void write(final DataTable rows) throws IOException{
+        if(rows.getRowCount() <= MAXIMUM_BATCH_ROWS){
+            this.writeBatch(rows);
+            return;
+        }
+
+        for(int batchStart = 0; batchStart < rows.getRowCount(); batchStart += MAXIMUM_BATCH_ROWS){
+            int[] batchRows = new int[Math.min(MAXIMUM_BATCH_ROWS, rows.getRowCount() - batchStart)];
+            for(int i = 0; i < batchRows.length; i++){
+                batchRows[i] = batchStart + i;
+            }
+            this.writeBatch(rows.gatherRows(batchRows));
+        }
+    }
+
+    private void writeBatch(final DataTable batch) throws IOException{
+        if(batch.getRowCount() == 0){
+            return;
+        }
+
+        this.output.writeInt(batch.getRowCount());
+        for(int j = 0; j < batch.getColumnNames().length; j++){
+            this.section.reset();
+            DataOutputStream sectionOutput = new DataOutputStream(this.section);
+            byte type = TableCache.writeColumn(sectionOutput, batch.getColumn(j));
+            sectionOutput.flush();
+
+            this.output.writeByte(type);
+            this.output.writeInt(this.section.size());
+            this.section.writeTo(this.output);
+        }
+
+        this.numberOfRows += batch.getRowCount();
+    }
+
+    @Override
+    public long finish() throws IOException{
+        this.output.writeInt(END_OF_RESULT);
+        this.output.flush();
+        return this.numberOfRows;
+    }
+}
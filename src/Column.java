@@ -0,0 +1,374 @@
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One column of a {@link DataTable}, stored as a typed vector. Columns are never modified after they're built, so tables can share them freely
+ * (a projection, for instance, just hands the same columns to the new table).
+ * <p>
+ * Every value in every column prints back as exactly the text it was loaded from. That's why a column only gets a numeric type if every value
+ * in it is written the way Java would write that number ("80" and "88.5", but not "080" or "1e3"), and why values are compared through
+ * {@link #getKey(int)}: two values have equal keys exactly when their texts are equal, whatever type of column each one lives in.
+ */
+public abstract class Column{
+    public enum Type{
+        INT, LONG, DOUBLE, STRING
+    }
+
+    /**
+     * The largest whole number a double can hold without rounding it off.
+     */
+    public static final long LARGEST_EXACT_DOUBLE_INTEGER = 1L << 53;
+
+    public abstract Type getType();
+
+    public abstract int size();
+
+    /**
+     * @return The value at the given row, as the exact text it was loaded from (or null if the row didn't have this column).
+     */
+    public abstract String getString(int row);
+
+    /**
+     * @return The value at the given row as a {@link Long} if it's a whole number, a {@link Double} if it's any other number, or the text otherwise.
+     * Two keys are equal exactly when the texts they came from are equal.
+     */
+    public abstract Object getKey(int row);
+
+    /**
+     * @return The value at the given row as a number, for {@code <} and {@code >}.
+     * @throws NumberFormatException if the value isn't a number.
+     */
+    public abstract double getDouble(int row);
+
+    /**
+     * @param rows Which rows to take, in order. A row can show up more than once.
+     * @return A new column with just those rows.
+     */
+    public abstract Column gather(int[] rows);
+
+    /**
+     * The vectorized half of a SELE with a constant: one tight loop over each {@link Morsels morsel} of the column, with the constant parsed once up front.
+     *
+     * @param operator      One of the operators of a {@link SelectionCondition}.
+     * @param comparedValue The constant to compare with (or for IN, the list of them).
+     * @return The rows that satisfy the condition, in ascending order.
+     */
+    public int[] getRowsWhere(final String operator, final String comparedValue){
+        return Morsels.findRows(this.size(), (fromRow, toRow) -> this.getRowsWhere(operator, comparedValue, getRowsBetween(fromRow, toRow)));
+    }
+
+    /**
+     * {@link #getRowsWhere(String, String)} on just the given rows.
+     *
+     * @param rows A selection vector: the rows to look at, in ascending order.
+     * @return The ones that satisfy the condition, still in ascending order.
+     */
+    public int[] getRowsWhere(final String operator, final String comparedValue, final int[] rows){
+        return switch(operator){
+            case DataTable.NOT_EQUALS -> getRowsNotIn(rows, this.getRowsWhereCompared(DataTable.EQUALS, comparedValue, rows));
+            case DataTable.IN -> this.getRowsWhereIn(SelectionCondition.parseValueList(comparedValue), rows);
+            default -> this.getRowsWhereCompared(operator, comparedValue, rows);
+        };
+    }
+
+    /**
+     * {@link #getRowsWhere(String, String, int[])} for {@code >}, {@code >=}, {@code <}, {@code <=} and {@code =}.
+     */
+    protected abstract int[] getRowsWhereCompared(String operator, String comparedValue, int[] rows);
+
+    /**
+     * {@link #getRowsWhere(String, String, int[])} for IN: the rows whose {@link #getKey(int) key} is the key of one of the values.
+     */
+    protected int[] getRowsWhereIn(final List<String> comparedValues, final int[] rows){
+        HashSet<Object> comparedKeys = new HashSet<>();
+        for(String comparedValue : comparedValues){
+            comparedKeys.add(getKeyOfText(comparedValue));
+        }
+
+        int[] selectedRows = new int[rows.length];
+        int numberOfSelectedRows = 0;
+        for(int row : rows){
+            if(comparedKeys.contains(this.getKey(row))){
+                selectedRows[numberOfSelectedRows++] = row;
+            }
+        }
+
+        return trim(selectedRows, numberOfSelectedRows);
+    }
+
+    /**
+     * The other half of a SELE: comparing two columns of the same rows. {@code <} and {@code >} compare them as numbers, {@code =} as texts.
+     *
+     * @param rows A selection vector: the rows to look at, in ascending order.
+     * @return The ones where the comparison is true, still in ascending order.
+     */
+    public static int[] getRowsWhere(final Column column, final String operator, final Column comparedColumn, final int[] rows){
+        int[] selectedRows = new int[rows.length];
+        int numberOfSelectedRows = 0;
+
+        switch(operator){
+            case DataTable.GREATER_THAN -> {
+                for(int row : rows){
+                    if(column.getDouble(row) > comparedColumn.getDouble(row)){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.GREATER_THAN_OR_EQUAL -> {
+                for(int row : rows){
+                    if(column.getDouble(row) >= comparedColumn.getDouble(row)){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.LESS_THAN -> {
+                for(int row : rows){
+                    if(column.getDouble(row) < comparedColumn.getDouble(row)){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.LESS_THAN_OR_EQUAL -> {
+                for(int row : rows){
+                    if(column.getDouble(row) <= comparedColumn.getDouble(row)){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.EQUALS, DataTable.NOT_EQUALS -> {
+                boolean isSelectedIfEqual = operator.equals(DataTable.EQUALS);
+                for(int row : rows){
+                    if(areValuesEqual(column, row, comparedColumn, row) == isSelectedIfEqual){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown comparison operator " + operator + ".");
+        }
+
+        return trim(selectedRows, numberOfSelectedRows);
+    }
+
+    /**
+     * @return Roughly how many bytes the column takes up, so {@link TableCatalog} knows how much it's holding on to.
+     */
+    public abstract long getMemoryUsage();
+
+    public boolean isIntegral(){
+        return this.getType() == Type.INT || this.getType() == Type.LONG;
+    }
+
+    /**
+     * @return The value at the given row, for columns where {@link #isIntegral()} is true.
+     */
+    public long getLong(final int row){
+        throw new UnsupportedOperationException("A " + this.getType() + " column doesn't hold whole numbers.");
+    }
+
+    /**
+     * @return A 64-bit hash of the value's {@link #getKey(int) key}, so equal values have equal fingerprints whatever columns they're in.
+     */
+    public long getFingerprint(final int row){
+        return getFingerprintOfKey(this.getKey(row));
+    }
+
+    public static long getFingerprintOfKey(final Object key){
+        if(key instanceof Long wholeNumber){
+            return mix(wholeNumber);
+        }
+        if(key instanceof Double number){
+            return mix(Double.doubleToLongBits(number));
+        }
+
+        return (key == null) ? 0 : mix(key.hashCode());
+    }
+
+    /**
+     * Spreads the bits of a value all over a long (the finalizer of MurmurHash3), so fingerprints of values that are close together aren't.
+     */
+    protected static long mix(final long value){
+        long mixed = value;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xff51afd7ed558ccdL;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xc4ceb9fe1a85ec53L;
+        mixed ^= mixed >>> 33;
+        return mixed;
+    }
+
+    /**
+     * @return The {@link #getKey(int) key} of a value that's written as the given text.
+     */
+    public static Object getKeyOfText(final String text){
+        if(isCanonicalLong(text)){
+            try{
+                return Long.parseLong(text);
+            }
+            catch(NumberFormatException exception){
+                return text; // Too big to be a long
+            }
+        }
+        if(isCanonicalDouble(text)){
+            return Double.parseDouble(text);
+        }
+
+        return text;
+    }
+
+    /**
+     * Orders keys so that equal keys are next to each other: whole numbers first, then other numbers, then text, each in its natural order.
+     */
+    @SuppressWarnings("unchecked")
+    public static int compareKeys(final Object key1, final Object key2){
+        int rank1 = getKeyRank(key1);
+        int rank2 = getKeyRank(key2);
+        if(rank1 != rank2 || key1 == null){
+            return Integer.compare(rank1, rank2);
+        }
+
+        return ((Comparable<Object>) key1).compareTo(key2);
+    }
+
+    private static int getKeyRank(final Object key){
+        if(key instanceof Long){
+            return 0;
+        }
+        if(key instanceof Double){
+            return 1;
+        }
+
+        return (key == null) ? 3 : 2;
+    }
+
+    /**
+     * @return Whether the two values have equal texts.
+     */
+    public static boolean areValuesEqual(final Column column1, final int row1, final Column column2, final int row2){
+        if(column1.isIntegral() && column2.isIntegral()){
+            return column1.getLong(row1) == column2.getLong(row2);
+        }
+        if(column1 instanceof DictionaryColumn dictionaryColumn1 && dictionaryColumn1.sharesDictionaryWith(column2)){
+            return dictionaryColumn1.getCode(row1) == ((DictionaryColumn) column2).getCode(row2);
+        }
+
+        return Objects.equals(column1.getKey(row1), column2.getKey(row2));
+    }
+
+    /**
+     * @return Whether Java writes this exact number as this exact text, so it can be stored as a long and printed back the same.
+     */
+    public static boolean isCanonicalLong(final String text){
+        if(text == null || text.isEmpty() || text.length() > 20){
+            return false;
+        }
+
+        int firstDigit = (text.charAt(0) == '-') ? 1 : 0;
+        if(firstDigit == text.length() || (text.charAt(firstDigit) == '0' && (text.length() > firstDigit + 1 || firstDigit == 1))){
+            return false; // Just a minus sign, a leading zero, or "-0"
+        }
+
+        for(int i = firstDigit; i < text.length(); i++){
+            if(text.charAt(i) < '0' || text.charAt(i) > '9'){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return Whether Java writes this exact number as this exact text, so it can be stored as a double and printed back the same.
+     */
+    public static boolean isCanonicalDouble(final String text){
+        if(text == null || text.isEmpty()){
+            return false;
+        }
+
+        // Rule out the obviously-not-a-number texts cheaply, since going through an exception for every one of them isn't cheap
+        char firstCharacter = text.charAt(0);
+        if(!(firstCharacter == '-' || (firstCharacter >= '0' && firstCharacter <= '9') || firstCharacter == 'N' || firstCharacter == 'I')){
+            return false;
+        }
+
+        try{
+            return Double.toString(Double.parseDouble(text)).equals(text);
+        }
+        catch(NumberFormatException exception){
+            return false;
+        }
+    }
+
+    /**
+     * @return The comparison constant as a number, or NaN if there are no rows to compare it with (so nothing gets parsed and nothing can fail).
+     */
+    protected static double parseComparedNumber(final String comparedValue, final int[] rows){
+        return (rows.length == 0) ? Double.NaN : Double.parseDouble(comparedValue);
+    }
+
+    /**
+     * @return The selection vector of every row from fromRow (inclusive) to toRow (exclusive).
+     */
+    public static int[] getRowsBetween(final int fromRow, final int toRow){
+        int[] rows = new int[toRow - fromRow];
+        for(int i = 0; i < rows.length; i++){
+            rows[i] = fromRow + i;
+        }
+
+        return rows;
+    }
+
+    /**
+     * @param rows         Rows in ascending order.
+     * @param excludedRows Some of those rows, also in ascending order.
+     * @return The rows that aren't excluded, in ascending order.
+     */
+    public static int[] getRowsNotIn(final int[] rows, final int[] excludedRows){
+        if(excludedRows.length == 0){
+            return rows;
+        }
+
+        int[] keptRows = new int[rows.length - excludedRows.length];
+        int numberOfKeptRows = 0;
+        int j = 0;
+        for(int row : rows){
+            if(j < excludedRows.length && excludedRows[j] == row){
+                j++;
+            }
+            else{
+                keptRows[numberOfKeptRows++] = row;
+            }
+        }
+
+        return keptRows;
+    }
+
+    /**
+     * @return Just the first numberOfRows entries of the array, without copying if that's all of them.
+     */
+    protected static int[] trim(final int[] rows, final int numberOfRows){
+        if(numberOfRows == rows.length){
+            return rows;
+        }
+
+        int[] trimmedRows = new int[numberOfRows];
+        System.arraycopy(rows, 0, trimmedRows, 0, numberOfRows);
+        return trimmedRows;
+    }
+
+    /**
+     * @return A column with the rows of the first column followed by the rows of the second, with whatever type fits both.
+     */
+    public static Column concatenate(final Column first, final Column second){
+        DictionaryColumn concatenatedCodes = DictionaryColumn.concatenate(List.of(first, second));
+        if(concatenatedCodes != null){
+            return concatenatedCodes;
+        }
+
+        ColumnBuilder builder = new ColumnBuilder(first.size() + second.size());
+        builder.addAll(first);
+        builder.addAll(second);
+
+        return builder.build();
+    }
+}
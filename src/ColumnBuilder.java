@@ -0,0 +1,213 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Builds a {@link Column} one value at a time, figuring out its type on the way (this is the schema inference).
+ * Every column starts out as ints and gets widened only as far as it has to: to longs for a whole number that doesn't fit in an int,
+ * to doubles for a number with a fraction, and to strings for anything that isn't a number written the way Java writes it.
+ * Values that are already in the column get converted when it widens, so nothing has to be read twice.
+ */
+public final class ColumnBuilder{
+    private Column.Type type = Column.Type.INT;
+    private int[]       ints;
+    private long[]      longs;
+    private double[]    doubles;
+    private BitSet      writtenAsWholeNumbers;
+    private String[]    strings;
+    private int         size = 0;
+
+    public ColumnBuilder(){
+        this(16);
+    }
+
+    /**
+     * @param expectedSize Roughly how many values are coming, so the arrays don't have to keep growing.
+     */
+    public ColumnBuilder(final int expectedSize){
+        this.ints = new int[Math.max(expectedSize, 1)];
+    }
+
+    public int size(){
+        return this.size;
+    }
+
+    /**
+     * @return The type the column would have if it were built now. It only ever gets wider.
+     */
+    public Column.Type getType(){
+        return this.type;
+    }
+
+    /**
+     * @param text The value exactly as it should print. Null means the row didn't have this column at all.
+     */
+    public void add(final String text){
+        if(this.type != Column.Type.STRING){
+            Object key = Column.getKeyOfText(text);
+            if(key instanceof Long wholeNumber){
+                this.addWholeNumber(wholeNumber);
+                return;
+            }
+            if(key instanceof Double number){
+                this.addNumber(number);
+                return;
+            }
+
+            this.widenToStrings();
+        }
+
+        this.ensureCapacity();
+        this.strings[this.size++] = text;
+    }
+
+    /**
+     * Adds a whole number that's written without a decimal point.
+     */
+    public void addWholeNumber(final long value){
+        if(this.type == Column.Type.INT && value != (int) value){
+            this.widenToLongs();
+        }
+        if(this.type == Column.Type.DOUBLE && Math.abs(value) > Column.LARGEST_EXACT_DOUBLE_INTEGER){
+            this.widenToStrings();
+        }
+
+        this.ensureCapacity();
+        switch(this.type){
+            case INT -> this.ints[this.size] = (int) value;
+            case LONG -> this.longs[this.size] = value;
+            case DOUBLE -> {
+                this.doubles[this.size] = value;
+                this.writtenAsWholeNumbers.set(this.size);
+            }
+            case STRING -> this.strings[this.size] = Long.toString(value);
+        }
+        this.size++;
+    }
+
+    /**
+     * Adds a number that's written the way {@link Double#toString(double)} writes it.
+     */
+    public void addNumber(final double value){
+        if(this.type == Column.Type.INT || this.type == Column.Type.LONG){
+            this.widenToDoubles();
+        }
+
+        this.ensureCapacity();
+        if(this.type == Column.Type.DOUBLE){
+            this.doubles[this.size] = value;
+        }
+        else{
+            this.strings[this.size] = Double.toString(value);
+        }
+        this.size++;
+    }
+
+    /**
+     * Adds every value of a column, without going through text for the numeric ones.
+     */
+    public void addAll(final Column column){
+        for(int i = 0; i < column.size(); i++){
+            this.add(column, i);
+        }
+    }
+
+    /**
+     * Adds one value of a column, without going through text if it's numeric.
+     */
+    public void add(final Column column, final int row){
+        switch(column.getType()){
+            case INT, LONG -> this.addWholeNumber(column.getLong(row));
+            case DOUBLE -> {
+                if(((DoubleColumn) column).isWrittenAsWholeNumber(row)){
+                    this.addWholeNumber((long) column.getDouble(row));
+                }
+                else{
+                    this.addNumber(column.getDouble(row));
+                }
+            }
+            case STRING -> this.add(column.getString(row));
+        }
+    }
+
+    /**
+     * @return The finished column. Don't keep adding to the builder after this.
+     */
+    public Column build(){
+        return switch(this.type){
+            case INT -> new IntColumn(Arrays.copyOf(this.ints, this.size));
+            case LONG -> new LongColumn(Arrays.copyOf(this.longs, this.size));
+            case DOUBLE -> new DoubleColumn(Arrays.copyOf(this.doubles, this.size), this.writtenAsWholeNumbers);
+            case STRING -> new StringColumn(Arrays.copyOf(this.strings, this.size));
+        };
+    }
+
+    private void ensureCapacity(){
+        int capacity = switch(this.type){
+            case INT -> this.ints.length;
+            case LONG -> this.longs.length;
+            case DOUBLE -> this.doubles.length;
+            case STRING -> this.strings.length;
+        };
+        if(this.size < capacity){
+            return;
+        }
+
+        int newCapacity = Math.max(capacity * 2, 16);
+        switch(this.type){
+            case INT -> this.ints = Arrays.copyOf(this.ints, newCapacity);
+            case LONG -> this.longs = Arrays.copyOf(this.longs, newCapacity);
+            case DOUBLE -> this.doubles = Arrays.copyOf(this.doubles, newCapacity);
+            case STRING -> this.strings = Arrays.copyOf(this.strings, newCapacity);
+        }
+    }
+
+    private void widenToLongs(){
+        this.longs = new long[this.ints.length];
+        for(int i = 0; i < this.size; i++){
+            this.longs[i] = this.ints[i];
+        }
+
+        this.ints = null;
+        this.type = Column.Type.LONG;
+    }
+
+    private void widenToDoubles(){
+        int capacity = (this.type == Column.Type.INT) ? this.ints.length : this.longs.length;
+        double[] newDoubles = new double[capacity];
+        BitSet newWrittenAsWholeNumbers = new BitSet(capacity);
+        for(int i = 0; i < this.size; i++){
+            long value = (this.type == Column.Type.INT) ? this.ints[i] : this.longs[i];
+            if(Math.abs(value) > Column.LARGEST_EXACT_DOUBLE_INTEGER){
+                this.widenToStrings(); // A double would round this one off
+                return;
+            }
+
+            newDoubles[i] = value;
+            newWrittenAsWholeNumbers.set(i);
+        }
+
+        this.doubles = newDoubles;
+        this.writtenAsWholeNumbers = newWrittenAsWholeNumbers;
+        this.ints = null;
+        this.longs = null;
+        this.type = Column.Type.DOUBLE;
+    }
+
+    private void widenToStrings(){
+        if(this.type == Column.Type.STRING){
+            return;
+        }
+
+        Column soFar = this.build();
+        this.strings = new String[Math.max(this.size * 2, 16)];
+        for(int i = 0; i < this.size; i++){
+            this.strings[i] = soFar.getString(i);
+        }
+
+        this.ints = null;
+        this.longs = null;
+        this.doubles = null;
+        this.writtenAsWholeNumbers = null;
+        this.type = Column.Type.STRING;
+    }
+}
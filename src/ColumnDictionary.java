@@ -0,0 +1,131 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The distinct values of one or more text columns, each given a small int code. A {@link DictionaryColumn} stores codes instead of strings,
+ * so a column like ANO with a handful of values repeated over thousands of rows holds one String per value instead of one per row.
+ * <p>
+ * Dictionaries are shared by column name: every table's ANO column is encoded with the same dictionary, so the same text always gets
+ * the same code, and joins, set operators and equality filters between those columns can compare codes instead of strings.
+ * Codes are only ever added, never changed or taken away, so a code handed out once stays good for the rest of the run.
+ */
+public final class ColumnDictionary{
+    /**
+     * A dictionary stops taking new values once it has this many, and columns with values that don't fit just stay plain text.
+     * That keeps high-cardinality columns (names, IDs) from being "encoded" into a dictionary that's as big as the column.
+     */
+    public static final int MAXIMUM_SIZE = 1 << 16;
+
+    /**
+     * What {@link #getCode(String)} returns for text that isn't in the dictionary.
+     */
+    public static final int NO_CODE = -1;
+
+    private static final ConcurrentHashMap<String, ColumnDictionary> sharedDictionariesByColumnName = new ConcurrentHashMap<>();
+
+    private final    String                   columnName;
+    private final    HashMap<String, Integer> codesByValue = new HashMap<>();
+    private volatile String[]                 values       = new String[16];
+    private volatile Object[]                 keys         = new Object[16];
+    private          int                      size         = 0;
+
+    private ColumnDictionary(final String columnName){
+        this.columnName = columnName;
+    }
+
+    /**
+     * @return The dictionary shared by every column with this name.
+     */
+    public static ColumnDictionary getShared(final String columnName){
+        return sharedDictionariesByColumnName.computeIfAbsent(columnName, ColumnDictionary::new);
+    }
+
+    public String getColumnName(){
+        return this.columnName;
+    }
+
+    public synchronized int size(){
+        return this.size;
+    }
+
+    /**
+     * @return The code of the text, or {@link #NO_CODE} if no column has had that value yet.
+     */
+    public synchronized int getCode(final String value){
+        Integer code = this.codesByValue.get(value);
+        return (code == null) ? NO_CODE : code;
+    }
+
+    /**
+     * Gives every value a code, adding the ones that aren't in the dictionary yet. Either all of them get codes or none of them do.
+     *
+     * @param values The values of a column, none of them null.
+     * @return The code of each value, or null if the dictionary would get bigger than {@link #MAXIMUM_SIZE}.
+     */
+    public synchronized int[] encode(final String[] values){
+        int[] codes = new int[values.length];
+        int sizeBefore = this.size;
+
+        for(int i = 0; i < values.length; i++){
+            Integer code = this.codesByValue.get(values[i]);
+            if(code == null){
+                if(this.size == MAXIMUM_SIZE){
+                    this.removeCodesFrom(sizeBefore);
+                    return null;
+                }
+
+                code = this.add(values[i]);
+            }
+            codes[i] = code;
+        }
+
+        return codes;
+    }
+
+    private int add(final String value){
+        String[] newValues = this.values;
+        Object[] newKeys = this.keys;
+        if(this.size == newValues.length){
+            newValues = Arrays.copyOf(newValues, newValues.length * 2);
+            newKeys = Arrays.copyOf(newKeys, newKeys.length * 2);
+        }
+
+        newValues[this.size] = value;
+        newKeys[this.size] = Column.getKeyOfText(value);
+        this.codesByValue.put(value, this.size);
+
+        // Writing the (volatile) arrays back even when they didn't grow is what makes the new entry visible to other threads
+        this.values = newValues;
+        this.keys = newKeys;
+
+        return this.size++;
+    }
+
+    /**
+     * Takes back the codes that were handed out by an {@link #encode(String[])} that didn't finish. Nothing outside has seen them yet.
+     */
+    private void removeCodesFrom(final int firstCodeToRemove){
+        for(int code = firstCodeToRemove; code < this.size; code++){
+            this.codesByValue.remove(this.values[code]);
+            this.values[code] = null;
+            this.keys[code] = null;
+        }
+
+        this.size = firstCodeToRemove;
+    }
+
+    /**
+     * @return The text of every code handed out so far, indexed by code. The entries of codes that were handed out never change, so it's safe to hang on to.
+     */
+    String[] getValues(){
+        return this.values;
+    }
+
+    /**
+     * @return The {@link Column#getKey(int) key} of every code handed out so far, indexed by code.
+     */
+    Object[] getKeys(){
+        return this.keys;
+    }
+}
@@ -0,0 +1,263 @@
+import java.io.FileNotFoundException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+/**
+ * Guesses how many rows each node of a plan will produce, using {@link TableStatistics} of the base tables and the usual textbook assumptions
+ * (values are spread evenly, columns are independent of each other, and join keys on the side with fewer distinct values all find a match).
+ * The cost of a plan is the total number of rows all of its operators produce, since that's what all the time and memory goes into.
+ */
+public class CostModel{
+    /**
+     * Used for conditions where the statistics don't say anything useful, like comparing two columns with {@code <}.
+     */
+    public static final double DEFAULT_SELECTIVITY = 1.0 / 3.0;
+
+    /**
+     * @param distinctCount How many different values the column is expected to have.
+     * @param minimum       The smallest value, or NaN if the column isn't numeric.
+     * @param maximum       The largest value, or NaN if the column isn't numeric.
+     */
+    public record ColumnEstimate(double distinctCount, double minimum, double maximum){
+        public boolean isNumeric(){
+            return !Double.isNaN(this.minimum) && !Double.isNaN(this.maximum);
+        }
+
+        private ColumnEstimate cappedAt(final double rowCount){
+            return new ColumnEstimate(Math.max(Math.min(this.distinctCount, rowCount), Math.min(1, rowCount)), this.minimum, this.maximum);
+        }
+    }
+
+    /**
+     * @param rowCount The number of rows expected to come out of a plan.
+     * @param columns  What's expected of each column, in column order.
+     */
+    public record Estimate(double rowCount, Map<String, ColumnEstimate> columns){
+        public ColumnEstimate getColumn(final String columnName){
+            ColumnEstimate column = this.columns.get(columnName);
+            return (column != null) ? column : new ColumnEstimate(this.rowCount, Double.NaN, Double.NaN);
+        }
+    }
+
+    /**
+     * @return How many rows each node in the plan is expected to produce, added up.
+     */
+    public double estimateCost(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        if(plan instanceof PlanNode.Scan){
+            return 0; // Every plan has to read the same tables, so only the work on top of that counts
+        }
+
+        double cost = this.estimate(plan).rowCount();
+        for(PlanNode child : plan.getChildren()){
+            cost += this.estimateCost(child);
+        }
+
+        return cost;
+    }
+
+    public Estimate estimate(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        if(plan instanceof PlanNode.Scan scan){
+            TableStatistics statistics = this.getTableStatistics(scan.tableName());
+
+            LinkedHashMap<String, ColumnEstimate> columns = new LinkedHashMap<>();
+            for(String columnName : statistics.getColumnNames()){
+                columns.put(columnName, new ColumnEstimate(statistics.getDistinctCount(columnName), statistics.getMinimum(columnName), statistics.getMaximum(columnName)));
+            }
+
+            return new Estimate(statistics.getRowCount(), columns);
+        }
+        if(plan instanceof PlanNode.Select select){
+            return this.estimateSelect(select.condition(), this.estimate(select.input()));
+        }
+        if(plan instanceof PlanNode.Project project){
+            Estimate input = this.estimate(project.input());
+
+            LinkedHashMap<String, ColumnEstimate> columns = new LinkedHashMap<>();
+            double distinctRowCount = 1;
+            for(String columnName : project.columns()){
+                columns.put(columnName, input.getColumn(columnName));
+                distinctRowCount *= Math.max(1, input.getColumn(columnName).distinctCount());
+            }
+
+            // Without duplicates, there's at most a row per combination of values
+            return new Estimate(project.isDistinct() ? Math.min(input.rowCount(), distinctRowCount) : input.rowCount(), columns);
+        }
+        if(plan instanceof PlanNode.Aggregate aggregate){
+            Estimate input = this.estimate(aggregate.input());
+
+            // There's a row per combination of group values that actually shows up, and only one without group columns
+            double rowCount = 1;
+            LinkedHashMap<String, ColumnEstimate> columns = new LinkedHashMap<>();
+            for(String columnName : aggregate.groupColumns()){
+                rowCount *= Math.max(1, input.getColumn(columnName).distinctCount());
+                columns.put(columnName, input.getColumn(columnName));
+            }
+            if(!aggregate.groupColumns().isEmpty()){
+                rowCount = Math.min(rowCount, input.rowCount());
+            }
+
+            return withRowCount(new Estimate(rowCount, columns), rowCount);
+        }
+        if(plan instanceof PlanNode.Join join){
+            return this.estimateNaturalJoin(this.estimate(join.left()), this.estimate(join.right()));
+        }
+        if(plan instanceof PlanNode.CrossProduct crossProduct){
+            return this.estimateCrossProduct(this.estimate(crossProduct.left()), this.estimate(crossProduct.right()));
+        }
+        if(plan instanceof PlanNode.EquiJoin equiJoin){
+            Estimate left = this.estimate(equiJoin.left());
+            Estimate right = this.estimate(equiJoin.right());
+
+            double selectivity = 1;
+            for(int i = 0; i < equiJoin.leftKeyColumns().size(); i++){
+                selectivity /= Math.max(1, Math.max(left.getColumn(equiJoin.leftKeyColumns().get(i)).distinctCount(),
+                                                    right.getColumn(equiJoin.rightKeyColumns().get(i)).distinctCount()));
+            }
+
+            Estimate crossProduct = this.estimateCrossProduct(left, right);
+            return withRowCount(crossProduct, crossProduct.rowCount() * selectivity);
+        }
+
+        Estimate left = this.estimate(plan.getChildren().get(0));
+        Estimate right = this.estimate(plan.getChildren().get(1));
+        if(plan instanceof PlanNode.Union union){
+            if(!union.isDistinct()){
+                return withRowCount(left, left.rowCount() + right.rowCount());
+            }
+
+            // Without duplicates, there's at most a row per combination of the values either side has
+            double distinctRowCount = 1;
+            for(String columnName : left.columns().keySet()){
+                distinctRowCount *= Math.max(1, left.getColumn(columnName).distinctCount() + right.getColumn(columnName).distinctCount());
+            }
+            return withRowCount(left, Math.min(left.rowCount() + right.rowCount(), distinctRowCount));
+        }
+        if(plan instanceof PlanNode.Intersect){
+            return withRowCount(left, Math.min(left.rowCount(), right.rowCount()));
+        }
+
+        return left; // MINUS can't produce more than its left side, and might not take anything away
+    }
+
+    /**
+     * Natural join: every shared column is an equality condition, and each one keeps 1 out of (the larger number of distinct values) combinations.
+     */
+    public Estimate estimateNaturalJoin(final Estimate left, final Estimate right){
+        double rowCount = left.rowCount() * right.rowCount();
+
+        LinkedHashMap<String, ColumnEstimate> columns = new LinkedHashMap<>(left.columns());
+        for(Map.Entry<String, ColumnEstimate> rightColumn : right.columns().entrySet()){
+            ColumnEstimate leftColumn = left.columns().get(rightColumn.getKey());
+            if(leftColumn == null){
+                columns.put(rightColumn.getKey(), rightColumn.getValue());
+            }
+            else{
+                rowCount /= Math.max(1, Math.max(leftColumn.distinctCount(), rightColumn.getValue().distinctCount()));
+                columns.put(rightColumn.getKey(), new ColumnEstimate(Math.min(leftColumn.distinctCount(), rightColumn.getValue().distinctCount()),
+                                                                    leftColumn.minimum(), leftColumn.maximum()));
+            }
+        }
+
+        return withRowCount(new Estimate(rowCount, columns), rowCount);
+    }
+
+    private Estimate estimateCrossProduct(final Estimate left, final Estimate right){
+        LinkedHashMap<String, ColumnEstimate> columns = new LinkedHashMap<>(left.columns());
+        columns.putAll(right.columns());
+
+        return new Estimate(left.rowCount() * right.rowCount(), columns);
+    }
+
+    private Estimate estimateSelect(final String condition, final Estimate input){
+        SelectionPredicate predicate;
+        try{
+            predicate = SelectionPredicate.parse(condition);
+        }
+        catch(IllegalArgumentException exception){
+            return input;
+        }
+
+        Estimate output = withRowCount(input, input.rowCount() * estimateSelectivity(predicate, input));
+        for(SelectionPredicate conjunct : predicate.getConjuncts()){
+            if(conjunct instanceof SelectionPredicate.Comparison comparison && comparison.condition().operator().equals(DataTable.EQUALS) &&
+               !input.columns().containsKey(comparison.condition().comparedValue())){
+                ColumnEstimate column = input.getColumn(comparison.condition().columnName());
+                output.columns().put(comparison.condition().columnName(), new ColumnEstimate(Math.min(1, output.rowCount()), column.minimum(), column.maximum()));
+            }
+        }
+
+        return output;
+    }
+
+    /**
+     * @return What fraction of the input's rows the predicate is expected to let through. The parts of an AND or an OR are taken to be independent.
+     */
+    private static double estimateSelectivity(final SelectionPredicate predicate, final Estimate input){
+        if(predicate instanceof SelectionPredicate.And and){
+            double selectivity = 1;
+            for(SelectionPredicate conjunct : and.predicates()){
+                selectivity *= estimateSelectivity(conjunct, input);
+            }
+
+            return selectivity;
+        }
+        if(predicate instanceof SelectionPredicate.Or or){
+            double rejectedFraction = 1;
+            for(SelectionPredicate disjunct : or.predicates()){
+                rejectedFraction *= 1 - estimateSelectivity(disjunct, input);
+            }
+
+            return 1 - rejectedFraction;
+        }
+        if(predicate instanceof SelectionPredicate.Not not){
+            return 1 - estimateSelectivity(not.predicate(), input);
+        }
+
+        SelectionCondition condition = ((SelectionPredicate.Comparison) predicate).condition();
+        ColumnEstimate column = input.getColumn(condition.columnName());
+        boolean comparesTwoColumns = !condition.operator().equals(DataTable.IN) && input.columns().containsKey(condition.comparedValue());
+
+        switch(condition.operator()){
+            case DataTable.EQUALS, DataTable.NOT_EQUALS -> {
+                double distinctCount = comparesTwoColumns ? Math.max(column.distinctCount(), input.getColumn(condition.comparedValue()).distinctCount()) : column.distinctCount();
+                double selectivity = 1 / Math.max(1, distinctCount);
+                return condition.operator().equals(DataTable.EQUALS) ? selectivity : 1 - selectivity;
+            }
+            case DataTable.IN -> {
+                return Math.min(1, SelectionCondition.parseValueList(condition.comparedValue()).size() / Math.max(1, column.distinctCount()));
+            }
+            default -> {
+                if(comparesTwoColumns || !column.isNumeric() || column.maximum() <= column.minimum()){
+                    return DEFAULT_SELECTIVITY;
+                }
+
+                try{
+                    double comparedValue = Double.parseDouble(condition.comparedValue());
+                    double fractionBelow = (comparedValue - column.minimum()) / (column.maximum() - column.minimum());
+                    boolean isLessThan = condition.operator().equals(DataTable.LESS_THAN) || condition.operator().equals(DataTable.LESS_THAN_OR_EQUAL);
+                    return Math.max(0, Math.min(1, isLessThan ? fractionBelow : 1 - fractionBelow));
+                }
+                catch(NumberFormatException exception){
+                    return DEFAULT_SELECTIVITY; // Comparing numbers to a non-number fails when it runs anyway
+                }
+            }
+        }
+    }
+
+    private static Estimate withRowCount(final Estimate estimate, final double rowCount){
+        LinkedHashMap<String, ColumnEstimate> columns = new LinkedHashMap<>();
+        for(Map.Entry<String, ColumnEstimate> column : estimate.columns().entrySet()){
+            columns.put(column.getKey(), column.getValue().cappedAt(rowCount));
+        }
+
+        return new Estimate(rowCount, columns);
+    }
+
+    /**
+     * @return The statistics of a base table. Override this to get them from somewhere other than the table files in the working directory.
+     */
+    protected TableStatistics getTableStatistics(final String tableName) throws DataFormatException, FileNotFoundException{
+        return TableStatistics.forTable(QueryExecutor.getTableFile(tableName));
+    }
+}
@@ -0,0 +1,51 @@
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a result as comma separated values: the column names, then each row on its own line. There's no line break after the last row.
+ * A row that's missing a value just leaves it (and its comma) out.
+ */
+public final class CsvResultSink implements ResultSink{
+    private final Writer writer;
+    private       int    numberOfColumns = 0;
+    private       long   numberOfRows    = 0;
+
+    /**
+     * @param writer Where to write to. Give it a buffered one, since it gets written to a value at a time.
+     */
+    public CsvResultSink(final Writer writer){
+        this.writer = writer;
+    }
+
+    @Override
+    public void start(final String[] columnNames) throws IOException{
+        this.numberOfColumns = columnNames.length;
+        this.writer.write(String.join(",", columnNames));
+    }
+
+    @Override
+    public void write(final DataTable rows) throws IOException{
+        for(int i = 0; i < rows.getRowCount(); i++){
+            this.writer.write(System.lineSeparator());
+            for(int j = 0; j < this.numberOfColumns; j++){
+                String value = rows.getColumn(j).getString(i);
+                if(value == null){
+                    continue;
+                }
+
+                this.writer.write(value);
+                if(j != (this.numberOfColumns - 1)){
+                    this.writer.write(',');
+                }
+            }
+        }
+
+        this.numberOfRows += rows.getRowCount();
+    }
+
+    @Override
+    public long finish() throws IOException{
+        this.writer.flush();
+        return this.numberOfRows;
+    }
+}
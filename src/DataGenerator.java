@@ -0,0 +1,178 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * Makes ACTORS, MOVIES and Play tables shaped like the sample ones, at any size, for benchmarking. The same settings always make the same
+ * tables, so runs on different machines (or before and after a change) can be compared.
+ * <p>
+ * Play gets the number of rows asked for, with a quarter as many actors and a sixteenth as many movies (but at least one of each).
+ * Which actor and movie each play has follows a Zipf distribution: with a skew of 0 every key is as likely as the others, and the higher it
+ * is, the more the plays bunch up on A1, A2... and M1, M2... (at 1, A1 gets about twice the plays of A2). Payments are spread evenly over
+ * 0 to 99, so {@code SELE_{Payment > p} Play} keeps (99 - p)% of the rows, whatever the size.
+ */
+public final class DataGenerator{
+    public static final long   DEFAULT_SEED = 4700;
+    public static final double DEFAULT_SKEW = 0;
+
+    public static final String ROWS_OPTION = "--rows=";
+    public static final String SKEW_OPTION = "--skew=";
+    public static final String SEED_OPTION = "--seed=";
+
+    private static final String[] INITIALS = {"A", "B", "C", "D", "E", "F", "G", "H", "J", "K", "L", "M", "N", "P", "R", "S", "T", "W"};
+    private static final String[] SURNAMES = {"Grassy", "Flower", "Trunk", "Swanson", "Branch", "Leafy", "Root", "Petal", "Stem", "Bark", "Moss", "Fern"};
+    private static final String[] ADJECTIVES = {"Long", "Longest", "Lost", "Quiet", "Bright", "Last", "Hidden", "Broken", "Golden", "Silent"};
+    private static final String[] NOUNS = {"walk", "day", "fun", "night", "road", "summer", "river", "letter", "garden", "city", "song"};
+
+    private final int    numberOfPlays;
+    private final int    numberOfActors;
+    private final int    numberOfMovies;
+    private final double keySkew;
+    private final long   seed;
+
+    /**
+     * @param numberOfPlays How many rows Play gets.
+     * @param keySkew The exponent of the Zipf distribution the keys of Play follow. 0 for none.
+     */
+    public DataGenerator(final int numberOfPlays, final double keySkew, final long seed){
+        if(numberOfPlays < 1){
+            throw new IllegalArgumentException("Play needs at least one row, not " + numberOfPlays + ".");
+        }
+        if(keySkew < 0 || Double.isNaN(keySkew)){
+            throw new IllegalArgumentException("The key skew can't be negative, like " + keySkew + ".");
+        }
+
+        this.numberOfPlays = numberOfPlays;
+        this.numberOfActors = Math.max(1, numberOfPlays / 4);
+        this.numberOfMovies = Math.max(1, numberOfPlays / 16);
+        this.keySkew = keySkew;
+        this.seed = seed;
+    }
+
+    /**
+     * Reads the settings from arguments like {@code --rows=1000000 --skew=0.8 --seed=1}. Anything left out gets its default
+     * (which is a million rows).
+     */
+    public static DataGenerator fromArguments(final String[] args){
+        int numberOfPlays = 1_000_000;
+        double keySkew = DEFAULT_SKEW;
+        long seed = DEFAULT_SEED;
+        for(String arg : args){
+            if(arg.startsWith(ROWS_OPTION)){
+                numberOfPlays = Integer.parseInt(arg.substring(ROWS_OPTION.length()));
+            }
+            else if(arg.startsWith(SKEW_OPTION)){
+                keySkew = Double.parseDouble(arg.substring(SKEW_OPTION.length()));
+            }
+            else if(arg.startsWith(SEED_OPTION)){
+                seed = Long.parseLong(arg.substring(SEED_OPTION.length()));
+            }
+        }
+
+        return new DataGenerator(numberOfPlays, keySkew, seed);
+    }
+
+    /**
+     * Writes ACTORS.txt, MOVIES.txt and Play.txt to the directory (making it if need be), replacing any that are already there.
+     */
+    public void writeTables(final File directory) throws IOException{
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Couldn't make the directory " + directory + ".");
+        }
+
+        SplittableRandom random = new SplittableRandom(this.seed);
+        try(PrintWriter writer = openTableFile(directory, "ACTORS")){
+            writer.println("ANAME, ANO");
+            for(int i = 1; i <= this.numberOfActors; i++){
+                writer.println(pick(INITIALS, random) + " " + pick(SURNAMES, random) + ", A" + i);
+            }
+        }
+        try(PrintWriter writer = openTableFile(directory, "MOVIES")){
+            writer.println("MNAME, MNO");
+            for(int i = 1; i <= this.numberOfMovies; i++){
+                writer.println(pick(ADJECTIVES, random) + " " + pick(NOUNS, random) + ", M" + i);
+            }
+        }
+
+        double[] actorDistribution = getZipfDistribution(this.numberOfActors, this.keySkew);
+        double[] movieDistribution = getZipfDistribution(this.numberOfMovies, this.keySkew);
+        try(PrintWriter writer = openTableFile(directory, "Play")){
+            writer.println("ANO, MNO, Payment");
+            for(int i = 0; i < this.numberOfPlays; i++){
+                int actor = sample(actorDistribution, this.numberOfActors, random);
+                int movie = sample(movieDistribution, this.numberOfMovies, random);
+                writer.println("A" + actor + ", M" + movie + ", " + random.nextInt(100));
+            }
+        }
+    }
+
+    private static PrintWriter openTableFile(final File directory, final String tableName) throws IOException{
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(directory, tableName + ".txt")), StandardCharsets.UTF_8), 1 << 16));
+    }
+
+    private static String pick(final String[] words, final SplittableRandom random){
+        return words[random.nextInt(words.length)];
+    }
+
+    /**
+     * @return The cumulative probabilities of keys 1 to numberOfKeys, or null if they're all equally likely.
+     */
+    private static double[] getZipfDistribution(final int numberOfKeys, final double skew){
+        if(skew == 0){
+            return null;
+        }
+
+        double[] cumulativeProbabilities = new double[numberOfKeys];
+        double total = 0;
+        for(int k = 0; k < numberOfKeys; k++){
+            total += 1 / Math.pow(k + 1, skew);
+            cumulativeProbabilities[k] = total;
+        }
+        for(int k = 0; k < numberOfKeys; k++){
+            cumulativeProbabilities[k] /= total;
+        }
+
+        return cumulativeProbabilities;
+    }
+
+    /**
+     * @return A key from 1 to numberOfKeys.
+     */
+    private static int sample(final double[] cumulativeProbabilities, final int numberOfKeys, final SplittableRandom random){
+        if(cumulativeProbabilities == null){
+            return random.nextInt(numberOfKeys) + 1;
+        }
+
+        double target = random.nextDouble();
+        int low = 0;
+        int high = numberOfKeys - 1;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(cumulativeProbabilities[middle] < target){
+                low = middle + 1;
+            }
+            else{
+                high = middle;
+            }
+        }
+
+        return low + 1;
+    }
+
+    public int getNumberOfPlays(){
+        return this.numberOfPlays;
+    }
+
+    public int getNumberOfActors(){
+        return this.numberOfActors;
+    }
+
+    public int getNumberOfMovies(){
+        return this.numberOfMovies;
+    }
+
+    @Override
+    public String toString(){
+        return this.numberOfActors + " actors, " + this.numberOfMovies + " movies and " + this.numberOfPlays + " plays (key skew " + this.keySkew + ", seed " + this.seed + ")";
+    }
+}
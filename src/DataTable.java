@@ -1,51 +1,291 @@
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.lang.module.FindException;
 import java.util.*;
 import java.util.zip.DataFormatException;
 
 public class DataTable{
-    public static final String         EQUALS       = "=";
-    public static final String         LESS_THAN    = "<";
-    public static final String         GREATER_THAN = ">";
-    private final       List<String[]> data         = new ArrayList<>(100);
-    private final       String[]       columnNames;
+    public static final String          EQUALS                = "=";
+    public static final String          NOT_EQUALS            = "!=";
+    public static final String          LESS_THAN             = "<";
+    public static final String          LESS_THAN_OR_EQUAL    = "<=";
+    public static final String          GREATER_THAN          = ">";
+    public static final String          GREATER_THAN_OR_EQUAL = ">=";
+    public static final String          IN                    = "IN";
+    private final       String[]        columnNames;
+    private             Column[]        columns;
+    private             int             rowCount;
+    private             TableStatistics statistics;
 
+    /**
+     * Loads a table from its file, straight into typed columns (see {@link ColumnBuilder} for how each column's type is picked,
+     * and {@link TableFileReader} for how the file gets read). The table's statistics are collected on the way in, and remembered for the query planner.
+     */
     public DataTable(final File file) throws FileNotFoundException, DataFormatException{
-        try(Scanner scanner = new Scanner(file)){
-            if(scanner.hasNextLine()){
-                this.columnNames = scanner.nextLine().split(",\\s*");
+        this(TableFileReader.read(file), file);
+    }
+
+    private DataTable(final DataTable loadedTable, final File file){
+        this.columnNames = loadedTable.columnNames;
+        this.columns = encodeDictionaries(this.columnNames, loadedTable.columns.clone());
+        this.rowCount = loadedTable.rowCount;
+
+        this.statistics = TableStatistics.compute(this.columnNames, this.columns, this.rowCount);
+        TableStatistics.record(file, this.statistics);
+    }
+
+    public DataTable(String[] columnNames, List<String[]> data){
+        this.columnNames = columnNames.clone();
+
+        ColumnBuilder[] columnBuilders = createColumnBuilders(this.columnNames.length, data.size());
+        for(String[] datum : data){
+            addToColumnBuilders(columnBuilders, datum);
+        }
+        this.columns = encodeDictionaries(this.columnNames, buildColumns(columnBuilders));
+        this.rowCount = data.size();
+    }
+
+    /**
+     * @param columns The columns, which have to be the same length. They're shared, not copied, which is fine since columns never change.
+     */
+    public DataTable(final String[] columnNames, final Column[] columns){
+        this(columnNames, columns, (columns.length == 0) ? 0 : columns[0].size());
+    }
+
+    private DataTable(final String[] columnNames, final Column[] columns, final int rowCount){
+        if(columnNames.length != columns.length){
+            throw new IllegalArgumentException("There are " + columnNames.length + " column names but " + columns.length + " columns.");
+        }
+        for(Column column : columns){
+            if(column.size() != rowCount){
+                throw new IllegalArgumentException("All the columns of a table have to have the same number of rows.");
             }
-            else{
-                throw new DataFormatException("This file has no data.");
+        }
+
+        this.columnNames = columnNames.clone();
+        this.columns = columns.clone();
+        this.rowCount = rowCount;
+    }
+
+    private static ColumnBuilder[] createColumnBuilders(final int numberOfColumns, final int expectedNumberOfRows){
+        ColumnBuilder[] columnBuilders = new ColumnBuilder[numberOfColumns];
+        for(int j = 0; j < numberOfColumns; j++){
+            columnBuilders[j] = new ColumnBuilder(expectedNumberOfRows);
+        }
+
+        return columnBuilders;
+    }
+
+    /**
+     * A row with fewer values than there are columns gets nulls for the rest; extra values are ignored.
+     */
+    private static void addToColumnBuilders(final ColumnBuilder[] columnBuilders, final String[] row){
+        for(int j = 0; j < columnBuilders.length; j++){
+            columnBuilders[j].add((j < row.length) ? row[j] : null);
+        }
+    }
+
+    private static Column[] buildColumns(final ColumnBuilder[] columnBuilders){
+        Column[] columns = new Column[columnBuilders.length];
+        for(int j = 0; j < columnBuilders.length; j++){
+            columns[j] = columnBuilders[j].build();
+        }
+
+        return columns;
+    }
+
+    /**
+     * Dictionary-encodes whichever text columns have few enough distinct values, each with the dictionary shared by its column name.
+     * See {@link DictionaryColumn#encodeIfWorthIt(String, Column)}.
+     */
+    private static Column[] encodeDictionaries(final String[] columnNames, final Column[] columns){
+        for(int j = 0; j < columns.length; j++){
+            columns[j] = DictionaryColumn.encodeIfWorthIt(columnNames[j], columns[j]);
+        }
+
+        return columns;
+    }
+
+    /**
+     * Glues tables with the same columns together, one after the other. Each column ends up with whatever type fits all of its pieces.
+     *
+     * @param columnNames The column names of the result, which is empty if there are no tables.
+     * @param tables      Tables with those columns, in that order.
+     */
+    public static DataTable concatenate(final String[] columnNames, final List<DataTable> tables){
+        int totalRowCount = 0;
+        for(DataTable table : tables){
+            if(table.columnNames.length != columnNames.length){
+                throw new IllegalArgumentException("Cannot concatenate tables with different number of columns");
             }
+            totalRowCount += table.rowCount;
+        }
 
-            while(scanner.hasNextLine()){
-                this.data.add(scanner.nextLine().split(",\\s*"));
+        if(tables.size() == 1){
+            return new DataTable(columnNames, tables.get(0).columns, totalRowCount);
+        }
+
+        Column[] newColumns = new Column[columnNames.length];
+        for(int j = 0; j < columnNames.length; j++){
+            ArrayList<Column> pieces = new ArrayList<>(tables.size());
+            for(DataTable table : tables){
+                pieces.add(table.columns[j]);
+            }
+
+            newColumns[j] = DictionaryColumn.concatenate(pieces); // Pieces with the same dictionary are glued together without decoding anything
+            if(newColumns[j] == null){
+                ColumnBuilder columnBuilder = new ColumnBuilder(totalRowCount);
+                for(Column piece : pieces){
+                    columnBuilder.addAll(piece);
+                }
+                newColumns[j] = DictionaryColumn.encodeIfWorthIt(columnNames[j], columnBuilder.build());
             }
         }
+
+        return new DataTable(columnNames, newColumns, totalRowCount);
+    }
+
+    /**
+     * Reads just the header line of a table file, without loading any of the rows.
+     *
+     * @return The column names of the table in the file.
+     */
+    public static String[] readColumnNames(final File file) throws FileNotFoundException, DataFormatException{
+        try(Scanner scanner = new Scanner(file)){
+            return readColumnNames(scanner);
+        }
     }
 
-    public DataTable(String[] columnNames, List<String[]> data){
-        this.data.addAll(data);
-        this.columnNames = columnNames.clone();
+    private static String[] readColumnNames(final Scanner scanner) throws DataFormatException{
+        if(scanner.hasNextLine()){
+            return TableFileReader.splitFields(scanner.nextLine());
+        }
+        else{
+            throw new DataFormatException("This file has no data.");
+        }
     }
 
+    /**
+     * Turns the columns back into rows of text. This copies the whole table, so prefer {@link #getColumn(int)} when you can.
+     */
     public List<String[]> getData(){
-//        return Collections.unmodifiableList(this.data);
-
-        ArrayList<String[]> copyOfData = new ArrayList<>(this.data.size());
-        copyOfData.addAll(this.data);
+        ArrayList<String[]> copyOfData = new ArrayList<>(this.rowCount);
+        for(int i = 0; i < this.rowCount; i++){
+            copyOfData.add(this.getRow(i));
+        }
 
         return copyOfData;
     }
 
+    /**
+     * @return One row, as text.
+     */
+    public String[] getRow(final int row){
+        String[] datum = new String[this.columns.length];
+        for(int j = 0; j < this.columns.length; j++){
+            datum[j] = this.columns[j].getString(row);
+        }
+
+        return datum;
+    }
+
     public String[] getColumnNames(){
         return this.columnNames.clone();
     }
 
+    public int getRowCount(){
+        return this.rowCount;
+    }
+
+    /**
+     * @return Roughly how many bytes the table's columns take up.
+     */
+    public long getMemoryUsage(){
+        long memoryUsage = 0;
+        for(Column column : this.columns){
+            memoryUsage += column.getMemoryUsage();
+        }
+
+        return memoryUsage;
+    }
+
+    /**
+     * @return The column at the given position. Columns never change, so there's no need to copy it.
+     */
+    public Column getColumn(final int columnIndex){
+        return this.columns[columnIndex];
+    }
+
+    /**
+     * @return The column with the given name.
+     */
+    public Column getColumn(final String columnName){
+        return this.columns[getIndexInArrayOfItemEquivalentTo(this.columnNames, columnName)];
+    }
+
+    /**
+     * Adds a row at the end. Columns never change, so this builds new ones, which makes it O(n); add rows in bulk through
+     * {@link #DataTable(String[], List)} or {@link #concatenate(String[], List)} instead of calling this in a loop.
+     * Don't call it on a table from {@link TableCatalog}, since every query that read that table would see the new row.
+     */
     public void addRow(String[] rowData){
-        this.data.add(rowData);
+        ColumnBuilder[] columnBuilders = createColumnBuilders(this.columns.length, this.rowCount + 1);
+        for(int j = 0; j < this.columns.length; j++){
+            columnBuilders[j].addAll(this.columns[j]);
+        }
+        addToColumnBuilders(columnBuilders, rowData);
+
+        this.columns = buildColumns(columnBuilders);
+        this.rowCount++;
+        this.statistics = null;
+    }
+
+    /**
+     * @return The row count, distinct counts and numeric ranges of this table. Computed the first time they're asked for, unless the table came from a file.
+     */
+    public TableStatistics getStatistics(){
+        if(this.statistics == null){
+            this.statistics = TableStatistics.compute(this.columnNames, this.columns, this.rowCount);
+        }
+
+        return this.statistics;
+    }
+
+    /**
+     * @param rows Which rows to keep, in order. A row can show up more than once.
+     * @return A new table with just those rows, taken column by column.
+     */
+    public DataTable gatherRows(final int[] rows){
+        return new DataTable(this.columnNames, gatherColumns(this.columns, rows), rows.length);
+    }
+
+    /**
+     * @return Each of the columns gathered at the rows.
+     */
+    private static Column[] gatherColumns(final Column[] columns, final int[] rows){
+        int[][] rowsOfEachColumn = new int[columns.length][];
+        Arrays.fill(rowsOfEachColumn, rows);
+
+        return gatherColumns(columns, rowsOfEachColumn);
+    }
+
+    /**
+     * @return Each column gathered at its own rows (which all have to be the same length). With a lot of rows, the columns get gathered at the same time.
+     */
+    private static Column[] gatherColumns(final Column[] columns, final int[][] rowsOfEachColumn){
+        if(columns.length < 2 || rowsOfEachColumn[0].length <= Morsels.MORSEL_SIZE){
+            Column[] newColumns = new Column[columns.length];
+            for(int j = 0; j < columns.length; j++){
+                newColumns[j] = columns[j].gather(rowsOfEachColumn[j]);
+            }
+
+            return newColumns;
+        }
+
+        return Morsels.map(columns.length, j -> columns[j].gather(rowsOfEachColumn[j])).toArray(new Column[0]);
     }
 
     /**
@@ -57,98 +297,194 @@ public class DataTable{
      * that is the cross product between this table and the otherTable.
      */
     public DataTable crossWith(final DataTable otherTable){
-        ArrayList<String[]> newData = new ArrayList<>(this.data.size() * otherTable.data.size());
-
-        for(int i = 0; i < this.data.size(); i++){
-            newData.add(new String[this.columnNames.length + otherTable.columnNames.length]);
-            for(int j = 0; j < otherTable.data.size(); j++){
-                int newArrayIndex = 0;
-                for(int u = 0; u < this.columnNames.length; u++, newArrayIndex++){
-                    newData.get(i)[newArrayIndex] = this.data.get(i)[u];
-                }
-                for(int u = 0; u < otherTable.columnNames.length; u++, newArrayIndex++){
-                    newData.get(i)[newArrayIndex] = otherTable.data.get(j)[u];
-                }
+        int newRowCount = Math.multiplyExact(this.rowCount, otherTable.rowCount);
+        int[] thisTableRows = new int[newRowCount];
+        int[] otherTableRows = new int[newRowCount];
+
+        int k = 0;
+        for(int i = 0; i < this.rowCount; i++){
+            for(int j = 0; j < otherTable.rowCount; j++){
+                thisTableRows[k] = i;
+                otherTableRows[k] = j;
+                k++;
             }
         }
 
-        ArrayList<String> newColumnNames = new ArrayList<>(this.columnNames.length + otherTable.columnNames.length);
-        newColumnNames.addAll(Arrays.asList(this.columnNames));
-        newColumnNames.addAll(Arrays.asList(otherTable.columnNames));
+        return this.concatenateColumnsWith(otherTable, thisTableRows, otherTableRows);
+    }
 
-        return new DataTable(newColumnNames.toArray(new String[0]), newData);
+    /**
+     * @return A table with all of this table's columns (gathered at thisTableRows) followed by all of the otherTable's (gathered at otherTableRows).
+     */
+    private DataTable concatenateColumnsWith(final DataTable otherTable, final int[] thisTableRows, final int[] otherTableRows){
+        String[] newColumnNames = new String[this.columnNames.length + otherTable.columnNames.length];
+        System.arraycopy(this.columnNames, 0, newColumnNames, 0, this.columnNames.length);
+        System.arraycopy(otherTable.columnNames, 0, newColumnNames, this.columnNames.length, otherTable.columnNames.length);
+
+        Column[] newColumns = new Column[newColumnNames.length];
+        System.arraycopy(gatherColumns(this.columns, thisTableRows), 0, newColumns, 0, this.columns.length);
+        System.arraycopy(gatherColumns(otherTable.columns, otherTableRows), 0, newColumns, this.columns.length, otherTable.columns.length);
+
+        return new DataTable(newColumnNames, newColumns, thisTableRows.length);
     }
 
     /**
      * Performs an intersection between this table and the otherTable. This is essentially the opposite of the MINUS operator.
      * Basically, it only keeps rows that exist in both tables (all field values must be identical).
+     * Columns are matched up by name, so the otherTable can have them in any order.
+     * The otherTable's rows go into a hash set once, and each row of this table is a single lookup, so this is O(n + m).
+     * Like a proper set operator, every row shows up at most once in the result.
      *
      * @param otherTable The table to make babies with.
      * @return An intersected table with only the common rows between this table and the otherTable.
      */
     public DataTable intersectWith(final DataTable otherTable){
-        if(this.columnNames.length != otherTable.columnNames.length){
-            throw new IllegalArgumentException("Cannot intersect tables with different number of columns");
-        }
-        if(getCommonElementsInArrays(this.columnNames, otherTable.columnNames).length != this.columnNames.length){
-            throw new IllegalArgumentException("Cannot intersect tables if all columns don't match exactly.");
-        }
-
-        ArrayList<String[]> newData = new ArrayList<>(this.data.size());
-
-        for(String[] datum : this.data){
-            if(this.thereExistsAnEquivalentRowIn(otherTable)){
-                newData.add(datum);
-            }
-        }
-
-        return new DataTable(this.columnNames, newData);
+        return this.keepRowsFoundIn(otherTable, true, "intersect");
     }
 
     /**
      * The UNION operator simply combines the rows of data of this table and otherTable.
      * That's why, when the union's been on strike, you're down on your luck, it's tough (so tough).
+     * This keeps duplicates (bag semantics); use {@link #unionWith(DataTable, boolean)} to get rid of them.
      *
      * @param otherTable The table to append to this one.
      * @return A table with all the rows from this table and the otherTable.
      */
     public DataTable unionWith(final DataTable otherTable){
-//        this.data.addAll(otherTable.data);
-//        return this;
+        return this.unionWith(otherTable, false);
+    }
 
-        ArrayList<String[]> newData = new ArrayList<>(this.data.size() + otherTable.data.size());
+    /**
+     * The UNION operator, optionally with set semantics. Columns are matched up by name, so the otherTable can have them in any order.
+     * In distinct mode, rows are hashed as they go in and any row that was already added is skipped, so chaining a bunch of unions
+     * doesn't keep piling up copies of the same rows.
+     *
+     * @param otherTable The table to append to this one.
+     * @param distinct   Whether to drop duplicate rows (set semantics) instead of keeping all of them (bag semantics).
+     * @return A table with all the rows from this table and the otherTable.
+     */
+    public DataTable unionWith(final DataTable otherTable, final boolean distinct){
+        int[] otherTableColumnIndices = this.getColumnIndicesAlignedWith(otherTable, "union");
+
+        DataTable thisTableRows = this;
+        DataTable otherTableRows = otherTable;
+        if(distinct){
+            HashSet<List<Object>> rowsAlreadyAdded = new HashSet<>(this.rowCount + otherTable.rowCount);
+            thisTableRows = this.gatherRows(this.getRowsNotIn(rowsAlreadyAdded, getAllColumnIndices(this.columnNames.length)));
+            otherTableRows = otherTable.gatherRows(otherTable.getRowsNotIn(rowsAlreadyAdded, otherTableColumnIndices));
+        }
 
-        newData.addAll(this.data);
-        newData.addAll(otherTable.data);
+        Column[] newColumns = new Column[this.columns.length];
+        for(int j = 0; j < this.columns.length; j++){
+            newColumns[j] = Column.concatenate(thisTableRows.columns[j], otherTableRows.columns[otherTableColumnIndices[j]]);
+        }
 
-        return new DataTable(this.columnNames, newData);
+        return new DataTable(this.columnNames, newColumns, thisTableRows.rowCount + otherTableRows.rowCount);
+    }
+
+    /**
+     * @param rowsAlreadyAdded Keys of the rows seen so far. The keys of the rows that get returned are added to it.
+     * @return The rows whose key (read from the given columns) wasn't already in rowsAlreadyAdded, or earlier in this table.
+     */
+    private int[] getRowsNotIn(final HashSet<List<Object>> rowsAlreadyAdded, final int[] columnIndices){
+        int[] newRows = new int[this.rowCount];
+        int numberOfNewRows = 0;
+        for(int i = 0; i < this.rowCount; i++){
+            if(rowsAlreadyAdded.add(this.getRowKey(i, columnIndices))){
+                newRows[numberOfNewRows++] = i;
+            }
+        }
+
+        return Arrays.copyOf(newRows, numberOfNewRows);
     }
 
     /**
      * Performs the SET DIFFERENCE operator. Basically if any row in this table is equivalent (all field values are equal) to the rows in the otherTable,
      * then they will not be present in the new table after the operation is complete. Only keeps the rows in this table that are not
      * present in the otherTable. This is the best I can explain it, if you don't understand it, boo on you.
+     * Columns are matched up by name, the otherTable is hashed once so this is O(n + m), and every row shows up at most once in the result.
      *
      * @param otherTable The table to subtract from this one.
      * @return A new table with the rows in the otherTable subtracted from this table.
      */
     public DataTable minus(final DataTable otherTable){
+        return this.keepRowsFoundIn(otherTable, false, "subtract");
+    }
+
+    /**
+     * The guts of INTERSECT and MINUS: hashes the otherTable's rows, then keeps each distinct row of this table that is (or isn't) among them.
+     *
+     * @param keepMatches Whether to keep the rows that are in the otherTable (INTERSECT) or the ones that aren't (MINUS).
+     */
+    private DataTable keepRowsFoundIn(final DataTable otherTable, final boolean keepMatches, final String operationName){
+        HashSet<List<Object>> otherTableRows = otherTable.getRowKeySet(this.getColumnIndicesAlignedWith(otherTable, operationName));
+
+        int[] allColumnIndices = getAllColumnIndices(this.columnNames.length);
+        HashSet<List<Object>> rowsAlreadyAdded = new HashSet<>();
+        int[] keptRows = new int[this.rowCount];
+        int numberOfKeptRows = 0;
+
+        for(int i = 0; i < this.rowCount; i++){
+            List<Object> rowKey = this.getRowKey(i, allColumnIndices);
+            if(otherTableRows.contains(rowKey) == keepMatches && rowsAlreadyAdded.add(rowKey)){
+                keptRows[numberOfKeptRows++] = i;
+            }
+        }
+
+        return this.gatherRows(Arrays.copyOf(keptRows, numberOfKeptRows));
+    }
+
+    /**
+     * Figures out where each of this table's columns lives in the otherTable, so that rows of the two can be compared by column name.
+     *
+     * @param operationName What we're trying to do, for the error message (like "subtract").
+     * @return For every column in this table, the index of the column with the same name in the otherTable.
+     */
+    private int[] getColumnIndicesAlignedWith(final DataTable otherTable, final String operationName){
         if(this.columnNames.length != otherTable.columnNames.length){
-            throw new IllegalArgumentException("Cannot subtract tables with different number of columns");
+            throw new IllegalArgumentException("Cannot " + operationName + " tables with different number of columns");
         }
         if(getCommonElementsInArrays(this.columnNames, otherTable.columnNames).length != this.columnNames.length){
-            throw new IllegalArgumentException("Cannot subtract tables if all columns don't match exactly.");
+            throw new IllegalArgumentException("Cannot " + operationName + " tables if all columns don't match exactly.");
         }
 
-        ArrayList<String[]> newData = new ArrayList<>(this.data.size());
+        return getIndicesInArrayOfItemsEquivalentTo(otherTable.columnNames, this.columnNames);
+    }
 
-        for(String[] datum : this.data){
-            if(!this.thereExistsAnEquivalentRowIn(otherTable)){
-                newData.add(datum);
-            }
+    /**
+     * @param columnIndices Which columns to read from each row, in the order they should appear in the keys.
+     * @return Every row of this table as a key, ready for O(1) lookups.
+     */
+    private HashSet<List<Object>> getRowKeySet(final int[] columnIndices){
+        HashSet<List<Object>> rowKeys = new HashSet<>(this.rowCount * 2);
+        for(int i = 0; i < this.rowCount; i++){
+            rowKeys.add(this.getRowKey(i, columnIndices));
         }
 
-        return new DataTable(this.columnNames, newData);
+        return rowKeys;
+    }
+
+    /**
+     * @param columnIndices Which columns to read, in the order they should appear in the key.
+     * @return The values of the row in those columns, packaged so that rows with equal values there are equal (and hash the same),
+     * whatever the types of the columns they came from.
+     */
+    public List<Object> getRowKey(final int row, final int[] columnIndices){
+        Object[] key = new Object[columnIndices.length];
+        for(int j = 0; j < columnIndices.length; j++){
+            key[j] = this.columns[columnIndices[j]].getKey(row);
+        }
+
+        return Arrays.asList(key);
+    }
+
+    private static int[] getAllColumnIndices(final int numberOfColumns){
+        int[] allColumnIndices = new int[numberOfColumns];
+        for(int i = 0; i < numberOfColumns; i++){
+            allColumnIndices[i] = i;
+        }
+
+        return allColumnIndices;
     }
 
     /**
@@ -161,145 +497,529 @@ public class DataTable{
     public DataTable project(final String[] columns){
         int[] columnIndices = getIndicesInArrayOfItemsEquivalentTo(this.columnNames, columns);
 
-        ArrayList<String[]> newData = new ArrayList<>(this.data.size());
-        for(int i = 0; i < this.data.size(); i++){
-            newData.add(new String[columnIndices.length]);
-            for(int j = 0; j < columnIndices.length; j++){
-                newData.get(i)[j] = this.data.get(i)[columnIndices[j]];
-            }
+        Column[] newColumns = new Column[columnIndices.length];
+        for(int j = 0; j < columnIndices.length; j++){
+            newColumns[j] = this.columns[columnIndices[j]]; // Columns never change, so the new table can just share them
         }
 
-        return new DataTable(columns, newData);
+        return new DataTable(columns, newColumns, this.rowCount);
     }
 
     /**
-     * @param whereClause Single condition as String, supporting >, <, and =.
-     * @return A new DataTable with a WHERE clause applied to the current one.
+     * Runs a PROJECT operator, optionally with set semantics. The duplicates are found on the projected columns themselves (which the new
+     * table shares with this one), so only the rows that are kept ever get copied.
+     *
+     * @param distinct Whether to drop the rows that are the same as an earlier row in the projected columns (set semantics) instead of
+     *                 keeping all of them (bag semantics).
      */
-    public DataTable selectWhere(final String whereClause){
-        char numberOfOperators = 0;
-        String operator = "";
-        if(whereClause.contains(GREATER_THAN)){
-            numberOfOperators++;
-            operator = GREATER_THAN;
+    public DataTable project(final String[] columns, final boolean distinct){
+        DataTable projectedTable = this.project(columns);
+        if(!distinct){
+            return projectedTable;
         }
-        if(whereClause.contains(LESS_THAN)){
-            numberOfOperators++;
-            operator = LESS_THAN;
+
+        int[] distinctRows = projectedTable.getDistinctRows();
+        return (distinctRows.length == this.rowCount) ? projectedTable : projectedTable.gatherRows(distinctRows);
+    }
+
+    /**
+     * Each row gets boiled down to a 64-bit fingerprint of its values, and the fingerprints go in a {@link LongIntHashMap}, so two rows only
+     * get compared value by value when their fingerprints match (which, unless they're the same, almost never happens).
+     *
+     * @return The rows that aren't the same as an earlier row in every column, in ascending order.
+     */
+    public int[] getDistinctRows(){
+        long[] fingerprints = new long[this.rowCount];
+        for(Column column : this.columns){
+            for(int i = 0; i < this.rowCount; i++){
+                fingerprints[i] = fingerprints[i] * 0x9E3779B97F4A7C15L + column.getFingerprint(i);
+            }
         }
-        if(whereClause.contains(EQUALS)){
-            numberOfOperators++;
-            operator = EQUALS;
+
+        // The kept rows with the same fingerprint are chained together, newest first, in case two different rows ever do share one
+        LongIntHashMap lastKeptRowWithFingerprint = new LongIntHashMap(this.rowCount);
+        int[] previousKeptRowWithSameFingerprint = new int[this.rowCount];
+        int[] keptRows = new int[this.rowCount];
+        int numberOfKeptRows = 0;
+        for(int i = 0; i < this.rowCount; i++){
+            int firstCandidate = lastKeptRowWithFingerprint.get(fingerprints[i]);
+            boolean isDuplicate = false;
+            for(int candidate = firstCandidate; candidate != LongIntHashMap.NO_VALUE && !isDuplicate; candidate = previousKeptRowWithSameFingerprint[candidate]){
+                isDuplicate = this.areRowsEqual(i, candidate);
+            }
+
+            if(!isDuplicate){
+                previousKeptRowWithSameFingerprint[i] = firstCandidate;
+                lastKeptRowWithFingerprint.put(fingerprints[i], i);
+                keptRows[numberOfKeptRows++] = i;
+            }
         }
 
-        if(numberOfOperators > 1){
-            throw new IllegalArgumentException("This WHERE clause is malformed. More than one operator was detected.");
+        return Arrays.copyOf(keptRows, numberOfKeptRows);
+    }
+
+    private boolean areRowsEqual(final int row1, final int row2){
+        for(Column column : this.columns){
+            if(!Column.areValuesEqual(column, row1, column, row2)){
+                return false;
+            }
         }
-        else if(numberOfOperators < 1){
-            throw new IllegalArgumentException("This WHERE clause has no valid comparison operator. Use '>', '<', or '='.");
+
+        return true;
+    }
+
+    /**
+     * Runs an AGGR operator: puts the rows into groups by their values in the group columns and computes the aggregates over each group
+     * (see {@link HashAggregator}).
+     *
+     * @param groupColumns The columns to group by. With none, the whole table is one group.
+     * @return The group columns followed by a column per aggregate, with a row per group, in the order the groups first show up.
+     */
+    public DataTable aggregate(final String[] groupColumns, final List<HashAggregator.Aggregate> aggregates){
+        return HashAggregator.aggregate(this, groupColumns, aggregates);
+    }
+
+    /**
+     * @param whereClause Comparisons with >, >=, <, <=, =, != or IN, combined with AND, OR and NOT (see {@link SelectionPredicate}).
+     *                    If the right-hand side of a comparison is the name of one of this table's columns, the two columns are compared row by row.
+     * @return A new DataTable with a WHERE clause applied to the current one.
+     */
+    public DataTable selectWhere(final String whereClause){
+        return this.selectWhere(SelectionPredicate.parse(whereClause));
+    }
+
+    /**
+     * @param condition An already-parsed WHERE condition.
+     * @return A new DataTable with a WHERE clause applied to the current one.
+     */
+    public DataTable selectWhere(final SelectionCondition condition){
+        return this.selectWhere(new SelectionPredicate.Comparison(condition));
+    }
+
+    /**
+     * The whole predicate gets checked in one pass over each {@link Morsels morsel} of rows, narrowing a selection vector down as it goes,
+     * and only the rows that make it through get copied. On a big table, the number comparisons run in a loop {@link PredicateCompiler}
+     * compiled just for them, once it's ready.
+     *
+     * @param predicate An already-parsed WHERE clause.
+     * @return A new DataTable with a WHERE clause applied to the current one.
+     */
+    public DataTable selectWhere(final SelectionPredicate predicate){
+        for(String referencedColumn : predicate.getReferencedColumns(this.columnNames)){
+            this.getColumn(referencedColumn); // A column that isn't there fails right away, even if no row would have gotten as far as it
         }
 
-        String columnName = whereClause.substring(0, whereClause.indexOf(operator)).trim();
-        String comparedValue = whereClause.substring(whereClause.indexOf(operator) + 1).trim();
+        Morsels.RowRangeFilter filter = PredicateCompiler.getRowRangeFilter(predicate, this);
+        if(filter == null){
+            filter = (fromRow, toRow) -> predicate.getRowsWhere(this, Column.getRowsBetween(fromRow, toRow));
+        }
 
-        ArrayList<String[]> newData = new ArrayList<>(this.data.size());
+        return this.gatherRows(Morsels.findRows(this.rowCount, filter));
+    }
 
-        int columnIndex = getIndexInArrayOfItemEquivalentTo(this.columnNames, columnName);
-        for(int i = 0; i < this.data.size(); i++){
-            //noinspection SwitchStatementWithoutDefaultBranch
-            switch(operator){
-                case GREATER_THAN:
-                    if(Double.parseDouble(this.data.get(i)[columnIndex]) > Double.parseDouble(comparedValue)){
-                        newData.add(this.data.get(i));
-                    }
-                    break;
-                case LESS_THAN:
-                    if(Double.parseDouble(this.data.get(i)[columnIndex]) < Double.parseDouble(comparedValue)){
-                        newData.add(this.data.get(i));
-                    }
-                    break;
-                case EQUALS:
-                    if(this.data.get(i)[columnIndex].equals(comparedValue)){
-                        newData.add(this.data.get(i));
-                    }
-                    break;
-            }
+    /**
+     * {@link #selectWhere(SelectionPredicate)} on just some of the rows, like the ones a {@link TableIndex} found.
+     *
+     * @param candidateRows Rows in ascending order, which have to include every row the predicate is true for.
+     * @return A new DataTable with a WHERE clause applied to the current one.
+     */
+    public DataTable selectWhere(final SelectionPredicate predicate, final int[] candidateRows){
+        for(String referencedColumn : predicate.getReferencedColumns(this.columnNames)){
+            this.getColumn(referencedColumn);
         }
 
-        return new DataTable(this.columnNames, newData);
+        return this.gatherRows(predicate.getRowsWhere(this, candidateRows));
     }
 
     /**
+     * Inputs whose smaller side has fewer rows than this are always hash joined, since building a hash table that small
+     * is cheaper than checking whether both inputs happen to be sorted already.
+     */
+    public static final int SORT_MERGE_JOIN_MINIMUM_ROWS = 1024;
+
+    /**
+     * Performs a natural join. The join engine picks a strategy based on the input sizes:
+     * if both inputs are big and already sorted on the shared columns, they are merged in a single pass without building anything;
+     * otherwise a hash table is built on the shared columns of the smaller input and probed with the larger one.
+     * Either way this is O(n + m + output) instead of comparing every row with every other row.
+     * Rows come out in the same order the old nested-loop join produced them (this table's rows first, then the otherTable's).
+     *
      * @param otherTable The table to join with.
      * @return A new DataTable that does a full natural join on this table and the otherTable.
      * @throws DataFormatException if weird shit goes down.
      */
     public DataTable joinWith(final DataTable otherTable) throws DataFormatException{
         String[] sharedColumnNames = getCommonElementsInArrays(this.columnNames, otherTable.columnNames);
-        String[] newColumnNames = getCombinedArrayWithoutDuplicates(this.columnNames, otherTable.columnNames);
 
         int[] thisTableSharedColumnIndices = getIndicesInArrayOfItemsEquivalentTo(this.columnNames, sharedColumnNames);
         int[] otherTableSharedColumnIndices = getIndicesInArrayOfItemsEquivalentTo(otherTable.columnNames, sharedColumnNames);
 
-        int maxNumberOfMatchingRows = Math.min(this.data.size(), otherTable.data.size());
-        ArrayList<int[]> listOfMatchingIndices = new ArrayList<>(maxNumberOfMatchingRows);
+        JoinMatches matches = this.getJoinMatches(otherTable, thisTableSharedColumnIndices, otherTableSharedColumnIndices);
+
+        return this.buildNaturalJoinResult(otherTable, matches, sharedColumnNames);
+    }
+
+    /**
+     * Natural join against a hash table that was built ahead of time (on the shared columns), so that one build side can be joined with
+     * many tables, like the batches of a streamed table. The result is the same as {@link #joinWith(DataTable)} on the hash table's table.
+     *
+     * @param otherTableHashTable A hash table on exactly the columns this table shares with the other table.
+     * @return A new DataTable that does a full natural join on this table and the hash table's table.
+     * @throws DataFormatException if weird shit goes down.
+     */
+    public DataTable joinWith(final JoinHashTable otherTableHashTable) throws DataFormatException{
+        DataTable otherTable = otherTableHashTable.getTable();
+        String[] sharedColumnNames = otherTableHashTable.getKeyColumns();
+        if(!new HashSet<>(Arrays.asList(sharedColumnNames)).equals(new HashSet<>(Arrays.asList(getCommonElementsInArrays(this.columnNames, otherTable.columnNames))))){
+            throw new IllegalArgumentException("A natural join has to hash on exactly the shared columns, not " + Arrays.toString(sharedColumnNames) + ".");
+        }
+
+        JoinMatches matches = this.getHashJoinMatches(otherTableHashTable, getIndicesInArrayOfItemsEquivalentTo(this.columnNames, sharedColumnNames));
+
+        return this.buildNaturalJoinResult(otherTable, matches, sharedColumnNames);
+    }
+
+    /**
+     * Natural join where it's this table that has a hash table on the shared columns already (like one of its {@link TableIndex indexes}),
+     * so the otherTable's rows get looked up in it and neither table gets hashed. The result is the same as {@link #joinWith(DataTable)}.
+     *
+     * @param thisTableHashTable A hash table on exactly the columns this table shares with the otherTable.
+     * @throws DataFormatException if weird shit goes down.
+     */
+    public DataTable joinWith(final DataTable otherTable, final JoinHashTable thisTableHashTable) throws DataFormatException{
+        String[] sharedColumnNames = thisTableHashTable.getKeyColumns();
+        if(thisTableHashTable.getTable() != this || !new HashSet<>(Arrays.asList(sharedColumnNames)).equals(new HashSet<>(Arrays.asList(getCommonElementsInArrays(this.columnNames, otherTable.columnNames))))){
+            throw new IllegalArgumentException("A natural join has to use a hash table on exactly this table's shared columns, not " + Arrays.toString(sharedColumnNames) + ".");
+        }
+
+        JoinMatches matches = probe(thisTableHashTable, otherTable, getIndicesInArrayOfItemsEquivalentTo(otherTable.columnNames, sharedColumnNames), false);
+        matches.sort(); // Probing went in the otherTable's order
 
-        for(int i = 0; i < this.data.size(); i++){
-            for(int j = 0; j < otherTable.data.size(); j++){
-                if(areSpecificElementsEqualInArrays(this.data.get(i), thisTableSharedColumnIndices, otherTable.data.get(j), otherTableSharedColumnIndices)){
-                    listOfMatchingIndices.add(new int[]{i, j});
+        return this.buildNaturalJoinResult(otherTable, matches, sharedColumnNames);
+    }
+
+    private DataTable buildNaturalJoinResult(final DataTable otherTable, final JoinMatches matches, final String[] sharedColumnNames) throws DataFormatException{
+        String[] newColumnNames = getCombinedArrayWithoutDuplicates(this.columnNames, otherTable.columnNames);
+        int[] thisTableSharedColumnIndices = getIndicesInArrayOfItemsEquivalentTo(this.columnNames, sharedColumnNames);
+        int[] otherTableSharedColumnIndices = getIndicesInArrayOfItemsEquivalentTo(otherTable.columnNames, sharedColumnNames);
+
+        int[] thisTableRows = matches.getThisTableRows();
+        int[] otherTableRows = matches.getOtherTableRows();
+        for(int k = 0; k < thisTableSharedColumnIndices.length; k++){
+            Column thisColumn = this.columns[thisTableSharedColumnIndices[k]];
+            Column otherColumn = otherTable.columns[otherTableSharedColumnIndices[k]];
+            for(int i = 0; i < thisTableRows.length; i++){
+                if(!Column.areValuesEqual(thisColumn, thisTableRows[i], otherColumn, otherTableRows[i])){
+                    throw new DataFormatException("Developer is an idiot, as fields that were indicated as matching for merging are clearly not matching.");
                 }
             }
         }
 
-        int[][] matchingIndices = listOfMatchingIndices.toArray(new int[0][]);
-        ArrayList<String[]> newData = new ArrayList<>(Math.max(this.data.size(), otherTable.data.size()));
+        // Each output column comes from this table if it has a column by that name, otherwise from the otherTable,
+        // in the order getCombinedArrayWithoutDuplicates laid them out.
+        Column[] sourceColumns = new Column[newColumnNames.length];
+        int[][] rowsOfEachColumn = new int[newColumnNames.length][];
+        for(int j = 0; j < newColumnNames.length; j++){
+            if(containsItemEquivalentTo(this.columnNames, newColumnNames[j])){
+                sourceColumns[j] = this.columns[getIndexInArrayOfItemEquivalentTo(this.columnNames, newColumnNames[j])];
+                rowsOfEachColumn[j] = thisTableRows;
+            }
+            else{
+                sourceColumns[j] = otherTable.columns[getIndexInArrayOfItemEquivalentTo(otherTable.columnNames, newColumnNames[j])];
+                rowsOfEachColumn[j] = otherTableRows;
+            }
+        }
 
-        for(int i = 0; i < matchingIndices.length; i++){
-            newData.add(new String[newColumnNames.length]);
+        return new DataTable(newColumnNames, gatherColumns(sourceColumns, rowsOfEachColumn), thisTableRows.length);
+    }
 
-            int newRowColumnIndex = 0;
-            for(int j = 0; j < this.columnNames.length; j++){ // Add items from first table (except shared columns)
-                if(!containsItemEquivalentTo(thisTableSharedColumnIndices, j)){
-                    newData.get(i)[newRowColumnIndex] = this.data.get(matchingIndices[i][0])[j];
-                    newRowColumnIndex++;
-                }
+    /**
+     * An equi-join keeps every column of both tables (like {@link #crossWith(DataTable)}) but only the combinations of rows where
+     * each of this table's key columns equals the matching key column of the otherTable. It's the same thing as a SELE with column
+     * equalities on top of a cross product, minus building the cross product. Uses the same join engine as {@link #joinWith(DataTable)}.
+     *
+     * @param thisTableKeyColumns  The key columns in this table.
+     * @param otherTableKeyColumns The key columns in the otherTable, in the same order as thisTableKeyColumns.
+     * @return A new DataTable with this table's columns followed by the otherTable's, for every pair of rows with equal keys.
+     */
+    public DataTable equiJoinWith(final DataTable otherTable, final String[] thisTableKeyColumns, final String[] otherTableKeyColumns){
+        int[] thisTableKeyIndices = getIndicesInArrayOfItemsEquivalentTo(this.columnNames, thisTableKeyColumns);
+        int[] otherTableKeyIndices = getIndicesInArrayOfItemsEquivalentTo(otherTable.columnNames, otherTableKeyColumns);
+
+        JoinMatches matches = this.getJoinMatches(otherTable, thisTableKeyIndices, otherTableKeyIndices);
+
+        return this.concatenateColumnsWith(otherTable, matches.getThisTableRows(), matches.getOtherTableRows());
+    }
+
+    /**
+     * Equi-join against a hash table that was built ahead of time on the other table's key columns.
+     * The result is the same as {@link #equiJoinWith(DataTable, String[], String[])} on the hash table's table.
+     *
+     * @param otherTableHashTable A hash table on the other table's key columns.
+     * @param thisTableKeyColumns The key columns in this table, in the same order as the hash table's key columns.
+     * @return A new DataTable with this table's columns followed by the other table's, for every pair of rows with equal keys.
+     */
+    public DataTable equiJoinWith(final JoinHashTable otherTableHashTable, final String[] thisTableKeyColumns){
+        JoinMatches matches = this.getHashJoinMatches(otherTableHashTable, getIndicesInArrayOfItemsEquivalentTo(this.columnNames, thisTableKeyColumns));
+
+        return this.concatenateColumnsWith(otherTableHashTable.getTable(), matches.getThisTableRows(), matches.getOtherTableRows());
+    }
+
+    /**
+     * Equi-join where it's this table that has a hash table on its key columns already (like one of its {@link TableIndex indexes}).
+     * The result is the same as {@link #equiJoinWith(DataTable, String[], String[])} with the hash table's key columns.
+     *
+     * @param otherTableKeyColumns The key columns in the otherTable, in the same order as the hash table's key columns.
+     * @param thisTableHashTable   A hash table on this table's key columns.
+     * @return A new DataTable with this table's columns followed by the otherTable's, for every pair of rows with equal keys.
+     */
+    public DataTable equiJoinWith(final DataTable otherTable, final String[] otherTableKeyColumns, final JoinHashTable thisTableHashTable){
+        if(thisTableHashTable.getTable() != this){
+            throw new IllegalArgumentException("The hash table has to be on this table.");
+        }
+
+        JoinMatches matches = probe(thisTableHashTable, otherTable, getIndicesInArrayOfItemsEquivalentTo(otherTable.columnNames, otherTableKeyColumns), false);
+        matches.sort(); // Probing went in the otherTable's order
+
+        return this.concatenateColumnsWith(otherTable, matches.getThisTableRows(), matches.getOtherTableRows());
+    }
+
+    /**
+     * Pairs of {row in this table, row in the otherTable}, packed two to a long so that a join producing millions of them
+     * doesn't allocate millions of little arrays. Packing this table's row in the high half also means sorting the longs
+     * sorts the pairs by this table's row and then the otherTable's.
+     */
+    private static final class JoinMatches{
+        private long[] pairs;
+        private int    size = 0;
+
+        JoinMatches(final int expectedSize){
+            this.pairs = new long[Math.max(expectedSize, 16)];
+        }
+
+        void add(final int thisTableRow, final int otherTableRow){
+            if(this.size == this.pairs.length){
+                this.pairs = Arrays.copyOf(this.pairs, this.pairs.length * 2);
             }
-            for(int j = 0; j < thisTableSharedColumnIndices.length; j++){ // Add shared items
-                if(!this.data.get(matchingIndices[i][0])[thisTableSharedColumnIndices[j]].equals(otherTable.data.get(matchingIndices[i][1])[otherTableSharedColumnIndices[j]])){
-                    throw new DataFormatException("Developer is an idiot, as fields that were indicated as matching for merging are clearly not matching.");
+
+            this.pairs[this.size++] = ((long) thisTableRow << 32) | otherTableRow;
+        }
+
+        void sort(){
+            Arrays.sort(this.pairs, 0, this.size);
+        }
+
+        /**
+         * @return All the pairs of each of the matches, one after the other.
+         */
+        static JoinMatches concatenate(final List<JoinMatches> matchesOfEachMorsel){
+            if(matchesOfEachMorsel.size() == 1){
+                return matchesOfEachMorsel.get(0);
+            }
+
+            int totalSize = 0;
+            for(JoinMatches matches : matchesOfEachMorsel){
+                totalSize += matches.size;
+            }
+
+            JoinMatches allMatches = new JoinMatches(totalSize);
+            for(JoinMatches matches : matchesOfEachMorsel){
+                System.arraycopy(matches.pairs, 0, allMatches.pairs, allMatches.size, matches.size);
+                allMatches.size += matches.size;
+            }
+
+            return allMatches;
+        }
+
+        int[] getThisTableRows(){
+            int[] rows = new int[this.size];
+            for(int i = 0; i < this.size; i++){
+                rows[i] = (int) (this.pairs[i] >>> 32);
+            }
+
+            return rows;
+        }
+
+        int[] getOtherTableRows(){
+            int[] rows = new int[this.size];
+            for(int i = 0; i < this.size; i++){
+                rows[i] = (int) this.pairs[i];
+            }
+
+            return rows;
+        }
+    }
+
+    /**
+     * The join engine. Picks sort-merge or hash join, then finds every pair of rows whose keys are equal.
+     *
+     * @return Pairs of {row in this table, row in the otherTable} that have equal keys, sorted by this table's row and then the otherTable's.
+     */
+    private JoinMatches getJoinMatches(final DataTable otherTable, final int[] thisTableKeyIndices, final int[] otherTableKeyIndices){
+        if(this.shouldSortMergeJoinWith(otherTable, thisTableKeyIndices, otherTableKeyIndices)){
+            return this.getSortMergeJoinMatches(otherTable, thisTableKeyIndices, otherTableKeyIndices);
+        }
+        else{
+            return this.getHashJoinMatches(otherTable, thisTableKeyIndices, otherTableKeyIndices);
+        }
+    }
+
+    /**
+     * Sort-merge only pays off when there is a lot of data (so a hash table would actually cost something) and both sides are already in order.
+     * Checking the order is a single pass that stops at the first row that is out of place, so unsorted inputs bail out quickly.
+     */
+    private boolean shouldSortMergeJoinWith(final DataTable otherTable, final int[] thisTableKeyIndices, final int[] otherTableKeyIndices){
+        if(Math.min(this.rowCount, otherTable.rowCount) < SORT_MERGE_JOIN_MINIMUM_ROWS){
+            return false;
+        }
+
+        return this.isSortedBy(thisTableKeyIndices) && otherTable.isSortedBy(otherTableKeyIndices);
+    }
+
+    /**
+     * @param columnIndices The columns to check, most significant first.
+     * @return Whether every row is less than or equal to the one after it, comparing the given columns with {@link Column#compareKeys(Object, Object)}.
+     */
+    public boolean isSortedBy(final int[] columnIndices){
+        for(int i = 1; i < this.rowCount; i++){
+            if(compareRows(this, i - 1, columnIndices, this, i, columnIndices) > 0){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Builds a hash table on the key columns of whichever table is smaller, then streams the bigger one past it.
+     *
+     * @return Pairs of {row in this table, row in the otherTable} that have equal keys, sorted by this table's row and then the otherTable's.
+     */
+    private JoinMatches getHashJoinMatches(final DataTable otherTable, final int[] thisTableKeyIndices, final int[] otherTableKeyIndices){
+        if(this.rowCount >= otherTable.rowCount){
+            return this.getHashJoinMatches(new JoinHashTable(otherTable, otherTableKeyIndices), thisTableKeyIndices);
+        }
+
+        JoinHashTable thisTableHashTable = new JoinHashTable(this, thisTableKeyIndices);
+        JoinMatches matches = probe(thisTableHashTable, otherTable, otherTableKeyIndices, false);
+
+        // Probing went in the otherTable's order, so put it back in this table's order
+        matches.sort();
+
+        return matches;
+    }
+
+    /**
+     * Probes an already built hash table with every row of this table, in order.
+     *
+     * @return Pairs of {row in this table, row in the hash table's table} that have equal keys, sorted by this table's row and then the other one's.
+     */
+    private JoinMatches getHashJoinMatches(final JoinHashTable otherTableHashTable, final int[] thisTableKeyIndices){
+        return probe(otherTableHashTable, this, thisTableKeyIndices, true);
+    }
+
+    /**
+     * Looks up every row of the probe table in the hash table, a morsel at a time on all the workers, and glues the morsels' matches
+     * back together in the probe table's order.
+     *
+     * @param isProbeTableThisTable Whether the probe table's rows go first in each pair (as "this table") or second.
+     */
+    private static JoinMatches probe(final JoinHashTable hashTable, final DataTable probeTable, final int[] probeKeyIndices, final boolean isProbeTableThisTable){
+        return JoinMatches.concatenate(Morsels.map(Morsels.getNumberOfMorsels(probeTable.rowCount), morsel -> {
+            int fromRow = morsel * Morsels.MORSEL_SIZE;
+            int toRow = Math.min(probeTable.rowCount, fromRow + Morsels.MORSEL_SIZE);
+
+            JoinMatches matches = new JoinMatches(toRow - fromRow);
+            for(int i = fromRow; i < toRow; i++){
+                for(int j = hashTable.getFirstMatchingRow(probeTable, i, probeKeyIndices); j != -1; j = hashTable.getNextMatchingRow(j)){
+                    if(isProbeTableThisTable){
+                        matches.add(i, j);
+                    }
+                    else{
+                        matches.add(j, i);
+                    }
                 }
+            }
+
+            return matches;
+        }));
+    }
 
-                newData.get(i)[newRowColumnIndex] = this.data.get(matchingIndices[i][0])[thisTableSharedColumnIndices[j]];
-                newRowColumnIndex++;
+    /**
+     * Walks both (already sorted) tables at once. Whenever the keys line up, the whole run of equal keys on each side is paired off.
+     *
+     * @return Pairs of {row in this table, row in the otherTable} that have equal keys, sorted by this table's row and then the otherTable's.
+     */
+    private JoinMatches getSortMergeJoinMatches(final DataTable otherTable, final int[] thisTableKeyIndices, final int[] otherTableKeyIndices){
+        JoinMatches matches = new JoinMatches(Math.max(this.rowCount, otherTable.rowCount));
+
+        int i = 0;
+        int j = 0;
+        while(i < this.rowCount && j < otherTable.rowCount){
+            int comparison = compareRows(this, i, thisTableKeyIndices, otherTable, j, otherTableKeyIndices);
+            if(comparison < 0){
+                i++;
             }
+            else if(comparison > 0){
+                j++;
+            }
+            else{
+                int endOfOtherRun = j + 1;
+                while(endOfOtherRun < otherTable.rowCount && compareRows(otherTable, j, otherTableKeyIndices, otherTable, endOfOtherRun, otherTableKeyIndices) == 0){
+                    endOfOtherRun++;
+                }
 
-            for(int j = 0; j < otherTable.columnNames.length; j++){ // Add third table unique items
-                if(!containsItemEquivalentTo(otherTableSharedColumnIndices, j)){
-                    newData.get(i)[newRowColumnIndex] = otherTable.data.get(matchingIndices[i][1])[j];
-                    newRowColumnIndex++;
+                int startOfThisRun = i;
+                while(i < this.rowCount && compareRows(this, startOfThisRun, thisTableKeyIndices, this, i, thisTableKeyIndices) == 0){
+                    for(int u = j; u < endOfOtherRun; u++){
+                        matches.add(i, u);
+                    }
+                    i++;
                 }
+
+                j = endOfOtherRun;
             }
+        }
 
-            if(newRowColumnIndex != (newColumnNames.length)){
-                throw new DataFormatException("We obviously added the wrong number of fields to this row. We done goofed.");
+        return matches;
+    }
+
+    /**
+     * Compares two rows by the given columns only, in order, with {@link Column#compareKeys(Object, Object)}.
+     * Two whole-number columns are compared directly, without boxing anything.
+     */
+    private static int compareRows(final DataTable table1, final int row1, final int[] table1ColumnIndices, final DataTable table2, final int row2, final int[] table2ColumnIndices){
+        for(int k = 0; k < table1ColumnIndices.length; k++){
+            Column column1 = table1.columns[table1ColumnIndices[k]];
+            Column column2 = table2.columns[table2ColumnIndices[k]];
+
+            int comparison = (column1.isIntegral() && column2.isIntegral()) ? Long.compare(column1.getLong(row1), column2.getLong(row2))
+                                                                             : Column.compareKeys(column1.getKey(row1), column2.getKey(row2));
+            if(comparison != 0){
+                return comparison;
             }
         }
 
-        return new DataTable(newColumnNames, newData);
+        return 0;
     }
 
-    public boolean thereExistsAnEquivalentRowIn(final DataTable otherTable){
-        for(int i = 0; i < otherTable.data.size(); i++){
-            boolean isRowEquivalent = true;
-            for(int j = 0; j < this.columnNames.length; j++){
-                if(!this.data.get(i)[j].equals(otherTable.data.get(i)[j])){
-                    isRowEquivalent = false;
-                    break;
-                }
+    /**
+     * Checks a single row against the otherTable, matching columns by name. This scans the otherTable, so for more than a handful
+     * of rows use {@link #minus(DataTable)} or {@link #intersectWith(DataTable)}, which hash the otherTable once instead.
+     *
+     * @param row A row laid out like this table's columns.
+     * @return Whether the otherTable has a row with all the same field values.
+     */
+    public boolean thereExistsAnEquivalentRowIn(final String[] row, final DataTable otherTable){
+        int[] otherTableColumnIndices = this.getColumnIndicesAlignedWith(otherTable, "compare");
+
+        for(int i = 0; i < otherTable.rowCount; i++){
+            boolean isEquivalent = true;
+            for(int j = 0; j < otherTableColumnIndices.length && isEquivalent; j++){
+                isEquivalent = row[j].equals(otherTable.columns[otherTableColumnIndices[j]].getString(i));
             }
 
-            if(isRowEquivalent){
+            if(isEquivalent){
                 return true;
             }
         }
@@ -322,6 +1042,33 @@ public class DataTable{
         return true;
     }
 
+    /**
+     * Compares two rows by the given columns only, in order, like {@link String#compareTo(String)} would for the whole key.
+     */
+    public static int compareSpecificElementsInArrays(final String[] array1, final int[] array1Indices, final String[] array2, final int[] array2Indices){
+        if(array1Indices.length != array2Indices.length){
+            throw new IllegalArgumentException("array1Indices and array2Indices must be the same length arrays.");
+        }
+
+        for(int i = 0; i < array1Indices.length; i++){
+            int comparison = array1[array1Indices[i]].compareTo(array2[array2Indices[i]]);
+            if(comparison != 0){
+                return comparison;
+            }
+        }
+
+        return 0;
+    }
+
+    public static String[] getItemsAtIndices(final String[] array, final int[] indices){
+        String[] items = new String[indices.length];
+        for(int i = 0; i < indices.length; i++){
+            items[i] = array[indices[i]];
+        }
+
+        return items;
+    }
+
     public static int[] getIndicesInArrayOfItemsEquivalentTo(final String[] array, final String[] itemsToFind){
         int[] columnIndices = new int[itemsToFind.length];
         for(int i = 0; i < itemsToFind.length; i++){
@@ -400,88 +1147,49 @@ public class DataTable{
         return false;
     }
 
+    /**
+     * Writes the whole table to the sink, as a single batch.
+     *
+     * @return How many rows were written.
+     */
+    public long writeTo(final ResultSink sink) throws IOException{
+        sink.start(this.columnNames);
+        sink.write(this);
+        return sink.finish();
+    }
+
+    /**
+     * @return The table lined up in columns, as written by a {@link TextResultSink}. Write it to one directly instead for big tables.
+     */
     @Override
     public String toString(){
-        int[] longestWordInColumn = new int[this.columnNames.length];
-
-        for(int i = 0; i < this.columnNames.length; i++){
-            if(i != (this.columnNames.length - 1)){
-                if(this.columnNames[i].length() > longestWordInColumn[i]){
-                    longestWordInColumn[i] = this.columnNames[i].length();
-                }
-            }
+        StringWriter writer = new StringWriter();
+        try{
+            this.writeTo(new TextResultSink(writer));
         }
-
-        for(String[] datum : this.data){
-            for(int j = 0; j < this.columnNames.length; j++){
-                if(j != (this.columnNames.length - 1)){
-                    if(datum[j].length() > longestWordInColumn[j]){
-                        longestWordInColumn[j] = datum[j].length();
-                    }
-                }
-            }
-        }
-
-
-        String resultingString = "";
-
-        for(int i = 0; i < this.columnNames.length; i++){
-            resultingString += this.columnNames[i] + repeatedString(" ", longestWordInColumn[i] - this.columnNames[i].length());
-            if(i != (this.columnNames.length - 1)){
-                resultingString += "\t";
-            }
-        }
-
-        for(String[] datum : this.data){
-            resultingString += System.lineSeparator();
-            for(int j = 0; j < this.columnNames.length; j++){
-                if(datum[j] == null){
-                    continue;
-                }
-
-                resultingString += datum[j] + repeatedString(" ", longestWordInColumn[j] - datum[j].length());
-                if(j != (this.columnNames.length - 1)){
-                    resultingString += "\t";
-                }
-            }
+        catch(IOException exception){
+            throw new UncheckedIOException(exception); // Can't happen with a StringWriter
         }
 
-        return resultingString;
+        return writer.toString();
     }
 
+    /**
+     * @return The table as comma separated values, as written by a {@link CsvResultSink}. Write it to one directly instead for big tables.
+     */
     public String toCSV(){
-        String resultingString = "";
-
-        for(int i = 0; i < this.columnNames.length; i++){
-            resultingString += this.columnNames[i];
-            if(i != (this.columnNames.length - 1)){
-                resultingString += ",";
-            }
+        StringWriter writer = new StringWriter();
+        try{
+            this.writeTo(new CsvResultSink(writer));
         }
-
-        for(String[] datum : this.data){
-            resultingString += System.lineSeparator();
-            for(int j = 0; j < this.columnNames.length; j++){
-                if(datum[j] == null){
-                    continue;
-                }
-
-                resultingString += datum[j];
-                if(j != (this.columnNames.length - 1)){
-                    resultingString += ",";
-                }
-            }
+        catch(IOException exception){
+            throw new UncheckedIOException(exception); // Can't happen with a StringWriter
         }
 
-        return resultingString;
+        return writer.toString();
     }
 
     public static String repeatedString(String stringToAdd, int numberOfTimes){
-        String theString = "";
-        for(int i = 0; i < numberOfTimes; i++){
-            theString += stringToAdd;
-        }
-
-        return theString;
+        return stringToAdd.repeat(Math.max(0, numberOfTimes));
     }
 }
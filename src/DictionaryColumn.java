@@ -0,0 +1,241 @@
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A text column stored as int codes into a {@link ColumnDictionary}. Nothing gets turned back into text until something asks for it
+ * with {@link #getString(int)}, which in practice means when the result gets printed.
+ * <p>
+ * Conditions are checked once per distinct value instead of once per row: the dictionary entries that satisfy the condition are worked out
+ * first, and then it's just a loop over the codes.
+ */
+public final class DictionaryColumn extends Column{
+    /**
+     * A text column only gets encoded if each value shows up at least this many times on average. Otherwise the dictionary is about as big
+     * as the column and there's nothing to gain.
+     */
+    public static final int MINIMUM_ROWS_PER_DISTINCT_VALUE = 2;
+
+    private final ColumnDictionary dictionary;
+    private final int[]            codes;
+    private final String[]         dictionaryValues;
+    private final Object[]         dictionaryKeys;
+
+    /**
+     * @param codes Codes from the dictionary. The array is kept, not copied, so don't change it afterwards.
+     */
+    public DictionaryColumn(final ColumnDictionary dictionary, final int[] codes){
+        this.dictionary = dictionary;
+        this.codes = codes;
+        this.dictionaryValues = dictionary.getValues();
+        this.dictionaryKeys = dictionary.getKeys();
+    }
+
+    /**
+     * Encodes a text column with the shared dictionary for its column name, if it has few enough distinct values to be worth it
+     * (or if every one of its values is in the dictionary already, since then encoding it costs nothing and lets it be compared by code
+     * with the other columns that have that name).
+     *
+     * @return The encoded column, or the same column if it isn't worth encoding.
+     */
+    public static Column encodeIfWorthIt(final String columnName, final Column column){
+        if(column.getType() != Type.STRING || column instanceof DictionaryColumn || column.size() == 0){
+            return column;
+        }
+
+        String[] values = new String[column.size()];
+        HashSet<String> distinctValues = new HashSet<>();
+        for(int i = 0; i < values.length; i++){
+            values[i] = column.getString(i);
+            if(values[i] == null){
+                return column; // A row that was too short for this column
+            }
+            distinctValues.add(values[i]);
+        }
+
+        ColumnDictionary dictionary = ColumnDictionary.getShared(columnName);
+        if((long) distinctValues.size() * MINIMUM_ROWS_PER_DISTINCT_VALUE > values.length && !isEveryValueIn(distinctValues, dictionary)){
+            return column;
+        }
+
+        int[] codes = dictionary.encode(values);
+        return (codes == null) ? column : new DictionaryColumn(dictionary, codes);
+    }
+
+    private static boolean isEveryValueIn(final Iterable<String> values, final ColumnDictionary dictionary){
+        for(String value : values){
+            if(dictionary.getCode(value) == ColumnDictionary.NO_CODE){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public ColumnDictionary getDictionary(){
+        return this.dictionary;
+    }
+
+    public int getCode(final int row){
+        return this.codes[row];
+    }
+
+    /**
+     * @return Whether the two columns' codes mean the same thing, so they can be compared directly.
+     */
+    public boolean sharesDictionaryWith(final Column otherColumn){
+        return otherColumn instanceof DictionaryColumn otherDictionaryColumn && otherDictionaryColumn.dictionary == this.dictionary;
+    }
+
+    @Override
+    public Type getType(){
+        return Type.STRING;
+    }
+
+    @Override
+    public int size(){
+        return this.codes.length;
+    }
+
+    /**
+     * Just the codes: the dictionary is shared with every other column of the same name, so it isn't this column's to count.
+     */
+    @Override
+    public long getMemoryUsage(){
+        return (long) this.codes.length * Integer.BYTES;
+    }
+
+    @Override
+    public String getString(final int row){
+        return this.dictionaryValues[this.codes[row]];
+    }
+
+    @Override
+    public Object getKey(final int row){
+        return this.dictionaryKeys[this.codes[row]];
+    }
+
+    @Override
+    public double getDouble(final int row){
+        return Double.parseDouble(this.getString(row));
+    }
+
+    @Override
+    public Column gather(final int[] rows){
+        int[] newCodes = new int[rows.length];
+        for(int i = 0; i < rows.length; i++){
+            newCodes[i] = this.codes[rows[i]];
+        }
+
+        return new DictionaryColumn(this.dictionary, newCodes);
+    }
+
+    /**
+     * Glues columns together code by code, without looking at any of the text.
+     *
+     * @return A column with the rows of each column in turn, or null if they aren't all dictionary columns with the same dictionary.
+     */
+    public static DictionaryColumn concatenate(final List<Column> columns){
+        if(columns.isEmpty() || !(columns.get(0) instanceof DictionaryColumn firstColumn)){
+            return null;
+        }
+
+        int totalSize = 0;
+        for(Column column : columns){
+            if(!firstColumn.sharesDictionaryWith(column)){
+                return null;
+            }
+            totalSize += column.size();
+        }
+
+        int[] newCodes = new int[totalSize];
+        int offset = 0;
+        for(Column column : columns){
+            int[] codes = ((DictionaryColumn) column).codes;
+            System.arraycopy(codes, 0, newCodes, offset, codes.length);
+            offset += codes.length;
+        }
+
+        return new DictionaryColumn(firstColumn.dictionary, newCodes);
+    }
+
+    @Override
+    protected int[] getRowsWhereCompared(final String operator, final String comparedValue, final int[] rows){
+        int[] selectedRows = new int[rows.length];
+        int numberOfSelectedRows = 0;
+
+        if(operator.equals(DataTable.EQUALS)){
+            int comparedCode = this.dictionary.getCode(comparedValue);
+            if(comparedCode == ColumnDictionary.NO_CODE){
+                return new int[0]; // No column has that value at all
+            }
+
+            for(int row : rows){
+                if(this.codes[row] == comparedCode){
+                    selectedRows[numberOfSelectedRows++] = row;
+                }
+            }
+
+            return trim(selectedRows, numberOfSelectedRows);
+        }
+
+        // Decide each distinct value once. A value that isn't a number only blows up if some row actually has it, like it would without a dictionary.
+        boolean[] isCodeSelected = new boolean[this.dictionaryValues.length];
+        boolean[] isCodeANumber = new boolean[this.dictionaryValues.length];
+        boolean[] isCodeUsed = new boolean[this.dictionaryValues.length];
+        double comparedNumber = parseComparedNumber(comparedValue, rows);
+        for(int row : rows){
+            int code = this.codes[row];
+            if(isCodeUsed[code]){
+                continue;
+            }
+            isCodeUsed[code] = true;
+
+            try{
+                double value = Double.parseDouble(this.dictionaryValues[code]);
+                isCodeANumber[code] = true;
+                isCodeSelected[code] = switch(operator){
+                    case DataTable.GREATER_THAN -> value > comparedNumber;
+                    case DataTable.GREATER_THAN_OR_EQUAL -> value >= comparedNumber;
+                    case DataTable.LESS_THAN -> value < comparedNumber;
+                    case DataTable.LESS_THAN_OR_EQUAL -> value <= comparedNumber;
+                    default -> throw new IllegalArgumentException("Unknown comparison operator " + operator + ".");
+                };
+            }
+            catch(NumberFormatException exception){
+                isCodeANumber[code] = false;
+            }
+        }
+
+        for(int row : rows){
+            if(!isCodeANumber[this.codes[row]]){
+                Double.parseDouble(this.dictionaryValues[this.codes[row]]); // Throws the same exception as comparing it row by row would
+            }
+            if(isCodeSelected[this.codes[row]]){
+                selectedRows[numberOfSelectedRows++] = row;
+            }
+        }
+
+        return trim(selectedRows, numberOfSelectedRows);
+    }
+
+    @Override
+    protected int[] getRowsWhereIn(final List<String> comparedValues, final int[] rows){
+        boolean[] isCodeSelected = new boolean[this.dictionaryValues.length];
+        for(String comparedValue : comparedValues){
+            int comparedCode = this.dictionary.getCode(comparedValue);
+            if(comparedCode != ColumnDictionary.NO_CODE && comparedCode < isCodeSelected.length){
+                isCodeSelected[comparedCode] = true;
+            }
+        }
+
+        int[] selectedRows = new int[rows.length];
+        int numberOfSelectedRows = 0;
+        for(int row : rows){
+            if(isCodeSelected[this.codes[row]]){
+                selectedRows[numberOfSelectedRows++] = row;
+            }
+        }
+
+        return trim(selectedRows, numberOfSelectedRows);
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.BitSet;
+
+/**
+ * A column of numbers that aren't all whole. Whole numbers that were written without a decimal point ("80" next to "88.5")
+ * are marked, so they still print back without one.
+ */
+public final class DoubleColumn extends Column{
+    private final double[] values;
+    private final BitSet   writtenAsWholeNumbers;
+
+    /**
+     * @param values                The values. The array is kept, not copied, so don't change it afterwards.
+     * @param writtenAsWholeNumbers Which rows hold a whole number written without a decimal point, or null if none do.
+     */
+    public DoubleColumn(final double[] values, final BitSet writtenAsWholeNumbers){
+        this.values = values;
+        this.writtenAsWholeNumbers = (writtenAsWholeNumbers == null || writtenAsWholeNumbers.isEmpty()) ? null : writtenAsWholeNumbers;
+    }
+
+    /**
+     * @return The values themselves, for the loops {@link PredicateCompiler} generates. Don't change them.
+     */
+    double[] getValues(){
+        return this.values;
+    }
+
+    @Override
+    public Type getType(){
+        return Type.DOUBLE;
+    }
+
+    @Override
+    public int size(){
+        return this.values.length;
+    }
+
+    @Override
+    public long getMemoryUsage(){
+        return (long) this.values.length * Double.BYTES + ((this.writtenAsWholeNumbers == null) ? 0 : this.writtenAsWholeNumbers.size() / Byte.SIZE);
+    }
+
+    @Override
+    public double getDouble(final int row){
+        return this.values[row];
+    }
+
+    public boolean isWrittenAsWholeNumber(final int row){
+        return this.writtenAsWholeNumbers != null && this.writtenAsWholeNumbers.get(row);
+    }
+
+    @Override
+    public String getString(final int row){
+        return this.isWrittenAsWholeNumber(row) ? Long.toString((long) this.values[row]) : Double.toString(this.values[row]);
+    }
+
+    @Override
+    public Object getKey(final int row){
+        return this.isWrittenAsWholeNumber(row) ? (Object) (long) this.values[row] : (Object) this.values[row];
+    }
+
+    @Override
+    public long getFingerprint(final int row){
+        return this.isWrittenAsWholeNumber(row) ? mix((long) this.values[row]) : mix(Double.doubleToLongBits(this.values[row]));
+    }
+
+    @Override
+    public Column gather(final int[] rows){
+        double[] newValues = new double[rows.length];
+        BitSet newWrittenAsWholeNumbers = (this.writtenAsWholeNumbers == null) ? null : new BitSet(rows.length);
+        for(int i = 0; i < rows.length; i++){
+            newValues[i] = this.values[rows[i]];
+            if(newWrittenAsWholeNumbers != null && this.writtenAsWholeNumbers.get(rows[i])){
+                newWrittenAsWholeNumbers.set(i);
+            }
+        }
+
+        return new DoubleColumn(newValues, newWrittenAsWholeNumbers);
+    }
+
+    @Override
+    protected int[] getRowsWhereCompared(final String operator, final String comparedValue, final int[] rows){
+        int[] selectedRows = new int[rows.length];
+        int numberOfSelectedRows = 0;
+
+        switch(operator){
+            case DataTable.GREATER_THAN -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(this.values[row] > comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.GREATER_THAN_OR_EQUAL -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(this.values[row] >= comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.LESS_THAN -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(this.values[row] < comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.LESS_THAN_OR_EQUAL -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(this.values[row] <= comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.EQUALS -> {
+                // Equal texts, not just equal numbers: "80" and "80.0" are different values.
+                Object comparedKey = getKeyOfText(comparedValue);
+                if(comparedKey instanceof Long comparedLong){
+                    for(int row : rows){
+                        if(this.values[row] == comparedLong && this.isWrittenAsWholeNumber(row)){
+                            selectedRows[numberOfSelectedRows++] = row;
+                        }
+                    }
+                }
+                else if(comparedKey instanceof Double comparedDouble){
+                    long comparedBits = Double.doubleToLongBits(comparedDouble);
+                    for(int row : rows){
+                        if(Double.doubleToLongBits(this.values[row]) == comparedBits && !this.isWrittenAsWholeNumber(row)){
+                            selectedRows[numberOfSelectedRows++] = row;
+                        }
+                    }
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown comparison operator " + operator + ".");
+        }
+
+        return trim(selectedRows, numberOfSelectedRows);
+    }
+}
@@ -0,0 +1,689 @@
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The engine behind AGGR: puts rows into groups by the values of some columns and keeps a running COUNT, SUM, AVG, MIN or MAX for each group.
+ * <p>
+ * Each group gets a number the first time one of its rows shows up, and every aggregate keeps its running values in flat arrays of longs and
+ * doubles indexed by that number, so adding a row never allocates anything. Finding a row's group works like the build side of a
+ * {@link JoinHashTable}: a single whole-number key goes through a {@link LongIntHashMap}, a single dictionary-encoded key only gets hashed
+ * once per distinct code in each batch, and anything else is hashed on the columns' {@link Column#getKey(int) keys}.
+ * <p>
+ * Rows can be added a batch at a time (that's how {@link StreamingExecutor} uses it), and two aggregators over different rows can be merged,
+ * which is how {@link #aggregate(DataTable, String[], List)} runs in parallel: every morsel gets its own aggregator, and they're merged in
+ * morsel order at the end. Either way, the groups come out in the order their first rows came in.
+ */
+public final class HashAggregator{
+    public enum Function{
+        COUNT, SUM, AVG, MIN, MAX
+    }
+
+    /**
+     * What goes in the parentheses of COUNT(*), which counts rows instead of values.
+     */
+    public static final String ALL_ROWS = "*";
+
+    private static final Pattern AGGREGATE_PATTERN = Pattern.compile("\\s*(\\w+)\\s*\\(\\s*([^()]*?)\\s*\\)(?:\\s+(?i:AS)\\s+(.+?))?\\s*");
+
+    /**
+     * Like {@link JoinHashTable}, a batch only gets an array indexed by dictionary code if the dictionary isn't wildly bigger than the batch.
+     */
+    private static final int MAXIMUM_CODES_PER_ROW = 4;
+
+    /**
+     * One of the aggregates an AGGR computes, like SUM(Payment) AS Total.
+     *
+     * @param columnName What it's computed over, or {@link #ALL_ROWS} for COUNT(*).
+     * @param outputName The name of the column it comes out in.
+     */
+    public record Aggregate(Function function, String columnName, String outputName){
+        public Aggregate{
+            if(columnName.equals(ALL_ROWS) && function != Function.COUNT){
+                throw new IllegalArgumentException("Only COUNT can go over " + ALL_ROWS + ", not " + function + ".");
+            }
+        }
+
+        /**
+         * An aggregate whose column is named after it, like SUM_Payment for SUM(Payment) or COUNT for COUNT(*).
+         */
+        public Aggregate(final Function function, final String columnName){
+            this(function, columnName, getDefaultOutputName(function, columnName));
+        }
+
+        public static String getDefaultOutputName(final Function function, final String columnName){
+            return columnName.equals(ALL_ROWS) ? function.name() : function + "_" + columnName;
+        }
+
+        /**
+         * @param text Like "SUM(Payment)", "count(*)" or "AVG(Payment) AS Average".
+         */
+        public static Aggregate parse(final String text){
+            Matcher matcher = AGGREGATE_PATTERN.matcher(text);
+            if(!matcher.matches() || matcher.group(2).isEmpty()){
+                throw new IllegalArgumentException("\"" + text.trim() + "\" isn't an aggregate. They look like SUM(Payment), COUNT(*) or AVG(Payment) AS Average.");
+            }
+
+            Function function;
+            try{
+                function = Function.valueOf(matcher.group(1).toUpperCase(Locale.ROOT));
+            }
+            catch(IllegalArgumentException exception){
+                throw new IllegalArgumentException("There's no aggregate called " + matcher.group(1) + ". Use one of " + Arrays.toString(Function.values()) + ".");
+            }
+
+            return (matcher.group(3) == null) ? new Aggregate(function, matcher.group(2)) : new Aggregate(function, matcher.group(2), matcher.group(3));
+        }
+
+        public boolean isOverAllRows(){
+            return this.columnName.equals(ALL_ROWS);
+        }
+
+        @Override
+        public String toString(){
+            String call = this.function + "(" + this.columnName + ")";
+            return this.outputName.equals(getDefaultOutputName(this.function, this.columnName)) ? call : call + " AS " + this.outputName;
+        }
+    }
+
+    private final String[]                 groupColumns;
+    private final List<Aggregate>          aggregates;
+    private final int[]                    groupColumnIndices;
+    private final ColumnBuilder[]          groupKeyBuilders;
+    private final Accumulator[]            accumulators;
+    private final LongIntHashMap           groupOfWholeNumber = new LongIntHashMap(16);
+    private final HashMap<Object, Integer> groupOfKey         = new HashMap<>();
+    private       int                      numberOfGroups     = 0;
+    private       int                      groupCapacity      = 16;
+
+    /**
+     * @param inputColumnNames The columns of the rows that will be added.
+     * @param groupColumns     The columns whose values make up a group. With none, every row is in the one group.
+     * @throws NoSuchElementException if one of the columns isn't in the input.
+     */
+    public HashAggregator(final String[] inputColumnNames, final String[] groupColumns, final List<Aggregate> aggregates){
+        this.groupColumns = groupColumns.clone();
+        this.aggregates = List.copyOf(aggregates);
+        this.groupColumnIndices = DataTable.getIndicesInArrayOfItemsEquivalentTo(inputColumnNames, groupColumns);
+
+        this.groupKeyBuilders = new ColumnBuilder[groupColumns.length];
+        for(int j = 0; j < groupColumns.length; j++){
+            this.groupKeyBuilders[j] = new ColumnBuilder(this.groupCapacity);
+        }
+
+        this.accumulators = new Accumulator[this.aggregates.size()];
+        for(int a = 0; a < this.accumulators.length; a++){
+            Aggregate aggregate = this.aggregates.get(a);
+            int columnIndex = aggregate.isOverAllRows() ? -1 : DataTable.getIndexInArrayOfItemEquivalentTo(inputColumnNames, aggregate.columnName());
+            this.accumulators[a] = switch(aggregate.function()){
+                case COUNT -> new CountAccumulator(columnIndex, this.groupCapacity);
+                case SUM, AVG -> new SumAccumulator(aggregate, columnIndex, this.groupCapacity);
+                case MIN, MAX -> new ExtremeAccumulator(aggregate, columnIndex, this.groupCapacity);
+            };
+        }
+    }
+
+    /**
+     * Groups the whole table in parallel, each morsel on its own, and merges the morsels' groups back together in order.
+     *
+     * @return The group columns followed by one column per aggregate, with a row per group in the order the groups first show up.
+     *         Without group columns, that's always exactly one row (even if the table is empty).
+     */
+    public static DataTable aggregate(final DataTable table, final String[] groupColumns, final List<Aggregate> aggregates){
+        int rowCount = table.getRowCount();
+        List<HashAggregator> partialAggregators = Morsels.map(Morsels.getNumberOfMorsels(rowCount), morsel -> {
+            int fromRow = morsel * Morsels.MORSEL_SIZE;
+            int toRow = Math.min(rowCount, fromRow + Morsels.MORSEL_SIZE);
+
+            HashAggregator partialAggregator = new HashAggregator(table.getColumnNames(), groupColumns, aggregates);
+            partialAggregator.add(table, fromRow, toRow, true);
+            return partialAggregator;
+        });
+
+        HashAggregator aggregator = partialAggregators.get(0);
+        for(int i = 1; i < partialAggregators.size(); i++){
+            aggregator.addAll(partialAggregators.get(i));
+        }
+
+        return aggregator.getResult();
+    }
+
+    /**
+     * @return The names of the result's columns: the group columns and then the aggregates.
+     */
+    public String[] getColumnNames(){
+        String[] columnNames = Arrays.copyOf(this.groupColumns, this.groupColumns.length + this.aggregates.size());
+        for(int a = 0; a < this.aggregates.size(); a++){
+            columnNames[this.groupColumns.length + a] = this.aggregates.get(a).outputName();
+        }
+
+        return columnNames;
+    }
+
+    public int getNumberOfGroups(){
+        return this.numberOfGroups;
+    }
+
+    /**
+     * @return Roughly how many bytes the groups take up, keys and running values and hash table entries included.
+     */
+    public long getMemoryUsage(){
+        long bytesPerGroup = MemoryBudget.HASHED_ROW_OVERHEAD + (long) Long.BYTES * this.groupColumns.length;
+        for(Accumulator accumulator : this.accumulators){
+            bytesPerGroup += accumulator.getBytesPerGroup();
+        }
+
+        return bytesPerGroup * this.numberOfGroups;
+    }
+
+    /**
+     * Adds every row of a batch, making new groups as needed.
+     */
+    public void add(final DataTable batch){
+        this.add(batch, 0, batch.getRowCount(), true);
+    }
+
+    /**
+     * Adds the rows from fromRow (inclusive) to toRow (exclusive) of a batch.
+     *
+     * @param isAddingGroups Whether rows that aren't in any of the groups so far start new groups. If not, they get left out.
+     * @return The rows that were left out, in ascending order. Always empty if isAddingGroups is true.
+     */
+    public int[] add(final DataTable batch, final int fromRow, final int toRow, final boolean isAddingGroups){
+        int[] groupOfRow = this.findGroups(batch, this.groupColumnIndices, fromRow, toRow, isAddingGroups);
+        for(Accumulator accumulator : this.accumulators){
+            accumulator.addAll(batch, fromRow, toRow, groupOfRow);
+        }
+
+        if(isAddingGroups){
+            return new int[0];
+        }
+        int[] leftOutRows = new int[groupOfRow.length];
+        int numberOfLeftOutRows = 0;
+        for(int i = 0; i < groupOfRow.length; i++){
+            if(groupOfRow[i] < 0){
+                leftOutRows[numberOfLeftOutRows++] = fromRow + i;
+            }
+        }
+
+        return Arrays.copyOf(leftOutRows, numberOfLeftOutRows);
+    }
+
+    /**
+     * Merges in the groups of another aggregator with the same columns and aggregates, as if its rows had been added to this one after
+     * this one's. The other aggregator shouldn't be used afterwards.
+     */
+    public void addAll(final HashAggregator otherAggregator){
+        DataTable otherGroupKeys = otherAggregator.getGroupKeys();
+        int[] allColumnIndices = new int[this.groupColumns.length];
+        for(int j = 0; j < allColumnIndices.length; j++){
+            allColumnIndices[j] = j;
+        }
+
+        int[] groupOfOtherGroup = this.findGroups(otherGroupKeys, allColumnIndices, 0, otherAggregator.numberOfGroups, true);
+        for(int a = 0; a < this.accumulators.length; a++){
+            for(int g = 0; g < groupOfOtherGroup.length; g++){
+                this.accumulators[a].merge(groupOfOtherGroup[g], otherAggregator.accumulators[a], g);
+            }
+        }
+    }
+
+    /**
+     * @return A row per group, in the order the groups first showed up, with the group columns and then one column per aggregate.
+     *         Without group columns, that's always exactly one row (even if no rows were added).
+     */
+    public DataTable getResult(){
+        if(this.groupColumns.length == 0 && this.numberOfGroups == 0){
+            this.addGroup(null, null, 0); // COUNT(*) of nothing is 0, and the rest of the aggregates of nothing are null
+        }
+
+        String[] columnNames = this.getColumnNames();
+        Column[] columns = new Column[columnNames.length];
+        DataTable groupKeys = this.getGroupKeys();
+        for(int j = 0; j < this.groupColumns.length; j++){
+            columns[j] = groupKeys.getColumn(j);
+        }
+        for(int a = 0; a < this.accumulators.length; a++){
+            ColumnBuilder builder = new ColumnBuilder(this.numberOfGroups);
+            for(int g = 0; g < this.numberOfGroups; g++){
+                this.accumulators[a].addResult(builder, g);
+            }
+            columns[this.groupColumns.length + a] = DictionaryColumn.encodeIfWorthIt(columnNames[this.groupColumns.length + a], builder.build());
+        }
+
+        return new DataTable(columnNames, columns);
+    }
+
+    /**
+     * @return The values of the group columns for every group so far, in group order.
+     */
+    private DataTable getGroupKeys(){
+        Column[] columns = new Column[this.groupColumns.length];
+        for(int j = 0; j < columns.length; j++){
+            columns[j] = DictionaryColumn.encodeIfWorthIt(this.groupColumns[j], this.groupKeyBuilders[j].build());
+        }
+
+        return new DataTable(this.groupColumns, columns);
+    }
+
+    /**
+     * @param keyIndices Where the group columns are in the rows.
+     * @return The group of each row from fromRow to toRow, or -1 for a row that isn't in any group and didn't get to start one.
+     */
+    private int[] findGroups(final DataTable rows, final int[] keyIndices, final int fromRow, final int toRow, final boolean isAddingGroups){
+        int[] groupOfRow = new int[toRow - fromRow];
+        if(keyIndices.length == 0){
+            if(this.numberOfGroups == 0 && isAddingGroups && toRow > fromRow){
+                this.addGroup(rows, keyIndices, fromRow);
+            }
+            Arrays.fill(groupOfRow, (this.numberOfGroups == 0) ? -1 : 0);
+            return groupOfRow;
+        }
+
+        Column firstKeyColumn = rows.getColumn(keyIndices[0]);
+        if(keyIndices.length == 1 && firstKeyColumn.isIntegral()){
+            for(int i = fromRow; i < toRow; i++){
+                groupOfRow[i - fromRow] = this.findWholeNumberGroup(firstKeyColumn.getLong(i), rows, keyIndices, i, isAddingGroups);
+            }
+        }
+        else if(keyIndices.length == 1 && firstKeyColumn instanceof DictionaryColumn dictionaryColumn &&
+                dictionaryColumn.getDictionary().size() <= MAXIMUM_CODES_PER_ROW * (toRow - fromRow) + 1024){
+            int[] groupOfCode = new int[dictionaryColumn.getDictionary().size()];
+            Arrays.fill(groupOfCode, -2); // Not looked up yet
+            for(int i = fromRow; i < toRow; i++){
+                int code = dictionaryColumn.getCode(i);
+                if(code >= groupOfCode.length){ // Handed out after the array was made
+                    groupOfRow[i - fromRow] = this.findGroup(rows, keyIndices, i, isAddingGroups);
+                    continue;
+                }
+                if(groupOfCode[code] == -2){
+                    groupOfCode[code] = this.findGroup(rows, keyIndices, i, isAddingGroups);
+                }
+                groupOfRow[i - fromRow] = groupOfCode[code];
+            }
+        }
+        else{
+            for(int i = fromRow; i < toRow; i++){
+                groupOfRow[i - fromRow] = this.findGroup(rows, keyIndices, i, isAddingGroups);
+            }
+        }
+
+        return groupOfRow;
+    }
+
+    private int findGroup(final DataTable rows, final int[] keyIndices, final int row, final boolean isAddingGroups){
+        Object key;
+        if(keyIndices.length == 1){
+            key = rows.getColumn(keyIndices[0]).getKey(row);
+            if(key instanceof Long wholeNumber){
+                return this.findWholeNumberGroup(wholeNumber, rows, keyIndices, row, isAddingGroups); // Wherever it came from, 80 is in the same group
+            }
+        }
+        else{
+            key = rows.getRowKey(row, keyIndices);
+        }
+
+        Integer group = this.groupOfKey.get(key);
+        if(group != null || !isAddingGroups){
+            return (group == null) ? -1 : group;
+        }
+
+        int newGroup = this.addGroup(rows, keyIndices, row);
+        this.groupOfKey.put(key, newGroup);
+        return newGroup;
+    }
+
+    private int findWholeNumberGroup(final long key, final DataTable rows, final int[] keyIndices, final int row, final boolean isAddingGroups){
+        int group = this.groupOfWholeNumber.get(key);
+        if(group != LongIntHashMap.NO_VALUE || !isAddingGroups){
+            return group;
+        }
+
+        int newGroup = this.addGroup(rows, keyIndices, row);
+        this.groupOfWholeNumber.put(key, newGroup);
+        return newGroup;
+    }
+
+    /**
+     * @return The number of the new group, whose key is the values of the row in the key columns.
+     */
+    private int addGroup(final DataTable rows, final int[] keyIndices, final int row){
+        if(this.numberOfGroups == this.groupCapacity){
+            this.groupCapacity *= 2;
+            for(Accumulator accumulator : this.accumulators){
+                accumulator.grow(this.groupCapacity);
+            }
+        }
+
+        for(int j = 0; j < this.groupKeyBuilders.length; j++){
+            this.groupKeyBuilders[j].add(rows.getColumn(keyIndices[j]), row);
+        }
+
+        return this.numberOfGroups++;
+    }
+
+    /**
+     * The running values of one aggregate, for every group.
+     */
+    private abstract static class Accumulator{
+        /**
+         * Where the column the aggregate reads is in the rows, or -1 for COUNT(*).
+         */
+        final int columnIndex;
+
+        Accumulator(final int columnIndex){
+            this.columnIndex = columnIndex;
+        }
+
+        /**
+         * Makes room for groups up to (but not including) the capacity.
+         */
+        abstract void grow(int capacity);
+
+        /**
+         * @param groupOfRow The group of each row from fromRow on. Rows with a negative group are skipped.
+         */
+        abstract void addAll(DataTable rows, int fromRow, int toRow, int[] groupOfRow);
+
+        /**
+         * Folds the running values of another accumulator's group (for the same aggregate) into a group of this one.
+         */
+        abstract void merge(int group, Accumulator otherAccumulator, int otherGroup);
+
+        abstract void addResult(ColumnBuilder builder, int group);
+
+        abstract long getBytesPerGroup();
+    }
+
+    /**
+     * COUNT(*) counts rows, and COUNT(column) counts the rows that have a value in the column.
+     */
+    private static final class CountAccumulator extends Accumulator{
+        private long[] counts;
+
+        CountAccumulator(final int columnIndex, final int capacity){
+            super(columnIndex);
+            this.counts = new long[capacity];
+        }
+
+        @Override
+        void grow(final int capacity){
+            this.counts = Arrays.copyOf(this.counts, capacity);
+        }
+
+        @Override
+        void addAll(final DataTable rows, final int fromRow, final int toRow, final int[] groupOfRow){
+            Column column = (this.columnIndex < 0) ? null : rows.getColumn(this.columnIndex);
+            boolean canHaveNulls = column != null && column.getType() == Column.Type.STRING; // Only text columns have rows without a value
+            for(int i = fromRow; i < toRow; i++){
+                int group = groupOfRow[i - fromRow];
+                if(group >= 0 && (!canHaveNulls || column.getString(i) != null)){
+                    this.counts[group]++;
+                }
+            }
+        }
+
+        @Override
+        void merge(final int group, final Accumulator otherAccumulator, final int otherGroup){
+            this.counts[group] += ((CountAccumulator) otherAccumulator).counts[otherGroup];
+        }
+
+        @Override
+        void addResult(final ColumnBuilder builder, final int group){
+            builder.addWholeNumber(this.counts[group]);
+        }
+
+        @Override
+        long getBytesPerGroup(){
+            return Long.BYTES;
+        }
+    }
+
+    /**
+     * SUM and AVG. The whole numbers get added up exactly in a long, and only the numbers with fractions go into a double, so a SUM over
+     * whole numbers comes out as a whole number (however big it gets before a double would round it).
+     */
+    private static final class SumAccumulator extends Accumulator{
+        private final Aggregate aggregate;
+        private       long[]    counts;
+        private       long[]    wholeNumberSums;
+        private       double[]  fractionSums;
+        private       boolean[] hasFraction;
+
+        SumAccumulator(final Aggregate aggregate, final int columnIndex, final int capacity){
+            super(columnIndex);
+            this.aggregate = aggregate;
+            this.counts = new long[capacity];
+            this.wholeNumberSums = new long[capacity];
+            this.fractionSums = new double[capacity];
+            this.hasFraction = new boolean[capacity];
+        }
+
+        @Override
+        void grow(final int capacity){
+            this.counts = Arrays.copyOf(this.counts, capacity);
+            this.wholeNumberSums = Arrays.copyOf(this.wholeNumberSums, capacity);
+            this.fractionSums = Arrays.copyOf(this.fractionSums, capacity);
+            this.hasFraction = Arrays.copyOf(this.hasFraction, capacity);
+        }
+
+        @Override
+        void addAll(final DataTable rows, final int fromRow, final int toRow, final int[] groupOfRow){
+            Column column = rows.getColumn(this.columnIndex);
+            if(column.isIntegral()){
+                for(int i = fromRow; i < toRow; i++){
+                    int group = groupOfRow[i - fromRow];
+                    if(group >= 0){
+                        this.wholeNumberSums[group] = Math.addExact(this.wholeNumberSums[group], column.getLong(i));
+                        this.counts[group]++;
+                    }
+                }
+            }
+            else if(column instanceof DoubleColumn doubleColumn){
+                for(int i = fromRow; i < toRow; i++){
+                    int group = groupOfRow[i - fromRow];
+                    if(group < 0){
+                        continue;
+                    }
+
+                    if(doubleColumn.isWrittenAsWholeNumber(i)){
+                        this.wholeNumberSums[group] = Math.addExact(this.wholeNumberSums[group], (long) doubleColumn.getDouble(i));
+                    }
+                    else{
+                        this.fractionSums[group] += doubleColumn.getDouble(i);
+                        this.hasFraction[group] = true;
+                    }
+                    this.counts[group]++;
+                }
+            }
+            else{
+                for(int i = fromRow; i < toRow; i++){
+                    int group = groupOfRow[i - fromRow];
+                    Object key = (group < 0) ? null : column.getKey(i);
+                    if(key instanceof Long wholeNumber){
+                        this.wholeNumberSums[group] = Math.addExact(this.wholeNumberSums[group], wholeNumber);
+                        this.counts[group]++;
+                    }
+                    else if(key instanceof Double number){
+                        this.fractionSums[group] += number;
+                        this.hasFraction[group] = true;
+                        this.counts[group]++;
+                    }
+                    else if(group >= 0 && column.getString(i) != null){
+                        throw new IllegalArgumentException("Can't " + this.aggregate.function() + " the column " + this.aggregate.columnName() + ", since it has \"" +
+                                                           column.getString(i) + "\" in it, which isn't a number.");
+                    }
+                }
+            }
+        }
+
+        @Override
+        void merge(final int group, final Accumulator otherAccumulator, final int otherGroup){
+            SumAccumulator otherSumAccumulator = (SumAccumulator) otherAccumulator;
+            this.counts[group] += otherSumAccumulator.counts[otherGroup];
+            this.wholeNumberSums[group] = Math.addExact(this.wholeNumberSums[group], otherSumAccumulator.wholeNumberSums[otherGroup]);
+            this.fractionSums[group] += otherSumAccumulator.fractionSums[otherGroup];
+            this.hasFraction[group] |= otherSumAccumulator.hasFraction[otherGroup];
+        }
+
+        @Override
+        void addResult(final ColumnBuilder builder, final int group){
+            if(this.counts[group] == 0){
+                builder.add(null); // Nothing to add up
+            }
+            else if(this.aggregate.function() == Function.AVG){
+                builder.addNumber((this.wholeNumberSums[group] + this.fractionSums[group]) / this.counts[group]);
+            }
+            else if(this.hasFraction[group]){
+                builder.addNumber(this.wholeNumberSums[group] + this.fractionSums[group]);
+            }
+            else{
+                builder.addWholeNumber(this.wholeNumberSums[group]);
+            }
+        }
+
+        @Override
+        long getBytesPerGroup(){
+            return Long.BYTES * 2 + Double.BYTES + 1;
+        }
+    }
+
+    /**
+     * MIN and MAX. Numbers are compared as numbers and come before text, which is compared alphabetically, so the result is the same as
+     * sorting the column's values would give.
+     */
+    private static final class ExtremeAccumulator extends Accumulator{
+        private static final byte NO_VALUE     = 0;
+        private static final byte WHOLE_NUMBER = 1;
+        private static final byte NUMBER       = 2;
+        private static final byte TEXT         = 3;
+
+        private final boolean  isMaximum;
+        private       byte[]   kinds;
+        private       long[]   wholeNumbers;
+        private       double[] numbers;
+        private       String[] texts;
+
+        ExtremeAccumulator(final Aggregate aggregate, final int columnIndex, final int capacity){
+            super(columnIndex);
+            this.isMaximum = aggregate.function() == Function.MAX;
+            this.kinds = new byte[capacity];
+            this.wholeNumbers = new long[capacity];
+            this.numbers = new double[capacity];
+        }
+
+        @Override
+        void grow(final int capacity){
+            this.kinds = Arrays.copyOf(this.kinds, capacity);
+            this.wholeNumbers = Arrays.copyOf(this.wholeNumbers, capacity);
+            this.numbers = Arrays.copyOf(this.numbers, capacity);
+            if(this.texts != null){
+                this.texts = Arrays.copyOf(this.texts, capacity);
+            }
+        }
+
+        @Override
+        void addAll(final DataTable rows, final int fromRow, final int toRow, final int[] groupOfRow){
+            Column column = rows.getColumn(this.columnIndex);
+            if(column.isIntegral()){
+                for(int i = fromRow; i < toRow; i++){
+                    int group = groupOfRow[i - fromRow];
+                    if(group >= 0){
+                        this.offer(group, WHOLE_NUMBER, column.getLong(i), 0, null);
+                    }
+                }
+            }
+            else if(column instanceof DoubleColumn doubleColumn){
+                for(int i = fromRow; i < toRow; i++){
+                    int group = groupOfRow[i - fromRow];
+                    if(group >= 0){
+                        double value = doubleColumn.getDouble(i);
+                        this.offer(group, doubleColumn.isWrittenAsWholeNumber(i) ? WHOLE_NUMBER : NUMBER, (long) value, value, null);
+                    }
+                }
+            }
+            else{
+                for(int i = fromRow; i < toRow; i++){
+                    int group = groupOfRow[i - fromRow];
+                    Object key = (group < 0) ? null : column.getKey(i);
+                    if(key instanceof Long wholeNumber){
+                        this.offer(group, WHOLE_NUMBER, wholeNumber, 0, null);
+                    }
+                    else if(key instanceof Double number){
+                        this.offer(group, NUMBER, 0, number, null);
+                    }
+                    else if(key != null){
+                        this.offer(group, TEXT, 0, 0, column.getString(i));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Makes the value the group's running value if it beats the one it has.
+         */
+        private void offer(final int group, final byte kind, final long wholeNumber, final double number, final String text){
+            if(this.kinds[group] != NO_VALUE){
+                int comparison = this.compareWithCurrent(group, kind, wholeNumber, number, text);
+                if(this.isMaximum ? comparison <= 0 : comparison >= 0){
+                    return;
+                }
+            }
+
+            this.kinds[group] = kind;
+            this.wholeNumbers[group] = wholeNumber;
+            this.numbers[group] = number;
+            if(kind == TEXT){
+                if(this.texts == null){
+                    this.texts = new String[this.kinds.length];
+                }
+                this.texts[group] = text;
+            }
+        }
+
+        /**
+         * @return Negative, zero or positive as the value is less than, equal to or greater than the group's running value.
+         */
+        private int compareWithCurrent(final int group, final byte kind, final long wholeNumber, final double number, final String text){
+            byte currentKind = this.kinds[group];
+            if((kind == TEXT) != (currentKind == TEXT)){
+                return (kind == TEXT) ? 1 : -1;
+            }
+            if(kind == TEXT){
+                return text.compareTo(this.texts[group]);
+            }
+            if(kind == WHOLE_NUMBER && currentKind == WHOLE_NUMBER){
+                return Long.compare(wholeNumber, this.wholeNumbers[group]);
+            }
+
+            double value = (kind == WHOLE_NUMBER) ? wholeNumber : number;
+            double currentValue = (currentKind == WHOLE_NUMBER) ? this.wholeNumbers[group] : this.numbers[group];
+            return Double.compare(value, currentValue);
+        }
+
+        @Override
+        void merge(final int group, final Accumulator otherAccumulator, final int otherGroup){
+            ExtremeAccumulator otherExtremeAccumulator = (ExtremeAccumulator) otherAccumulator;
+            byte otherKind = otherExtremeAccumulator.kinds[otherGroup];
+            if(otherKind != NO_VALUE){
+                this.offer(group, otherKind, otherExtremeAccumulator.wholeNumbers[otherGroup], otherExtremeAccumulator.numbers[otherGroup],
+                           (otherKind == TEXT) ? otherExtremeAccumulator.texts[otherGroup] : null);
+            }
+        }
+
+        @Override
+        void addResult(final ColumnBuilder builder, final int group){
+            switch(this.kinds[group]){
+                case WHOLE_NUMBER -> builder.addWholeNumber(this.wholeNumbers[group]);
+                case NUMBER -> builder.addNumber(this.numbers[group]);
+                case TEXT -> builder.add(this.texts[group]);
+                default -> builder.add(null);
+            }
+        }
+
+        @Override
+        long getBytesPerGroup(){
+            return 1 + Long.BYTES + Double.BYTES + ((this.texts == null) ? 0 : 8 + 48); // A reference, and roughly what a short string costs
+        }
+    }
+}
@@ -0,0 +1,373 @@
+import java.io.FileNotFoundException;
+import java.util.*;
+import java.util.zip.DataFormatException;
+
+/**
+ * Keeps the result of a query up to date as rows get appended to its tables, by working out the rows the result gains from the rows the
+ * tables gained, instead of running the whole query again. Only appends are handled (nothing ever gets deleted or changed), which is what
+ * makes every supported operator's new rows depend on just the new rows of its inputs:
+ * <ul>
+ *     <li>SELE and PROJ_ALL of the new input rows are the new result rows.</li>
+ *     <li>PROJ keeps the keys of every row it has given so far, so it only gives the new rows it hasn't given before.</li>
+ *     <li>U_ALL gives the new rows of both sides, and U only the ones it hasn't given before, like PROJ.</li>
+ *     <li>*, the equi-joins and X join the new left rows with all the right rows from before, and all the left rows (new ones
+ *         included) with the new right rows. Each side keeps its rows in a few {@link Segment}s, each with its own {@link JoinHashTable},
+ *         so the new rows get looked up without rehashing the old ones.</li>
+ * </ul>
+ * MINUS, INTERSECT and AGGR can change or take back rows they gave before, so queries with those in them can't be maintained this way
+ * (see {@link #isMaintainable(PlanNode)}).
+ * <p>
+ * The first {@link #refresh(Map)} gets every row of the tables as new rows, so it gives the whole result, in the same order
+ * {@link QueryExecutor} gives it. After that, the new rows of the result come out in an order of their own, since they get added to the end.
+ */
+public final class IncrementalView{
+    /**
+     * A segment gets merged into the one before it once it's at least this fraction of that one's size, so a side of a join has
+     * only a logarithmic number of them, and each row gets rehashed a logarithmic number of times over however many refreshes.
+     */
+    private static final double SEGMENT_MERGE_RATIO = 0.5;
+
+    private final PlanNode                      plan;
+    private final QueryOptimizer                optimizer = new QueryOptimizer();
+    private final String[]                      columnNames;
+    private final Map<PlanNode, OperatorState>  states    = new IdentityHashMap<>();
+    private final Set<String>                   tableNames;
+
+    /**
+     * @param plan The query to maintain, as it was parsed (the optimizer's rewrites lean on statistics that appends make out of date).
+     * @throws IllegalArgumentException if the plan has an operator that can't be maintained.
+     * @throws FileNotFoundException    if the plan mentions a table that doesn't have a file.
+     * @throws DataFormatException      if one of its table files is empty.
+     */
+    public IncrementalView(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        if(!isMaintainable(plan)){
+            throw new IllegalArgumentException("The query can't be kept up to date incrementally, since it has a MINUS, INTERSECT or AGGR in it: " + plan);
+        }
+
+        this.plan = plan;
+        this.columnNames = this.optimizer.getColumnNames(plan);
+        this.tableNames = getTableNames(plan);
+        this.createStates(plan);
+    }
+
+    /**
+     * @return Whether every operator in the plan only ever adds rows to its result as rows get added to its inputs.
+     */
+    public static boolean isMaintainable(final PlanNode plan){
+        if(plan instanceof PlanNode.Minus || plan instanceof PlanNode.Intersect || plan instanceof PlanNode.Aggregate){
+            return false;
+        }
+        for(PlanNode child : plan.getChildren()){
+            if(!isMaintainable(child)){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return The tables the plan reads, in the order it first mentions them.
+     */
+    public static Set<String> getTableNames(final PlanNode plan){
+        LinkedHashSet<String> tableNames = new LinkedHashSet<>();
+        if(plan instanceof PlanNode.Scan scan){
+            tableNames.add(scan.tableName());
+        }
+        for(PlanNode child : plan.getChildren()){
+            tableNames.addAll(getTableNames(child));
+        }
+
+        return tableNames;
+    }
+
+    private void createStates(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        if(plan instanceof PlanNode.Select select){
+            this.states.put(plan, new SelectState(SelectionPredicate.parse(select.condition())));
+        }
+        else if(plan instanceof PlanNode.Project project && project.isDistinct()){
+            this.states.put(plan, new DistinctState());
+        }
+        else if(plan instanceof PlanNode.Join || plan instanceof PlanNode.EquiJoin || plan instanceof PlanNode.CrossProduct){
+            String[] leftKeyColumns;
+            String[] rightKeyColumns;
+            if(plan instanceof PlanNode.EquiJoin equiJoin){
+                leftKeyColumns = equiJoin.leftKeyColumns().toArray(new String[0]);
+                rightKeyColumns = equiJoin.rightKeyColumns().toArray(new String[0]);
+            }
+            else if(plan instanceof PlanNode.Join){
+                leftKeyColumns = rightKeyColumns = DataTable.getCommonElementsInArrays(this.optimizer.getColumnNames(plan.getChildren().get(0)),
+                                                                                       this.optimizer.getColumnNames(plan.getChildren().get(1)));
+            }
+            else{
+                leftKeyColumns = rightKeyColumns = new String[0];
+            }
+            this.states.put(plan, new JoinState(plan, leftKeyColumns, rightKeyColumns, this.optimizer.getColumnNames(plan)));
+        }
+        else if(plan instanceof PlanNode.Union union){
+            this.states.put(plan, new UnionState(this.optimizer.getColumnNames(union.left()), union.isDistinct()));
+        }
+
+        for(PlanNode child : plan.getChildren()){
+            this.createStates(child);
+        }
+    }
+
+    /**
+     * Takes in the rows appended to the tables since the last refresh.
+     *
+     * @param newRowsOfTables The new rows of each table that got any. Tables that aren't in it didn't get any.
+     * @return The rows the result gained, or null if it didn't gain any.
+     * @throws DataFormatException if an operator trips over the data.
+     */
+    public DataTable refresh(final Map<String, DataTable> newRowsOfTables) throws DataFormatException{
+        return this.getNewRows(this.plan, newRowsOfTables);
+    }
+
+    private DataTable getNewRows(final PlanNode plan, final Map<String, DataTable> newRowsOfTables) throws DataFormatException{
+        if(plan instanceof PlanNode.Scan scan){
+            return nullIfEmpty(newRowsOfTables.get(scan.tableName()));
+        }
+
+        // Every operator needs to see its inputs' new rows even if the other input didn't get any, so the joins' segments stay complete
+        ArrayList<DataTable> newRowsOfChildren = new ArrayList<>(2);
+        for(PlanNode child : plan.getChildren()){
+            newRowsOfChildren.add(this.getNewRows(child, newRowsOfTables));
+        }
+        DataTable newInputRows = newRowsOfChildren.get(0);
+
+        if(plan instanceof PlanNode.Select){
+            return (newInputRows == null) ? null : nullIfEmpty(newInputRows.selectWhere(((SelectState) this.states.get(plan)).predicate));
+        }
+        if(plan instanceof PlanNode.Project project){
+            if(newInputRows == null){
+                return null;
+            }
+
+            DataTable newProjectedRows = newInputRows.project(project.columns().toArray(new String[0]));
+            return project.isDistinct() ? nullIfEmpty(((DistinctState) this.states.get(plan)).removeRowsGivenBefore(newProjectedRows)) : newProjectedRows;
+        }
+        if(plan instanceof PlanNode.Union){
+            return nullIfEmpty(((UnionState) this.states.get(plan)).combine(newInputRows, newRowsOfChildren.get(1)));
+        }
+        if(plan instanceof PlanNode.Join || plan instanceof PlanNode.EquiJoin || plan instanceof PlanNode.CrossProduct){
+            return nullIfEmpty(((JoinState) this.states.get(plan)).join(newInputRows, newRowsOfChildren.get(1)));
+        }
+
+        throw new UnsupportedOperationException("An incremental view doesn't know how to maintain a " + plan.getClass().getSimpleName() + " node.");
+    }
+
+    private static DataTable nullIfEmpty(final DataTable table){
+        return (table == null || table.getRowCount() == 0) ? null : table;
+    }
+
+    public PlanNode getPlan(){
+        return this.plan;
+    }
+
+    public String[] getColumnNames(){
+        return this.columnNames.clone();
+    }
+
+    /**
+     * @return The tables the query reads, so only appends to them need a refresh.
+     */
+    public Set<String> getTablesRead(){
+        return Collections.unmodifiableSet(this.tableNames);
+    }
+
+    /**
+     * @return About how many bytes the rows and keys the view holds on to take up.
+     */
+    public long getMemoryUsage(){
+        long memoryUsage = 0;
+        for(OperatorState state : this.states.values()){
+            memoryUsage += state.getMemoryUsage();
+        }
+
+        return memoryUsage;
+    }
+
+    @Override
+    public String toString(){
+        return "IncrementalView[" + this.plan + ", " + this.getMemoryUsage() + " bytes held]";
+    }
+
+    /**
+     * What an operator has to remember between refreshes.
+     */
+    private abstract static class OperatorState{
+        long getMemoryUsage(){
+            return 0;
+        }
+    }
+
+    private static final class SelectState extends OperatorState{
+        private final SelectionPredicate predicate; // Parsed once, not every refresh
+
+        SelectState(final SelectionPredicate predicate){
+            this.predicate = predicate;
+        }
+    }
+
+    private static final class DistinctState extends OperatorState{
+        private final HashSet<List<Object>> rowsGivenBefore = new HashSet<>();
+
+        DataTable removeRowsGivenBefore(final DataTable newRows){
+            int[] allColumnIndices = new int[newRows.getColumnNames().length];
+            for(int j = 0; j < allColumnIndices.length; j++){
+                allColumnIndices[j] = j;
+            }
+
+            int[] keptRows = new int[newRows.getRowCount()];
+            int numberOfKeptRows = 0;
+            for(int i = 0; i < newRows.getRowCount(); i++){
+                if(this.rowsGivenBefore.add(newRows.getRowKey(i, allColumnIndices))){
+                    keptRows[numberOfKeptRows++] = i;
+                }
+            }
+
+            return (numberOfKeptRows == newRows.getRowCount()) ? newRows : newRows.gatherRows(Arrays.copyOf(keptRows, numberOfKeptRows));
+        }
+
+        @Override
+        long getMemoryUsage(){
+            return this.rowsGivenBefore.size() * 96L; // Roughly a HashMap entry, a list and a boxed value or two per row
+        }
+    }
+
+    private static final class UnionState extends OperatorState{
+        private final String[]      leftColumnNames;
+        private final DistinctState distinctState; // Null for U_ALL
+
+        UnionState(final String[] leftColumnNames, final boolean isDistinct){
+            this.leftColumnNames = leftColumnNames;
+            this.distinctState = isDistinct ? new DistinctState() : null;
+        }
+
+        DataTable combine(final DataTable newLeftRows, final DataTable newRightRows){
+            DataTable newRows = this.append(newLeftRows, newRightRows);
+            return (newRows == null || this.distinctState == null) ? newRows : this.distinctState.removeRowsGivenBefore(newRows);
+        }
+
+        @Override
+        long getMemoryUsage(){
+            return (this.distinctState == null) ? 0 : this.distinctState.getMemoryUsage();
+        }
+
+        private DataTable append(final DataTable newLeftRows, final DataTable newRightRows){
+            if(newLeftRows == null && newRightRows == null){
+                return null;
+            }
+            if(newRightRows == null){
+                return newLeftRows;
+            }
+            if(newLeftRows == null){
+                // The union has the left side's columns, and a right side with them in another order has to be lined up with them
+                return Arrays.equals(newRightRows.getColumnNames(), this.leftColumnNames) ? newRightRows : newRightRows.project(this.leftColumnNames);
+            }
+
+            return newLeftRows.unionWith(newRightRows);
+        }
+    }
+
+    /**
+     * Some of the rows of one side of a join, with a hash table on its key columns (if the join has any).
+     */
+    private record Segment(DataTable rows, JoinHashTable hashTable){
+        Segment(final DataTable rows, final String[] keyColumns){
+            this(rows, (keyColumns.length == 0) ? null : new JoinHashTable(rows, keyColumns));
+        }
+    }
+
+    private static final class JoinState extends OperatorState{
+        private final PlanNode           join;
+        private final String[]           leftKeyColumns;
+        private final String[]           rightKeyColumns;
+        private final String[]           columnNames;
+        private final ArrayList<Segment> leftSegments  = new ArrayList<>();
+        private final ArrayList<Segment> rightSegments = new ArrayList<>();
+
+        JoinState(final PlanNode join, final String[] leftKeyColumns, final String[] rightKeyColumns, final String[] columnNames){
+            this.join = join;
+            this.leftKeyColumns = leftKeyColumns;
+            this.rightKeyColumns = rightKeyColumns;
+            this.columnNames = columnNames;
+        }
+
+        /**
+         * @return (new left rows joined with the old right rows) followed by (all the left rows joined with the new right rows).
+         */
+        DataTable join(final DataTable newLeftRows, final DataTable newRightRows) throws DataFormatException{
+            ArrayList<DataTable> newRows = new ArrayList<>();
+            if(newLeftRows != null){
+                for(Segment rightSegment : this.rightSegments){
+                    newRows.add(this.joinNewLeftRows(newLeftRows, rightSegment));
+                }
+                addSegment(this.leftSegments, newLeftRows, this.leftKeyColumns);
+            }
+            if(newRightRows != null){
+                for(Segment leftSegment : this.leftSegments){
+                    newRows.add(this.joinNewRightRows(leftSegment, newRightRows));
+                }
+                addSegment(this.rightSegments, newRightRows, this.rightKeyColumns);
+            }
+
+            return newRows.isEmpty() ? null : DataTable.concatenate(this.columnNames, newRows);
+        }
+
+        private DataTable joinNewLeftRows(final DataTable newLeftRows, final Segment rightSegment) throws DataFormatException{
+            if(rightSegment.hashTable() == null){
+                return newLeftRows.crossWith(rightSegment.rows());
+            }
+            if(this.join instanceof PlanNode.EquiJoin){
+                return newLeftRows.equiJoinWith(rightSegment.hashTable(), this.leftKeyColumns);
+            }
+
+            return newLeftRows.joinWith(rightSegment.hashTable());
+        }
+
+        private DataTable joinNewRightRows(final Segment leftSegment, final DataTable newRightRows) throws DataFormatException{
+            if(leftSegment.hashTable() == null){
+                return leftSegment.rows().crossWith(newRightRows);
+            }
+            if(this.join instanceof PlanNode.EquiJoin){
+                return leftSegment.rows().equiJoinWith(newRightRows, this.rightKeyColumns, leftSegment.hashTable());
+            }
+
+            return leftSegment.rows().joinWith(newRightRows, leftSegment.hashTable());
+        }
+
+        /**
+         * Adds the rows as a segment of their own, then merges the last two segments for as long as the last one isn't much smaller,
+         * so the segments stay ordered from biggest to smallest and there are never more than a logarithmic number of them.
+         */
+        private static void addSegment(final ArrayList<Segment> segments, final DataTable rows, final String[] keyColumns){
+            segments.add(new Segment(rows, keyColumns));
+            while(segments.size() > 1){
+                Segment last = segments.get(segments.size() - 1);
+                Segment secondToLast = segments.get(segments.size() - 2);
+                if(last.rows().getRowCount() < secondToLast.rows().getRowCount() * SEGMENT_MERGE_RATIO){
+                    break;
+                }
+
+                segments.remove(segments.size() - 1);
+                DataTable mergedRows = DataTable.concatenate(secondToLast.rows().getColumnNames(), List.of(secondToLast.rows(), last.rows()));
+                segments.set(segments.size() - 1, new Segment(mergedRows, keyColumns));
+            }
+        }
+
+        @Override
+        long getMemoryUsage(){
+            long memoryUsage = 0;
+            for(Segment segment : this.leftSegments){
+                memoryUsage += segment.rows().getMemoryUsage() + segment.rows().getRowCount() * 4L;
+            }
+            for(Segment segment : this.rightSegments){
+                memoryUsage += segment.rows().getMemoryUsage() + segment.rows().getRowCount() * 4L;
+            }
+
+            return memoryUsage;
+        }
+    }
+}
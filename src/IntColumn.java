@@ -0,0 +1,130 @@
+/**
+ * A column of whole numbers that all fit in an int.
+ */
+public final class IntColumn extends Column{
+    private final int[] values;
+
+    /**
+     * @param values The values. The array is kept, not copied, so don't change it afterwards.
+     */
+    public IntColumn(final int[] values){
+        this.values = values;
+    }
+
+    /**
+     * @return The values themselves, for the loops {@link PredicateCompiler} generates. Don't change them.
+     */
+    int[] getValues(){
+        return this.values;
+    }
+
+    @Override
+    public Type getType(){
+        return Type.INT;
+    }
+
+    @Override
+    public int size(){
+        return this.values.length;
+    }
+
+    @Override
+    public long getMemoryUsage(){
+        return (long) this.values.length * Integer.BYTES;
+    }
+
+    public int getInt(final int row){
+        return this.values[row];
+    }
+
+    @Override
+    public long getLong(final int row){
+        return this.values[row];
+    }
+
+    @Override
+    public double getDouble(final int row){
+        return this.values[row];
+    }
+
+    @Override
+    public String getString(final int row){
+        return Integer.toString(this.values[row]);
+    }
+
+    @Override
+    public Object getKey(final int row){
+        return (long) this.values[row];
+    }
+
+    @Override
+    public long getFingerprint(final int row){
+        return mix(this.values[row]);
+    }
+
+    @Override
+    public Column gather(final int[] rows){
+        int[] newValues = new int[rows.length];
+        for(int i = 0; i < rows.length; i++){
+            newValues[i] = this.values[rows[i]];
+        }
+
+        return new IntColumn(newValues);
+    }
+
+    @Override
+    protected int[] getRowsWhereCompared(final String operator, final String comparedValue, final int[] rows){
+        int[] selectedRows = new int[rows.length];
+        int numberOfSelectedRows = 0;
+
+        switch(operator){
+            case DataTable.GREATER_THAN -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(this.values[row] > comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.GREATER_THAN_OR_EQUAL -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(this.values[row] >= comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.LESS_THAN -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(this.values[row] < comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.LESS_THAN_OR_EQUAL -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(this.values[row] <= comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.EQUALS -> {
+                // Every value here is written like Java writes ints, so only a constant written that way can be equal to one of them.
+                Object comparedKey = getKeyOfText(comparedValue);
+                if(comparedKey instanceof Long comparedLong && comparedLong == (int) (long) comparedLong){
+                    int comparedInt = (int) (long) comparedLong;
+                    for(int row : rows){
+                        if(this.values[row] == comparedInt){
+                            selectedRows[numberOfSelectedRows++] = row;
+                        }
+                    }
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown comparison operator " + operator + ".");
+        }
+
+        return trim(selectedRows, numberOfSelectedRows);
+    }
+}
@@ -0,0 +1,199 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The build side of a hash join: a table plus a hash index on some of its columns. Building one costs a single pass over the table,
+ * and after that it can be probed with as many rows (or batches of rows) as you like, which is what lets the streaming executor
+ * push a big table through a join one batch at a time.
+ * <p>
+ * Each hash bucket is a chain of row numbers threaded through an int array, so the table costs one map entry per distinct key,
+ * and the rows with a given key come out in the order they're in the table. A single whole-number key column goes into a
+ * {@link LongIntHashMap}, so nothing gets boxed. A single dictionary-encoded key column doesn't need hashing at all: its codes index
+ * straight into an array, and a probe column with the same dictionary looks up its codes without ever touching the text.
+ * Anything else is hashed on the columns' {@link Column#getKey(int) keys}.
+ */
+public final class JoinHashTable{
+    /**
+     * The array indexed by dictionary code has an entry for every value in the (shared) dictionary, not just the ones in this table,
+     * so it's only used if the dictionary isn't wildly bigger than the table.
+     */
+    private static final int MAXIMUM_CODES_PER_ROW = 4;
+
+    private final DataTable               table;
+    private final String[]                keyColumns;
+    private final int[]                   keyIndices;
+    private final LongIntHashMap          firstRowWithLongKey;
+    private final DictionaryColumn        dictionaryKeyColumn;
+    private final int[]                   firstRowWithCode;
+    private final HashMap<Object, Integer> firstRowWithKey;
+    private final int[]                   nextRowWithSameKey;
+
+    /**
+     * @param table      The table to build the hash table on.
+     * @param keyColumns The columns to hash on.
+     */
+    public JoinHashTable(final DataTable table, final String[] keyColumns){
+        this(table, DataTable.getIndicesInArrayOfItemsEquivalentTo(table.getColumnNames(), keyColumns));
+    }
+
+    /**
+     * @param table      The table to build the hash table on.
+     * @param keyIndices The positions of the columns to hash on. Handy when the table has more than one column with the same name.
+     */
+    public JoinHashTable(final DataTable table, final int[] keyIndices){
+        this(table, keyIndices, null);
+    }
+
+    /**
+     * Rebuilds a hash table from the chains of one that was built on the same columns of the same table before (like by a {@link TableIndex}),
+     * so only the first row of each chain has to be hashed instead of every row.
+     *
+     * @param nextRowWithSameKey What {@link #getNextRowsWithSameKey()} returned for the old hash table, or null to build it from scratch.
+     */
+    JoinHashTable(final DataTable table, final int[] keyIndices, final int[] nextRowWithSameKey){
+        this.table = table;
+        this.keyColumns = DataTable.getItemsAtIndices(table.getColumnNames(), keyIndices);
+        this.keyIndices = keyIndices.clone();
+
+        int rowCount = table.getRowCount();
+        boolean isRebuilt = nextRowWithSameKey != null;
+        if(isRebuilt && nextRowWithSameKey.length != rowCount){
+            throw new IllegalArgumentException("The chains are for a table with " + nextRowWithSameKey.length + " rows, not " + rowCount + ".");
+        }
+        this.nextRowWithSameKey = isRebuilt ? nextRowWithSameKey : new int[rowCount];
+
+        // Only the rows no other row points to start a chain
+        boolean[] isFirstRowOfChain = isRebuilt ? new boolean[rowCount] : null;
+        if(isRebuilt){
+            Arrays.fill(isFirstRowOfChain, true);
+            for(int i = 0; i < rowCount; i++){
+                if(nextRowWithSameKey[i] != -1){
+                    isFirstRowOfChain[nextRowWithSameKey[i]] = false;
+                }
+            }
+        }
+
+        Column firstKeyColumn = (keyIndices.length == 1) ? table.getColumn(keyIndices[0]) : null;
+        boolean isDictionaryKeySmallEnough = firstKeyColumn instanceof DictionaryColumn dictionaryColumn &&
+                                             dictionaryColumn.getDictionary().size() <= MAXIMUM_CODES_PER_ROW * rowCount + 1024;
+        this.dictionaryKeyColumn = isDictionaryKeySmallEnough ? (DictionaryColumn) firstKeyColumn : null;
+
+        if(this.dictionaryKeyColumn != null){
+            this.firstRowWithLongKey = null;
+            this.firstRowWithKey = null;
+            this.firstRowWithCode = new int[this.dictionaryKeyColumn.getDictionary().size()];
+            Arrays.fill(this.firstRowWithCode, -1);
+            for(int i = rowCount - 1; i >= 0; i--){ // Backwards, so that each chain ends up in ascending row order
+                int code = this.dictionaryKeyColumn.getCode(i);
+                if(!isRebuilt){
+                    this.nextRowWithSameKey[i] = this.firstRowWithCode[code];
+                    this.firstRowWithCode[code] = i;
+                }
+                else if(isFirstRowOfChain[i]){
+                    this.firstRowWithCode[code] = i;
+                }
+            }
+        }
+        else if(firstKeyColumn != null && firstKeyColumn.isIntegral()){
+            this.firstRowWithLongKey = new LongIntHashMap(rowCount);
+            this.firstRowWithKey = null;
+            this.firstRowWithCode = null;
+            for(int i = rowCount - 1; i >= 0; i--){
+                if(!isRebuilt){
+                    this.nextRowWithSameKey[i] = this.firstRowWithLongKey.put(firstKeyColumn.getLong(i), i);
+                }
+                else if(isFirstRowOfChain[i]){
+                    this.firstRowWithLongKey.put(firstKeyColumn.getLong(i), i);
+                }
+            }
+        }
+        else{
+            this.firstRowWithLongKey = null;
+            this.firstRowWithCode = null;
+            this.firstRowWithKey = new HashMap<>(rowCount * 2);
+            for(int i = rowCount - 1; i >= 0; i--){
+                if(!isRebuilt){
+                    Integer previousFirstRow = this.firstRowWithKey.put(table.getRowKey(i, this.keyIndices), i);
+                    this.nextRowWithSameKey[i] = (previousFirstRow == null) ? -1 : previousFirstRow;
+                }
+                else if(isFirstRowOfChain[i]){
+                    this.firstRowWithKey.put(table.getRowKey(i, this.keyIndices), i);
+                }
+            }
+        }
+    }
+
+    public DataTable getTable(){
+        return this.table;
+    }
+
+    public String[] getKeyColumns(){
+        return this.keyColumns.clone();
+    }
+
+    /**
+     * @param probeTable      The table on the other side of the join.
+     * @param probeRow        A row of that table.
+     * @param probeKeyIndices Where the key columns are in that table, in the same order as this table's key columns.
+     * @return The first row of this table whose key equals the probe row's key, or -1 if there isn't one.
+     */
+    public int getFirstMatchingRow(final DataTable probeTable, final int probeRow, final int[] probeKeyIndices){
+        if(this.firstRowWithCode != null){
+            Column probeColumn = probeTable.getColumn(probeKeyIndices[0]);
+            int code = this.dictionaryKeyColumn.sharesDictionaryWith(probeColumn) ? ((DictionaryColumn) probeColumn).getCode(probeRow)
+                                                                                  : this.dictionaryKeyColumn.getDictionary().getCode(probeColumn.getString(probeRow));
+
+            // Codes handed out after this table was built can't be in it
+            return (code >= 0 && code < this.firstRowWithCode.length) ? this.firstRowWithCode[code] : -1;
+        }
+        if(this.firstRowWithLongKey != null){
+            Column probeColumn = probeTable.getColumn(probeKeyIndices[0]);
+            if(probeColumn.isIntegral()){
+                return this.firstRowWithLongKey.get(probeColumn.getLong(probeRow));
+            }
+
+            // Something like "12" in a text column still matches 12, but nothing that isn't a whole number can
+            return (probeColumn.getKey(probeRow) instanceof Long probeKey) ? this.firstRowWithLongKey.get(probeKey) : -1;
+        }
+
+        Integer firstRow = this.firstRowWithKey.get(probeTable.getRowKey(probeRow, probeKeyIndices));
+        return (firstRow == null) ? -1 : firstRow;
+    }
+
+    /**
+     * The lookup a SELE with {@code =} or IN does, for a hash table on a single column.
+     *
+     * @param value The text of a value.
+     * @return The first row whose key column has exactly that text, or -1 if there isn't one.
+     */
+    public int getFirstRowWithValue(final String value){
+        if(this.firstRowWithCode != null){
+            int code = this.dictionaryKeyColumn.getDictionary().getCode(value);
+            return (code >= 0 && code < this.firstRowWithCode.length) ? this.firstRowWithCode[code] : -1;
+        }
+
+        Object key = Column.getKeyOfText(value);
+        if(this.firstRowWithLongKey != null){
+            return (key instanceof Long longKey) ? this.firstRowWithLongKey.get(longKey) : -1;
+        }
+
+        Integer firstRow = this.firstRowWithKey.get(Arrays.asList(key));
+        return (firstRow == null) ? -1 : firstRow;
+    }
+
+    /**
+     * @param row A row returned by {@link #getFirstMatchingRow(DataTable, int, int[])} or by this method.
+     * @return The next row of this table with the same key, or -1 if that was the last one.
+     */
+    public int getNextMatchingRow(final int row){
+        return this.nextRowWithSameKey[row];
+    }
+
+    /**
+     * @return For each row, the next row with the same key, or -1. This is all it takes to {@link #JoinHashTable(DataTable, int[], int[]) rebuild}
+     * the hash table later. Don't change it.
+     */
+    int[] getNextRowsWithSameKey(){
+        return this.nextRowWithSameKey;
+    }
+}
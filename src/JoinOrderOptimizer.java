@@ -0,0 +1,156 @@
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+/**
+ * Picks the order to run a chain of natural joins in. Natural joins can be regrouped and swapped around freely without changing the result
+ * (and so can cross products of tables that have no column names in common, since those are natural joins too), so a chain like
+ * "A * B * C * D" is really just a set of tables to join, and the {@link CostModel} decides which pairs to join first.
+ * <p>
+ * Up to {@link #MAXIMUM_TABLES_FOR_DYNAMIC_PROGRAMMING} tables, every possible join tree is considered (dynamic programming over subsets of tables).
+ * Beyond that there are far too many trees, so the two inputs whose join is expected to be the smallest get joined first, over and over.
+ */
+public class JoinOrderOptimizer{
+    public static final int MAXIMUM_TABLES_FOR_DYNAMIC_PROGRAMMING = 10;
+
+    private final QueryOptimizer queryOptimizer;
+    private final CostModel      costModel;
+
+    private record JoinTree(PlanNode plan, CostModel.Estimate estimate, double cost){
+    }
+
+    /**
+     * @param queryOptimizer Used to figure out the columns of each input.
+     * @param costModel      Used to compare join orders.
+     */
+    public JoinOrderOptimizer(final QueryOptimizer queryOptimizer, final CostModel costModel){
+        this.queryOptimizer = queryOptimizer;
+        this.costModel = costModel;
+    }
+
+    /**
+     * @param plan The plan whose join chains should be reordered. It is not modified.
+     * @return A plan with the same result (same columns in the same order) where every chain of three or more joins runs in the cheapest order found.
+     */
+    public PlanNode reorderJoins(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        ArrayList<PlanNode> newChildren = new ArrayList<>(2);
+        for(PlanNode child : plan.getChildren()){
+            newChildren.add(this.reorderJoins(child));
+        }
+        PlanNode newPlan = QueryOptimizer.withChildren(plan, newChildren);
+
+        if(!this.isReorderableJoin(newPlan)){
+            return newPlan;
+        }
+
+        ArrayList<PlanNode> tables = new ArrayList<>();
+        this.collectJoinedTables(newPlan, tables);
+        if(tables.size() < 3){
+            return newPlan;
+        }
+
+        JoinTree bestTree = (tables.size() <= MAXIMUM_TABLES_FOR_DYNAMIC_PROGRAMMING) ? this.findBestJoinTree(tables) : this.findGreedyJoinTree(tables);
+
+        // A different join order puts the columns in a different order, so put them back the way the query said.
+        List<String> originalColumns = Arrays.asList(this.queryOptimizer.getColumnNames(newPlan));
+        PlanNode reorderedPlan = bestTree.plan();
+        if(!originalColumns.equals(Arrays.asList(this.queryOptimizer.getColumnNames(reorderedPlan)))){
+            reorderedPlan = new PlanNode.Project(originalColumns, reorderedPlan, false);
+        }
+
+        return (this.costModel.estimateCost(reorderedPlan) < this.costModel.estimateCost(newPlan)) ? reorderedPlan : newPlan;
+    }
+
+    private boolean isReorderableJoin(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        if(plan instanceof PlanNode.Join){
+            return true;
+        }
+        if(plan instanceof PlanNode.CrossProduct crossProduct){
+            return DataTable.getCommonElementsInArrays(this.queryOptimizer.getColumnNames(crossProduct.left()), this.queryOptimizer.getColumnNames(crossProduct.right())).length == 0;
+        }
+
+        return false;
+    }
+
+    private void collectJoinedTables(final PlanNode plan, final List<PlanNode> tables) throws DataFormatException, FileNotFoundException{
+        if(this.isReorderableJoin(plan)){
+            for(PlanNode child : plan.getChildren()){
+                this.collectJoinedTables(child, tables);
+            }
+        }
+        else{
+            tables.add(plan);
+        }
+    }
+
+    /**
+     * Dynamic programming over every subset of the tables: the best tree for a subset is the cheapest way of joining the best trees
+     * of two halves of it. Which side of a join is which doesn't matter (the join engine builds on the smaller side anyway),
+     * so the half with the lowest-numbered table is always the left one.
+     */
+    private JoinTree findBestJoinTree(final List<PlanNode> tables) throws DataFormatException, FileNotFoundException{
+        JoinTree[] bestTreeForSubset = new JoinTree[1 << tables.size()];
+        for(int i = 0; i < tables.size(); i++){
+            bestTreeForSubset[1 << i] = new JoinTree(tables.get(i), this.costModel.estimate(tables.get(i)), 0);
+        }
+
+        for(int subset = 1; subset < bestTreeForSubset.length; subset++){
+            if(Integer.bitCount(subset) < 2){
+                continue;
+            }
+
+            int lowestTable = Integer.lowestOneBit(subset);
+            for(int leftSubset = (subset - 1) & subset; leftSubset > 0; leftSubset = (leftSubset - 1) & subset){
+                if((leftSubset & lowestTable) == 0){
+                    continue;
+                }
+
+                JoinTree joinedTree = this.join(bestTreeForSubset[leftSubset], bestTreeForSubset[subset ^ leftSubset]);
+                if(bestTreeForSubset[subset] == null || joinedTree.cost() < bestTreeForSubset[subset].cost()){
+                    bestTreeForSubset[subset] = joinedTree;
+                }
+            }
+        }
+
+        return bestTreeForSubset[bestTreeForSubset.length - 1];
+    }
+
+    /**
+     * Greedy operator ordering: keep joining whichever two inputs make the smallest result until only one is left.
+     */
+    private JoinTree findGreedyJoinTree(final List<PlanNode> tables) throws DataFormatException, FileNotFoundException{
+        ArrayList<JoinTree> trees = new ArrayList<>(tables.size());
+        for(PlanNode table : tables){
+            trees.add(new JoinTree(table, this.costModel.estimate(table), 0));
+        }
+
+        while(trees.size() > 1){
+            JoinTree bestJoinedTree = null;
+            int bestLeft = -1;
+            int bestRight = -1;
+
+            for(int i = 0; i < trees.size(); i++){
+                for(int j = i + 1; j < trees.size(); j++){
+                    JoinTree joinedTree = this.join(trees.get(i), trees.get(j));
+                    if(bestJoinedTree == null || joinedTree.estimate().rowCount() < bestJoinedTree.estimate().rowCount()){
+                        bestJoinedTree = joinedTree;
+                        bestLeft = i;
+                        bestRight = j;
+                    }
+                }
+            }
+
+            trees.remove(bestRight); // The right one first, since it's after the left one and removing it doesn't shift the left one
+            trees.set(bestLeft, bestJoinedTree);
+        }
+
+        return trees.get(0);
+    }
+
+    private JoinTree join(final JoinTree left, final JoinTree right){
+        CostModel.Estimate estimate = this.costModel.estimateNaturalJoin(left.estimate(), right.estimate());
+        return new JoinTree(new PlanNode.Join(left.plan(), right.plan()), estimate, left.cost() + right.cost() + estimate.rowCount());
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * A column of whole numbers, some of which are too big for an int.
+ */
+public final class LongColumn extends Column{
+    private final long[] values;
+
+    /**
+     * @param values The values. The array is kept, not copied, so don't change it afterwards.
+     */
+    public LongColumn(final long[] values){
+        this.values = values;
+    }
+
+    /**
+     * @return The values themselves, for the loops {@link PredicateCompiler} generates. Don't change them.
+     */
+    long[] getValues(){
+        return this.values;
+    }
+
+    @Override
+    public Type getType(){
+        return Type.LONG;
+    }
+
+    @Override
+    public int size(){
+        return this.values.length;
+    }
+
+    @Override
+    public long getMemoryUsage(){
+        return (long) this.values.length * Long.BYTES;
+    }
+
+    @Override
+    public long getLong(final int row){
+        return this.values[row];
+    }
+
+    @Override
+    public double getDouble(final int row){
+        return this.values[row];
+    }
+
+    @Override
+    public String getString(final int row){
+        return Long.toString(this.values[row]);
+    }
+
+    @Override
+    public Object getKey(final int row){
+        return this.values[row];
+    }
+
+    @Override
+    public long getFingerprint(final int row){
+        return mix(this.values[row]);
+    }
+
+    @Override
+    public Column gather(final int[] rows){
+        long[] newValues = new long[rows.length];
+        for(int i = 0; i < rows.length; i++){
+            newValues[i] = this.values[rows[i]];
+        }
+
+        return new LongColumn(newValues);
+    }
+
+    @Override
+    protected int[] getRowsWhereCompared(final String operator, final String comparedValue, final int[] rows){
+        int[] selectedRows = new int[rows.length];
+        int numberOfSelectedRows = 0;
+
+        switch(operator){
+            case DataTable.GREATER_THAN -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(this.values[row] > comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.GREATER_THAN_OR_EQUAL -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(this.values[row] >= comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.LESS_THAN -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(this.values[row] < comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.LESS_THAN_OR_EQUAL -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(this.values[row] <= comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.EQUALS -> {
+                if(getKeyOfText(comparedValue) instanceof Long comparedLong){
+                    long comparedPrimitive = comparedLong;
+                    for(int row : rows){
+                        if(this.values[row] == comparedPrimitive){
+                            selectedRows[numberOfSelectedRows++] = row;
+                        }
+                    }
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown comparison operator " + operator + ".");
+        }
+
+        return trim(selectedRows, numberOfSelectedRows);
+    }
+}
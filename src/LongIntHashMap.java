@@ -0,0 +1,105 @@
+/**
+ * A hash map from long to int that doesn't box anything: keys and values live in two flat arrays (open addressing with linear probing).
+ * Used by {@link JoinHashTable} when the join key is a single whole-number column, which is the common case and the one where a
+ * {@code HashMap<Long, Integer>} spends most of its time allocating.
+ */
+public final class LongIntHashMap{
+    /**
+     * What {@link #get(long)} returns for a key that isn't in the map.
+     */
+    public static final int NO_VALUE = -1;
+
+    private long[]    keys;
+    private int[]     values;
+    private boolean[] isSlotUsed;
+    private int       size = 0;
+
+    /**
+     * @param expectedSize How many keys are going to be put in, so the map doesn't have to grow on the way.
+     */
+    public LongIntHashMap(final int expectedSize){
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1; // A power of two, at most half full
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.isSlotUsed = new boolean[capacity];
+    }
+
+    public int size(){
+        return this.size;
+    }
+
+    /**
+     * @return The value the key had before, or {@link #NO_VALUE} if it wasn't in the map.
+     */
+    public int put(final long key, final int value){
+        if((this.size + 1) * 2 > this.keys.length){
+            this.grow();
+        }
+
+        int slot = this.findSlot(key);
+        if(this.isSlotUsed[slot]){
+            int previousValue = this.values[slot];
+            this.values[slot] = value;
+            return previousValue;
+        }
+
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.isSlotUsed[slot] = true;
+        this.size++;
+        return NO_VALUE;
+    }
+
+    /**
+     * @return The value for the key, or {@link #NO_VALUE} if it isn't in the map.
+     */
+    public int get(final long key){
+        int slot = this.findSlot(key);
+        return this.isSlotUsed[slot] ? this.values[slot] : NO_VALUE;
+    }
+
+    /**
+     * @return The slot the key is in, or the empty slot where it would go.
+     */
+    private int findSlot(final long key){
+        int mask = this.keys.length - 1;
+        int slot = hash(key) & mask;
+        while(this.isSlotUsed[slot] && this.keys[slot] != key){
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private void grow(){
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        boolean[] oldIsSlotUsed = this.isSlotUsed;
+
+        this.keys = new long[oldKeys.length * 2];
+        this.values = new int[oldKeys.length * 2];
+        this.isSlotUsed = new boolean[oldKeys.length * 2];
+        for(int i = 0; i < oldKeys.length; i++){
+            if(oldIsSlotUsed[i]){
+                int slot = this.findSlot(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+                this.isSlotUsed[slot] = true;
+            }
+        }
+    }
+
+    /**
+     * Mixes the bits of the key (the finalizer of MurmurHash3), so that keys like 1, 2, 3 don't all land next to each other.
+     */
+    private static int hash(final long key){
+        long mixed = key;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xff51afd7ed558ccdL;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xc4ceb9fe1a85ec53L;
+        mixed ^= mixed >>> 33;
+
+        return (int) mixed;
+    }
+}
@@ -1,7 +1,19 @@
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.Scanner;
 import java.util.zip.DataFormatException;
@@ -9,13 +21,176 @@ import java.util.zip.DataFormatException;
 public class Main{
     public static final String MINUS         = "-";
     public static final String UNION         = "U";
+    public static final String BAG_UNION     = "U_ALL";
     public static final String INTERSECT     = "INTE";
     public static final String JOIN          = "*";
     public static final String SELECT        = "SELE";
     public static final String PROJECT       = "PROJ";
+    public static final String BAG_PROJECT   = "PROJ_ALL";
+    public static final String AGGREGATE     = "AGGR";
     public static final String CROSS_PRODUCT = "X";
 
+    /**
+     * Pass this to stream every result straight into RAoutput.csv a batch at a time, instead of building each one in memory and printing it.
+     */
+    public static final String STREAM_OPTION = "--stream";
+
+    /**
+     * Pass this to load tables from their binary caches (see {@link TableCache}), building the caches on the first run.
+     */
+    public static final String CACHE_OPTION = "--cache";
+
+    /**
+     * Pass this followed by table names (like {@code --convert ACTORS MOVIES}) to build those tables' caches ahead of time, without running any queries.
+     */
+    public static final String CONVERT_OPTION = "--convert";
+
+    /**
+     * Pass this followed by columns of tables (like {@code --index Play.MNO Play.Payment=SORTED}) to build {@link TableIndex indexes} on them and
+     * declare them, so they get used from then on. An index is a hash index unless it says otherwise.
+     */
+    public static final String INDEX_OPTION = "--index";
+
+    /**
+     * Pass this followed by a directory (like {@code --generate big --rows=1000000 --skew=0.8}) to have a {@link DataGenerator} write ACTORS, MOVIES
+     * and Play tables of that size to it.
+     */
+    public static final String GENERATE_OPTION = "--generate";
+
+    /**
+     * Pass this (along with any options of {@link Benchmarks}) to benchmark the operators and the queries of RAqueries.txt on the tables in the
+     * working directory.
+     */
+    public static final String BENCHMARK_OPTION = "--benchmark";
+
+    /**
+     * Pass this with a number of megabytes (like {@code --catalog-budget=512}) to cap how much memory the {@link TableCatalog} keeps tables in.
+     */
+    public static final String CATALOG_BUDGET_OPTION = "--catalog-budget=";
+
+    /**
+     * Pass this with a number of megabytes (like {@code --query-memory=64}) to cap how much each query's joins, cross products, MINUSes and
+     * INTERSECTs can buffer with {@value #STREAM_OPTION} before they spill to disk. It's a quarter of the heap otherwise.
+     */
+    public static final String QUERY_MEMORY_OPTION = "--query-memory=";
+
+    /**
+     * Pass this to have the {@link TableCatalog} drop its biggest tables first when it runs out of room, instead of the least recently used ones.
+     */
+    public static final String EVICT_LARGEST_OPTION = "--evict-largest";
+
+    /**
+     * Pass this to print the hit and miss counts of the {@link TableCatalog} and the {@link SubplanCache} after the last query.
+     */
+    public static final String CATALOG_STATISTICS_OPTION = "--catalog-stats";
+
+    /**
+     * Pass this with a number of threads (like {@code --threads=8}) to cap how many cores a query runs on. It's all of them otherwise, and 1 runs everything on one thread.
+     */
+    public static final String THREADS_OPTION = "--threads=";
+
+    /**
+     * Pass this with a number of threads (like {@code --batch-threads=4}) to cap how many queries of the batch run at the same time.
+     * It's one per core otherwise.
+     */
+    public static final String BATCH_THREADS_OPTION = "--batch-threads=";
+
+    /**
+     * Pass this with a number of rows (like {@code --console-rows=50}) to cap how many rows of each result get printed. RAoutput.csv still gets all of them.
+     */
+    public static final String CONSOLE_ROWS_OPTION = "--console-rows=";
+
+    /**
+     * How many rows of each result get printed unless told otherwise.
+     */
+    public static final int DEFAULT_CONSOLE_ROWS = 1000;
+
+    /**
+     * Pass this to also write each result to RAoutput.bin, in the format of {@link BinaryResultSink}. Queries that fail are left out of it.
+     */
+    public static final String BINARY_OPTION = "--binary";
+
+    /**
+     * Pass this to keep running after the batch, and keep the results up to date as rows get appended to the tables (see {@link TableWatcher}).
+     * The changes get added to RAoutput.csv as they come.
+     */
+    public static final String WATCH_OPTION = "--watch";
+
+    /**
+     * Pass this with a port (like {@code --serve=4700}) to run a {@link QueryServer} on it, instead of the batch. The queries of RAqueries.txt
+     * (if there is one) get run once first to warm it up. {@value #BATCH_THREADS_OPTION} caps how many queries it runs at the same time.
+     */
+    public static final String SERVE_OPTION = "--serve=";
+
+    /**
+     * Pass this with a number of queries (like {@code --server-queue=256}) to change how many queries can wait for the {@link QueryServer}
+     * to get to them before it starts turning them away.
+     */
+    public static final String SERVER_QUEUE_OPTION = "--server-queue=";
+
+    /**
+     * Pass this to have PROJ keep duplicate rows, like PROJ_ALL does, instead of dropping them.
+     */
+    public static final String BAG_PROJECTIONS_OPTION = "--bag-projections";
+
+    /**
+     * Pass this to have U keep duplicate rows, like U_ALL does, instead of dropping them.
+     */
+    public static final String BAG_UNIONS_OPTION = "--bag-unions";
+
+    /**
+     * Pass this to also write the plan of each EXPLAIN (or EXPLAIN ANALYZE) query to RAexplain.json, as {@link QueryProfiler.OperatorProfile#toJSON() JSON},
+     * one plan per line.
+     */
+    public static final String EXPLAIN_JSON_OPTION = "--explain-json";
+
+    /**
+     * What a query that failed gets in RAoutput.csv instead of its result, followed by what went wrong.
+     */
+    public static final String ERROR_PREFIX = "Error: ";
+
     public static void main(String[] args) throws FileNotFoundException{
+        if(args.length > 0 && args[0].equals(CONVERT_OPTION)){
+            convertTables(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if(args.length > 0 && args[0].equals(INDEX_OPTION)){
+            createIndexes(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if(args.length > 1 && args[0].equals(GENERATE_OPTION)){
+            generateTables(new File(args[1]), Arrays.copyOfRange(args, 2, args.length));
+            return;
+        }
+        if(args.length > 0 && args[0].equals(BENCHMARK_OPTION)){
+            configureCatalog(args);
+            configureParallelism(args);
+            try{
+                Benchmarks.run(Arrays.copyOfRange(args, 1, args.length));
+            }
+            catch(DataFormatException | IOException exception){
+                System.out.println("Couldn't benchmark: " + getErrorMessage(exception));
+            }
+            return;
+        }
+
+        if(args.length > 0 && args[0].startsWith(SERVE_OPTION)){
+            QueryParser.setProjectionsDistinct(!Arrays.asList(args).contains(BAG_PROJECTIONS_OPTION));
+            QueryParser.setUnionsDistinct(!Arrays.asList(args).contains(BAG_UNIONS_OPTION));
+            configureCatalog(args);
+            configureParallelism(args);
+            serve(Integer.parseInt(args[0].substring(SERVE_OPTION.length())), args);
+            return;
+        }
+
+        boolean isStreaming = Arrays.asList(args).contains(STREAM_OPTION);
+        boolean isWatching = Arrays.asList(args).contains(WATCH_OPTION);
+        boolean isUsingTableCache = Arrays.asList(args).contains(CACHE_OPTION);
+        QueryParser.setProjectionsDistinct(!Arrays.asList(args).contains(BAG_PROJECTIONS_OPTION));
+        QueryParser.setUnionsDistinct(!Arrays.asList(args).contains(BAG_UNIONS_OPTION));
+        configureCatalog(args);
+        configureParallelism(args);
+
         File queriesFile = new File("RAqueries.txt");
         if(!queriesFile.exists()){
             System.out.println("The RAQueries.txt file was not found.");
@@ -23,173 +198,307 @@ public class Main{
         }
 
         File outputFile = new File("RAoutput.csv");
-        PrintWriter writer = new PrintWriter(outputFile);
+        FileOutputStream output = new FileOutputStream(outputFile);
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output)));
         writer.print("");
 
+        SubplanCache subplanCache = new SubplanCache();
         try(Scanner queriesScanner = new Scanner(queriesFile)){
             try(Scanner inputScanner = new Scanner(System.in)){
+                ArrayList<String> queries = new ArrayList<>();
                 while(queriesScanner.hasNextLine()){
-                    DataTable result = executeQuery(queriesScanner.nextLine());
-                    System.out.println(result.toString());
-                    System.out.println();
+                    String query = queriesScanner.nextLine();
+                    if(!query.isBlank()){
+                        queries.add(query);
+                    }
+                }
 
-                    writer.write(result.toCSV() + System.lineSeparator());
+                if(isWatching){
+                    new TableWatcher(queries, writer, new PrintWriter(System.out), getNumberOfConsoleRows(args)).run();
+                }
+                else if(isStreaming){
+                    streamQueries(queries, writer, output.getChannel(), outputFile, getQueryMemoryLimit(args));
+                }
+                else{
+                    runQueries(queries, writer, isUsingTableCache, subplanCache, args);
                 }
             }
             catch(IOException e){
                 e.printStackTrace();
             }
+            catch(InterruptedException exception){
+                Thread.currentThread().interrupt();
+            }
         }
         catch(FileNotFoundException exception){
             // This should never happen
         }
-        catch(DataFormatException | IllegalArgumentException exception){
-            System.out.println(exception.getMessage());
-        }
 
         writer.close();
+
+        if(Arrays.asList(args).contains(CATALOG_STATISTICS_OPTION)){
+            System.out.println(TableCatalog.getShared());
+            System.out.println(subplanCache);
+        }
     }
 
     /**
-     * This method is very recursive. It accounts for any number of parentheses, and intelligently ignores whitespace.
+     * Runs the whole batch, printing each query's result (or error) and writing it to the output file in its turn, whichever order they
+     * actually finish in.
      *
-     * @param query The query to run as a single line.
-     * @return A DataTable with the query executed on just the portion passed in as a parameter, which will only occur when there is only one word (being the table name).
-     * @throws DataFormatException
+     * @throws IOException if RAoutput.bin can't be written to.
      */
-    @SuppressWarnings({"DuplicateExpressions", "DuplicatedCode"})
-    public static DataTable executeQuery(String query) throws DataFormatException, FileNotFoundException{
-        if(query.isBlank()){
-            throw new IllegalArgumentException("The query cannot be blank.");
+    private static void runQueries(final List<String> queries, final PrintWriter writer, final boolean isUsingTableCache, final SubplanCache subplanCache,
+                                   final String[] args) throws IOException, InterruptedException{
+        PrintWriter console = new PrintWriter(System.out);
+        int maximumConsoleRows = getNumberOfConsoleRows(args);
+        QueryExecutor executor = new QueryExecutor(isUsingTableCache, TableCatalog.getShared(), subplanCache);
+        try(FileChannel binaryOutput = Arrays.asList(args).contains(BINARY_OPTION) ? FileChannel.open(Path.of("RAoutput.bin"), StandardOpenOption.CREATE,
+                                                                                                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE) : null;
+            PrintWriter explainOutput = Arrays.asList(args).contains(EXPLAIN_JSON_OPTION) ? new PrintWriter(new File("RAexplain.json"), StandardCharsets.UTF_8) : null){
+            new BatchRunner(executor, subplanCache, getNumberOfBatchThreads(args)).run(queries, outcome -> {
+                if(explainOutput != null && outcome.profile() != null){
+                    explainOutput.println(outcome.profile().toJSON());
+                }
+                if(outcome.isSuccessful()){
+                    outcome.result().writeTo(new TextResultSink(console, TextResultSink.ALL_ROWS, maximumConsoleRows));
+                    console.println();
+                    console.println();
+                    outcome.result().writeTo(new CsvResultSink(writer));
+                    writer.write(System.lineSeparator());
+                    if(binaryOutput != null){
+                        outcome.result().writeTo(new BinaryResultSink(binaryOutput));
+                    }
+                }
+                else{
+                    console.println(outcome.getErrorMessage());
+                    console.println();
+                    writer.write(ERROR_PREFIX + outcome.getErrorMessage() + System.lineSeparator());
+                }
+                console.flush();
+            });
         }
+    }
 
-        query = getItemInsideOuterParentheses(query.trim());
+    /**
+     * Streams each query's result straight into the output file, one query after the other. A query that fails partway through has what it
+     * had already written cut back off the file, so it leaves just its error, the same as without streaming. EXPLAIN (and EXPLAIN ANALYZE)
+     * lines write out the plan, just like they do without streaming.
+     *
+     * @param outputChannel The channel of the file the writer writes to, to cut it back with.
+     * @throws IOException if the output file can't be written to.
+     */
+    private static void streamQueries(final List<String> queries, final PrintWriter writer, final FileChannel outputChannel, final File outputFile,
+                                      final long memoryLimit) throws IOException{
+        for(String query : queries){
+            QueryProfiler.ExplainRequest explainRequest = QueryProfiler.ExplainRequest.parse(query);
+            if(explainRequest != null){
+                // A plan is only a few rows, so it gets explained (and analyzed, if asked) the same way as without --stream
+                try{
+                    DataTable explanation = QueryProfiler.explain(explainRequest, new QueryExecutor(false));
+                    explanation.writeTo(new CsvResultSink(writer));
+                    writer.write(System.lineSeparator());
+                    System.out.println("Explained " + explainRequest.query() + " in " + outputFile + ".");
+                }
+                catch(DataFormatException | FileNotFoundException | RuntimeException exception){
+                    writer.write(ERROR_PREFIX + getErrorMessage(exception) + System.lineSeparator());
+                    System.out.println(getErrorMessage(exception));
+                }
+                continue;
+            }
 
-        String firstLetter = query.substring(0, 1);
-        if(firstLetter.equals(MINUS) || firstLetter.equals(UNION) || firstLetter.equals(JOIN) || firstLetter.equals(CROSS_PRODUCT)){
-            //noinspection GrazieInspection
-            throw new IllegalArgumentException("The first item cannot be a two-table operator. It can't be " + firstLetter + ", which is what you put.");
-        }
+            PlanNode plan;
+            try{
+                plan = new QueryOptimizer().optimize(QueryParser.parse(query));
+            }
+            catch(DataFormatException | FileNotFoundException | RuntimeException exception){
+                writer.write(ERROR_PREFIX + getErrorMessage(exception) + System.lineSeparator());
+                System.out.println(getErrorMessage(exception));
+                continue;
+            }
 
-        //noinspection SwitchStatementWithoutDefaultBranch
-        switch(query.substring(0, 4)){
-            case SELECT:
-                return executeQuery(getItemInsideOuterParentheses(query.substring(query.indexOf("}") + 1))).selectWhere(getItemInsideOuterCurlyBraces(query.substring(query.indexOf("{"), query.indexOf("}") + 1)));
-            case PROJECT:
-                return executeQuery(getItemInsideOuterParentheses(query.substring(query.indexOf("}") + 1))).project(getItemInsideOuterCurlyBraces(query.substring(query.indexOf("{"), query.indexOf("}") + 1)).split(","));
+            writer.flush();
+            long startOfResult = outputChannel.position();
+            try{
+                long numberOfRows = new StreamingExecutor(StreamingExecutor.DEFAULT_BATCH_SIZE, memoryLimit).executeToCSV(plan, writer);
+                writer.write(System.lineSeparator());
+                System.out.println("Streamed " + numberOfRows + " rows of " + query.trim() + " to " + outputFile + ".");
+            }
+            catch(DataFormatException | RuntimeException exception){
+                // Whatever made it out before the failure (some of which may still be buffered) goes, the file position along with it
+                writer.flush();
+                outputChannel.truncate(startOfResult);
+                writer.write(ERROR_PREFIX + getErrorMessage(exception) + System.lineSeparator());
+                System.out.println(getErrorMessage(exception));
+            }
         }
+    }
 
-        int firstOperator = Integer.MAX_VALUE;
-        String firstOperatorName = null;
+    /**
+     * @return What went wrong, in a form that's fit to print.
+     */
+    public static String getErrorMessage(final Exception exception){
+        return (exception.getMessage() != null) ? exception.getMessage() : exception.toString();
+    }
 
-        if(query.contains(MINUS)){
-            firstOperator = query.indexOf(MINUS);
-            firstOperatorName = MINUS;
-        }
-        if(query.contains(UNION) && (query.indexOf(UNION) < firstOperator)){
-            firstOperator = query.indexOf(UNION);
-            firstOperatorName = UNION;
-        }
-        if(query.contains(JOIN) && (query.indexOf(JOIN) < firstOperator)){
-            firstOperator = query.indexOf(JOIN);
-            firstOperatorName = JOIN;
-        }
-        if(query.contains(CROSS_PRODUCT) && (query.indexOf(CROSS_PRODUCT) < firstOperator)){
-            firstOperator = query.indexOf(CROSS_PRODUCT);
-            firstOperatorName = CROSS_PRODUCT;
+    private static int getNumberOfConsoleRows(final String[] args){
+        for(String arg : args){
+            if(arg.startsWith(CONSOLE_ROWS_OPTION)){
+                return Integer.parseInt(arg.substring(CONSOLE_ROWS_OPTION.length()));
+            }
         }
-        if(query.contains(INTERSECT) && (query.indexOf(INTERSECT) < firstOperator)){
-            firstOperator = query.indexOf(INTERSECT);
-            firstOperatorName = INTERSECT;
+
+        return DEFAULT_CONSOLE_ROWS;
+    }
+
+    private static int getNumberOfBatchThreads(final String[] args){
+        for(String arg : args){
+            if(arg.startsWith(BATCH_THREADS_OPTION)){
+                return Integer.parseInt(arg.substring(BATCH_THREADS_OPTION.length()));
+            }
         }
 
-        if(firstOperatorName != null){
-            String beforeOperator = query.substring(0, firstOperator);
-            String afterOperator = query.substring(firstOperator + 1);
+        return Runtime.getRuntime().availableProcessors();
+    }
 
-            // Since “INTE“ is not a single character, it won't work in the switch above.
-            return switch(firstOperatorName){
-                case MINUS -> executeQuery(beforeOperator).minus(executeQuery(afterOperator));
-                case UNION -> executeQuery(beforeOperator).unionWith(executeQuery(afterOperator));
-                case JOIN -> executeQuery(beforeOperator).joinWith(executeQuery(afterOperator));
-                case INTERSECT -> executeQuery(beforeOperator).intersectWith(executeQuery(afterOperator));
-                case CROSS_PRODUCT -> executeQuery(beforeOperator).crossWith(executeQuery(afterOperator));
-                default -> throw new UnsupportedOperationException("IDK man, the compiler forced me to put this in here.");
-            };
+    private static long getQueryMemoryLimit(final String[] args){
+        for(String arg : args){
+            if(arg.startsWith(QUERY_MEMORY_OPTION)){
+                return Long.parseLong(arg.substring(QUERY_MEMORY_OPTION.length())) * 1024 * 1024;
+            }
         }
 
-        // If none of the above are satisfied, then we are at a raw table name, so we need to fetch that.
-        String tableName = getItemInsideOuterParentheses(query);
-        if(tableName.contains(")") || tableName.contains(DataTable.EQUALS) || tableName.contains(DataTable.LESS_THAN) || tableName.contains(DataTable.GREATER_THAN) || tableName.contains(MINUS) || tableName.contains(UNION) || tableName.contains(
-                INTERSECT) || tableName.contains(JOIN) || tableName.contains(SELECT) || tableName.contains(PROJECT) || tableName.contains(CROSS_PRODUCT)){
-            throw new DataFormatException(
-                    "The string parsing algorithm was done incorrectly. Please try a simpler query so that the developer does not lose points on this very hard project. Thanks much. The algorithm thinks the table name is " + "\"" + tableName +
-                    "\".");
+        return MemoryBudget.DEFAULT_LIMIT;
+    }
+
+    private static void configureParallelism(final String[] args){
+        for(String arg : args){
+            if(arg.startsWith(THREADS_OPTION)){
+                Morsels.setParallelism(Integer.parseInt(arg.substring(THREADS_OPTION.length())));
+            }
         }
+    }
 
-        File tableFile = new File(tableName + ".txt");
-        if(!tableFile.exists()){
-            throw new FileNotFoundException("Bruh, please state a table that actually exists, as " + tableFile + ".txt doesn't. The file must be of the extension \".txt\" (all lowercase).");
+    private static void configureCatalog(final String[] args){
+        long memoryBudget = TableCatalog.DEFAULT_MEMORY_BUDGET;
+        for(String arg : args){
+            if(arg.startsWith(CATALOG_BUDGET_OPTION)){
+                memoryBudget = Long.parseLong(arg.substring(CATALOG_BUDGET_OPTION.length())) * 1024 * 1024;
+            }
         }
 
-        return new DataTable(tableFile);
+        boolean isEvictingLargest = Arrays.asList(args).contains(EVICT_LARGEST_OPTION);
+        TableCatalog.configureShared(memoryBudget, isEvictingLargest ? TableCatalog.EvictionPolicy.LARGEST_FIRST : TableCatalog.EvictionPolicy.LEAST_RECENTLY_USED);
+    }
+
+    /**
+     * Parses the query into a plan, optimizes it, and runs it. If you're going to run the same query more than once,
+     * hang on to the result of {@link QueryOptimizer#optimize(PlanNode)} and hand it to a {@link QueryExecutor} instead, so it only gets planned once.
+     * A query starting with EXPLAIN (or EXPLAIN ANALYZE) gives back its plan instead, like {@link QueryProfiler#explain(QueryProfiler.ExplainRequest, QueryExecutor)}.
+     *
+     * @param query The query to run as a single line.
+     * @return A DataTable with the result of the query.
+     * @throws DataFormatException   if a table file is empty or an operator trips over the data.
+     * @throws FileNotFoundException if the query mentions a table that doesn't have a file.
+     */
+    public static DataTable executeQuery(String query) throws DataFormatException, FileNotFoundException{
+        return executeQuery(query, false);
     }
 
-    public static String getItemInsideOuterParentheses(String query){
-        query = query.trim();
-        if(query.charAt(0) != '('){
-//            throw new IllegalArgumentException("This query does not start with a parenthesis.");
-            return query;
+    /**
+     * @param useTableCache Whether to load the tables from their binary caches (building any that are missing or out of date).
+     * @see #executeQuery(String)
+     */
+    public static DataTable executeQuery(String query, boolean useTableCache) throws DataFormatException, FileNotFoundException{
+        QueryProfiler.ExplainRequest explainRequest = QueryProfiler.ExplainRequest.parse(query);
+        if(explainRequest != null){
+            return QueryProfiler.explain(explainRequest, new QueryExecutor(useTableCache));
         }
 
-        int parenthesisOffset = 0;
-        for(int i = 0; i < query.length(); i++){
-            if(query.charAt(i) == '('){
-                parenthesisOffset++;
-            }
-            else if(query.charAt(i) == ')'){
-                parenthesisOffset--;
-            }
+        return new QueryExecutor(useTableCache).execute(new QueryOptimizer().optimize(QueryParser.parse(query)));
+    }
 
-            if(parenthesisOffset == 0){
-                return getItemInsideOuterParentheses(query.substring(1, i));
+    /**
+     * Builds the binary cache of each of the given tables, so that even the first query on them skips the parsing.
+     */
+    private static void convertTables(final String[] tableNames){
+        for(String tableName : tableNames){
+            try{
+                File tableFile = QueryExecutor.getTableFile(tableName);
+                int numberOfRows = TableCache.convert(tableFile);
+                System.out.println("Cached " + numberOfRows + " rows of " + tableFile + " in " + TableCache.getCacheFile(tableFile) + ".");
+            }
+            catch(DataFormatException | IOException exception){
+                System.out.println("Couldn't cache " + tableName + ": " + exception.getMessage());
             }
         }
+    }
 
-        if(parenthesisOffset > 0){
-            throw new IllegalArgumentException("There are more opening parentheses than closing parentheses in this query substring.");
-        }
-        else{
-            throw new UnsupportedOperationException("This should never have happened, definitely sus.");
+    /**
+     * Builds and declares an index for each of the given columns, written like "Play.MNO" for a hash index or "Play.Payment=SORTED".
+     */
+    private static void createIndexes(final String[] indexedColumns){
+        for(String indexedColumn : indexedColumns){
+            try{
+                int endOfTableName = indexedColumn.indexOf('.');
+                if(endOfTableName < 0){
+                    throw new IllegalArgumentException("Say which table the column is in, like Play.MNO.");
+                }
+
+                String[] columnAndKind = indexedColumn.substring(endOfTableName + 1).split("=", 2);
+                String kind = (columnAndKind.length == 2) ? columnAndKind[1] : TableIndex.Kind.HASH.name();
+                File tableFile = QueryExecutor.getTableFile(indexedColumn.substring(0, endOfTableName));
+                TableIndex index = TableIndex.declare(tableFile, TableIndex.Declaration.parse(kind + " " + columnAndKind[0]));
+                System.out.println("Built the " + index.getKind() + " index on " + index.getColumnName() + " of " + tableFile + " (" + index.getTable().getRowCount() + " rows).");
+            }
+            catch(DataFormatException | IOException | RuntimeException exception){
+                System.out.println("Couldn't index " + indexedColumn + ": " + exception.getMessage());
+            }
         }
     }
 
-    public static String getItemInsideOuterCurlyBraces(String query){
-        query = query.trim();
-        if(query.charAt(0) != '{'){
-//            throw new IllegalArgumentException("This query does not start with a curly brace.");
-            return query;
+    /**
+     * Runs a query server until the process gets stopped.
+     */
+    private static void serve(final int port, final String[] args){
+        int queueCapacity = QueryServer.DEFAULT_QUEUE_CAPACITY;
+        for(String arg : args){
+            if(arg.startsWith(SERVER_QUEUE_OPTION)){
+                queueCapacity = Integer.parseInt(arg.substring(SERVER_QUEUE_OPTION.length()));
+            }
         }
 
-        int parenthesisOffset = 0;
-        for(int i = 0; i < query.length(); i++){
-            if(query.charAt(i) == '{'){
-                parenthesisOffset++;
-            }
-            else if(query.charAt(i) == '}'){
-                parenthesisOffset--;
-            }
+        try(QueryServer server = new QueryServer(port, getNumberOfBatchThreads(args), queueCapacity)){
+            File queriesFile = new File("RAqueries.txt");
+            if(queriesFile.exists()){
+                List<String> queries = new ArrayList<>();
+                for(String query : Files.readAllLines(queriesFile.toPath(), StandardCharsets.UTF_8)){
+                    if(!query.isBlank()){
+                        queries.add(query.trim());
+                    }
+                }
 
-            if(parenthesisOffset == 0){
-                return getItemInsideOuterCurlyBraces(query.substring(1, i));
+                long start = System.nanoTime();
+                int numberOfQueriesRun = server.warmUp(queries);
+                System.out.printf("Warmed up on %d of the %d queries in %s in %.1f ms.%n", numberOfQueriesRun, queries.size(), queriesFile, (System.nanoTime() - start) / 1e6);
             }
+
+            System.out.println("Serving queries on port " + server.getPort() + " of " + InetAddress.getLoopbackAddress().getHostAddress() + ".");
+            server.run();
         }
+        catch(IOException | RuntimeException exception){
+            System.out.println("Couldn't serve queries: " + getErrorMessage(exception));
+        }
+    }
 
-        if(parenthesisOffset > 0){
-            throw new IllegalArgumentException("There are more opening curly braces than closing braces in this query substring.");
+    private static void generateTables(final File directory, final String[] args){
+        try{
+            DataGenerator generator = DataGenerator.fromArguments(args);
+            generator.writeTables(directory);
+            System.out.println("Wrote " + generator + " to " + directory + ".");
         }
-        else{
-            throw new UnsupportedOperationException("Oh noes, this is bad because this is a logically impossible case.");
+        catch(IOException | RuntimeException exception){
+            System.out.println("Couldn't generate the tables: " + getErrorMessage(exception));
         }
     }
 }
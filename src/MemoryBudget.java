@@ -0,0 +1,98 @@
+/**
+ * How much memory one query's blocking operators (hash join build sides, the sets of MINUS and INTERSECT, the right side of a cross product)
+ * can hold on to between them. An operator reserves what it's about to buffer, and when the reservation doesn't go through, it spills to
+ * {@link SpillFile}s instead of buffering any more. So a query's memory use stays around the budget (plus a batch or so per operator),
+ * however big its inputs are.
+ * <p>
+ * The sizes are {@link DataTable#getMemoryUsage() estimates}, not measurements, so leave some headroom between the budget and the heap.
+ */
+public final class MemoryBudget{
+    /**
+     * Unless told otherwise, a query can use up to a quarter of the heap.
+     */
+    public static final long DEFAULT_LIMIT = Runtime.getRuntime().maxMemory() / 4;
+
+    /**
+     * Roughly what a row costs on top of its values once it's in a hash table or a hash set.
+     */
+    public static final long HASHED_ROW_OVERHEAD = 96;
+
+    private final long limit;
+    private       long reserved       = 0;
+    private       long peakReserved   = 0;
+    private       int  numberOfSpills = 0;
+
+    /**
+     * @param limit How many bytes the query's operators can reserve in total.
+     */
+    public MemoryBudget(final long limit){
+        if(limit < 0){
+            throw new IllegalArgumentException("A memory budget can't be negative, like " + limit + " bytes.");
+        }
+
+        this.limit = limit;
+    }
+
+    /**
+     * @return Whether the bytes were reserved. If not, nothing was, and the caller should spill.
+     */
+    public synchronized boolean tryReserve(final long bytes){
+        if(this.reserved + bytes > this.limit){
+            return false;
+        }
+
+        this.reserved += bytes;
+        this.peakReserved = Math.max(this.peakReserved, this.reserved);
+        return true;
+    }
+
+    /**
+     * Reserves the bytes whether or not they fit, for the rare things that can't be spilled (like a single join key with more rows than the budget).
+     */
+    public synchronized void forceReserve(final long bytes){
+        this.reserved += bytes;
+        this.peakReserved = Math.max(this.peakReserved, this.reserved);
+    }
+
+    public synchronized void release(final long bytes){
+        this.reserved -= bytes;
+    }
+
+    /**
+     * Counts an operator giving up on memory and going to disk, for {@link #toString()}.
+     */
+    public synchronized void recordSpill(){
+        this.numberOfSpills++;
+    }
+
+    public long getLimit(){
+        return this.limit;
+    }
+
+    public synchronized long getReserved(){
+        return this.reserved;
+    }
+
+    /**
+     * @return The most that was ever reserved at once.
+     */
+    public synchronized long getPeakReserved(){
+        return this.peakReserved;
+    }
+
+    public synchronized int getNumberOfSpills(){
+        return this.numberOfSpills;
+    }
+
+    /**
+     * @return What it costs to keep the rows of the table in a hash table.
+     */
+    public static long getHashedSize(final DataTable table){
+        return table.getMemoryUsage() + HASHED_ROW_OVERHEAD * table.getRowCount();
+    }
+
+    @Override
+    public synchronized String toString(){
+        return "Memory budget: " + this.peakReserved + " of " + this.limit + " bytes at the most, " + this.numberOfSpills + " spills.";
+    }
+}
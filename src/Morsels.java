@@ -0,0 +1,200 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits work over the threads of one shared {@link ForkJoinPool}. Big operators cut their rows into morsels of {@link #MORSEL_SIZE} rows,
+ * every worker takes morsels until they run out, and the morsels' results are glued back together in row order, so the result is the
+ * same as doing it all on one thread. {@link QueryExecutor} also uses the pool to run the two sides of a binary operator at the same time.
+ * <p>
+ * If more than one task fails, the exception that gets thrown is always the one from the first task (in order, not in time), which is the
+ * one doing it all on one thread would have run into.
+ */
+public final class Morsels{
+    /**
+     * How many rows each worker takes at a time. Tables with no more rows than this are never split at all.
+     */
+    public static final int MORSEL_SIZE = 1 << 14;
+
+    private static ForkJoinPool pool        = null;
+    private static int          parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The work of one morsel: finding the rows in a range that pass some test.
+     */
+    @FunctionalInterface
+    public interface RowRangeFilter{
+        /**
+         * @return The rows from fromRow (inclusive) to toRow (exclusive) that pass, in ascending order.
+         */
+        int[] getRows(int fromRow, int toRow);
+    }
+
+    /**
+     * The work of one morsel, or one of any other kind of task.
+     */
+    @FunctionalInterface
+    public interface IndexedTask<T>{
+        T run(int index);
+    }
+
+    private Morsels(){
+    }
+
+    public static synchronized int getParallelism(){
+        return parallelism;
+    }
+
+    /**
+     * @param newParallelism How many threads to split work over. 1 does everything on the calling thread.
+     */
+    public static synchronized void setParallelism(final int newParallelism){
+        if(newParallelism < 1){
+            throw new IllegalArgumentException("The parallelism has to be at least 1, not " + newParallelism + ".");
+        }
+
+        if(newParallelism != parallelism && pool != null){
+            pool.shutdown();
+            pool = null;
+        }
+        parallelism = newParallelism;
+    }
+
+    /**
+     * @return The pool, or null if everything should run on the calling thread.
+     */
+    private static synchronized ForkJoinPool getPool(){
+        if(parallelism == 1){
+            return null;
+        }
+        if(pool == null){
+            pool = new ForkJoinPool(parallelism);
+        }
+
+        return pool;
+    }
+
+    /**
+     * @return How many morsels a table with this many rows gets cut into.
+     */
+    public static int getNumberOfMorsels(final int rowCount){
+        return Math.max(1, (rowCount + MORSEL_SIZE - 1) / MORSEL_SIZE);
+    }
+
+    /**
+     * Runs the filter on every morsel of the rows (on all the workers) and puts the rows that passed back together.
+     *
+     * @return Every row that passed, in ascending order.
+     */
+    public static int[] findRows(final int rowCount, final RowRangeFilter filter){
+        int numberOfMorsels = getNumberOfMorsels(rowCount);
+        if(numberOfMorsels == 1){
+            return filter.getRows(0, rowCount);
+        }
+
+        List<int[]> rowsOfEachMorsel = map(numberOfMorsels, morsel -> filter.getRows(morsel * MORSEL_SIZE, Math.min(rowCount, (morsel + 1) * MORSEL_SIZE)));
+
+        int numberOfRows = 0;
+        for(int[] rows : rowsOfEachMorsel){
+            numberOfRows += rows.length;
+        }
+
+        int[] allRows = new int[numberOfRows];
+        int offset = 0;
+        for(int[] rows : rowsOfEachMorsel){
+            System.arraycopy(rows, 0, allRows, offset, rows.length);
+            offset += rows.length;
+        }
+
+        return allRows;
+    }
+
+    /**
+     * Runs the task for every index from 0 to numberOfTasks, on all the workers.
+     *
+     * @return What each task returned, in index order.
+     */
+    public static <T> List<T> map(final int numberOfTasks, final IndexedTask<T> task){
+        ArrayList<Callable<T>> tasks = new ArrayList<>(numberOfTasks);
+        for(int i = 0; i < numberOfTasks; i++){
+            int index = i;
+            tasks.add(() -> task.run(index));
+        }
+
+        try{
+            return invokeAll(tasks);
+        }
+        catch(RuntimeException exception){
+            throw exception;
+        }
+        catch(Exception exception){
+            throw new IllegalStateException("A task that can't throw checked exceptions threw one.", exception);
+        }
+    }
+
+    /**
+     * Runs all the tasks, on all the workers, and waits for every one of them to finish.
+     *
+     * @return What each task returned, in order.
+     * @throws Exception whatever the first task that failed threw (first in the list, not first in time).
+     */
+    public static <T> List<T> invokeAll(final List<Callable<T>> tasks) throws Exception{
+        ArrayList<T> results = new ArrayList<>(tasks.size());
+        ForkJoinPool currentPool = getPool();
+        if(currentPool == null || tasks.size() == 1){
+            for(Callable<T> task : tasks){
+                results.add(task.call());
+            }
+
+            return results;
+        }
+
+        Object[] resultsOfEachTask = new Object[tasks.size()];
+        Throwable[] failures = new Throwable[tasks.size()];
+        ArrayList<RecursiveAction> actions = new ArrayList<>(tasks.size());
+        for(int i = 0; i < tasks.size(); i++){
+            int index = i;
+            actions.add(new RecursiveAction(){
+                @Override
+                protected void compute(){
+                    try{
+                        resultsOfEachTask[index] = tasks.get(index).call();
+                    }
+                    catch(Throwable throwable){
+                        failures[index] = throwable;
+                    }
+                }
+            });
+        }
+
+        if(ForkJoinTask.getPool() == currentPool){
+            ForkJoinTask.invokeAll(actions); // Already one of the workers, so this one helps out instead of sitting there waiting
+        }
+        else{
+            currentPool.invoke(new RecursiveAction(){
+                @Override
+                protected void compute(){
+                    ForkJoinTask.invokeAll(actions);
+                }
+            });
+        }
+
+        for(int i = 0; i < tasks.size(); i++){
+            if(failures[i] instanceof Exception exception){
+                throw exception;
+            }
+            if(failures[i] instanceof Error error){
+                throw error;
+            }
+
+            @SuppressWarnings("unchecked")
+            T result = (T) resultsOfEachTask[i];
+            results.add(result);
+        }
+
+        return results;
+    }
+}
@@ -0,0 +1,233 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * A node in the logical plan of a relational algebra query. {@link QueryParser} builds these once per query, and since every node
+ * is immutable, the same tree can be cached and executed as many times as you like.
+ * Calling toString() on any node gives back a fully parenthesized query that parses to the same tree.
+ */
+public sealed interface PlanNode permits PlanNode.Scan, PlanNode.Select, PlanNode.Project, PlanNode.Join, PlanNode.CrossProduct, PlanNode.Union,
+        PlanNode.Minus, PlanNode.Intersect, PlanNode.EquiJoin, PlanNode.Aggregate{
+
+    /**
+     * @return The inputs of this node, left to right. Empty for a table scan.
+     */
+    List<PlanNode> getChildren();
+
+    /**
+     * Reads a whole table from its file.
+     */
+    record Scan(String tableName) implements PlanNode{
+        @Override
+        public List<PlanNode> getChildren(){
+            return List.of();
+        }
+
+        @Override
+        public String toString(){
+            return this.tableName;
+        }
+    }
+
+    /**
+     * SELE_{condition} input
+     */
+    record Select(String condition, PlanNode input) implements PlanNode{
+        @Override
+        public List<PlanNode> getChildren(){
+            return List.of(this.input);
+        }
+
+        @Override
+        public String toString(){
+            return Main.SELECT + "_{" + this.condition + "} (" + this.input + ")";
+        }
+    }
+
+    /**
+     * PROJ_{columns} input, which drops the rows that are the same as an earlier row in those columns (set semantics), or
+     * PROJ_ALL_{columns} input, which keeps every row (bag semantics). The optimizer's own projections are always the second kind.
+     */
+    record Project(List<String> columns, PlanNode input, boolean isDistinct) implements PlanNode{
+        public Project{
+            columns = List.copyOf(columns);
+        }
+
+        @Override
+        public List<PlanNode> getChildren(){
+            return List.of(this.input);
+        }
+
+        @Override
+        public String toString(){
+            return (this.isDistinct ? Main.PROJECT : Main.BAG_PROJECT) + "_{" + String.join(", ", this.columns) + "} (" + this.input + ")";
+        }
+    }
+
+    /**
+     * AGGR_{groupColumns; aggregates} input, like AGGR_{ANO; SUM(Payment), COUNT(*)} Play. Without the semicolon there are no group columns,
+     * and the aggregates are over the whole input.
+     */
+    record Aggregate(List<String> groupColumns, List<HashAggregator.Aggregate> aggregates, PlanNode input) implements PlanNode{
+        public Aggregate{
+            groupColumns = List.copyOf(groupColumns);
+            aggregates = List.copyOf(aggregates);
+            if(groupColumns.isEmpty() && aggregates.isEmpty()){
+                throw new IllegalArgumentException(Main.AGGREGATE + " needs something to group by or something to compute.");
+            }
+
+            HashSet<String> columnNames = new HashSet<>();
+            for(String columnName : getColumnNames(groupColumns, aggregates)){
+                if(!columnNames.add(columnName)){
+                    throw new IllegalArgumentException("The result of " + Main.AGGREGATE + " would have two columns called " + columnName + ". Name one of them with AS.");
+                }
+            }
+        }
+
+        /**
+         * @return The group columns and then the aggregates' columns.
+         */
+        public List<String> getColumnNames(){
+            return getColumnNames(this.groupColumns, this.aggregates);
+        }
+
+        private static List<String> getColumnNames(final List<String> groupColumns, final List<HashAggregator.Aggregate> aggregates){
+            ArrayList<String> columnNames = new ArrayList<>(groupColumns);
+            for(HashAggregator.Aggregate aggregate : aggregates){
+                columnNames.add(aggregate.outputName());
+            }
+
+            return columnNames;
+        }
+
+        @Override
+        public List<PlanNode> getChildren(){
+            return List.of(this.input);
+        }
+
+        /**
+         * @return What goes between the braces, like "ANO; SUM(Payment), COUNT(*)".
+         */
+        public String getSpecification(){
+            StringJoiner aggregateList = new StringJoiner(", ");
+            for(HashAggregator.Aggregate aggregate : this.aggregates){
+                aggregateList.add(aggregate.toString());
+            }
+
+            return this.groupColumns.isEmpty() ? aggregateList.toString() : String.join(", ", this.groupColumns) + "; " + aggregateList;
+        }
+
+        @Override
+        public String toString(){
+            return Main.AGGREGATE + "_{" + this.getSpecification() + "} (" + this.input + ")";
+        }
+    }
+
+    /**
+     * left * right (natural join)
+     */
+    record Join(PlanNode left, PlanNode right) implements PlanNode{
+        @Override
+        public List<PlanNode> getChildren(){
+            return List.of(this.left, this.right);
+        }
+
+        @Override
+        public String toString(){
+            return "(" + this.left + ") " + Main.JOIN + " (" + this.right + ")";
+        }
+    }
+
+    /**
+     * left X right
+     */
+    record CrossProduct(PlanNode left, PlanNode right) implements PlanNode{
+        @Override
+        public List<PlanNode> getChildren(){
+            return List.of(this.left, this.right);
+        }
+
+        @Override
+        public String toString(){
+            return "(" + this.left + ") " + Main.CROSS_PRODUCT + " (" + this.right + ")";
+        }
+    }
+
+    /**
+     * left U right, which drops the rows that are the same as an earlier row (set semantics), or
+     * left U_ALL right, which keeps every row of both sides (bag semantics).
+     */
+    record Union(PlanNode left, PlanNode right, boolean isDistinct) implements PlanNode{
+        @Override
+        public List<PlanNode> getChildren(){
+            return List.of(this.left, this.right);
+        }
+
+        @Override
+        public String toString(){
+            return "(" + this.left + ") " + (this.isDistinct ? Main.UNION : Main.BAG_UNION) + " (" + this.right + ")";
+        }
+    }
+
+    /**
+     * left - right
+     */
+    record Minus(PlanNode left, PlanNode right) implements PlanNode{
+        @Override
+        public List<PlanNode> getChildren(){
+            return List.of(this.left, this.right);
+        }
+
+        @Override
+        public String toString(){
+            return "(" + this.left + ") " + Main.MINUS + " (" + this.right + ")";
+        }
+    }
+
+    /**
+     * left INTE right
+     */
+    record Intersect(PlanNode left, PlanNode right) implements PlanNode{
+        @Override
+        public List<PlanNode> getChildren(){
+            return List.of(this.left, this.right);
+        }
+
+        @Override
+        public String toString(){
+            return "(" + this.left + ") " + Main.INTERSECT + " (" + this.right + ")";
+        }
+    }
+
+    /**
+     * A cross product that only keeps the rows where each left key column equals the matching right key column.
+     * The parser never makes these; {@link QueryOptimizer} turns SELE_{a = b} over a cross product into one.
+     * It prints as the selection it came from.
+     */
+    record EquiJoin(PlanNode left, PlanNode right, List<String> leftKeyColumns, List<String> rightKeyColumns) implements PlanNode{
+        public EquiJoin{
+            leftKeyColumns = List.copyOf(leftKeyColumns);
+            rightKeyColumns = List.copyOf(rightKeyColumns);
+            if(leftKeyColumns.size() != rightKeyColumns.size() || leftKeyColumns.isEmpty()){
+                throw new IllegalArgumentException("An equi-join needs the same (non-zero) number of key columns on both sides.");
+            }
+        }
+
+        @Override
+        public List<PlanNode> getChildren(){
+            return List.of(this.left, this.right);
+        }
+
+        @Override
+        public String toString(){
+            String result = "(" + this.left + ") " + Main.CROSS_PRODUCT + " (" + this.right + ")";
+            for(int i = this.leftKeyColumns.size() - 1; i >= 0; i--){
+                result = Main.SELECT + "_{" + this.leftKeyColumns.get(i) + " " + DataTable.EQUALS + " " + this.rightKeyColumns.get(i) + "} (" + result + ")";
+            }
+
+            return result;
+        }
+    }
+}
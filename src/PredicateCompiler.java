@@ -0,0 +1,407 @@
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Turns the number comparisons of a SELE into a class of its own, with the column positions written right into one loop and the constants
+ * in final fields, like {@code if(column0[i] > constant0 && column2[i] != constant1)}. The JIT can then compile that loop as tightly as if it
+ * had been written by hand, with no selection vectors in between the parts of an AND and no calls through {@link Column}.
+ * <p>
+ * Only comparisons of int, long and double columns (with constants or with each other) get compiled, along with ANDs, ORs and NOTs of them.
+ * When the top of the predicate is an AND, the parts that can be compiled are, and the rest run the usual way on the rows that make it
+ * through. Anything else is just left to {@link SelectionPredicate}.
+ * <p>
+ * The source gets compiled in memory with the JDK's compiler and defined as a hidden class next to the columns, so it can read their values.
+ * Compiling takes a while, so it happens on a background thread: the first SELE of a given shape runs the usual way while its class gets
+ * built, and every later one (in the same query, the same batch, or a later one) gets the compiled class from the cache. Classes are
+ * cached by their source, which covers the operators and the positions and types of the columns but not the constants, so {@code Payment > 80}
+ * and {@code Payment > 90} share a class (and a trip through the compiler), each with an instance of its own. Without a JDK (or with
+ * {@link #setEnabled(boolean) compiling turned off}), everything just runs the usual way.
+ */
+public final class PredicateCompiler{
+    /**
+     * Tables with fewer rows than this aren't worth compiling a class for.
+     */
+    public static final int MINIMUM_ROWS = 1 << 18;
+
+    /**
+     * How many compiled classes to keep around, least recently used first out.
+     */
+    public static final int MAXIMUM_CACHED_FILTERS = 256;
+
+    private static final String GENERATED_CLASS_NAME = "GeneratedRowFilter";
+    private static final String CONSTANT_NAME        = "constant";
+
+    /**
+     * What the generated classes implement.
+     */
+    public interface CompiledFilter{
+        /**
+         * @param columns The columns of the table, in order.
+         * @return The rows from fromRow (inclusive) to toRow (exclusive) that pass, in ascending order.
+         */
+        int[] getRows(Column[] columns, int fromRow, int toRow);
+    }
+
+    private static final LinkedHashMap<String, Future<Constructor<?>>> filterConstructorsBySource = new LinkedHashMap<>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Future<Constructor<?>>> eldest){
+            return this.size() > MAXIMUM_CACHED_FILTERS;
+        }
+    };
+
+    private static final ExecutorService compiler = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Predicate compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static boolean isEnabled = true;
+
+    private PredicateCompiler(){
+    }
+
+    public static synchronized boolean isEnabled(){
+        return isEnabled;
+    }
+
+    public static synchronized void setEnabled(final boolean enabled){
+        isEnabled = enabled;
+    }
+
+    /**
+     * @return A filter that runs the compiled part of the predicate on a range of rows and the rest of it on what's left, or null if there's
+     * no compiled class for it (yet), in which case the predicate should just be run the usual way.
+     */
+    public static Morsels.RowRangeFilter getRowRangeFilter(final SelectionPredicate predicate, final DataTable table){
+        if(table.getRowCount() < MINIMUM_ROWS || !isEnabled()){
+            return null;
+        }
+
+        ArrayList<SelectionPredicate> compiledConjuncts = new ArrayList<>();
+        ArrayList<SelectionPredicate> otherConjuncts = new ArrayList<>();
+        for(SelectionPredicate conjunct : predicate.getConjuncts()){
+            if(writeCondition(conjunct, table, new ArrayList<>()) != null){
+                compiledConjuncts.add(conjunct);
+            }
+            else{
+                otherConjuncts.add(conjunct);
+            }
+        }
+        if(compiledConjuncts.isEmpty()){
+            return null;
+        }
+
+        ArrayList<Object> constants = new ArrayList<>();
+        String source = writeSource(SelectionPredicate.and(compiledConjuncts), table, constants);
+        CompiledFilter compiledFilter = getCompiledFilter(source, constants);
+        if(compiledFilter == null){
+            return null;
+        }
+
+        Column[] columns = new Column[table.getColumnNames().length];
+        for(int j = 0; j < columns.length; j++){
+            columns[j] = table.getColumn(j);
+        }
+
+        if(otherConjuncts.isEmpty()){
+            return (fromRow, toRow) -> compiledFilter.getRows(columns, fromRow, toRow);
+        }
+
+        SelectionPredicate otherPredicate = SelectionPredicate.and(otherConjuncts);
+        return (fromRow, toRow) -> {
+            int[] rows = compiledFilter.getRows(columns, fromRow, toRow);
+            return (rows.length == 0) ? rows : otherPredicate.getRowsWhere(table, rows);
+        };
+    }
+
+    /**
+     * @param constants The values of the constants of the source, in order.
+     * @return An instance of the compiled class for the source if it's ready, or null if it's still being compiled (or can't be).
+     */
+    private static CompiledFilter getCompiledFilter(final String source, final List<Object> constants){
+        Future<Constructor<?>> filterConstructor;
+        synchronized(PredicateCompiler.class){
+            filterConstructor = filterConstructorsBySource.get(source);
+            if(filterConstructor == null){
+                filterConstructor = compiler.submit(() -> compile(source));
+                filterConstructorsBySource.put(source, filterConstructor);
+            }
+        }
+
+        if(!filterConstructor.isDone()){
+            return null;
+        }
+
+        try{
+            Constructor<?> constructor = filterConstructor.get();
+            return (constructor == null) ? null : (CompiledFilter) constructor.newInstance(constants.toArray());
+        }
+        catch(ExecutionException | InterruptedException | ReflectiveOperationException exception){
+            return null;
+        }
+    }
+
+    /**
+     * Waits for every class that's being compiled. Mostly for benchmarks, which want to time the compiled loops and not the compiler.
+     */
+    public static void awaitCompilation() throws InterruptedException{
+        ArrayList<Future<Constructor<?>>> filterConstructors;
+        synchronized(PredicateCompiler.class){
+            filterConstructors = new ArrayList<>(filterConstructorsBySource.values());
+        }
+
+        for(Future<Constructor<?>> filterConstructor : filterConstructors){
+            try{
+                filterConstructor.get();
+            }
+            catch(ExecutionException exception){
+                // It just won't get used
+            }
+        }
+    }
+
+    /**
+     * @param constants Gets the values of the constants of the predicate, in the order the constructor of the class takes them.
+     * @return The source of a class that runs the predicate, which has to be one that {@link #writeCondition(SelectionPredicate, DataTable, List)} can write.
+     */
+    private static String writeSource(final SelectionPredicate predicate, final DataTable table, final List<Object> constants){
+        String condition = writeCondition(predicate, table, constants);
+
+        StringBuilder source = new StringBuilder();
+        source.append("final class ").append(GENERATED_CLASS_NAME).append(" implements PredicateCompiler.CompiledFilter{\n");
+        ArrayList<String> parameters = new ArrayList<>(constants.size());
+        for(int c = 0; c < constants.size(); c++){
+            String constantType = getPrimitiveType(constants.get(c));
+            source.append("    private final ").append(constantType).append(" ").append(CONSTANT_NAME).append(c).append(";\n");
+            parameters.add("final " + constantType + " " + CONSTANT_NAME + c);
+        }
+        source.append("\n");
+        source.append("    ").append(GENERATED_CLASS_NAME).append("(").append(String.join(", ", parameters)).append("){\n");
+        for(int c = 0; c < constants.size(); c++){
+            source.append("        this.").append(CONSTANT_NAME).append(c).append(" = ").append(CONSTANT_NAME).append(c).append(";\n");
+        }
+        source.append("    }\n");
+        source.append("\n");
+        source.append("    public int[] getRows(final Column[] columns, final int fromRow, final int toRow){\n");
+        for(int c = 0; c < constants.size(); c++){
+            source.append("        final ").append(getPrimitiveType(constants.get(c))).append(" ").append(CONSTANT_NAME).append(c).append(" = this.").append(CONSTANT_NAME)
+                  .append(c).append(";\n");
+        }
+        for(String columnName : predicate.getReferencedColumns(table.getColumnNames())){
+            int j = DataTable.getIndexInArrayOfItemEquivalentTo(table.getColumnNames(), columnName);
+            Column column = table.getColumn(j);
+            String columnClass = column.getClass().getSimpleName();
+            String valueType = (column instanceof IntColumn) ? "int" : (column instanceof LongColumn) ? "long" : "double";
+            source.append("        final ").append(columnClass).append(" typedColumn").append(j).append(" = (").append(columnClass).append(") columns[").append(j).append("];\n");
+            source.append("        final ").append(valueType).append("[] column").append(j).append(" = typedColumn").append(j).append(".getValues();\n");
+        }
+        source.append("        final int[] rows = new int[toRow - fromRow];\n");
+        source.append("        int numberOfRows = 0;\n");
+        source.append("        for(int i = fromRow; i < toRow; i++){\n");
+        source.append("            if(").append(condition).append("){\n");
+        source.append("                rows[numberOfRows++] = i;\n");
+        source.append("            }\n");
+        source.append("        }\n");
+        source.append("        return java.util.Arrays.copyOf(rows, numberOfRows);\n");
+        source.append("    }\n");
+        source.append("}\n");
+
+        return source.toString();
+    }
+
+    /**
+     * @param constants Gets the constants the condition uses, each one named after its position in there.
+     * @return The predicate as a Java condition on row i, doing exactly what {@link SelectionPredicate#getRowsWhere(DataTable, int[])} does,
+     * or null if it can't be compiled.
+     */
+    private static String writeCondition(final SelectionPredicate predicate, final DataTable table, final List<Object> constants){
+        if(predicate instanceof SelectionPredicate.Not not){
+            String condition = writeCondition(not.predicate(), table, constants);
+            return (condition == null) ? null : "!(" + condition + ")";
+        }
+
+        List<SelectionPredicate> parts;
+        String separator;
+        if(predicate instanceof SelectionPredicate.And and){
+            parts = and.predicates();
+            separator = " && ";
+        }
+        else if(predicate instanceof SelectionPredicate.Or or){
+            parts = or.predicates();
+            separator = " || ";
+        }
+        else{
+            return writeComparison(((SelectionPredicate.Comparison) predicate).condition(), table, constants);
+        }
+
+        ArrayList<String> conditions = new ArrayList<>(parts.size());
+        for(SelectionPredicate part : parts){
+            String condition = writeCondition(part, table, constants);
+            if(condition == null){
+                return null;
+            }
+            conditions.add("(" + condition + ")");
+        }
+
+        return String.join(separator, conditions);
+    }
+
+    private static String writeComparison(final SelectionCondition condition, final DataTable table, final List<Object> constants){
+        String[] columnNames = table.getColumnNames();
+        if(!DataTable.containsItemEquivalentTo(columnNames, condition.columnName())){
+            return null;
+        }
+
+        int j = DataTable.getIndexInArrayOfItemEquivalentTo(columnNames, condition.columnName());
+        Column column = table.getColumn(j);
+        if(!isCompilable(column)){
+            return null;
+        }
+        String value = "column" + j + "[i]";
+
+        if(condition.comparesTwoColumns(columnNames)){
+            int k = DataTable.getIndexInArrayOfItemEquivalentTo(columnNames, condition.comparedValue());
+            Column comparedColumn = table.getColumn(k);
+            if(!isCompilable(comparedColumn)){
+                return null;
+            }
+            String comparedValue = "column" + k + "[i]";
+
+            return switch(condition.operator()){
+                case DataTable.GREATER_THAN, DataTable.GREATER_THAN_OR_EQUAL, DataTable.LESS_THAN, DataTable.LESS_THAN_OR_EQUAL ->
+                        "(double) " + value + " " + condition.operator() + " (double) " + comparedValue;
+                case DataTable.EQUALS, DataTable.NOT_EQUALS -> (column.isIntegral() && comparedColumn.isIntegral()) ? // Otherwise it's comparing texts
+                                                                value + " " + condition.operator() + " " + comparedValue : null;
+                default -> null;
+            };
+        }
+
+        switch(condition.operator()){
+            case DataTable.GREATER_THAN, DataTable.GREATER_THAN_OR_EQUAL, DataTable.LESS_THAN, DataTable.LESS_THAN_OR_EQUAL -> {
+                try{
+                    return value + " " + condition.operator() + " " + addConstant(constants, Double.parseDouble(condition.comparedValue()));
+                }
+                catch(NumberFormatException exception){
+                    return null; // Let it fail the usual way
+                }
+            }
+            case DataTable.EQUALS -> {
+                return writeEquals(column, j, condition.comparedValue(), constants);
+            }
+            case DataTable.NOT_EQUALS -> {
+                String equals = writeEquals(column, j, condition.comparedValue(), constants);
+                return (equals == null) ? null : "!(" + equals + ")";
+            }
+            case DataTable.IN -> {
+                ArrayList<String> equalities = new ArrayList<>();
+                for(String comparedValue : SelectionCondition.parseValueList(condition.comparedValue())){
+                    String equals = writeEquals(column, j, comparedValue, constants);
+                    if(equals == null){
+                        return null;
+                    }
+                    equalities.add("(" + equals + ")");
+                }
+
+                return equalities.isEmpty() ? "false" : String.join(" || ", equalities);
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return A Java condition for the value of the column at row i having the same text as the constant, like {@link Column#getRowsWhere(String, String, int[])} does.
+     */
+    private static String writeEquals(final Column column, final int columnIndex, final String comparedValue, final List<Object> constants){
+        Object comparedKey = Column.getKeyOfText(comparedValue);
+        String value = "column" + columnIndex + "[i]";
+        if(column instanceof IntColumn){
+            return (comparedKey instanceof Long comparedLong && comparedLong == (int) (long) comparedLong) ? value + " == " + addConstant(constants, (int) (long) comparedLong) : "false";
+        }
+        if(column instanceof LongColumn){
+            return (comparedKey instanceof Long comparedLong) ? value + " == " + addConstant(constants, comparedLong) : "false";
+        }
+        if(comparedKey instanceof Long comparedLong){
+            return value + " == " + addConstant(constants, (double) comparedLong) + " && typedColumn" + columnIndex + ".isWrittenAsWholeNumber(i)";
+        }
+        if(comparedKey instanceof Double comparedDouble){
+            return "Double.doubleToLongBits(" + value + ") == " + addConstant(constants, Double.doubleToLongBits(comparedDouble)) + " && !typedColumn" + columnIndex
+                   + ".isWrittenAsWholeNumber(i)";
+        }
+
+        return "false";
+    }
+
+    private static boolean isCompilable(final Column column){
+        return column instanceof IntColumn || column instanceof LongColumn || column instanceof DoubleColumn;
+    }
+
+    /**
+     * @param constant An Integer, Long or Double.
+     * @return The name the condition uses for the constant.
+     */
+    private static String addConstant(final List<Object> constants, final Object constant){
+        constants.add(constant);
+        return CONSTANT_NAME + (constants.size() - 1);
+    }
+
+    private static String getPrimitiveType(final Object constant){
+        return (constant instanceof Integer) ? "int" : (constant instanceof Long) ? "long" : "double";
+    }
+
+    /**
+     * Compiles the source in memory and defines it as a hidden class in this package.
+     *
+     * @return The constructor of the class, which takes its constants, or null if it couldn't be compiled.
+     */
+    private static Constructor<?> compile(final String source) throws IOException, IllegalAccessException{
+        JavaCompiler javaCompiler = ToolProvider.getSystemJavaCompiler();
+        if(javaCompiler == null){
+            return null; // Not running on a JDK
+        }
+
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("string:///" + GENERATED_CLASS_NAME + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE){
+            @Override
+            public CharSequence getCharContent(final boolean ignoreEncodingErrors){
+                return source;
+            }
+        };
+
+        try(StandardJavaFileManager standardFileManager = javaCompiler.getStandardFileManager(null, null, null)){
+            JavaFileManager fileManager = new ForwardingJavaFileManager<>(standardFileManager){
+                @Override
+                public JavaFileObject getJavaFileForOutput(final Location location, final String className, final JavaFileObject.Kind kind, final FileObject sibling){
+                    return new SimpleJavaFileObject(URI.create("bytes:///" + className + kind.extension), kind){
+                        @Override
+                        public OutputStream openOutputStream(){
+                            return classBytes;
+                        }
+                    };
+                }
+            };
+
+            List<String> options = List.of("-classpath", System.getProperty("java.class.path"), "-proc:none", "-g:none");
+            if(!javaCompiler.getTask(null, fileManager, new DiagnosticCollector<>(), options, null, List.of(sourceFile)).call()){
+                return null;
+            }
+        }
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes.toByteArray(), true);
+        return lookup.lookupClass().asSubclass(CompiledFilter.class).getDeclaredConstructors()[0];
+    }
+}
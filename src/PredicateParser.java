@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+
+/**
+ * A recursive-descent parser for the condition of a SELE, which turns it into a {@link SelectionPredicate}.
+ * <p>
+ * The grammar, loosest binding first:
+ * <pre>
+ * predicate   := conjunction ('OR' conjunction)*
+ * conjunction := negation ('AND' negation)*
+ * negation    := 'NOT' negation | '(' predicate ')' | comparison
+ * comparison  := text that {@link SelectionCondition#parse(String)} accepts
+ * </pre>
+ * A comparison runs up to the next AND or OR (as a word of its own) or the ) of the group it's in, so constants can have spaces in them
+ * ("ANAME = L Grassy") but not those words or unmatched parentheses.
+ */
+final class PredicateParser{
+    private static final String AND = "AND";
+    private static final String OR  = "OR";
+    private static final String NOT = "NOT";
+
+    private final String whereClause;
+    private       int    position = 0;
+
+    private PredicateParser(final String whereClause){
+        this.whereClause = whereClause;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the condition can't be parsed.
+     */
+    static SelectionPredicate parse(final String whereClause){
+        PredicateParser parser = new PredicateParser(whereClause);
+        SelectionPredicate predicate = parser.parsePredicate();
+        parser.skipWhitespace();
+        if(parser.position != whereClause.length()){
+            throw new IllegalArgumentException("The WHERE clause \"" + whereClause + "\" has a ) without a matching ( at position " + parser.position + ".");
+        }
+
+        return predicate;
+    }
+
+    /**
+     * @return Whether the word is one of the ones that combine comparisons, so it can't be a value of its own.
+     */
+    static boolean isKeyword(final String word){
+        return word.equals(AND) || word.equals(OR) || word.equals(NOT);
+    }
+
+    private SelectionPredicate parsePredicate(){
+        ArrayList<SelectionPredicate> disjuncts = new ArrayList<>();
+        disjuncts.add(this.parseConjunction());
+        while(this.skipKeyword(OR)){
+            disjuncts.add(this.parseConjunction());
+        }
+
+        return (disjuncts.size() == 1) ? disjuncts.get(0) : new SelectionPredicate.Or(disjuncts);
+    }
+
+    private SelectionPredicate parseConjunction(){
+        ArrayList<SelectionPredicate> conjuncts = new ArrayList<>();
+        conjuncts.add(this.parseNegation());
+        while(this.skipKeyword(AND)){
+            conjuncts.add(this.parseNegation());
+        }
+
+        return SelectionPredicate.and(conjuncts);
+    }
+
+    private SelectionPredicate parseNegation(){
+        if(this.skipKeyword(NOT)){
+            return new SelectionPredicate.Not(this.parseNegation());
+        }
+
+        this.skipWhitespace();
+        if(this.position < this.whereClause.length() && this.whereClause.charAt(this.position) == '('){
+            this.position++;
+            SelectionPredicate predicate = this.parsePredicate();
+            this.skipWhitespace();
+            if(this.position == this.whereClause.length() || this.whereClause.charAt(this.position) != ')'){
+                throw new IllegalArgumentException("The WHERE clause \"" + this.whereClause + "\" has a ( without a matching ).");
+            }
+            this.position++;
+
+            return predicate;
+        }
+
+        return new SelectionPredicate.Comparison(SelectionCondition.parse(this.readComparison()));
+    }
+
+    /**
+     * @return The text of the comparison that starts here, up to the next AND or OR, or the ) that closes the group it's in.
+     */
+    private String readComparison(){
+        int start = this.position;
+        int depth = 0; // Parentheses inside the comparison itself, like the list of an IN
+        while(this.position < this.whereClause.length()){
+            char currentCharacter = this.whereClause.charAt(this.position);
+            if(currentCharacter == '('){
+                depth++;
+            }
+            else if(currentCharacter == ')'){
+                if(depth == 0){
+                    break;
+                }
+                depth--;
+            }
+            else if(depth == 0 && (this.isKeywordAt(this.position, AND) || this.isKeywordAt(this.position, OR))){
+                break;
+            }
+
+            this.position++;
+        }
+
+        return this.whereClause.substring(start, this.position);
+    }
+
+    /**
+     * Skips past the keyword (and the whitespace before it) if it comes next.
+     *
+     * @return Whether it did.
+     */
+    private boolean skipKeyword(final String keyword){
+        int start = this.position;
+        this.skipWhitespace();
+        if(this.isKeywordAt(this.position, keyword)){
+            this.position += keyword.length();
+            return true;
+        }
+
+        this.position = start;
+        return false;
+    }
+
+    /**
+     * @return Whether the keyword is at the position as a word of its own: with whitespace or a parenthesis (or the start or end) on either side.
+     */
+    private boolean isKeywordAt(final int keywordStart, final String keyword){
+        int keywordEnd = keywordStart + keyword.length();
+        return this.whereClause.startsWith(keyword, keywordStart) && (keywordStart == 0 || isWordBoundary(this.whereClause.charAt(keywordStart - 1))) &&
+               (keywordEnd == this.whereClause.length() || isWordBoundary(this.whereClause.charAt(keywordEnd)));
+    }
+
+    private static boolean isWordBoundary(final char character){
+        return Character.isWhitespace(character) || character == '(' || character == ')';
+    }
+
+    private void skipWhitespace(){
+        while(this.position < this.whereClause.length() && Character.isWhitespace(this.whereClause.charAt(this.position))){
+            this.position++;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.zip.DataFormatException;
+
+/**
+ * Runs a {@link PlanNode} tree against the table files in the working directory, bottom-up, one {@link DataTable} operator per node.
+ * The plan is never modified, so it's fine to execute the same one over and over. Base tables come out of a {@link TableCatalog},
+ * so each one is only read once no matter how many times it shows up.
+ * <p>
+ * A SELE straight on a base table goes through the table's {@link TableIndex indexes} when one of them narrows it down enough, and a join
+ * with a whole base table probes the table's hash index on the join key instead of hashing either side.
+ */
+public class QueryExecutor{
+    private final boolean      isUsingTableCache;
+    private final TableCatalog catalog;
+    private final SubplanCache subplanCache;
+
+    public QueryExecutor(){
+        this(false);
+    }
+
+    /**
+     * @param useTableCache Whether to load tables through their {@link TableCache binary caches} (and write the caches that are missing or stale).
+     */
+    public QueryExecutor(final boolean useTableCache){
+        this(useTableCache, TableCatalog.getShared());
+    }
+
+    /**
+     * @param catalog Where to get the tables from, if not the {@link TableCatalog#getShared() shared catalog}.
+     */
+    public QueryExecutor(final boolean useTableCache, final TableCatalog catalog){
+        this(useTableCache, catalog, null);
+    }
+
+    /**
+     * @param subplanCache Where to keep (and look for) the results of subplans that get used more than once, or null to compute everything every time.
+     */
+    public QueryExecutor(final boolean useTableCache, final TableCatalog catalog, final SubplanCache subplanCache){
+        this.isUsingTableCache = useTableCache;
+        this.catalog = catalog;
+        this.subplanCache = subplanCache;
+    }
+
+    boolean isUsingTableCache(){
+        return this.isUsingTableCache;
+    }
+
+    TableCatalog getCatalog(){
+        return this.catalog;
+    }
+
+    /**
+     * @param plan The root of the plan to run.
+     * @return The result of the whole plan.
+     * @throws DataFormatException   if a table file is empty or an operator trips over the data.
+     * @throws FileNotFoundException if a table in the plan doesn't have a file.
+     */
+    public DataTable execute(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        if(this.subplanCache == null || !this.subplanCache.isWorthCaching(plan)){
+            return this.executeNode(plan);
+        }
+
+        DataTable cachedResult = this.subplanCache.get(plan);
+        if(cachedResult != null){
+            return cachedResult;
+        }
+
+        // The files' versions from before the run, so that a file changing while it's being read makes the result stale rather than wrong
+        Map<File, long[]> sourceFileVersions = SubplanCache.getSourceFileVersions(plan);
+        DataTable result = this.executeNode(plan);
+        this.subplanCache.put(plan, result, sourceFileVersions);
+
+        return result;
+    }
+
+    /**
+     * Runs a single node, with its inputs going back through {@link #execute(PlanNode)} (and so through the subplan cache).
+     */
+    private DataTable executeNode(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        if(plan instanceof PlanNode.Scan scan){
+            return this.loadTable(scan.tableName());
+        }
+        if(plan instanceof PlanNode.Select select){
+            if(select.input() instanceof PlanNode.Scan scan && TableIndex.hasDeclarations(getTableFile(scan.tableName()))){
+                // Indexes only come along with tables in the catalog, so this one gets loaded whole rather than a block at a time
+                DataTable table = this.loadTable(scan.tableName());
+                SelectionPredicate predicate = SelectionPredicate.parse(select.condition());
+                int[] candidateRows = TableIndex.findCandidateRows(this.catalog.getIndexes(getTableFile(scan.tableName()), table), predicate);
+
+                return (candidateRows == null) ? table.selectWhere(predicate) : table.selectWhere(predicate, candidateRows);
+            }
+            if(this.isUsingTableCache && select.input() instanceof PlanNode.Scan scan && !this.catalog.contains(getTableFile(scan.tableName()))){
+                // Straight off a cached table that isn't in memory yet, the blocks that can't match don't even get read
+                SelectionPredicate predicate = SelectionPredicate.parse(select.condition());
+                DataTable candidateRows = TableCache.readWhere(getTableFile(scan.tableName()), predicate);
+                if(candidateRows != null){
+                    return candidateRows.selectWhere(predicate);
+                }
+            }
+
+            return this.execute(select.input()).selectWhere(select.condition());
+        }
+        if(plan instanceof PlanNode.Project project){
+            return this.execute(project.input()).project(project.columns().toArray(new String[0]), project.isDistinct());
+        }
+        if(plan instanceof PlanNode.Aggregate aggregate){
+            return this.execute(aggregate.input()).aggregate(aggregate.groupColumns().toArray(new String[0]), aggregate.aggregates());
+        }
+        if(plan.getChildren().size() != 2){
+            throw new UnsupportedOperationException("The executor doesn't know how to run a " + plan.getClass().getSimpleName() + " node.");
+        }
+
+        // The two sides don't depend on each other, so they get run at the same time
+        List<DataTable> inputs = this.executeAll(plan.getChildren());
+        DataTable left = inputs.get(0);
+        DataTable right = inputs.get(1);
+        if(plan instanceof PlanNode.Join join){
+            String[] sharedColumnNames = DataTable.getCommonElementsInArrays(left.getColumnNames(), right.getColumnNames());
+            JoinHashTable indexHashTable = this.getIndexHashTable(join.right(), right, sharedColumnNames);
+            if(indexHashTable != null){
+                return left.joinWith(indexHashTable);
+            }
+            indexHashTable = this.getIndexHashTable(join.left(), left, sharedColumnNames);
+            if(indexHashTable != null){
+                return left.joinWith(right, indexHashTable);
+            }
+
+            return left.joinWith(right);
+        }
+        if(plan instanceof PlanNode.CrossProduct){
+            return left.crossWith(right);
+        }
+        if(plan instanceof PlanNode.EquiJoin equiJoin){
+            String[] leftKeyColumns = equiJoin.leftKeyColumns().toArray(new String[0]);
+            String[] rightKeyColumns = equiJoin.rightKeyColumns().toArray(new String[0]);
+            JoinHashTable indexHashTable = this.getIndexHashTable(equiJoin.right(), right, rightKeyColumns);
+            if(indexHashTable != null){
+                return left.equiJoinWith(indexHashTable, leftKeyColumns);
+            }
+            indexHashTable = this.getIndexHashTable(equiJoin.left(), left, leftKeyColumns);
+            if(indexHashTable != null){
+                return left.equiJoinWith(right, rightKeyColumns, indexHashTable);
+            }
+
+            return left.equiJoinWith(right, leftKeyColumns, rightKeyColumns);
+        }
+        if(plan instanceof PlanNode.Union union){
+            return left.unionWith(right, union.isDistinct());
+        }
+        if(plan instanceof PlanNode.Minus){
+            return left.minus(right);
+        }
+        if(plan instanceof PlanNode.Intersect){
+            return left.intersectWith(right);
+        }
+
+        throw new UnsupportedOperationException("The executor doesn't know how to run a " + plan.getClass().getSimpleName() + " node.");
+    }
+
+    /**
+     * An index nested-loop join: when one side of a join is a whole base table with a hash {@link TableIndex index} on the join key, the other side
+     * just looks its rows up in the index, and the base table never gets hashed at all.
+     *
+     * @param input      One side of a join.
+     * @param table      What that side came out as.
+     * @param keyColumns The columns that side gets joined on.
+     * @return The hash table of the index on the key column, or null if the side isn't a plain table scan or it doesn't have such an index.
+     */
+    private JoinHashTable getIndexHashTable(final PlanNode input, final DataTable table, final String[] keyColumns) throws FileNotFoundException{
+        if(!(input instanceof PlanNode.Scan scan) || keyColumns.length != 1 || !TableIndex.hasDeclarations(getTableFile(scan.tableName()))){
+            return null;
+        }
+
+        TableIndex index = TableIndex.find(this.catalog.getIndexes(getTableFile(scan.tableName()), table), keyColumns[0], TableIndex.Kind.HASH);
+        return (index == null) ? null : ((TableIndex.HashIndex) index).getHashTable();
+    }
+
+    /**
+     * Runs the plans on all the {@link Morsels} workers at once.
+     *
+     * @return The result of each plan, in order.
+     * @throws DataFormatException   like {@link #execute(PlanNode)}, for the first plan (in order) that failed.
+     * @throws FileNotFoundException like {@link #execute(PlanNode)}, for the first plan (in order) that failed.
+     */
+    private List<DataTable> executeAll(final List<PlanNode> plans) throws DataFormatException, FileNotFoundException{
+        ArrayList<Callable<DataTable>> tasks = new ArrayList<>(plans.size());
+        for(PlanNode plan : plans){
+            tasks.add(() -> this.execute(plan));
+        }
+
+        try{
+            return Morsels.invokeAll(tasks);
+        }
+        catch(DataFormatException | FileNotFoundException | RuntimeException exception){
+            throw exception;
+        }
+        catch(Exception exception){
+            throw new IllegalStateException("Running a plan threw something it isn't supposed to be able to.", exception);
+        }
+    }
+
+    /**
+     * @param tableName The name of the table, which is its file name without the ".txt".
+     * @return The whole table, from the catalog, or read from its file (or from its cache, if this executor uses them) if it isn't in there.
+     */
+    protected DataTable loadTable(final String tableName) throws DataFormatException, FileNotFoundException{
+        return this.catalog.getTable(getTableFile(tableName), this.isUsingTableCache);
+    }
+
+    /**
+     * @return The file a table lives in. Every table is a ".txt" file in the working directory.
+     * @throws FileNotFoundException if there is no such file.
+     */
+    public static File getTableFile(final String tableName) throws FileNotFoundException{
+        File tableFile = new File(tableName + ".txt");
+        if(!tableFile.exists()){
+            throw new FileNotFoundException("Bruh, please state a table that actually exists, as " + tableFile + " doesn't. The file must be of the extension \".txt\" (all lowercase).");
+        }
+
+        return tableFile;
+    }
+}
@@ -0,0 +1,510 @@
+import java.io.FileNotFoundException;
+import java.util.*;
+import java.util.zip.DataFormatException;
+
+/**
+ * Rewrites a {@link PlanNode} tree into one that gives the same result but does less work. The rules run in six passes:
+ * <ol>
+ *     <li>Selections get pushed down as far as they go, each part of an AND on its own: below projections, below aggregations (if they only read the group columns),
+ *     into whichever side of a join or cross product has the columns they need, and into both sides of set operators. A column-equals-column selection that lands on a cross product turns it into an equi-join.</li>
+ *     <li>Chains of three or more joins get put in the cheapest order the {@link CostModel} can find (see {@link JoinOrderOptimizer}).</li>
+ *     <li>Projections get pushed down to the scans, so each table only carries the columns something above it actually reads.</li>
+ *     <li>Projections that drop duplicates stop looking for them if they keep a unique key of their input, since there can't be any.</li>
+ *     <li>Projections that don't do anything (or that are immediately overridden by another projection) are removed.</li>
+ *     <li>Selections that ended up right on top of each other get merged into one, so they run in a single pass.</li>
+ * </ol>
+ * Every rule preserves the column names and column order of the plan's result.
+ */
+public class QueryOptimizer{
+    private final HashMap<String, String[]> tableColumnNames = new HashMap<>();
+    private final CostModel                 costModel;
+
+    public QueryOptimizer(){
+        this(new CostModel());
+    }
+
+    /**
+     * @param costModel What to use to compare join orders.
+     */
+    public QueryOptimizer(final CostModel costModel){
+        this.costModel = costModel;
+    }
+
+    /**
+     * @param plan The plan to optimize. It is not modified.
+     * @return An equivalent plan that filters and trims rows as early as possible.
+     * @throws DataFormatException   if a table file is empty.
+     * @throws FileNotFoundException if a table in the plan doesn't have a file.
+     */
+    public PlanNode optimize(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        PlanNode optimizedPlan = this.pushDownSelections(plan);
+        optimizedPlan = new JoinOrderOptimizer(this, this.costModel).reorderJoins(optimizedPlan);
+        optimizedPlan = this.pushDownProjections(optimizedPlan, new LinkedHashSet<>(Arrays.asList(this.getColumnNames(optimizedPlan))));
+        optimizedPlan = this.skipUnneededDuplicateElimination(optimizedPlan);
+        return mergeSelections(this.removeRedundantProjections(optimizedPlan));
+    }
+
+    /**
+     * @return The names of the columns the plan produces, in order, figured out without running anything (only the table headers are read).
+     */
+    public String[] getColumnNames(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        if(plan instanceof PlanNode.Scan scan){
+            String[] columnNames = this.tableColumnNames.get(scan.tableName());
+            if(columnNames == null){
+                columnNames = DataTable.readColumnNames(QueryExecutor.getTableFile(scan.tableName()));
+                this.tableColumnNames.put(scan.tableName(), columnNames);
+            }
+
+            return columnNames.clone();
+        }
+        if(plan instanceof PlanNode.Project project){
+            return project.columns().toArray(new String[0]);
+        }
+        if(plan instanceof PlanNode.Aggregate aggregate){
+            return aggregate.getColumnNames().toArray(new String[0]);
+        }
+        if(plan instanceof PlanNode.Join join){
+            return DataTable.getCombinedArrayWithoutDuplicates(this.getColumnNames(join.left()), this.getColumnNames(join.right()));
+        }
+        if(plan instanceof PlanNode.CrossProduct || plan instanceof PlanNode.EquiJoin){
+            String[] leftColumnNames = this.getColumnNames(plan.getChildren().get(0));
+            String[] rightColumnNames = this.getColumnNames(plan.getChildren().get(1));
+
+            String[] columnNames = Arrays.copyOf(leftColumnNames, leftColumnNames.length + rightColumnNames.length);
+            System.arraycopy(rightColumnNames, 0, columnNames, leftColumnNames.length, rightColumnNames.length);
+            return columnNames;
+        }
+
+        // Selections and the set operators all keep the columns of their (first) input.
+        return this.getColumnNames(plan.getChildren().get(0));
+    }
+
+    private PlanNode pushDownSelections(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        if(plan instanceof PlanNode.Select select){
+            SelectionPredicate predicate;
+            try{
+                predicate = SelectionPredicate.parse(select.condition());
+            }
+            catch(IllegalArgumentException exception){
+                return new PlanNode.Select(select.condition(), this.pushDownSelections(select.input())); // Let the executor complain about it, at the same point it always has
+            }
+
+            // Each part of an AND goes down on its own, as far as it can, and mergeSelections() puts the ones that end up together back together
+            PlanNode newPlan = this.pushDownSelections(select.input());
+            if(!(predicate instanceof SelectionPredicate.And)){
+                return this.pushSelectionInto(select.condition(), newPlan);
+            }
+            for(SelectionPredicate conjunct : predicate.getConjuncts()){
+                newPlan = this.pushSelectionInto(conjunct.toString(), newPlan);
+            }
+
+            return newPlan;
+        }
+
+        return withChildren(plan, this.pushDownSelections(plan.getChildren()));
+    }
+
+    /**
+     * Puts a selection on top of the given plan, or as far inside it as it can go.
+     */
+    private PlanNode pushSelectionInto(final String condition, final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        SelectionPredicate predicate;
+        try{
+            predicate = SelectionPredicate.parse(condition);
+        }
+        catch(IllegalArgumentException exception){
+            return new PlanNode.Select(condition, plan); // Let the executor complain about it, at the same point it always has
+        }
+
+        String[] columnNames = this.getColumnNames(plan);
+        Set<String> referencedColumns = predicate.getReferencedColumns(columnNames);
+
+        if(plan instanceof PlanNode.Project project && this.meansTheSameOn(predicate, columnNames, project.input())){
+            return new PlanNode.Project(project.columns(), this.pushSelectionInto(condition, project.input()), project.isDistinct());
+        }
+        if(plan instanceof PlanNode.Select select){
+            return new PlanNode.Select(select.condition(), this.pushSelectionInto(condition, select.input()));
+        }
+        if(plan instanceof PlanNode.Aggregate aggregate && !aggregate.groupColumns().isEmpty() && aggregate.groupColumns().containsAll(referencedColumns) &&
+           this.meansTheSameOn(predicate, columnNames, aggregate.input())){
+            // A condition on just the group columns keeps or drops whole groups, so it can just as well drop their rows before they're grouped
+            return new PlanNode.Aggregate(aggregate.groupColumns(), aggregate.aggregates(), this.pushSelectionInto(condition, aggregate.input()));
+        }
+        if(plan instanceof PlanNode.Union || plan instanceof PlanNode.Minus || plan instanceof PlanNode.Intersect){
+            PlanNode left = plan.getChildren().get(0);
+            PlanNode right = plan.getChildren().get(1);
+            if(this.meansTheSameOn(predicate, columnNames, left) && this.meansTheSameOn(predicate, columnNames, right)){
+                return withChildren(plan, List.of(this.pushSelectionInto(condition, left), this.pushSelectionInto(condition, right)));
+            }
+        }
+        if(plan instanceof PlanNode.Join join){
+            // A shared column is in both inputs, so a selection on it filters both of them.
+            boolean goesLeft = this.meansTheSameOn(predicate, columnNames, join.left());
+            boolean goesRight = this.meansTheSameOn(predicate, columnNames, join.right());
+            if(goesLeft || goesRight){
+                return new PlanNode.Join(goesLeft ? this.pushSelectionInto(condition, join.left()) : join.left(),
+                                         goesRight ? this.pushSelectionInto(condition, join.right()) : join.right());
+            }
+        }
+        if(plan instanceof PlanNode.CrossProduct || plan instanceof PlanNode.EquiJoin){
+            PlanNode left = plan.getChildren().get(0);
+            PlanNode right = plan.getChildren().get(1);
+            String[] leftColumnNames = this.getColumnNames(left);
+            String[] rightColumnNames = this.getColumnNames(right);
+
+            boolean isAmbiguous = false; // A column on both sides can't be referenced above the cross product anyway, so leave it be
+            for(String referencedColumn : referencedColumns){
+                isAmbiguous |= DataTable.containsItemEquivalentTo(leftColumnNames, referencedColumn) && DataTable.containsItemEquivalentTo(rightColumnNames, referencedColumn);
+            }
+
+            if(!isAmbiguous){
+                if(this.meansTheSameOn(predicate, columnNames, left)){
+                    return withChildren(plan, List.of(this.pushSelectionInto(condition, left), right));
+                }
+                if(this.meansTheSameOn(predicate, columnNames, right)){
+                    return withChildren(plan, List.of(left, this.pushSelectionInto(condition, right)));
+                }
+                if(predicate instanceof SelectionPredicate.Comparison comparison && comparison.condition().operator().equals(DataTable.EQUALS) &&
+                   referencedColumns.size() == 2){
+                    SelectionCondition parsedCondition = comparison.condition();
+                    boolean columnIsOnLeft = DataTable.containsItemEquivalentTo(leftColumnNames, parsedCondition.columnName());
+                    String leftKeyColumn = columnIsOnLeft ? parsedCondition.columnName() : parsedCondition.comparedValue();
+                    String rightKeyColumn = columnIsOnLeft ? parsedCondition.comparedValue() : parsedCondition.columnName();
+
+                    ArrayList<String> leftKeyColumns = new ArrayList<>();
+                    ArrayList<String> rightKeyColumns = new ArrayList<>();
+                    if(plan instanceof PlanNode.EquiJoin equiJoin){
+                        leftKeyColumns.addAll(equiJoin.leftKeyColumns());
+                        rightKeyColumns.addAll(equiJoin.rightKeyColumns());
+                    }
+                    leftKeyColumns.add(leftKeyColumn);
+                    rightKeyColumns.add(rightKeyColumn);
+
+                    return new PlanNode.EquiJoin(left, right, leftKeyColumns, rightKeyColumns);
+                }
+            }
+        }
+
+        return new PlanNode.Select(condition, plan);
+    }
+
+    /**
+     * A condition can only move down to an input that has every column it reads, and where it reads the same columns
+     * (otherwise "A = B" could quietly turn from comparing two columns into comparing A with the constant "B").
+     */
+    private boolean meansTheSameOn(final SelectionPredicate predicate, final String[] currentColumnNames, final PlanNode input) throws DataFormatException, FileNotFoundException{
+        String[] inputColumnNames = this.getColumnNames(input);
+        Set<String> referencedColumns = predicate.getReferencedColumns(currentColumnNames);
+
+        return referencedColumns.equals(predicate.getReferencedColumns(inputColumnNames)) &&
+               Arrays.asList(inputColumnNames).containsAll(referencedColumns);
+    }
+
+    /**
+     * Trims every input down to the columns something above it needs, by putting projections right on top of the scans.
+     *
+     * @param requiredColumns The columns the parent of this plan reads from it. The plan may still produce more than these.
+     */
+    private PlanNode pushDownProjections(final PlanNode plan, final Set<String> requiredColumns) throws DataFormatException, FileNotFoundException{
+        if(plan instanceof PlanNode.Scan){
+            String[] columnNames = this.getColumnNames(plan);
+            if(!Arrays.asList(columnNames).containsAll(requiredColumns)){
+                return plan; // Something's referencing a column that doesn't exist, so let the executor report it
+            }
+
+            List<String> keptColumns = new ArrayList<>(columnNames.length);
+            for(String columnName : columnNames){
+                if(requiredColumns.contains(columnName)){
+                    keptColumns.add(columnName);
+                }
+            }
+
+            // A table with no columns at all still has rows (which matter to a cross product), but it can't be written down as a query.
+            return (keptColumns.size() == columnNames.length || keptColumns.isEmpty()) ? plan : new PlanNode.Project(keptColumns, plan, false);
+        }
+        if(plan instanceof PlanNode.Project project){
+            return new PlanNode.Project(project.columns(), this.pushDownProjections(project.input(), new LinkedHashSet<>(project.columns())), project.isDistinct());
+        }
+        if(plan instanceof PlanNode.Aggregate aggregate){
+            LinkedHashSet<String> columnsNeededBelow = new LinkedHashSet<>(aggregate.groupColumns());
+            for(HashAggregator.Aggregate eachAggregate : aggregate.aggregates()){
+                if(!eachAggregate.isOverAllRows()){
+                    columnsNeededBelow.add(eachAggregate.columnName());
+                }
+            }
+
+            return new PlanNode.Aggregate(aggregate.groupColumns(), aggregate.aggregates(), this.pushDownProjections(aggregate.input(), columnsNeededBelow));
+        }
+        if(plan instanceof PlanNode.Select select){
+            LinkedHashSet<String> columnsNeededBelow = new LinkedHashSet<>(requiredColumns);
+            try{
+                columnsNeededBelow.addAll(SelectionPredicate.parse(select.condition()).getReferencedColumns(this.getColumnNames(select.input())));
+            }
+            catch(IllegalArgumentException exception){
+                columnsNeededBelow.addAll(Arrays.asList(this.getColumnNames(select.input())));
+            }
+
+            return new PlanNode.Select(select.condition(), this.pushDownProjections(select.input(), columnsNeededBelow));
+        }
+        if(plan instanceof PlanNode.Join || plan instanceof PlanNode.CrossProduct || plan instanceof PlanNode.EquiJoin){
+            PlanNode left = plan.getChildren().get(0);
+            PlanNode right = plan.getChildren().get(1);
+            String[] leftColumnNames = this.getColumnNames(left);
+            String[] rightColumnNames = this.getColumnNames(right);
+
+            // Shared columns are what a natural join matches on. On a cross product, a column on both sides has to stay on both sides,
+            // or a reference to it above would stop being ambiguous and quietly pick the wrong one.
+            LinkedHashSet<String> columnsNeededBelow = new LinkedHashSet<>(requiredColumns);
+            columnsNeededBelow.addAll(Arrays.asList(DataTable.getCommonElementsInArrays(leftColumnNames, rightColumnNames)));
+            if(plan instanceof PlanNode.EquiJoin equiJoin){
+                columnsNeededBelow.addAll(equiJoin.leftKeyColumns());
+                columnsNeededBelow.addAll(equiJoin.rightKeyColumns());
+            }
+
+            return withChildren(plan, List.of(this.pushDownProjections(left, getColumnsIn(columnsNeededBelow, leftColumnNames)),
+                                                   this.pushDownProjections(right, getColumnsIn(columnsNeededBelow, rightColumnNames))));
+        }
+        if(plan instanceof PlanNode.Union union && !union.isDistinct()){
+            // Bag union doesn't care which columns are there, as long as both sides end up with the same ones.
+            ArrayList<PlanNode> newChildren = new ArrayList<>(2);
+            for(PlanNode child : plan.getChildren()){
+                String[] childColumnNames = this.getColumnNames(child);
+                Set<String> keptColumns = getColumnsIn(requiredColumns, childColumnNames);
+                if(keptColumns.size() != requiredColumns.size()){
+                    keptColumns = new LinkedHashSet<>(Arrays.asList(childColumnNames));
+                }
+
+                PlanNode newChild = this.pushDownProjections(child, keptColumns);
+                if(!new HashSet<>(Arrays.asList(this.getColumnNames(newChild))).equals(keptColumns)){
+                    newChild = new PlanNode.Project(new ArrayList<>(getColumnsIn(keptColumns, childColumnNames)), newChild, false);
+                }
+                newChildren.add(newChild);
+            }
+
+            return withChildren(plan, newChildren);
+        }
+
+        // MINUS, INTERSECT and U compare whole rows, so every column of both inputs matters.
+        ArrayList<PlanNode> newChildren = new ArrayList<>(2);
+        for(PlanNode child : plan.getChildren()){
+            newChildren.add(this.pushDownProjections(child, new LinkedHashSet<>(Arrays.asList(this.getColumnNames(child)))));
+        }
+
+        return withChildren(plan, newChildren);
+    }
+
+    private PlanNode removeRedundantProjections(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        PlanNode newPlan = withChildren(plan, this.removeRedundantProjections(plan.getChildren()));
+
+        if(newPlan instanceof PlanNode.Project project){
+            // Dropping duplicates on fewer columns drops any there were on more, but keeping them all can't undo an inner projection dropping some
+            if(project.input() instanceof PlanNode.Project innerProject && innerProject.columns().containsAll(project.columns()) &&
+               (project.isDistinct() || !innerProject.isDistinct())){
+                newPlan = new PlanNode.Project(project.columns(), innerProject.input(), project.isDistinct());
+                project = (PlanNode.Project) newPlan;
+            }
+
+            if(!project.isDistinct() && project.columns().equals(Arrays.asList(this.getColumnNames(project.input())))){
+                return project.input();
+            }
+        }
+
+        return newPlan;
+    }
+
+    /**
+     * Turns every PROJ that keeps all the columns of a unique key of its input into a PROJ_ALL, since it can't have any duplicates to drop.
+     */
+    private PlanNode skipUnneededDuplicateElimination(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        ArrayList<PlanNode> newChildren = new ArrayList<>(plan.getChildren().size());
+        for(PlanNode child : plan.getChildren()){
+            newChildren.add(this.skipUnneededDuplicateElimination(child));
+        }
+        PlanNode newPlan = withChildren(plan, newChildren);
+
+        if(newPlan instanceof PlanNode.Project project && project.isDistinct()){
+            for(Set<String> uniqueKey : this.getUniqueKeys(project.input())){
+                if(project.columns().containsAll(uniqueKey)){
+                    return new PlanNode.Project(project.columns(), project.input(), false);
+                }
+            }
+        }
+
+        return newPlan;
+    }
+
+    /**
+     * Works out which sets of columns are known to be different in every row of the plan's result: the columns of base tables whose
+     * {@link TableStatistics} have as many distinct values as rows, and whatever the operators above them keep unique.
+     *
+     * @return The sets of columns that no two rows have all the same values in. An empty set means there's at most one row.
+     */
+    public List<Set<String>> getUniqueKeys(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+        ArrayList<Set<String>> uniqueKeys = new ArrayList<>();
+        if(plan instanceof PlanNode.Scan scan){
+            TableStatistics statistics = this.costModel.getTableStatistics(scan.tableName());
+            for(String columnName : statistics.getColumnNames()){
+                if(statistics.isUnique(columnName)){
+                    uniqueKeys.add(Set.of(columnName));
+                }
+            }
+        }
+        else if(plan instanceof PlanNode.Select select){
+            uniqueKeys.addAll(this.getUniqueKeys(select.input()));
+        }
+        else if(plan instanceof PlanNode.Project project){
+            for(Set<String> uniqueKey : this.getUniqueKeys(project.input())){
+                if(project.columns().containsAll(uniqueKey)){
+                    uniqueKeys.add(uniqueKey);
+                }
+            }
+            if(project.isDistinct()){
+                uniqueKeys.add(new LinkedHashSet<>(project.columns()));
+            }
+        }
+        else if(plan instanceof PlanNode.Aggregate aggregate){
+            uniqueKeys.add(new LinkedHashSet<>(aggregate.groupColumns()));
+        }
+        else if(plan instanceof PlanNode.Join || plan instanceof PlanNode.EquiJoin || plan instanceof PlanNode.CrossProduct){
+            PlanNode left = plan.getChildren().get(0);
+            PlanNode right = plan.getChildren().get(1);
+            String[] leftColumnNames = this.getColumnNames(left);
+            String[] rightColumnNames = this.getColumnNames(right);
+            List<String> leftJoinColumns;
+            List<String> rightJoinColumns;
+            if(plan instanceof PlanNode.EquiJoin equiJoin){
+                leftJoinColumns = equiJoin.leftKeyColumns();
+                rightJoinColumns = equiJoin.rightKeyColumns();
+            }
+            else{
+                leftJoinColumns = rightJoinColumns = Arrays.asList(DataTable.getCommonElementsInArrays(leftColumnNames, rightColumnNames));
+                if(plan instanceof PlanNode.CrossProduct && !leftJoinColumns.isEmpty()){
+                    return uniqueKeys; // Some columns are there twice, so nothing above can tell them apart
+                }
+            }
+
+            // A row on one side matches at most one row on the other if it's joined on a unique key of the other, so it stays unique
+            List<Set<String>> leftUniqueKeys = this.getUniqueKeys(left);
+            List<Set<String>> rightUniqueKeys = this.getUniqueKeys(right);
+            if(containsKeyWithin(rightUniqueKeys, rightJoinColumns)){
+                uniqueKeys.addAll(leftUniqueKeys);
+            }
+            if(containsKeyWithin(leftUniqueKeys, leftJoinColumns)){
+                uniqueKeys.addAll(rightUniqueKeys);
+            }
+            if(!leftUniqueKeys.isEmpty() && !rightUniqueKeys.isEmpty()){
+                LinkedHashSet<String> combinedKey = new LinkedHashSet<>(leftUniqueKeys.get(0));
+                combinedKey.addAll(rightUniqueKeys.get(0));
+                uniqueKeys.add(combinedKey);
+            }
+        }
+        else if(plan instanceof PlanNode.Minus || plan instanceof PlanNode.Intersect){
+            // They never give the same row twice, and only give rows of their left side
+            PlanNode left = plan.getChildren().get(0);
+            uniqueKeys.addAll(this.getUniqueKeys(left));
+            uniqueKeys.add(new LinkedHashSet<>(Arrays.asList(this.getColumnNames(left))));
+        }
+        else if(plan instanceof PlanNode.Union union && union.isDistinct()){
+            uniqueKeys.add(new LinkedHashSet<>(Arrays.asList(this.getColumnNames(union.left()))));
+        }
+
+        return uniqueKeys; // A bag union can have the same row on both sides, so it doesn't keep anything unique
+    }
+
+    private static boolean containsKeyWithin(final List<Set<String>> uniqueKeys, final List<String> columns){
+        for(Set<String> uniqueKey : uniqueKeys){
+            if(columns.containsAll(uniqueKey)){
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Turns a selection right on top of another one into a single selection that ANDs their conditions, so the rows only get filtered
+     * (and copied) once.
+     */
+    private static PlanNode mergeSelections(final PlanNode plan){
+        ArrayList<PlanNode> newChildren = new ArrayList<>(plan.getChildren().size());
+        for(PlanNode child : plan.getChildren()){
+            newChildren.add(mergeSelections(child));
+        }
+        PlanNode newPlan = withChildren(plan, newChildren);
+
+        if(newPlan instanceof PlanNode.Select select && select.input() instanceof PlanNode.Select innerSelect){
+            try{
+                SelectionPredicate mergedPredicate = SelectionPredicate.and(List.of(SelectionPredicate.parse(innerSelect.condition()), SelectionPredicate.parse(select.condition())));
+                return new PlanNode.Select(mergedPredicate.toString(), innerSelect.input());
+            }
+            catch(IllegalArgumentException exception){
+                return newPlan; // Leave it for the executor to complain about
+            }
+        }
+
+        return newPlan;
+    }
+
+    private static Set<String> getColumnsIn(final Set<String> columns, final String[] columnNames){
+        LinkedHashSet<String> columnsIn = new LinkedHashSet<>(columns);
+        columnsIn.retainAll(Arrays.asList(columnNames));
+
+        return columnsIn;
+    }
+
+    private List<PlanNode> pushDownSelections(final List<PlanNode> plans) throws DataFormatException, FileNotFoundException{
+        ArrayList<PlanNode> newPlans = new ArrayList<>(plans.size());
+        for(PlanNode plan : plans){
+            newPlans.add(this.pushDownSelections(plan));
+        }
+
+        return newPlans;
+    }
+
+    private List<PlanNode> removeRedundantProjections(final List<PlanNode> plans) throws DataFormatException, FileNotFoundException{
+        ArrayList<PlanNode> newPlans = new ArrayList<>(plans.size());
+        for(PlanNode plan : plans){
+            newPlans.add(this.removeRedundantProjections(plan));
+        }
+
+        return newPlans;
+    }
+
+    /**
+     * @return A copy of the plan node with its inputs replaced, or the node itself if it has no inputs.
+     */
+    public static PlanNode withChildren(final PlanNode plan, final List<PlanNode> children){
+        if(plan instanceof PlanNode.Scan){
+            return plan;
+        }
+        if(plan instanceof PlanNode.Select select){
+            return new PlanNode.Select(select.condition(), children.get(0));
+        }
+        if(plan instanceof PlanNode.Project project){
+            return new PlanNode.Project(project.columns(), children.get(0), project.isDistinct());
+        }
+        if(plan instanceof PlanNode.Aggregate aggregate){
+            return new PlanNode.Aggregate(aggregate.groupColumns(), aggregate.aggregates(), children.get(0));
+        }
+        if(plan instanceof PlanNode.Join){
+            return new PlanNode.Join(children.get(0), children.get(1));
+        }
+        if(plan instanceof PlanNode.CrossProduct){
+            return new PlanNode.CrossProduct(children.get(0), children.get(1));
+        }
+        if(plan instanceof PlanNode.EquiJoin equiJoin){
+            return new PlanNode.EquiJoin(children.get(0), children.get(1), equiJoin.leftKeyColumns(), equiJoin.rightKeyColumns());
+        }
+        if(plan instanceof PlanNode.Union union){
+            return new PlanNode.Union(children.get(0), children.get(1), union.isDistinct());
+        }
+        if(plan instanceof PlanNode.Minus){
+            return new PlanNode.Minus(children.get(0), children.get(1));
+        }
+        if(plan instanceof PlanNode.Intersect){
+            return new PlanNode.Intersect(children.get(0), children.get(1));
+        }
+
+        throw new UnsupportedOperationException("The optimizer doesn't know about " + plan.getClass().getSimpleName() + " nodes.");
+    }
+}
@@ -0,0 +1,191 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recursive-descent parser that turns one line of RAqueries.txt into a {@link PlanNode} tree. Each token is looked at exactly once.
+ * <p>
+ * The grammar, loosest binding first:
+ * <pre>
+ * expression := unary (('-' | 'U' | 'U_ALL' | 'INTE' | '*' | 'X') unary)*
+ * unary      := ('SELE_' | 'PROJ_' | 'PROJ_ALL_' | 'AGGR_') '{' text '}' expression | primary
+ * primary    := '(' expression ')' | tableName
+ * </pre>
+ * All the two-table operators have the same precedence and group left to right, so "A - B U C" means "(A - B) U C".
+ * A SELE, PROJ, PROJ_ALL or AGGR applies to everything after it, up to the ) that closes its group (or the end of the query), the same as
+ * it always has, so "SELE_{Payment > 85} ACTORS * Play" selects from the join and "A - PROJ_{ANO} B U C" means "A - (PROJ_{ANO} (B U C))".
+ * Parenthesize if you mean something else.
+ */
+public final class QueryParser{
+    /**
+     * Whether PROJ drops duplicate rows. PROJ_ALL never does.
+     */
+    private static volatile boolean areProjectionsDistinct = true;
+
+    /**
+     * Whether U drops duplicate rows. U_ALL never does.
+     */
+    private static volatile boolean areUnionsDistinct = true;
+
+    private final String                      query;
+    private final List<QueryTokenizer.Token> tokens;
+    private       int                         currentTokenIndex = 0;
+
+    private QueryParser(final String query){
+        this.query = query;
+        this.tokens = QueryTokenizer.tokenize(query);
+    }
+
+    /**
+     * @param distinct Whether PROJ should drop duplicate rows (set semantics, the default) or keep them all like PROJ_ALL (bag semantics,
+     *                 which is what it always did before).
+     */
+    public static void setProjectionsDistinct(final boolean distinct){
+        areProjectionsDistinct = distinct;
+    }
+
+    /**
+     * @param distinct Whether U should drop duplicate rows (set semantics, the default) or keep them all like U_ALL (bag semantics,
+     *                 which is what it always did before).
+     */
+    public static void setUnionsDistinct(final boolean distinct){
+        areUnionsDistinct = distinct;
+    }
+
+    /**
+     * @param query The query to parse, as a single line.
+     * @return The root of the logical plan for the query.
+     * @throws IllegalArgumentException if the query is blank or isn't valid relational algebra.
+     */
+    public static PlanNode parse(final String query){
+        if(query.isBlank()){
+            throw new IllegalArgumentException("The query cannot be blank.");
+        }
+
+        QueryParser parser = new QueryParser(query);
+        PlanNode plan = parser.parseExpression();
+        parser.expect(QueryTokenizer.TokenType.END, "the end of the query");
+
+        return plan;
+    }
+
+    private PlanNode parseExpression(){
+        PlanNode left = this.parseUnary();
+
+        while(this.peek().isBinaryOperator()){
+            QueryTokenizer.Token operator = this.advance();
+            PlanNode right = this.parseUnary();
+
+            left = switch(operator.type()){
+                case MINUS -> new PlanNode.Minus(left, right);
+                case UNION -> new PlanNode.Union(left, right, areUnionsDistinct);
+                case BAG_UNION -> new PlanNode.Union(left, right, false);
+                case INTERSECT -> new PlanNode.Intersect(left, right);
+                case JOIN -> new PlanNode.Join(left, right);
+                case CROSS_PRODUCT -> new PlanNode.CrossProduct(left, right);
+                default -> throw new UnsupportedOperationException("isBinaryOperator() and this switch disagree about " + operator.type() + ".");
+            };
+        }
+
+        return left;
+    }
+
+    private PlanNode parseUnary(){
+        QueryTokenizer.Token token = this.peek();
+
+        if(token.type() == QueryTokenizer.TokenType.SELECT){
+            this.advance();
+            String condition = this.expect(QueryTokenizer.TokenType.BRACED_TEXT, "a {condition} after " + Main.SELECT).text();
+            return new PlanNode.Select(condition, this.parseExpression());
+        }
+        if(token.type() == QueryTokenizer.TokenType.PROJECT || token.type() == QueryTokenizer.TokenType.BAG_PROJECT){
+            this.advance();
+            boolean isBagProjection = token.type() == QueryTokenizer.TokenType.BAG_PROJECT;
+            String columnList = this.expect(QueryTokenizer.TokenType.BRACED_TEXT, "a {column list} after " + (isBagProjection ? Main.BAG_PROJECT : Main.PROJECT)).text();
+            boolean isDistinct = !isBagProjection && areProjectionsDistinct;
+            return new PlanNode.Project(this.parseColumnList(columnList), this.parseExpression(), isDistinct);
+        }
+        if(token.type() == QueryTokenizer.TokenType.AGGREGATE){
+            this.advance();
+            String specification = this.expect(QueryTokenizer.TokenType.BRACED_TEXT, "a {group columns; aggregates} after " + Main.AGGREGATE).text();
+
+            // Everything before the semicolon (if there is one) is what to group by
+            int semicolon = specification.indexOf(';');
+            String groupColumnList = (semicolon < 0) ? "" : specification.substring(0, semicolon);
+            String aggregateList = specification.substring(semicolon + 1);
+
+            ArrayList<HashAggregator.Aggregate> aggregates = new ArrayList<>();
+            if(!aggregateList.isBlank()){
+                for(String aggregate : aggregateList.split(",")){
+                    try{
+                        aggregates.add(HashAggregator.Aggregate.parse(aggregate));
+                    }
+                    catch(IllegalArgumentException exception){
+                        throw new IllegalArgumentException(exception.getMessage() + " That's in the query \"" + this.query + "\".", exception);
+                    }
+                }
+            }
+
+            List<String> groupColumns = groupColumnList.isBlank() ? List.of() : this.parseColumnList(groupColumnList);
+            return new PlanNode.Aggregate(groupColumns, aggregates, this.parseExpression());
+        }
+
+        return this.parsePrimary();
+    }
+
+    private List<String> parseColumnList(final String columnList){
+        ArrayList<String> columns = new ArrayList<>();
+        for(String column : columnList.split(",")){
+            if(column.isBlank()){
+                throw new IllegalArgumentException("The column list {" + columnList + "} has an empty column name in the query \"" + this.query + "\".");
+            }
+            columns.add(column.trim());
+        }
+
+        return columns;
+    }
+
+    private PlanNode parsePrimary(){
+        QueryTokenizer.Token token = this.advance();
+
+        return switch(token.type()){
+            case OPEN_PARENTHESIS -> {
+                PlanNode inside = this.parseExpression();
+                this.expect(QueryTokenizer.TokenType.CLOSE_PARENTHESIS, "a closing parenthesis");
+                yield inside;
+            }
+            case TABLE_NAME -> new PlanNode.Scan(token.text());
+            default -> {
+                if(token.isBinaryOperator()){
+                    throw new IllegalArgumentException("A two-table operator needs a table on both sides. It can't start with " + token.text() + ", which is what you put.");
+                }
+                throw new IllegalArgumentException(this.describeUnexpected(token, "a table name or an opening parenthesis"));
+            }
+        };
+    }
+
+    private QueryTokenizer.Token peek(){
+        return this.tokens.get(this.currentTokenIndex);
+    }
+
+    private QueryTokenizer.Token advance(){
+        QueryTokenizer.Token token = this.tokens.get(this.currentTokenIndex);
+        if(token.type() != QueryTokenizer.TokenType.END){
+            this.currentTokenIndex++;
+        }
+
+        return token;
+    }
+
+    private QueryTokenizer.Token expect(final QueryTokenizer.TokenType type, final String whatWasExpected){
+        if(this.peek().type() != type){
+            throw new IllegalArgumentException(this.describeUnexpected(this.peek(), whatWasExpected));
+        }
+
+        return this.advance();
+    }
+
+    private String describeUnexpected(final QueryTokenizer.Token token, final String whatWasExpected){
+        String found = (token.type() == QueryTokenizer.TokenType.END) ? "the end of the query" : "\"" + token.text() + "\"";
+        return "Expected " + whatWasExpected + " at position " + token.position() + " but found " + found + " in the query \"" + this.query + "\".";
+    }
+}
@@ -0,0 +1,447 @@
+import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * EXPLAIN and EXPLAIN ANALYZE. A query line like "EXPLAIN ACTORS * Play" gives back the operator tree of the optimized plan, with how many
+ * rows the {@link CostModel} expects out of each operator, instead of the query's result. "EXPLAIN ANALYZE ACTORS * Play" runs the query too,
+ * and adds what each operator actually did: how many rows went in and came out, how many it held at once (its inputs and its result, since
+ * the {@link QueryExecutor} keeps all of them), how long it took, and how much CPU time and memory it used.
+ * <p>
+ * The times and allocation are each operator's own, not counting its inputs. CPU time and allocation are measured on the thread that ran the
+ * operator, so work it handed to other {@link Morsels} workers isn't in them (run with --threads=1 to see all of it). And while a JFR
+ * recording is running, each operator that runs also gets recorded as a RelationalAlgebra.Operator event.
+ */
+public final class QueryProfiler{
+    public static final String EXPLAIN = "EXPLAIN";
+    public static final String ANALYZE = "ANALYZE";
+
+    /**
+     * What goes in a column that wasn't measured, like the time of an operator that never ran on its own (a table scan the SELE above it
+     * answered from an index, say).
+     */
+    public static final String NOT_MEASURED = "-";
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+    /**
+     * A query line that asks for its plan.
+     *
+     * @param query       The query whose plan it is, without the EXPLAIN.
+     * @param isAnalyzing Whether the query should be run and measured too.
+     */
+    public record ExplainRequest(String query, boolean isAnalyzing){
+        /**
+         * @return The request, or null if the line is just a query.
+         */
+        public static ExplainRequest parse(final String line){
+            String trimmedLine = line.trim();
+            if(!startsWithWord(trimmedLine, EXPLAIN)){
+                return null;
+            }
+
+            String query = trimmedLine.substring(EXPLAIN.length()).trim();
+            if(startsWithWord(query, ANALYZE)){
+                return new ExplainRequest(query.substring(ANALYZE.length()).trim(), true);
+            }
+
+            return new ExplainRequest(query, false);
+        }
+
+        private static boolean startsWithWord(final String text, final String word){
+            return text.startsWith(word) && (text.length() == word.length() || Character.isWhitespace(text.charAt(word.length())));
+        }
+    }
+
+    /**
+     * One operator of an explained plan, and (if it was analyzed) what it did. When the same node runs more than once, the times and
+     * row counts add up, and the peak is the highest of them.
+     */
+    public static final class OperatorProfile{
+        private final String                operator;
+        private final double                estimatedRowCount;
+        private final List<OperatorProfile> children;
+        private       int                   numberOfExecutions      = 0;
+        private       long                  inputRowCount           = 0;
+        private       boolean               isInputRowCountMeasured = false;
+        private       long                  outputRowCount          = 0;
+        private       long                  peakRowsHeld            = 0;
+        private       long                  totalNanoseconds        = 0;
+        private       long                  ownNanoseconds          = 0;
+        private       long                  ownCpuNanoseconds       = 0;
+        private       long                  ownAllocatedBytes       = 0;
+        private       long                  resultBytes             = 0;
+        private       long                  lastStart               = Long.MIN_VALUE;
+        private       long                  lastEnd                 = Long.MIN_VALUE;
+        private       long                  lastOutputRowCount      = 0;
+
+        private OperatorProfile(final PlanNode node, final double estimatedRowCount, final List<OperatorProfile> children){
+            this.operator = describe(node);
+            this.estimatedRowCount = estimatedRowCount;
+            this.children = List.copyOf(children);
+        }
+
+        /**
+         * Adds one execution of the operator, which started and ended at those {@link System#nanoTime()}s.
+         *
+         * @return How many rows went into the operator this time.
+         */
+        private synchronized long record(final long start, final long end, final long ownCpuNanoseconds, final long ownAllocatedBytes, final DataTable result){
+            // The inputs that ran during this execution, and the time spent waiting on them (which overlaps when they ran side by side)
+            long executionInputRowCount = 0;
+            ArrayList<long[]> inputIntervals = new ArrayList<>();
+            for(OperatorProfile child : this.children){
+                synchronized(child){
+                    if(child.lastStart >= start && child.lastEnd <= end){
+                        executionInputRowCount += child.lastOutputRowCount;
+                        inputIntervals.add(new long[]{child.lastStart, child.lastEnd});
+                        this.isInputRowCountMeasured = true;
+                    }
+                }
+            }
+            inputIntervals.sort((interval1, interval2) -> Long.compare(interval1[0], interval2[0]));
+            long inputNanoseconds = 0;
+            long coveredUntil = Long.MIN_VALUE;
+            for(long[] interval : inputIntervals){
+                long from = Math.max(interval[0], coveredUntil);
+                if(interval[1] > from){
+                    inputNanoseconds += interval[1] - from;
+                    coveredUntil = interval[1];
+                }
+            }
+
+            this.numberOfExecutions++;
+            this.inputRowCount += executionInputRowCount;
+            this.outputRowCount += result.getRowCount();
+            this.peakRowsHeld = Math.max(this.peakRowsHeld, executionInputRowCount + result.getRowCount());
+            this.totalNanoseconds += end - start;
+            this.ownNanoseconds += end - start - inputNanoseconds;
+            this.ownCpuNanoseconds += Math.max(0, ownCpuNanoseconds);
+            this.ownAllocatedBytes += Math.max(0, ownAllocatedBytes);
+            this.resultBytes = Math.max(this.resultBytes, result.getMemoryUsage());
+            this.lastStart = start;
+            this.lastEnd = end;
+            this.lastOutputRowCount = result.getRowCount();
+
+            return executionInputRowCount;
+        }
+
+        public String getOperator(){
+            return this.operator;
+        }
+
+        public double getEstimatedRowCount(){
+            return this.estimatedRowCount;
+        }
+
+        public List<OperatorProfile> getChildren(){
+            return this.children;
+        }
+
+        public synchronized int getNumberOfExecutions(){
+            return this.numberOfExecutions;
+        }
+
+        public synchronized long getOutputRowCount(){
+            return this.outputRowCount;
+        }
+
+        public synchronized long getOwnNanoseconds(){
+            return this.ownNanoseconds;
+        }
+
+        /**
+         * @param isAnalyzed Whether to include the measured columns, and not just the estimates.
+         * @return One row per operator, top down, with each one's inputs indented under it.
+         */
+        public DataTable toTable(final boolean isAnalyzed){
+            String[] columnNames = isAnalyzed ? new String[]{"Operator", "Estimated rows", "Rows in", "Rows out", "Peak rows held", "Total ms", "Own ms", "Own CPU ms",
+                                                             "Own allocated bytes", "Result bytes"}
+                                              : new String[]{"Operator", "Estimated rows"};
+            ArrayList<String[]> rows = new ArrayList<>();
+            this.addRows(rows, 0, isAnalyzed);
+
+            return new DataTable(columnNames, rows);
+        }
+
+        private synchronized void addRows(final List<String[]> rows, final int depth, final boolean isAnalyzed){
+            String indentedOperator = (depth == 0) ? this.operator : DataTable.repeatedString("  ", depth - 1) + "-> " + this.operator;
+            String estimatedRows = Double.isNaN(this.estimatedRowCount) ? NOT_MEASURED : String.valueOf(Math.round(this.estimatedRowCount));
+            if(!isAnalyzed){
+                rows.add(new String[]{indentedOperator, estimatedRows});
+            }
+            else if(this.numberOfExecutions == 0){
+                rows.add(new String[]{indentedOperator, estimatedRows, NOT_MEASURED, NOT_MEASURED, NOT_MEASURED, NOT_MEASURED, NOT_MEASURED, NOT_MEASURED, NOT_MEASURED,
+                                      NOT_MEASURED});
+            }
+            else{
+                rows.add(new String[]{indentedOperator, estimatedRows, this.isInputRowCountMeasured ? String.valueOf(this.inputRowCount) : NOT_MEASURED,
+                                      String.valueOf(this.outputRowCount), String.valueOf(this.peakRowsHeld), toMilliseconds(this.totalNanoseconds),
+                                      toMilliseconds(this.ownNanoseconds), toMilliseconds(this.ownCpuNanoseconds), String.valueOf(this.ownAllocatedBytes),
+                                      String.valueOf(this.resultBytes)});
+            }
+
+            for(OperatorProfile child : this.children){
+                child.addRows(rows, depth + 1, isAnalyzed);
+            }
+        }
+
+        /**
+         * @return The operator tree as a JSON object, with its inputs in "children". Measurements that weren't taken are left out.
+         */
+        public synchronized String toJSON(){
+            StringBuilder json = new StringBuilder("{\"operator\": ").append(toJSONString(this.operator));
+            if(!Double.isNaN(this.estimatedRowCount)){
+                json.append(", \"estimatedRows\": ").append(Math.round(this.estimatedRowCount));
+            }
+            if(this.numberOfExecutions > 0){
+                json.append(", \"executions\": ").append(this.numberOfExecutions);
+                if(this.isInputRowCountMeasured){
+                    json.append(", \"rowsIn\": ").append(this.inputRowCount);
+                }
+                json.append(", \"rowsOut\": ").append(this.outputRowCount).append(", \"peakRowsHeld\": ").append(this.peakRowsHeld).append(", \"totalNanoseconds\": ")
+                    .append(this.totalNanoseconds).append(", \"ownNanoseconds\": ").append(this.ownNanoseconds).append(", \"ownCpuNanoseconds\": ")
+                    .append(this.ownCpuNanoseconds).append(", \"ownAllocatedBytes\": ").append(this.ownAllocatedBytes).append(", \"resultBytes\": ").append(this.resultBytes);
+            }
+
+            json.append(", \"children\": [");
+            for(int i = 0; i < this.children.size(); i++){
+                json.append((i == 0) ? "" : ", ").append(this.children.get(i).toJSON());
+            }
+
+            return json.append("]}").toString();
+        }
+    }
+
+    /**
+     * What an operator did, as a JFR event: from when it started until its result was ready, inputs included.
+     */
+    @Name("RelationalAlgebra.Operator")
+    @Label("Relational Algebra Operator")
+    @Category("Relational Algebra")
+    @Description("One operator of a query run by EXPLAIN ANALYZE.")
+    static final class OperatorEvent extends Event{
+        @Label("Operator")
+        String operator;
+
+        @Label("Rows In")
+        long inputRowCount;
+
+        @Label("Rows Out")
+        long outputRowCount;
+
+        @Label("Own CPU Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long ownCpuTime;
+
+        @Label("Own Allocation")
+        @DataAmount
+        long ownAllocatedBytes;
+    }
+
+    /**
+     * A {@link QueryExecutor} that measures every node it runs. Since each node runs its inputs through {@link #execute(PlanNode)},
+     * every one of them gets measured on its way through.
+     */
+    private static final class ProfilingQueryExecutor extends QueryExecutor{
+        private final Map<PlanNode, OperatorProfile> profiles;
+        /**
+         * For each node running on this thread, innermost first: the CPU time and allocation of its inputs that ran on this thread too.
+         */
+        private final ThreadLocal<ArrayDeque<long[]>> runningNodes = ThreadLocal.withInitial(ArrayDeque::new);
+
+        ProfilingQueryExecutor(final QueryExecutor settings, final Map<PlanNode, OperatorProfile> profiles){
+            super(settings.isUsingTableCache(), settings.getCatalog());
+            this.profiles = profiles;
+        }
+
+        @Override
+        public DataTable execute(final PlanNode plan) throws DataFormatException, FileNotFoundException{
+            OperatorProfile profile = this.profiles.get(plan);
+            if(profile == null){
+                return super.execute(plan);
+            }
+
+            ArrayDeque<long[]> runningNodes = this.runningNodes.get();
+            long[] inputUsage = new long[2];
+            OperatorEvent event = new OperatorEvent();
+            event.begin();
+            long cpuStart = getCpuNanoseconds();
+            long allocatedStart = getAllocatedBytes();
+            long start = System.nanoTime();
+
+            DataTable result;
+            runningNodes.push(inputUsage);
+            try{
+                result = super.execute(plan);
+            }
+            finally{
+                runningNodes.pop();
+            }
+
+            long end = System.nanoTime();
+            long cpuNanoseconds = getCpuNanoseconds() - cpuStart;
+            long allocatedBytes = getAllocatedBytes() - allocatedStart;
+            event.end();
+            if(!runningNodes.isEmpty()){
+                runningNodes.peek()[0] += cpuNanoseconds;
+                runningNodes.peek()[1] += allocatedBytes;
+            }
+
+            long inputRowCount = profile.record(start, end, cpuNanoseconds - inputUsage[0], allocatedBytes - inputUsage[1], result);
+            if(event.shouldCommit()){
+                event.operator = profile.getOperator();
+                event.inputRowCount = inputRowCount;
+                event.outputRowCount = result.getRowCount();
+                event.ownCpuTime = cpuNanoseconds - inputUsage[0];
+                event.ownAllocatedBytes = allocatedBytes - inputUsage[1];
+                event.commit();
+            }
+
+            return result;
+        }
+    }
+
+    private QueryProfiler(){
+    }
+
+    /**
+     * @param plan     An optimized plan.
+     * @param settings Where the tables come from (and whether through their caches), if the plan gets run.
+     * @return The operator tree of the plan with its estimates, and if it's analyzing, what running the plan with those settings measured.
+     */
+    public static OperatorProfile profile(final PlanNode plan, final boolean isAnalyzing, final QueryExecutor settings) throws DataFormatException, FileNotFoundException{
+        Map<PlanNode, OperatorProfile> profiles = Collections.synchronizedMap(new IdentityHashMap<>());
+        OperatorProfile root = buildProfiles(plan, new CostModel(), profiles);
+        if(isAnalyzing){
+            new ProfilingQueryExecutor(settings, profiles).execute(plan);
+        }
+
+        return root;
+    }
+
+    /**
+     * Runs (or just plans) a query line that starts with EXPLAIN.
+     *
+     * @return The plan, one operator per row, as {@link OperatorProfile#toTable(boolean)} gives it.
+     */
+    public static DataTable explain(final ExplainRequest request, final QueryExecutor settings) throws DataFormatException, FileNotFoundException{
+        PlanNode plan = new QueryOptimizer().optimize(QueryParser.parse(request.query()));
+        return profile(plan, request.isAnalyzing(), settings).toTable(request.isAnalyzing());
+    }
+
+    private static OperatorProfile buildProfiles(final PlanNode node, final CostModel costModel, final Map<PlanNode, OperatorProfile> profiles){
+        ArrayList<OperatorProfile> children = new ArrayList<>();
+        for(PlanNode child : node.getChildren()){
+            children.add(buildProfiles(child, costModel, profiles));
+        }
+
+        double estimatedRowCount;
+        try{
+            estimatedRowCount = costModel.estimate(node).rowCount();
+        }
+        catch(DataFormatException | FileNotFoundException | RuntimeException exception){
+            estimatedRowCount = Double.NaN; // It'll fail the same way when it runs, if it runs
+        }
+
+        OperatorProfile profile = new OperatorProfile(node, estimatedRowCount, children);
+        profiles.putIfAbsent(node, profile);
+        return profile;
+    }
+
+    /**
+     * @return The node on its own, without its inputs, like "SELE_{Payment > 80}" or "*".
+     */
+    public static String describe(final PlanNode node){
+        if(node instanceof PlanNode.Scan scan){
+            return scan.tableName();
+        }
+        if(node instanceof PlanNode.Select select){
+            return Main.SELECT + "_{" + select.condition() + "}";
+        }
+        if(node instanceof PlanNode.Project project){
+            return (project.isDistinct() ? Main.PROJECT : Main.BAG_PROJECT) + "_{" + String.join(", ", project.columns()) + "}";
+        }
+        if(node instanceof PlanNode.Aggregate aggregate){
+            return Main.AGGREGATE + "_{" + aggregate.getSpecification() + "}";
+        }
+        if(node instanceof PlanNode.Join){
+            return Main.JOIN;
+        }
+        if(node instanceof PlanNode.CrossProduct){
+            return Main.CROSS_PRODUCT;
+        }
+        if(node instanceof PlanNode.EquiJoin equiJoin){
+            ArrayList<String> conditions = new ArrayList<>();
+            for(int i = 0; i < equiJoin.leftKeyColumns().size(); i++){
+                conditions.add(equiJoin.leftKeyColumns().get(i) + " " + DataTable.EQUALS + " " + equiJoin.rightKeyColumns().get(i));
+            }
+            return Main.CROSS_PRODUCT + " ON " + String.join(" AND ", conditions);
+        }
+        if(node instanceof PlanNode.Union union){
+            return union.isDistinct() ? Main.UNION : Main.BAG_UNION;
+        }
+        if(node instanceof PlanNode.Minus){
+            return Main.MINUS;
+        }
+        if(node instanceof PlanNode.Intersect){
+            return Main.INTERSECT;
+        }
+
+        return node.getClass().getSimpleName();
+    }
+
+    /**
+     * @return How much CPU time the current thread has used so far, or 0 if the JVM won't say.
+     */
+    static long getCpuNanoseconds(){
+        return THREAD_BEAN.isCurrentThreadCpuTimeSupported() ? Math.max(0, THREAD_BEAN.getCurrentThreadCpuTime()) : 0;
+    }
+
+    /**
+     * @return How many bytes the current thread has allocated so far, or 0 if the JVM won't say.
+     */
+    static long getAllocatedBytes(){
+        if(THREAD_BEAN instanceof com.sun.management.ThreadMXBean threadBean && threadBean.isThreadAllocatedMemorySupported()){
+            return Math.max(0, threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()));
+        }
+
+        return 0;
+    }
+
+    private static String toMilliseconds(final long nanoseconds){
+        return String.format("%.3f", nanoseconds / 1e6);
+    }
+
+    private static String toJSONString(final String text){
+        StringBuilder json = new StringBuilder("\"");
+        for(char character : text.toCharArray()){
+            if(character == '"' || character == '\\'){
+                json.append('\\').append(character);
+            }
+            else if(character < ' '){
+                json.append(String.format("\\u%04x", (int) character));
+            }
+            else{
+                json.append(character);
+            }
+        }
+
+        return json.append('"').toString();
+    }
+}
@@ -0,0 +1,614 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
+
+/**
+ * Serves queries to any number of clients over a socket on the local machine, so the JVM, the tables in the {@link TableCatalog}, the
+ * plans and the results in the {@link SubplanCache} all stay warm between queries, instead of every batch starting from nothing.
+ * <p>
+ * Each connection is a session, and talks a line at a time. A session sends one of these and gets an answer before it sends the next:
+ * <pre>
+ * query                        Runs the query (or EXPLAIN), like a line of RAqueries.txt.
+ * PREPARE name query           Plans a query with a ? wherever a value goes in a SELE, like "SELE_{Payment > ?} Play".
+ * EXECUTE name value, value... Runs the prepared query with the values in place of its ?s, in order.
+ * DEALLOCATE name              Forgets a prepared query.
+ * QUIT                         Closes the session.
+ * </pre>
+ * A result comes back as a line with {@value #OK} and the number of rows, then the result as CSV (the column names and then each row on a
+ * line of its own). Anything else comes back as a single line: an error starting with {@value Main#ERROR_PREFIX}, or what PREPARE and
+ * DEALLOCATE did.
+ * <p>
+ * Sessions just read and write, and their queries run on a fixed number of worker threads, taken in turn from a bounded queue. When the
+ * queue is full, a query gets turned away with an error right away instead of piling up, so a flood of clients slows down (or gets
+ * told to back off) rather than running the server out of memory.
+ * <p>
+ * Each query's optimized plan is cached by its text, until a table it reads changes, so a query that was run before skips parsing and
+ * planning. A prepared query is planned just once, with its ?s still in it, and each value of an EXECUTE has to be a single word or
+ * number (and a number, if its column is all numbers, or anything but the name of a column it could be compared with instead), which goes
+ * into the plan as a literal, so a value can never turn into more of the query. The second time a plan runs, the results of its subplans get cached by the {@link SubplanCache} too, so a small query that
+ * keeps getting asked takes well under a millisecond.
+ */
+public final class QueryServer implements Closeable{
+    public static final String OK         = "OK";
+    public static final String PREPARE    = "PREPARE";
+    public static final String EXECUTE    = "EXECUTE";
+    public static final String DEALLOCATE = "DEALLOCATE";
+    public static final String QUIT       = "QUIT";
+
+    /**
+     * Where a value goes in a prepared query. Only counts inside braces, since that's the only place a value can go.
+     */
+    public static final char PARAMETER = '?';
+
+    private static final String MISPLACED_PARAMETER_MESSAGE = "A ? can only go in place of a whole value that gets compared with a column in a SELE, like in SELE_{Payment > ?} Play.";
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    public static final int MAXIMUM_SESSIONS       = 1024;
+    public static final int MAXIMUM_CACHED_PLANS   = 1024;
+
+    /**
+     * A plan is either a {@link PlanNode}, or an EXPLAIN of one.
+     *
+     * @param parameters         What each ? of a prepared query stands for, in order, or nothing for a query that isn't prepared.
+     * @param sourceFileVersions The versions of the table files the plan was made from, since statistics of the tables went into it.
+     * @param subplanKeys        The {@link SubplanCache#getSubplanKeys(PlanNode) keys of the plan's subplans}, worked out once.
+     * @param numberOfUses       How many times the plan's subplans have been counted as used by the {@link SubplanCache}, which has to take
+     *                           them back once the plan leaves the cache.
+     */
+    private record CachedPlan(Object plan, List<Parameter> parameters, Map<File, long[]> sourceFileVersions, List<String> subplanKeys, int numberOfUses){
+    }
+
+    private record ExplainedPlan(PlanNode plan, boolean isAnalyzing){
+    }
+
+    /**
+     * A query with {@value #PARAMETER}s in it, with each one numbered in order (?1, ?2, and so on), so they can still be told apart after
+     * the optimizer has moved the conditions around.
+     */
+    record PreparedQuery(String query, int numberOfParameters){
+        static PreparedQuery parse(final String query){
+            StringBuilder numberedQuery = new StringBuilder(query.length() + 8);
+            int numberOfParameters = 0;
+            int depth = 0;
+            for(int i = 0; i < query.length(); i++){
+                char character = query.charAt(i);
+                numberedQuery.append(character);
+                if(character == '{'){
+                    depth++;
+                }
+                else if(character == '}'){
+                    depth = Math.max(0, depth - 1);
+                }
+                else if(character == PARAMETER && depth > 0){
+                    numberedQuery.append(++numberOfParameters);
+                }
+            }
+
+            return new PreparedQuery(numberedQuery.toString(), numberOfParameters);
+        }
+    }
+
+    /**
+     * What a ? of a prepared query stands for: a single value compared with a column in a SELE.
+     *
+     * @param number           Which ? it is, counting from 1.
+     * @param isNumber         Whether the column is all numbers, so the value has to be a number too.
+     * @param otherColumnNames The columns of the SELE's input that the value would be taken for (none, for a ? in an IN list), since a
+     *                         condition like "ANO = MNO" compares two columns.
+     */
+    record Parameter(int number, String columnName, boolean isNumber, Set<String> otherColumnNames){
+        /**
+         * Characters that mean something in a condition, so they can't be in a value.
+         */
+        private static final String SPECIAL_CHARACTERS = "(){},<>=!" + PARAMETER;
+
+        /**
+         * @return The value, trimmed, if it's a single literal that can go in place of this ?.
+         * @throws IllegalArgumentException if it's anything more than that, so a value can only ever be a value, and never change the query.
+         */
+        String check(final String value){
+            String literal = value.trim();
+            boolean isSingleWord = !literal.isEmpty() && !PredicateParser.isKeyword(literal);
+            for(int i = 0; i < literal.length() && isSingleWord; i++){
+                isSingleWord = !Character.isWhitespace(literal.charAt(i)) && SPECIAL_CHARACTERS.indexOf(literal.charAt(i)) < 0;
+            }
+            if(!isSingleWord){
+                throw new IllegalArgumentException("The value for ?" + this.number + " has to be a single word or number, not \"" + value + "\".");
+            }
+            if(this.otherColumnNames.contains(literal)){
+                throw new IllegalArgumentException("The value for ?" + this.number + " can't be " + literal + ", since that's a column, and " + this.columnName
+                                                   + " would get compared with it instead.");
+            }
+
+            if(this.isNumber){
+                try{
+                    Double.parseDouble(literal);
+                }
+                catch(NumberFormatException exception){
+                    throw new IllegalArgumentException("The value for ?" + this.number + " has to be a number, since " + this.columnName + " is all numbers, not " + literal + ".");
+                }
+            }
+
+            return literal;
+        }
+    }
+
+    private final ServerSocket                        serverSocket;
+    private final ThreadPoolExecutor                  workers;
+    private final ExecutorService                     sessions;
+    private final Semaphore                           sessionPermits = new Semaphore(MAXIMUM_SESSIONS);
+    private final SubplanCache                        subplanCache   = new SubplanCache();
+    private final QueryExecutor                       executor       = new QueryExecutor(false, TableCatalog.getShared(), this.subplanCache);
+    private final LinkedHashMap<String, CachedPlan>   plansByQuery   = new LinkedHashMap<>(16, 0.75f, true); // In order of last use
+    private       long                                queryCount     = 0;
+    private       long                                rejectionCount = 0;
+    private       long                                planHitCount   = 0;
+
+    /**
+     * @param port            The port to listen on (on the loopback address only), or 0 for any free one.
+     * @param numberOfWorkers How many queries can run at the same time.
+     * @param queueCapacity   How many queries can wait for a worker before the next one gets turned away.
+     * @throws IOException if the port can't be listened on.
+     */
+    public QueryServer(final int port, final int numberOfWorkers, final int queueCapacity) throws IOException{
+        if(numberOfWorkers < 1){
+            throw new IllegalArgumentException("A server needs at least 1 worker, not " + numberOfWorkers + ".");
+        }
+        if(queueCapacity < 1){
+            throw new IllegalArgumentException("The queue has to have room for at least 1 query, not " + queueCapacity + ".");
+        }
+
+        this.serverSocket = new ServerSocket(port, MAXIMUM_SESSIONS, InetAddress.getLoopbackAddress());
+        this.workers = new ThreadPoolExecutor(numberOfWorkers, numberOfWorkers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                                              createThreadFactory("Query server worker"));
+        this.sessions = Executors.newCachedThreadPool(createThreadFactory("Query server session"));
+    }
+
+    private static ThreadFactory createThreadFactory(final String name){
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Runs each query once and throws away the results, so its tables are in the catalog, its plan is cached, and the JIT has seen the
+     * operators by the time a client asks for anything. Queries that fail are skipped.
+     *
+     * @return How many of them ran fine.
+     */
+    public int warmUp(final List<String> queries){
+        int numberOfQueriesRun = 0;
+        for(String query : queries){
+            try{
+                this.execute(query);
+                numberOfQueriesRun++;
+            }
+            catch(DataFormatException | FileNotFoundException | RuntimeException exception){
+                // Whoever asks for it will find out what's wrong with it
+            }
+        }
+
+        return numberOfQueriesRun;
+    }
+
+    /**
+     * Takes connections until the server gets {@link #close() closed}, each in a session of its own.
+     *
+     * @throws IOException if the socket stops taking connections for any reason but the server being closed.
+     */
+    public void run() throws IOException{
+        while(!this.serverSocket.isClosed()){
+            Socket socket;
+            try{
+                socket = this.serverSocket.accept();
+            }
+            catch(SocketException exception){
+                if(this.serverSocket.isClosed()){
+                    return;
+                }
+                throw exception;
+            }
+
+            if(!this.sessionPermits.tryAcquire()){
+                try(socket; Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)){
+                    writer.write(Main.ERROR_PREFIX + "There are already " + MAXIMUM_SESSIONS + " sessions, so try again later." + System.lineSeparator());
+                }
+                continue;
+            }
+
+            this.sessions.execute(() -> {
+                try{
+                    this.runSession(socket);
+                }
+                finally{
+                    this.sessionPermits.release();
+                }
+            });
+        }
+    }
+
+    private void runSession(final Socket socket){
+        HashMap<String, PreparedQuery> preparedQueries = new HashMap<>();
+        try(socket;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))){
+            socket.setTcpNoDelay(true); // The answers are small and somebody's waiting on each one
+
+            String line;
+            while((line = reader.readLine()) != null){
+                String request = line.trim();
+                if(request.isEmpty()){
+                    continue;
+                }
+                if(request.equalsIgnoreCase(QUIT)){
+                    return;
+                }
+
+                this.answer(request, preparedQueries, writer);
+                writer.flush();
+            }
+        }
+        catch(IOException exception){
+            // The client went away, which is its business
+        }
+    }
+
+    private void answer(final String request, final Map<String, PreparedQuery> preparedQueries, final Writer writer) throws IOException{
+        String[] commandAndRest = request.split("\\s+", 2);
+        String command = commandAndRest[0].toUpperCase(Locale.ROOT);
+        String rest = (commandAndRest.length == 2) ? commandAndRest[1] : "";
+        try{
+            if(command.equals(PREPARE) || command.equals(EXECUTE) || command.equals(DEALLOCATE)){
+                String[] nameAndRest = rest.split("\\s+", 2);
+                String name = nameAndRest[0];
+                if(name.isEmpty()){
+                    throw new IllegalArgumentException(command + " needs the name of a prepared query.");
+                }
+
+                if(command.equals(PREPARE)){
+                    if(nameAndRest.length < 2){
+                        throw new IllegalArgumentException(PREPARE + " needs a query after the name.");
+                    }
+
+                    // It gets planned right away, so whatever's wrong with it comes out here rather than at every EXECUTE
+                    PreparedQuery preparedQuery = PreparedQuery.parse(nameAndRest[1]);
+                    this.getPlan(preparedQuery.query(), preparedQuery.numberOfParameters());
+                    preparedQueries.put(name, preparedQuery);
+                    writer.write(PREPARE + "D " + name + " " + preparedQuery.numberOfParameters() + System.lineSeparator());
+                    return;
+                }
+                if(command.equals(DEALLOCATE)){
+                    if(preparedQueries.remove(name) == null){
+                        throw new IllegalArgumentException("There's no prepared query called " + name + ".");
+                    }
+                    writer.write(DEALLOCATE + "D " + name + System.lineSeparator());
+                    return;
+                }
+
+                PreparedQuery preparedQuery = preparedQueries.get(name);
+                if(preparedQuery == null){
+                    throw new IllegalArgumentException("There's no prepared query called " + name + ".");
+                }
+                List<String> values = (nameAndRest.length < 2) ? List.of() : Arrays.asList(TableFileReader.splitFields(nameAndRest[1]));
+                if(values.size() != preparedQuery.numberOfParameters()){
+                    throw new IllegalArgumentException(name + " takes " + preparedQuery.numberOfParameters() + " values, not " + values.size() + ".");
+                }
+                writeResult(this.submit(() -> this.execute(preparedQuery, values)), writer);
+                return;
+            }
+
+            writeResult(this.submit(() -> this.execute(request)), writer);
+        }
+        catch(DataFormatException | FileNotFoundException | RuntimeException exception){
+            writer.write(Main.ERROR_PREFIX + Main.getErrorMessage(exception) + System.lineSeparator());
+        }
+    }
+
+    /**
+     * Runs a query on a worker, waiting for it to finish.
+     *
+     * @throws RejectedExecutionException if there are already as many queries waiting as the queue has room for.
+     */
+    private DataTable submit(final Callable<DataTable> query) throws DataFormatException, FileNotFoundException{
+        Future<DataTable> result;
+        try{
+            result = this.workers.submit(query);
+        }
+        catch(RejectedExecutionException exception){
+            synchronized(this){
+                this.rejectionCount++;
+            }
+            throw new RejectedExecutionException("The server is busy (" + this.workers.getQueue().size() + " queries are waiting already), so try again later.");
+        }
+
+        try{
+            return result.get();
+        }
+        catch(InterruptedException exception){
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The server is shutting down.");
+        }
+        catch(ExecutionException exception){
+            if(exception.getCause() instanceof DataFormatException dataFormatException){
+                throw dataFormatException;
+            }
+            if(exception.getCause() instanceof FileNotFoundException fileNotFoundException){
+                throw fileNotFoundException;
+            }
+            if(exception.getCause() instanceof RuntimeException runtimeException){
+                throw runtimeException;
+            }
+            if(exception.getCause() instanceof Error error){
+                throw error;
+            }
+            throw new IllegalStateException("A query blew up in a way it isn't supposed to be able to.", exception.getCause());
+        }
+    }
+
+    /**
+     * Runs a query on this thread, with its plan from the cache if it's there and still up to date.
+     */
+    DataTable execute(final String query) throws DataFormatException, FileNotFoundException{
+        return this.run(this.getPlan(query, 0).plan());
+    }
+
+    /**
+     * Runs a prepared query on this thread, with each value checked against its ? and put into the plan as a literal. The plan itself
+     * only gets made once, with the ?s still in it.
+     */
+    DataTable execute(final PreparedQuery preparedQuery, final List<String> values) throws DataFormatException, FileNotFoundException{
+        CachedPlan cachedPlan = this.getPlan(preparedQuery.query(), preparedQuery.numberOfParameters());
+        ArrayList<String> literals = new ArrayList<>(values.size());
+        for(int i = 0; i < values.size(); i++){
+            literals.add(cachedPlan.parameters().get(i).check(values.get(i)));
+        }
+
+        if(cachedPlan.plan() instanceof ExplainedPlan explainedPlan){
+            return this.run(new ExplainedPlan(bind(explainedPlan.plan(), literals), explainedPlan.isAnalyzing()));
+        }
+
+        return this.run(bind((PlanNode) cachedPlan.plan(), literals));
+    }
+
+    private DataTable run(final Object plan) throws DataFormatException, FileNotFoundException{
+        if(plan instanceof ExplainedPlan explainedPlan){
+            return QueryProfiler.profile(explainedPlan.plan(), explainedPlan.isAnalyzing(), this.executor).toTable(explainedPlan.isAnalyzing());
+        }
+
+        return this.executor.execute((PlanNode) plan);
+    }
+
+    /**
+     * @param numberOfParameters How many ?s the query has, if it's a {@link PreparedQuery prepared} one, or 0 if it's just a query.
+     */
+    private CachedPlan getPlan(final String query, final int numberOfParameters) throws DataFormatException, FileNotFoundException{
+        synchronized(this){
+            this.queryCount++;
+            CachedPlan cachedPlan = this.plansByQuery.get(query);
+            // A query that was prepared and one that wasn't can have the same text, and then they get planned differently
+            if(cachedPlan != null && cachedPlan.parameters().size() == numberOfParameters && SubplanCache.areUpToDate(cachedPlan.sourceFileVersions())){
+                this.planHitCount++;
+                if(cachedPlan.numberOfUses() == 1){
+                    // Now that it's been asked for twice, its result is worth keeping
+                    this.subplanCache.addUses(cachedPlan.subplanKeys());
+                    cachedPlan = new CachedPlan(cachedPlan.plan(), cachedPlan.parameters(), cachedPlan.sourceFileVersions(), cachedPlan.subplanKeys(), 2);
+                    this.plansByQuery.put(query, cachedPlan);
+                }
+                return cachedPlan;
+            }
+        }
+
+        // Planning happens outside the lock, so a slow one doesn't hold up the others
+        QueryProfiler.ExplainRequest explainRequest = QueryProfiler.ExplainRequest.parse(query);
+        PlanNode parsedPlan = QueryParser.parse((explainRequest != null) ? explainRequest.query() : query);
+        List<Parameter> parameters = getParameters(parsedPlan, numberOfParameters);
+        Map<File, long[]> sourceFileVersions = SubplanCache.getSourceFileVersions(parsedPlan);
+        PlanNode optimizedPlan = new QueryOptimizer().optimize(parsedPlan);
+        Object plan = (explainRequest != null) ? new ExplainedPlan(optimizedPlan, explainRequest.isAnalyzing()) : optimizedPlan;
+        List<String> subplanKeys = (explainRequest != null) ? List.of() : this.subplanCache.getSubplanKeys(optimizedPlan);
+        CachedPlan cachedPlan = new CachedPlan(plan, parameters, sourceFileVersions, subplanKeys, 1);
+
+        synchronized(this){
+            this.forget(this.plansByQuery.put(query, cachedPlan));
+            this.subplanCache.addUses(subplanKeys);
+            if(this.plansByQuery.size() > MAXIMUM_CACHED_PLANS){
+                this.forget(this.plansByQuery.remove(this.plansByQuery.keySet().iterator().next()));
+            }
+        }
+
+        return cachedPlan;
+    }
+
+    /**
+     * Takes back the uses of a plan that's left the cache (if there was one), so the {@link SubplanCache} only counts plans that can still run.
+     */
+    private void forget(final CachedPlan cachedPlan){
+        for(int i = 0; cachedPlan != null && i < cachedPlan.numberOfUses(); i++){
+            this.subplanCache.removeUses(cachedPlan.subplanKeys());
+        }
+    }
+
+    /**
+     * Finds the ?s of a prepared query in its plan (before it's optimized, while each one is still in just one place), and whether each one
+     * is compared with a column of numbers.
+     *
+     * @throws IllegalArgumentException if a ? is anywhere but in place of a value compared with a column in a SELE.
+     */
+    static List<Parameter> getParameters(final PlanNode plan, final int numberOfParameters) throws DataFormatException, FileNotFoundException{
+        if(numberOfParameters == 0){
+            return List.of();
+        }
+
+        Parameter[] parameters = new Parameter[numberOfParameters];
+        addParameters(plan, parameters);
+        for(Parameter parameter : parameters){
+            if(parameter == null){
+                throw new IllegalArgumentException(MISPLACED_PARAMETER_MESSAGE);
+            }
+        }
+
+        return List.of(parameters);
+    }
+
+    private static void addParameters(final PlanNode plan, final Parameter[] parameters) throws DataFormatException, FileNotFoundException{
+        if(plan instanceof PlanNode.Select select && select.condition().indexOf(PARAMETER) >= 0){
+            CostModel.Estimate input = new CostModel().estimate(select.input());
+            for(SelectionCondition condition : getConditions(SelectionPredicate.parse(select.condition()))){
+                boolean isInList = condition.operator().equals(DataTable.IN);
+                List<String> values = isInList ? SelectionCondition.parseValueList(condition.comparedValue()) : List.of(condition.comparedValue());
+                for(String value : values){
+                    int number = getParameterNumber(value);
+                    if(number < 0){
+                        continue;
+                    }
+                    if(number == 0 || number > parameters.length || parameters[number - 1] != null){
+                        throw new IllegalArgumentException(MISPLACED_PARAMETER_MESSAGE);
+                    }
+
+                    parameters[number - 1] = new Parameter(number, condition.columnName(), input.getColumn(condition.columnName()).isNumeric(),
+                                                           isInList ? Set.of() : Set.copyOf(input.columns().keySet()));
+                }
+            }
+        }
+        for(PlanNode child : plan.getChildren()){
+            addParameters(child, parameters);
+        }
+    }
+
+    /**
+     * @return Every comparison in the predicate, in the order they were written.
+     */
+    private static List<SelectionCondition> getConditions(final SelectionPredicate predicate){
+        if(predicate instanceof SelectionPredicate.Comparison comparison){
+            return List.of(comparison.condition());
+        }
+
+        List<SelectionPredicate> operands;
+        if(predicate instanceof SelectionPredicate.Not not){
+            operands = List.of(not.predicate());
+        }
+        else if(predicate instanceof SelectionPredicate.And and){
+            operands = and.predicates();
+        }
+        else{
+            operands = ((SelectionPredicate.Or) predicate).predicates();
+        }
+
+        ArrayList<SelectionCondition> conditions = new ArrayList<>();
+        for(SelectionPredicate operand : operands){
+            conditions.addAll(getConditions(operand));
+        }
+
+        return conditions;
+    }
+
+    /**
+     * @return Which ? the value is, like 2 for "?2", or -1 if it's just a value.
+     */
+    private static int getParameterNumber(final String value){
+        if(value.length() < 2 || value.length() > 10 || value.charAt(0) != PARAMETER){
+            return -1;
+        }
+        for(int i = 1; i < value.length(); i++){
+            if(!Character.isDigit(value.charAt(i))){
+                return -1;
+            }
+        }
+
+        return Integer.parseInt(value.substring(1));
+    }
+
+    /**
+     * @param literals The {@link Parameter#check(String) checked} value of each ?, in order.
+     * @return The plan with each ? in its conditions replaced by its value. Only the compared values change, since the conditions get put
+     *         back together from their parsed comparisons rather than from the text around the ?s.
+     */
+    static PlanNode bind(final PlanNode plan, final List<String> literals){
+        ArrayList<PlanNode> children = new ArrayList<>(2);
+        for(PlanNode child : plan.getChildren()){
+            children.add(bind(child, literals));
+        }
+
+        if(plan instanceof PlanNode.Select select && select.condition().indexOf(PARAMETER) >= 0){
+            return new PlanNode.Select(bind(SelectionPredicate.parse(select.condition()), literals).toString(), children.get(0));
+        }
+
+        return QueryOptimizer.withChildren(plan, children);
+    }
+
+    private static SelectionPredicate bind(final SelectionPredicate predicate, final List<String> literals){
+        if(predicate instanceof SelectionPredicate.Not not){
+            return new SelectionPredicate.Not(bind(not.predicate(), literals));
+        }
+        if(predicate instanceof SelectionPredicate.And and){
+            return new SelectionPredicate.And(bindAll(and.predicates(), literals));
+        }
+        if(predicate instanceof SelectionPredicate.Or or){
+            return new SelectionPredicate.Or(bindAll(or.predicates(), literals));
+        }
+
+        SelectionCondition condition = ((SelectionPredicate.Comparison) predicate).condition();
+        if(!condition.operator().equals(DataTable.IN)){
+            return new SelectionPredicate.Comparison(new SelectionCondition(condition.columnName(), condition.operator(), bind(condition.comparedValue(), literals)));
+        }
+
+        ArrayList<String> values = new ArrayList<>();
+        for(String value : SelectionCondition.parseValueList(condition.comparedValue())){
+            values.add(bind(value, literals));
+        }
+
+        return new SelectionPredicate.Comparison(new SelectionCondition(condition.columnName(), DataTable.IN, "(" + String.join(", ", values) + ")"));
+    }
+
+    private static List<SelectionPredicate> bindAll(final List<SelectionPredicate> predicates, final List<String> literals){
+        ArrayList<SelectionPredicate> boundPredicates = new ArrayList<>(predicates.size());
+        for(SelectionPredicate predicate : predicates){
+            boundPredicates.add(bind(predicate, literals));
+        }
+
+        return boundPredicates;
+    }
+
+    private static String bind(final String value, final List<String> literals){
+        int number = getParameterNumber(value);
+        return (number > 0) ? literals.get(number - 1) : value;
+    }
+
+    private static void writeResult(final DataTable result, final Writer writer) throws IOException{
+        writer.write(OK + " " + result.getRowCount() + System.lineSeparator());
+        result.writeTo(new CsvResultSink(writer));
+        writer.write(System.lineSeparator());
+    }
+
+    /**
+     * @return The port the server is listening on, which is handy if it was started on port 0.
+     */
+    public int getPort(){
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops taking connections and running queries. Sessions in the middle of a query get an error back.
+     */
+    @Override
+    public void close() throws IOException{
+        this.serverSocket.close();
+        this.workers.shutdownNow();
+        this.sessions.shutdownNow();
+    }
+
+    @Override
+    public synchronized String toString(){
+        return "QueryServer[port " + this.getPort() + ", " + this.queryCount + " queries, " + this.planHitCount + " plan hits, " + this.rejectionCount + " turned away, " +
+               this.workers.getQueue().size() + " waiting]";
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chops a relational algebra query into tokens in a single left-to-right pass, so the parser never has to go back and re-scan the string.
+ * The operators are the same ones {@link Main} has always used: SELE_{...}, PROJ_{...}, -, U, INTE, * and X, plus PROJ_ALL_{...}, U_ALL and AGGR_{...}.
+ * Whatever is inside curly braces is handed over untouched as one token, since that's the condition or column list of a SELE or PROJ.
+ */
+public final class QueryTokenizer{
+    public enum TokenType{
+        TABLE_NAME, SELECT, PROJECT, BAG_PROJECT, AGGREGATE, BRACED_TEXT, OPEN_PARENTHESIS, CLOSE_PARENTHESIS, MINUS, UNION, BAG_UNION, INTERSECT, JOIN, CROSS_PRODUCT,
+        END
+    }
+
+    /**
+     * @param type     What kind of token this is.
+     * @param text     The text of the token. For {@link TokenType#BRACED_TEXT} this is what was between the braces, without the braces.
+     * @param position Where in the query the token starts, for error messages.
+     */
+    public record Token(TokenType type, String text, int position){
+        public boolean isBinaryOperator(){
+            return switch(this.type){
+                case MINUS, UNION, BAG_UNION, INTERSECT, JOIN, CROSS_PRODUCT -> true;
+                default -> false;
+            };
+        }
+    }
+
+    private QueryTokenizer(){
+    }
+
+    /**
+     * @param query The query to tokenize, as a single line.
+     * @return All the tokens in order, always ending with a {@link TokenType#END} token.
+     */
+    public static List<Token> tokenize(final String query){
+        ArrayList<Token> tokens = new ArrayList<>(query.length() / 2 + 1);
+
+        int i = 0;
+        while(i < query.length()){
+            char currentCharacter = query.charAt(i);
+
+            if(Character.isWhitespace(currentCharacter)){
+                i++;
+            }
+            else if(currentCharacter == '('){
+                tokens.add(new Token(TokenType.OPEN_PARENTHESIS, "(", i++));
+            }
+            else if(currentCharacter == ')'){
+                tokens.add(new Token(TokenType.CLOSE_PARENTHESIS, ")", i++));
+            }
+            else if(currentCharacter == Main.MINUS.charAt(0)){
+                tokens.add(new Token(TokenType.MINUS, Main.MINUS, i++));
+            }
+            else if(currentCharacter == Main.JOIN.charAt(0)){
+                tokens.add(new Token(TokenType.JOIN, Main.JOIN, i++));
+            }
+            else if(currentCharacter == '{'){
+                int closingBrace = findClosingCurlyBrace(query, i);
+                tokens.add(new Token(TokenType.BRACED_TEXT, query.substring(i + 1, closingBrace).trim(), i));
+                i = closingBrace + 1;
+            }
+            else if(isWordCharacter(currentCharacter)){
+                int start = i;
+                while(i < query.length() && isWordCharacter(query.charAt(i))){
+                    i++;
+                }
+
+                String word = query.substring(start, i);
+                tokens.add(new Token(getWordType(word), word, start));
+            }
+            else{
+                throw new IllegalArgumentException("Unexpected character '" + currentCharacter + "' at position " + i + " of the query \"" + query + "\".");
+            }
+        }
+
+        tokens.add(new Token(TokenType.END, "", query.length()));
+        return tokens;
+    }
+
+    private static TokenType getWordType(final String word){
+        // The underscore is optional, so both "SELE_{...}" and "SELE {...}" work.
+        String withoutTrailingUnderscore = word.endsWith("_") ? word.substring(0, word.length() - 1) : word;
+
+        return switch(withoutTrailingUnderscore){
+            case Main.SELECT -> TokenType.SELECT;
+            case Main.PROJECT -> TokenType.PROJECT;
+            case Main.BAG_PROJECT -> TokenType.BAG_PROJECT;
+            case Main.AGGREGATE -> TokenType.AGGREGATE;
+            default -> switch(word){
+                case Main.UNION -> TokenType.UNION;
+                case Main.BAG_UNION -> TokenType.BAG_UNION;
+                case Main.INTERSECT -> TokenType.INTERSECT;
+                case Main.CROSS_PRODUCT -> TokenType.CROSS_PRODUCT;
+                default -> TokenType.TABLE_NAME;
+            };
+        };
+    }
+
+    private static boolean isWordCharacter(final char character){
+        return Character.isLetterOrDigit(character) || character == '_' || character == '.';
+    }
+
+    private static int findClosingCurlyBrace(final String query, final int openingBrace){
+        int braceOffset = 0;
+        for(int i = openingBrace; i < query.length(); i++){
+            if(query.charAt(i) == '{'){
+                braceOffset++;
+            }
+            else if(query.charAt(i) == '}'){
+                braceOffset--;
+                if(braceOffset == 0){
+                    return i;
+                }
+            }
+        }
+
+        throw new IllegalArgumentException("There are more opening curly braces than closing braces in this query, starting at position " + openingBrace + ".");
+    }
+}
@@ -0,0 +1,25 @@
+import java.io.IOException;
+
+/**
+ * Somewhere a query result gets written to as it comes, a batch of rows at a time, so it never has to be turned into one giant String first.
+ * Call {@link #start(String[])} once, then {@link #write(DataTable)} for every batch (in order), then {@link #finish()}.
+ * {@link DataTable#writeTo(ResultSink)} does all three for a whole table.
+ */
+public interface ResultSink{
+    /**
+     * @param columnNames The columns of every batch that's going to be written.
+     */
+    void start(String[] columnNames) throws IOException;
+
+    /**
+     * @param rows The next rows of the result, with the columns {@link #start(String[])} was given.
+     */
+    void write(DataTable rows) throws IOException;
+
+    /**
+     * Writes whatever is still waiting to be written, and flushes it. Doesn't close anything.
+     *
+     * @return How many rows were written altogether.
+     */
+    long finish() throws IOException;
+}
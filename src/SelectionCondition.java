@@ -0,0 +1,129 @@
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A single comparison of a SELE, like "Payment > 80". The compared value is either a constant or, if it happens to be the name of
+ * one of the table's columns, that column (so "ANO = ANO2" compares two columns of the same row).
+ * Comparisons get combined with AND, OR and NOT into a {@link SelectionPredicate}.
+ *
+ * @param columnName    The column on the left of the operator.
+ * @param operator      One of {@link DataTable#GREATER_THAN}, {@link DataTable#GREATER_THAN_OR_EQUAL}, {@link DataTable#LESS_THAN},
+ *                      {@link DataTable#LESS_THAN_OR_EQUAL}, {@link DataTable#EQUALS}, {@link DataTable#NOT_EQUALS}, or {@link DataTable#IN}.
+ * @param comparedValue Whatever is on the right of the operator. For IN, that's the list of values, like "(A1, A2)".
+ */
+public record SelectionCondition(String columnName, String operator, String comparedValue){
+    /**
+     * @param whereClause Single comparison as String, supporting >, >=, <, <=, =, != and IN (like "ANO IN (A1, A2)").
+     * @return The parsed condition.
+     * @throws IllegalArgumentException if there isn't exactly one operator in the clause.
+     */
+    public static SelectionCondition parse(final String whereClause){
+        int operatorStart = -1;
+        String operator = "";
+        for(int i = 0; i < whereClause.length() && operatorStart < 0; i++){
+            char currentCharacter = whereClause.charAt(i);
+            boolean isFollowedByEquals = i + 1 < whereClause.length() && whereClause.charAt(i + 1) == '=';
+            if(currentCharacter == '>' || currentCharacter == '<'){
+                operatorStart = i;
+                operator = isFollowedByEquals ? currentCharacter + DataTable.EQUALS : String.valueOf(currentCharacter);
+            }
+            else if(currentCharacter == '='){
+                operatorStart = i;
+                operator = DataTable.EQUALS;
+            }
+            else if(currentCharacter == '!' && isFollowedByEquals){
+                operatorStart = i;
+                operator = DataTable.NOT_EQUALS;
+            }
+        }
+
+        if(operatorStart < 0){
+            int inStart = findIn(whereClause);
+            if(inStart < 0){
+                throw new IllegalArgumentException("This WHERE clause has no valid comparison operator. Use '>', '>=', '<', '<=', '=', '!=', or IN.");
+            }
+
+            String columnName = whereClause.substring(0, inStart).trim();
+            List<String> comparedValues = parseValueList(whereClause.substring(inStart + DataTable.IN.length()));
+            return new SelectionCondition(columnName, DataTable.IN, "(" + String.join(", ", comparedValues) + ")");
+        }
+
+        String columnName = whereClause.substring(0, operatorStart).trim();
+        String comparedValue = whereClause.substring(operatorStart + operator.length()).trim();
+        if(comparedValue.contains(DataTable.GREATER_THAN) || comparedValue.contains(DataTable.LESS_THAN) || comparedValue.contains(DataTable.EQUALS)){
+            throw new IllegalArgumentException("This WHERE clause is malformed. More than one operator was detected.");
+        }
+
+        return new SelectionCondition(columnName, operator, comparedValue);
+    }
+
+    /**
+     * @return Where the word IN starts in the clause, or -1 if it isn't there.
+     */
+    private static int findIn(final String whereClause){
+        for(int i = whereClause.indexOf(DataTable.IN); i >= 0; i = whereClause.indexOf(DataTable.IN, i + 1)){
+            int end = i + DataTable.IN.length();
+            boolean startsWord = i > 0 && Character.isWhitespace(whereClause.charAt(i - 1));
+            boolean endsWord = end < whereClause.length() && (Character.isWhitespace(whereClause.charAt(end)) || whereClause.charAt(end) == '(');
+            if(startsWord && endsWord){
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param valueList A parenthesized, comma separated list of values, like "(A1, A2)".
+     * @return The values, trimmed.
+     */
+    public static List<String> parseValueList(final String valueList){
+        String trimmedList = valueList.trim();
+        if(!trimmedList.startsWith("(") || !trimmedList.endsWith(")")){
+            throw new IllegalArgumentException("The values after IN have to be in parentheses, like \"ANO IN (A1, A2)\", not \"" + trimmedList + "\".");
+        }
+
+        ArrayList<String> values = new ArrayList<>();
+        String listContents = trimmedList.substring(1, trimmedList.length() - 1);
+        if(listContents.isBlank()){
+            return values;
+        }
+        for(String value : listContents.split(",", -1)){
+            if(value.isBlank()){
+                throw new IllegalArgumentException("The list " + trimmedList + " has an empty value in it.");
+            }
+            values.add(value.trim());
+        }
+
+        return values;
+    }
+
+    /**
+     * @param columnNames The columns of the table this condition is applied to.
+     * @return Whether the compared value is another column rather than a constant.
+     */
+    public boolean comparesTwoColumns(final String[] columnNames){
+        return !this.operator.equals(DataTable.IN) && DataTable.containsItemEquivalentTo(columnNames, this.comparedValue);
+    }
+
+    /**
+     * @param columnNames The columns of the table this condition is applied to.
+     * @return Every column this condition reads, when applied to a table with those columns.
+     */
+    public Set<String> getReferencedColumns(final String[] columnNames){
+        LinkedHashSet<String> referencedColumns = new LinkedHashSet<>(2);
+        referencedColumns.add(this.columnName);
+        if(this.comparesTwoColumns(columnNames)){
+            referencedColumns.add(this.comparedValue);
+        }
+
+        return referencedColumns;
+    }
+
+    @Override
+    public String toString(){
+        return this.columnName + " " + this.operator + " " + this.comparedValue;
+    }
+}
@@ -0,0 +1,273 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The whole condition of a SELE: {@link SelectionCondition comparisons} combined with AND, OR and NOT (and parentheses), like
+ * "Payment >= 80 AND NOT (ANO IN (A1, A2) OR MNO = M3)". AND binds tighter than OR, and the keywords have to be in capitals.
+ * <p>
+ * A predicate is run against a selection vector: the rows (in ascending order) that are still in the running. Each comparison is one tight
+ * loop over just those rows, so an AND only looks at the rows the conditions before it let through, an OR only looks at the rows nothing
+ * before it has let through yet, and the cheapest conditions (going by {@link #getCost(DataTable)}) get to go first. That's how one SELE
+ * does the work of a whole chain of them, in one pass and without building a table in between.
+ * <p>
+ * Since the conditions get reordered, a comparison that can't be made on some row (like comparing text with {@code >}) only fails the
+ * query if that row gets as far as that comparison.
+ */
+public sealed interface SelectionPredicate permits SelectionPredicate.Comparison, SelectionPredicate.And, SelectionPredicate.Or, SelectionPredicate.Not{
+    /**
+     * @param whereClause A condition, like "Payment > 80 AND ANO != A1".
+     * @return The parsed predicate.
+     * @throws IllegalArgumentException if the condition can't be parsed.
+     */
+    static SelectionPredicate parse(final String whereClause){
+        return PredicateParser.parse(whereClause);
+    }
+
+    /**
+     * @param candidateRows Rows of the table, in ascending order.
+     * @return The candidate rows the predicate is true for, still in ascending order.
+     */
+    int[] getRowsWhere(DataTable table, int[] candidateRows);
+
+    /**
+     * @param columnNames The columns of the table this predicate is applied to.
+     * @return Every column this predicate reads, when applied to a table with those columns.
+     */
+    Set<String> getReferencedColumns(String[] columnNames);
+
+    /**
+     * @return Roughly how much work it is to check one row of the table, relative to comparing a number column with a constant.
+     */
+    int getCost(DataTable table);
+
+    /**
+     * @return Every condition that has to be true for this one to be, which is just this one unless it's an AND.
+     */
+    default List<SelectionPredicate> getConjuncts(){
+        return List.of(this);
+    }
+
+    /**
+     * @return A predicate that's true when all of them are. Nested ANDs get flattened.
+     */
+    static SelectionPredicate and(final List<SelectionPredicate> predicates){
+        ArrayList<SelectionPredicate> conjuncts = new ArrayList<>();
+        for(SelectionPredicate predicate : predicates){
+            conjuncts.addAll(predicate.getConjuncts());
+        }
+
+        return (conjuncts.size() == 1) ? conjuncts.get(0) : new And(conjuncts);
+    }
+
+    /**
+     * One comparison.
+     */
+    record Comparison(SelectionCondition condition) implements SelectionPredicate{
+        private static final int NUMBER_COST      = 1;
+        private static final int IN_COST          = 2;
+        private static final int TEXT_COST        = 3;
+        private static final int TWO_COLUMNS_COST = 4;
+
+        @Override
+        public int[] getRowsWhere(final DataTable table, final int[] candidateRows){
+            Column column = table.getColumn(this.condition.columnName());
+            if(!this.condition.comparesTwoColumns(table.getColumnNames())){
+                return column.getRowsWhere(this.condition.operator(), this.condition.comparedValue(), candidateRows);
+            }
+
+            return Column.getRowsWhere(column, this.condition.operator(), table.getColumn(this.condition.comparedValue()), candidateRows);
+        }
+
+        @Override
+        public Set<String> getReferencedColumns(final String[] columnNames){
+            return this.condition.getReferencedColumns(columnNames);
+        }
+
+        @Override
+        public int getCost(final DataTable table){
+            if(this.condition.comparesTwoColumns(table.getColumnNames())){
+                return TWO_COLUMNS_COST;
+            }
+            if(this.condition.operator().equals(DataTable.IN)){
+                return IN_COST;
+            }
+
+            return (table.getColumn(this.condition.columnName()) instanceof StringColumn) ? TEXT_COST : NUMBER_COST;
+        }
+
+        @Override
+        public String toString(){
+            return this.condition.toString();
+        }
+    }
+
+    /**
+     * True when every one of its predicates is.
+     */
+    record And(List<SelectionPredicate> predicates) implements SelectionPredicate{
+        public And{
+            predicates = List.copyOf(predicates);
+        }
+
+        @Override
+        public int[] getRowsWhere(final DataTable table, final int[] candidateRows){
+            int[] rows = candidateRows;
+            for(SelectionPredicate predicate : sortedByCost(this.predicates, table)){
+                if(rows.length == 0){
+                    break;
+                }
+                rows = predicate.getRowsWhere(table, rows);
+            }
+
+            return rows;
+        }
+
+        @Override
+        public Set<String> getReferencedColumns(final String[] columnNames){
+            return getReferencedColumnsOf(this.predicates, columnNames);
+        }
+
+        @Override
+        public int getCost(final DataTable table){
+            return getTotalCost(this.predicates, table);
+        }
+
+        @Override
+        public List<SelectionPredicate> getConjuncts(){
+            return this.predicates;
+        }
+
+        @Override
+        public String toString(){
+            ArrayList<String> conjuncts = new ArrayList<>(this.predicates.size());
+            for(SelectionPredicate predicate : this.predicates){
+                conjuncts.add((predicate instanceof Or) ? "(" + predicate + ")" : predicate.toString());
+            }
+
+            return String.join(" AND ", conjuncts);
+        }
+    }
+
+    /**
+     * True when at least one of its predicates is.
+     */
+    record Or(List<SelectionPredicate> predicates) implements SelectionPredicate{
+        public Or{
+            predicates = List.copyOf(predicates);
+        }
+
+        @Override
+        public int[] getRowsWhere(final DataTable table, final int[] candidateRows){
+            int[] selectedRows = new int[0];
+            int[] undecidedRows = candidateRows;
+            for(SelectionPredicate predicate : sortedByCost(this.predicates, table)){
+                if(undecidedRows.length == 0){
+                    break;
+                }
+
+                int[] newlySelectedRows = predicate.getRowsWhere(table, undecidedRows);
+                selectedRows = mergeRows(selectedRows, newlySelectedRows);
+                undecidedRows = Column.getRowsNotIn(undecidedRows, newlySelectedRows);
+            }
+
+            return selectedRows;
+        }
+
+        @Override
+        public Set<String> getReferencedColumns(final String[] columnNames){
+            return getReferencedColumnsOf(this.predicates, columnNames);
+        }
+
+        @Override
+        public int getCost(final DataTable table){
+            return getTotalCost(this.predicates, table);
+        }
+
+        @Override
+        public String toString(){
+            ArrayList<String> disjuncts = new ArrayList<>(this.predicates.size());
+            for(SelectionPredicate predicate : this.predicates){
+                disjuncts.add(predicate.toString());
+            }
+
+            return String.join(" OR ", disjuncts);
+        }
+    }
+
+    /**
+     * True when its predicate isn't.
+     */
+    record Not(SelectionPredicate predicate) implements SelectionPredicate{
+        @Override
+        public int[] getRowsWhere(final DataTable table, final int[] candidateRows){
+            return Column.getRowsNotIn(candidateRows, this.predicate.getRowsWhere(table, candidateRows));
+        }
+
+        @Override
+        public Set<String> getReferencedColumns(final String[] columnNames){
+            return this.predicate.getReferencedColumns(columnNames);
+        }
+
+        @Override
+        public int getCost(final DataTable table){
+            return this.predicate.getCost(table);
+        }
+
+        @Override
+        public String toString(){
+            return (this.predicate instanceof Comparison) ? "NOT " + this.predicate : "NOT (" + this.predicate + ")";
+        }
+    }
+
+    /**
+     * @return The predicates, cheapest first. Ones that cost the same stay in the order they were written.
+     */
+    private static List<SelectionPredicate> sortedByCost(final List<SelectionPredicate> predicates, final DataTable table){
+        ArrayList<SelectionPredicate> sortedPredicates = new ArrayList<>(predicates);
+        sortedPredicates.sort(Comparator.comparingInt(predicate -> predicate.getCost(table)));
+
+        return sortedPredicates;
+    }
+
+    private static int getTotalCost(final List<SelectionPredicate> predicates, final DataTable table){
+        int totalCost = 0;
+        for(SelectionPredicate predicate : predicates){
+            totalCost += predicate.getCost(table);
+        }
+
+        return totalCost;
+    }
+
+    private static Set<String> getReferencedColumnsOf(final List<SelectionPredicate> predicates, final String[] columnNames){
+        LinkedHashSet<String> referencedColumns = new LinkedHashSet<>();
+        for(SelectionPredicate predicate : predicates){
+            referencedColumns.addAll(predicate.getReferencedColumns(columnNames));
+        }
+
+        return referencedColumns;
+    }
+
+    /**
+     * @return Every row of both (which can't have any rows in common), in ascending order.
+     */
+    private static int[] mergeRows(final int[] rows1, final int[] rows2){
+        if(rows1.length == 0){
+            return rows2;
+        }
+        if(rows2.length == 0){
+            return rows1;
+        }
+
+        int[] mergedRows = new int[rows1.length + rows2.length];
+        int i = 0;
+        int j = 0;
+        for(int k = 0; k < mergedRows.length; k++){
+            mergedRows[k] = (j == rows2.length || (i < rows1.length && rows1[i] < rows2[j])) ? rows1[i++] : rows2[j++];
+        }
+
+        return mergedRows;
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * A temporary file that rows get written to when they don't fit in a query's {@link MemoryBudget}, and read back from a batch at a time.
+ * It can be read as many times as you like once it's written, and it's deleted when it's closed (or when the program exits, if it never is).
+ * <p>
+ * Each batch is its row count followed by its columns one after the other, every value as the exact text it prints as (or -1 for a null),
+ * so the rows come back with exactly the same values and the columns get their types figured out again like any other table's.
+ */
+public final class SpillFile implements AutoCloseable{
+    /**
+     * Where spill files go. It's the system's temporary directory unless told otherwise.
+     */
+    private static File directory = null;
+
+    private final String[]         columnNames;
+    private final File             file;
+    private       DataOutputStream output;
+    private       long             rowCount = 0;
+
+    /**
+     * @param columnNames The columns of every batch that gets written.
+     */
+    public SpillFile(final String[] columnNames) throws IOException{
+        this.columnNames = columnNames.clone();
+        this.file = (directory == null) ? Files.createTempFile("RAspill", ".tmp").toFile() : Files.createTempFile(directory.toPath(), "RAspill", ".tmp").toFile();
+        this.file.deleteOnExit();
+        this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file), 1 << 16));
+    }
+
+    public static synchronized void setDirectory(final File newDirectory){
+        directory = newDirectory;
+    }
+
+    public String[] getColumnNames(){
+        return this.columnNames.clone();
+    }
+
+    public long getRowCount(){
+        return this.rowCount;
+    }
+
+    public void write(final DataTable batch) throws IOException{
+        if(this.output == null){
+            throw new IllegalStateException("This spill file has already been read, so it can't be written to anymore.");
+        }
+        if(batch.getRowCount() == 0){
+            return;
+        }
+
+        this.output.writeInt(batch.getRowCount());
+        for(int j = 0; j < this.columnNames.length; j++){
+            Column column = batch.getColumn(j);
+            for(int i = 0; i < batch.getRowCount(); i++){
+                String value = column.getString(i);
+                if(value == null){
+                    this.output.writeInt(-1);
+                }
+                else{
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    this.output.writeInt(bytes.length);
+                    this.output.write(bytes);
+                }
+            }
+        }
+        this.rowCount += batch.getRowCount();
+    }
+
+    /**
+     * Finishes writing (if that isn't done yet) and starts reading from the beginning.
+     *
+     * @return An iterator over the batches, in the order they were written. Open it before use, like any other.
+     */
+    public BatchIterator read(){
+        return new BatchIterator(){
+            private DataInputStream input;
+
+            @Override
+            public void open() throws IOException{
+                SpillFile.this.finishWriting();
+                this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(SpillFile.this.file), 1 << 16));
+            }
+
+            @Override
+            public String[] getColumnNames(){
+                return SpillFile.this.getColumnNames();
+            }
+
+            @Override
+            public DataTable next() throws IOException{
+                if(this.input == null){
+                    return null;
+                }
+
+                int batchRowCount;
+                try{
+                    batchRowCount = this.input.readInt();
+                }
+                catch(EOFException exception){
+                    this.close();
+                    return null;
+                }
+
+                String[] columnNames = SpillFile.this.columnNames;
+                Column[] columns = new Column[columnNames.length];
+                for(int j = 0; j < columns.length; j++){
+                    ColumnBuilder builder = new ColumnBuilder(batchRowCount);
+                    for(int i = 0; i < batchRowCount; i++){
+                        int length = this.input.readInt();
+                        if(length < 0){
+                            builder.add(null);
+                        }
+                        else{
+                            byte[] bytes = new byte[length];
+                            this.input.readFully(bytes);
+                            builder.add(new String(bytes, StandardCharsets.UTF_8));
+                        }
+                    }
+                    columns[j] = DictionaryColumn.encodeIfWorthIt(columnNames[j], builder.build());
+                }
+
+                return new DataTable(columnNames, columns);
+            }
+
+            @Override
+            public void close(){
+                if(this.input != null){
+                    try{
+                        this.input.close();
+                    }
+                    catch(IOException exception){
+                        // Only reading, so nothing can be lost
+                    }
+                    this.input = null;
+                }
+            }
+        };
+    }
+
+    private void finishWriting() throws IOException{
+        if(this.output != null){
+            this.output.close();
+            this.output = null;
+        }
+    }
+
+    /**
+     * Deletes the file. Safe to call more than once.
+     */
+    @Override
+    public void close(){
+        try{
+            this.finishWriting();
+        }
+        catch(IOException exception){
+            // It's getting deleted anyway
+        }
+        this.file.delete();
+    }
+}
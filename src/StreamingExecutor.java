@@ -0,0 +1,1309 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.DataFormatException;
+
+/**
+ * Runs a {@link PlanNode} tree as a pipeline of {@link BatchIterator}s, so rows flow from the table files to the output a batch at a time.
+ * Scans, selections, projections and unions hold on to nothing but the batch going through them. Only the operators that can't
+ * produce anything until they've seen all of one input buffer that input: the build (right) side of a join or cross product,
+ * and the right side of MINUS and INTERSECT. AGGR doesn't hold on to rows at all, just its groups.
+ * <p>
+ * So a SELE over a huge table runs in the memory of one batch, as long as the result goes straight to a {@link ResultSink} through {@link #executeTo(PlanNode, ResultSink)}.
+ * <p>
+ * What the blocking operators buffer comes out of one {@link MemoryBudget} per query. When an input doesn't fit, the operator partitions
+ * both of its inputs into {@link SpillFile}s by a hash of the columns it matches rows on, handles each partition on its own (partitioning it
+ * again if it still doesn't fit), and merges the partitions' results back into the order the left side's rows came in. So a query gives
+ * exactly the same rows in exactly the same order whether or not anything spilled.
+ */
+public class StreamingExecutor{
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * An input that doesn't fit gets split into 2^PARTITION_BITS partitions, and a partition that still doesn't fit gets split again (by
+     * other bits of the hash), up to MAXIMUM_PARTITIONING_DEPTH times. Past that it just gets buffered, which only happens when more rows
+     * than fit in the budget all have the same key.
+     */
+    static final int PARTITION_BITS            = 4;
+    static final int NUMBER_OF_PARTITIONS      = 1 << PARTITION_BITS;
+    static final int MAXIMUM_PARTITIONING_DEPTH = 3;
+
+    /**
+     * What the column partitioned left rows carry their row number in gets called (followed by the partitioning depth, since partitions of
+     * partitions carry one of these per level). No table file can have a column name starting with a NUL.
+     */
+    static final String ROW_NUMBER_COLUMN = "\0row";
+
+    private final int  batchSize;
+    private final long memoryLimit;
+
+    public StreamingExecutor(){
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize How many rows the scans read at a time.
+     */
+    public StreamingExecutor(final int batchSize){
+        this(batchSize, MemoryBudget.DEFAULT_LIMIT);
+    }
+
+    /**
+     * @param memoryLimit How many bytes each query's blocking operators can buffer between them before they spill to disk.
+     */
+    public StreamingExecutor(final int batchSize, final long memoryLimit){
+        if(batchSize < 1){
+            throw new IllegalArgumentException("The batch size has to be at least 1, not " + batchSize + ".");
+        }
+        if(memoryLimit < 0){
+            throw new IllegalArgumentException("The memory limit can't be negative, like " + memoryLimit + " bytes.");
+        }
+
+        this.batchSize = batchSize;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * @return An iterator (not opened yet) that produces the result of the plan, with a fresh memory budget.
+     */
+    public BatchIterator createIterator(final PlanNode plan){
+        return this.createIterator(plan, new MemoryBudget(this.memoryLimit));
+    }
+
+    /**
+     * @param budget What the plan's blocking operators share.
+     * @return An iterator (not opened yet) that produces the result of the plan.
+     */
+    public BatchIterator createIterator(final PlanNode plan, final MemoryBudget budget){
+        if(plan instanceof PlanNode.Scan scan){
+            return new ScanIterator(scan.tableName(), this.batchSize);
+        }
+        if(plan instanceof PlanNode.Select select){
+            return new SelectIterator(this.createIterator(select.input(), budget), select.condition());
+        }
+        if(plan instanceof PlanNode.Project project && project.isDistinct()){
+            // Dropping duplicates is grouping by every column with nothing to compute, so it gets the same memory budget and spilling
+            return new AggregateIterator(this.createIterator(project.input(), budget), project.columns().toArray(new String[0]), List.of(), budget, this.batchSize, 0);
+        }
+        if(plan instanceof PlanNode.Project project){
+            return new ProjectIterator(this.createIterator(project.input(), budget), project.columns().toArray(new String[0]));
+        }
+        if(plan instanceof PlanNode.Aggregate aggregate){
+            return new AggregateIterator(this.createIterator(aggregate.input(), budget), aggregate.groupColumns().toArray(new String[0]), aggregate.aggregates(), budget,
+                                         this.batchSize, 0);
+        }
+        if(plan instanceof PlanNode.Join join){
+            return new HashJoinIterator(this.createIterator(join.left(), budget), this.createIterator(join.right(), budget), null, null, budget, this.batchSize, 0);
+        }
+        if(plan instanceof PlanNode.EquiJoin equiJoin){
+            return new HashJoinIterator(this.createIterator(equiJoin.left(), budget), this.createIterator(equiJoin.right(), budget),
+                                        equiJoin.leftKeyColumns().toArray(new String[0]), equiJoin.rightKeyColumns().toArray(new String[0]), budget, this.batchSize, 0);
+        }
+        if(plan instanceof PlanNode.CrossProduct crossProduct){
+            return new CrossProductIterator(this.createIterator(crossProduct.left(), budget), this.createIterator(crossProduct.right(), budget), budget);
+        }
+        if(plan instanceof PlanNode.Union union && union.isDistinct()){
+            // Like a distinct PROJ, this is grouping by every column, with whatever columns the union turns out to have
+            return new AggregateIterator(new UnionIterator(this.createIterator(union.left(), budget), this.createIterator(union.right(), budget)), null, List.of(), budget,
+                                         this.batchSize, 0);
+        }
+        if(plan instanceof PlanNode.Union union){
+            return new UnionIterator(this.createIterator(union.left(), budget), this.createIterator(union.right(), budget));
+        }
+        if(plan instanceof PlanNode.Minus minus){
+            return new SetDifferenceIterator(this.createIterator(minus.left(), budget), this.createIterator(minus.right(), budget), false, budget, this.batchSize, 0);
+        }
+        if(plan instanceof PlanNode.Intersect intersect){
+            return new SetDifferenceIterator(this.createIterator(intersect.left(), budget), this.createIterator(intersect.right(), budget), true, budget,
+                                             this.batchSize, 0);
+        }
+
+        throw new UnsupportedOperationException("The streaming executor doesn't know how to run a " + plan.getClass().getSimpleName() + " node.");
+    }
+
+    /**
+     * Runs the plan and collects the whole result. Only worth it over {@link QueryExecutor} if the intermediate results are big and the final one isn't.
+     */
+    public DataTable execute(final PlanNode plan) throws DataFormatException, IOException{
+        try(BatchIterator iterator = this.createIterator(plan)){
+            iterator.open();
+            return drain(iterator);
+        }
+    }
+
+    /**
+     * Runs the plan and writes the result as it comes, in exactly the format of {@link DataTable#toCSV()}.
+     *
+     * @return How many rows were written.
+     */
+    public long executeToCSV(final PlanNode plan, final Writer writer) throws DataFormatException, IOException{
+        return this.executeTo(plan, new CsvResultSink(writer));
+    }
+
+    /**
+     * Runs the plan and hands each batch of the result to the sink as it comes.
+     *
+     * @return How many rows were written.
+     */
+    public long executeTo(final PlanNode plan, final ResultSink sink) throws DataFormatException, IOException{
+        try(BatchIterator iterator = this.createIterator(plan)){
+            iterator.open();
+
+            sink.start(iterator.getColumnNames());
+            for(DataTable batch = iterator.next(); batch != null; batch = iterator.next()){
+                sink.write(batch);
+            }
+
+            return sink.finish();
+        }
+    }
+
+    /**
+     * Pulls every remaining batch out of an opened iterator and glues them together.
+     */
+    public static DataTable drain(final BatchIterator iterator) throws DataFormatException, IOException{
+        ArrayList<DataTable> batches = new ArrayList<>();
+        for(DataTable batch = iterator.next(); batch != null; batch = iterator.next()){
+            batches.add(batch);
+        }
+
+        return DataTable.concatenate(iterator.getColumnNames(), batches);
+    }
+
+    /**
+     * What's been read of an input that's being buffered within a budget.
+     */
+    static final class BufferedBatches{
+        final ArrayList<DataTable> batches       = new ArrayList<>();
+        long                       reservedBytes = 0;
+        /**
+         * Whether the whole input fit. If not, the last batch didn't, so it's in the list without being reserved, and the input has more.
+         */
+        boolean                    isComplete    = false;
+    }
+
+    /**
+     * Reads batches from an opened iterator for as long as the budget has room for them.
+     *
+     * @param isHashed Whether the batches are going into a hash table (which costs more than just holding on to them).
+     */
+    static BufferedBatches buffer(final BatchIterator iterator, final MemoryBudget budget, final boolean isHashed) throws DataFormatException, IOException{
+        BufferedBatches buffered = new BufferedBatches();
+        for(DataTable batch = iterator.next(); batch != null; batch = iterator.next()){
+            long size = isHashed ? MemoryBudget.getHashedSize(batch) : batch.getMemoryUsage();
+            buffered.batches.add(batch);
+            if(!budget.tryReserve(size)){
+                return buffered;
+            }
+            buffered.reservedBytes += size;
+        }
+
+        buffered.isComplete = true;
+        return buffered;
+    }
+
+    /**
+     * @return Which of the {@link #NUMBER_OF_PARTITIONS} partitions the row goes in at that depth. Rows with equal keys always go in the same one,
+     *         even from different tables, since equal keys are equal values.
+     */
+    static int getPartition(final DataTable batch, final int row, final int[] keyIndices, final int depth){
+        int mixedHash = batch.getRowKey(row, keyIndices).hashCode() * 0x9E3779B9;
+        return (mixedHash >>> (Integer.SIZE - PARTITION_BITS * (depth + 1))) & (NUMBER_OF_PARTITIONS - 1);
+    }
+
+    static boolean isRowNumberColumn(final String columnName){
+        return columnName.startsWith(ROW_NUMBER_COLUMN);
+    }
+
+    /**
+     * @return The column names with a row number column (for partitioning at that depth) in front.
+     */
+    static String[] withRowNumberColumn(final String[] columnNames, final int depth){
+        String[] newColumnNames = new String[columnNames.length + 1];
+        newColumnNames[0] = ROW_NUMBER_COLUMN + depth;
+        System.arraycopy(columnNames, 0, newColumnNames, 1, columnNames.length);
+        return newColumnNames;
+    }
+
+    /**
+     * Splits rows into {@link #NUMBER_OF_PARTITIONS} spill files by a hash of their key columns. If it's numbering rows, each one gets its
+     * number (counting from 0 across everything added) put in a new first column, so results made from the partitions can be merged
+     * back into that order with a {@link MergeIterator}.
+     */
+    static final class Partitioner implements AutoCloseable{
+        private final SpillFile[] partitions = new SpillFile[NUMBER_OF_PARTITIONS];
+        private final int[]       keyIndices;
+        private final int         depth;
+        private final boolean     isNumberingRows;
+        private       long        nextRowNumber = 0;
+
+        /**
+         * @param columnNames The columns of the rows that will be added.
+         * @param keyIndices Which of those columns the rows get partitioned by.
+         */
+        Partitioner(final String[] columnNames, final int[] keyIndices, final int depth, final boolean isNumberingRows) throws IOException{
+            this.keyIndices = keyIndices;
+            this.depth = depth;
+            this.isNumberingRows = isNumberingRows;
+
+            String[] partitionColumnNames = isNumberingRows ? withRowNumberColumn(columnNames, depth) : columnNames;
+            try{
+                for(int p = 0; p < NUMBER_OF_PARTITIONS; p++){
+                    this.partitions[p] = new SpillFile(partitionColumnNames);
+                }
+            }
+            catch(IOException exception){
+                this.close();
+                throw exception;
+            }
+        }
+
+        void add(final DataTable batch) throws IOException{
+            int rowCount = batch.getRowCount();
+            int[] partitionOfRow = new int[rowCount];
+            int[] numberOfRowsInPartition = new int[NUMBER_OF_PARTITIONS];
+            for(int i = 0; i < rowCount; i++){
+                partitionOfRow[i] = StreamingExecutor.getPartition(batch, i, this.keyIndices, this.depth);
+                numberOfRowsInPartition[partitionOfRow[i]]++;
+            }
+
+            DataTable rows = this.isNumberingRows ? this.numberRows(batch) : batch;
+            for(int p = 0; p < NUMBER_OF_PARTITIONS; p++){
+                if(numberOfRowsInPartition[p] == 0){
+                    continue;
+                }
+
+                int[] rowsInPartition = new int[numberOfRowsInPartition[p]];
+                int k = 0;
+                for(int i = 0; i < rowCount; i++){
+                    if(partitionOfRow[i] == p){
+                        rowsInPartition[k++] = i;
+                    }
+                }
+                this.partitions[p].write(rows.gatherRows(rowsInPartition));
+            }
+        }
+
+        private DataTable numberRows(final DataTable batch){
+            long[] rowNumbers = new long[batch.getRowCount()];
+            for(int i = 0; i < rowNumbers.length; i++){
+                rowNumbers[i] = this.nextRowNumber++;
+            }
+
+            Column[] columns = new Column[batch.getColumnNames().length + 1];
+            columns[0] = new LongColumn(rowNumbers);
+            for(int j = 1; j < columns.length; j++){
+                columns[j] = batch.getColumn(j - 1);
+            }
+
+            return new DataTable(withRowNumberColumn(batch.getColumnNames(), this.depth), columns);
+        }
+
+        SpillFile getPartition(final int partition){
+            return this.partitions[partition];
+        }
+
+        /**
+         * Deletes every partition.
+         */
+        @Override
+        public void close(){
+            for(SpillFile partition : this.partitions){
+                if(partition != null){
+                    partition.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * The merge half of an external merge sort: merges spill files, whose rows are each in order of their row number column (the first one),
+     * into one stream in that order, without the row numbers. Deletes the files when it's closed.
+     */
+    static final class MergeIterator implements BatchIterator{
+        private final List<SpillFile> runs;
+        private final String[]        columnNames;
+        private final int             batchSize;
+        private       BatchIterator[] readers;
+        private       DataTable[]     currentBatches;
+        private       int[]           positions;
+
+        /**
+         * @param columnNames The columns of the result, which are the runs' columns without the first one.
+         */
+        MergeIterator(final List<SpillFile> runs, final String[] columnNames, final int batchSize){
+            this.runs = runs;
+            this.columnNames = columnNames;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void open() throws DataFormatException, IOException{
+            this.readers = new BatchIterator[this.runs.size()];
+            this.currentBatches = new DataTable[this.runs.size()];
+            this.positions = new int[this.runs.size()];
+            for(int r = 0; r < this.readers.length; r++){
+                this.readers[r] = this.runs.get(r).read();
+                this.readers[r].open();
+                this.currentBatches[r] = this.readers[r].next();
+            }
+        }
+
+        @Override
+        public String[] getColumnNames(){
+            return this.columnNames.clone();
+        }
+
+        private long getCurrentRowNumber(final int run, final int position){
+            return this.currentBatches[run].getColumn(0).getLong(position);
+        }
+
+        @Override
+        public DataTable next() throws DataFormatException, IOException{
+            if(this.readers == null){
+                return null;
+            }
+
+            ArrayList<DataTable> pieces = new ArrayList<>();
+            int numberOfRows = 0;
+            while(numberOfRows < this.batchSize){
+                // The run with the lowest next row number gets to hand out rows until they pass the next lowest run's
+                int lowestRun = -1;
+                long lowestRowNumber = Long.MAX_VALUE;
+                long secondLowestRowNumber = Long.MAX_VALUE;
+                for(int r = 0; r < this.currentBatches.length; r++){
+                    if(this.currentBatches[r] == null){
+                        continue;
+                    }
+
+                    long rowNumber = this.getCurrentRowNumber(r, this.positions[r]);
+                    if(rowNumber < lowestRowNumber){
+                        secondLowestRowNumber = lowestRowNumber;
+                        lowestRowNumber = rowNumber;
+                        lowestRun = r;
+                    }
+                    else if(rowNumber < secondLowestRowNumber){
+                        secondLowestRowNumber = rowNumber;
+                    }
+                }
+                if(lowestRun < 0){
+                    break;
+                }
+
+                DataTable batch = this.currentBatches[lowestRun];
+                int start = this.positions[lowestRun];
+                int end = start;
+                while(end < batch.getRowCount() && numberOfRows + (end - start) < this.batchSize && this.getCurrentRowNumber(lowestRun, end) < secondLowestRowNumber){
+                    end++;
+                }
+
+                pieces.add(batch.gatherRows(Column.getRowsBetween(start, end)));
+                numberOfRows += end - start;
+                this.positions[lowestRun] = end;
+                if(end == batch.getRowCount()){
+                    this.currentBatches[lowestRun] = this.readers[lowestRun].next();
+                    this.positions[lowestRun] = 0;
+                }
+            }
+
+            if(pieces.isEmpty()){
+                this.close();
+                return null;
+            }
+
+            DataTable merged = DataTable.concatenate(pieces.get(0).getColumnNames(), pieces);
+            Column[] columns = new Column[this.columnNames.length];
+            for(int j = 0; j < columns.length; j++){
+                columns[j] = merged.getColumn(j + 1);
+            }
+
+            return new DataTable(this.columnNames, columns);
+        }
+
+        @Override
+        public void close(){
+            if(this.readers != null){
+                for(BatchIterator reader : this.readers){
+                    if(reader != null){
+                        reader.close();
+                    }
+                }
+                this.readers = null;
+                this.currentBatches = null;
+            }
+            for(SpillFile run : this.runs){
+                run.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a table file a batch of lines at a time.
+     */
+    static final class ScanIterator implements BatchIterator{
+        private final String         tableName;
+        private final int            batchSize;
+        private       BufferedReader reader;
+        private       String[]       columnNames;
+
+        ScanIterator(final String tableName, final int batchSize){
+            this.tableName = tableName;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void open() throws DataFormatException, IOException{
+            this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(QueryExecutor.getTableFile(this.tableName)), StandardCharsets.UTF_8));
+
+            String header = this.reader.readLine();
+            if(header == null){
+                this.close();
+                throw new DataFormatException("This file has no data.");
+            }
+            this.columnNames = TableFileReader.splitFields(header);
+        }
+
+        @Override
+        public String[] getColumnNames(){
+            return this.columnNames.clone();
+        }
+
+        @Override
+        public DataTable next() throws IOException{
+            if(this.reader == null){
+                return null;
+            }
+
+            ArrayList<String[]> rows = new ArrayList<>(this.batchSize);
+            String line;
+            while(rows.size() < this.batchSize && (line = this.reader.readLine()) != null){
+                rows.add(TableFileReader.splitFields(line));
+            }
+
+            if(rows.isEmpty()){
+                this.close();
+                return null;
+            }
+
+            return new DataTable(this.columnNames, rows);
+        }
+
+        @Override
+        public void close(){
+            if(this.reader != null){
+                try{
+                    this.reader.close();
+                }
+                catch(IOException exception){
+                    // Only reading, so nothing can be lost
+                }
+                this.reader = null;
+            }
+        }
+    }
+
+    static final class SelectIterator implements BatchIterator{
+        private final BatchIterator      input;
+        private final SelectionPredicate predicate;
+
+        SelectIterator(final BatchIterator input, final String condition){
+            this.input = input;
+            this.predicate = SelectionPredicate.parse(condition);
+        }
+
+        @Override
+        public void open() throws DataFormatException, IOException{
+            this.input.open();
+        }
+
+        @Override
+        public String[] getColumnNames(){
+            return this.input.getColumnNames();
+        }
+
+        @Override
+        public DataTable next() throws DataFormatException, IOException{
+            for(DataTable batch = this.input.next(); batch != null; batch = this.input.next()){
+                DataTable selectedRows = batch.selectWhere(this.predicate);
+                if(selectedRows.getRowCount() > 0){
+                    return selectedRows;
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public void close(){
+            this.input.close();
+        }
+    }
+
+    static final class ProjectIterator implements BatchIterator{
+        private final BatchIterator input;
+        private final String[]      columns;
+
+        ProjectIterator(final BatchIterator input, final String[] columns){
+            this.input = input;
+            this.columns = columns;
+        }
+
+        @Override
+        public void open() throws DataFormatException, IOException{
+            this.input.open();
+            DataTable.getIndicesInArrayOfItemsEquivalentTo(this.input.getColumnNames(), this.columns); // Fail now rather than on the first batch
+        }
+
+        @Override
+        public String[] getColumnNames(){
+            return this.columns.clone();
+        }
+
+        @Override
+        public DataTable next() throws DataFormatException, IOException{
+            DataTable batch = this.input.next();
+            return (batch == null) ? null : batch.project(this.columns);
+        }
+
+        @Override
+        public void close(){
+            this.input.close();
+        }
+    }
+
+    /**
+     * Hands out everything from the left, then everything from the right (with its columns put in the left's order).
+     */
+    static final class UnionIterator implements BatchIterator{
+        private final BatchIterator left;
+        private final BatchIterator right;
+        private       DataTable     emptyLeftTable;
+        private       boolean       isLeftDone = false;
+
+        UnionIterator(final BatchIterator left, final BatchIterator right){
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public void open() throws DataFormatException, IOException{
+            this.left.open();
+            this.right.open();
+            this.emptyLeftTable = new DataTable(this.left.getColumnNames(), List.of());
+        }
+
+        @Override
+        public String[] getColumnNames(){
+            return this.left.getColumnNames();
+        }
+
+        @Override
+        public DataTable next() throws DataFormatException, IOException{
+            if(!this.isLeftDone){
+                DataTable batch = this.left.next();
+                if(batch != null){
+                    return batch;
+                }
+                this.isLeftDone = true;
+            }
+
+            DataTable batch = this.right.next();
+            return (batch == null) ? null : this.emptyLeftTable.unionWith(batch);
+        }
+
+        @Override
+        public void close(){
+            this.left.close();
+            this.right.close();
+        }
+    }
+
+    /**
+     * Groups its whole input when opened, then hands the groups out a batch at a time. It holds on to nothing but the groups, and those come out
+     * of the budget.
+     * <p>
+     * If the groups stop fitting, it's a hybrid hash aggregation: the groups it already has keep taking their rows, and the rows of any group it
+     * hasn't seen yet get partitioned by their group columns into spill files. Each partition gets grouped on its own (by another of these, one
+     * level deeper). Every spilled group showed up after every group that stayed in memory, so those come out first, and then the partitions'
+     * groups get merged back into the order they first showed up in.
+     */
+    static final class AggregateIterator implements BatchIterator{
+        private final BatchIterator                  input;
+        private       String[]                       groupColumns;
+        private final List<HashAggregator.Aggregate> aggregates;
+        private final MemoryBudget                   budget;
+        private final int                            batchSize;
+        private final int                            depth;
+        private       String[]                       columnNames;
+        private       long                           reservedBytes = 0;
+        private       DataTable                      result;
+        private       int                            nextResultRow = 0;
+        private       BatchIterator                  partitionedResult;
+
+        /**
+         * @param groupColumns What to group by, or null for every column of the input (which just drops its duplicate rows).
+         * @param depth        How many times the rows have been partitioned already.
+         */
+        AggregateIterator(final BatchIterator input, final String[] groupColumns, final List<HashAggregator.Aggregate> aggregates, final MemoryBudget budget,
+                          final int batchSize, final int depth){
+            this.input = input;
+            this.groupColumns = groupColumns;
+            this.aggregates = aggregates;
+            this.budget = budget;
+            this.batchSize = batchSize;
+            this.depth = depth;
+        }
+
+        @Override
+        public void open() throws DataFormatException, IOException{
+            this.input.open();
+            String[] inputColumnNames = this.input.getColumnNames();
+            if(this.groupColumns == null){
+                this.groupColumns = inputColumnNames;
+            }
+            HashAggregator aggregator = new HashAggregator(inputColumnNames, this.groupColumns, this.aggregates);
+            this.columnNames = aggregator.getColumnNames();
+
+            Partitioner spilledRows = null;
+            try{
+                for(DataTable batch = this.input.next(); batch != null; batch = this.input.next()){
+                    if(spilledRows != null){
+                        int[] rowsOfNewGroups = aggregator.add(batch, 0, batch.getRowCount(), false);
+                        if(rowsOfNewGroups.length > 0){
+                            spilledRows.add(batch.gatherRows(rowsOfNewGroups));
+                        }
+                        continue;
+                    }
+
+                    aggregator.add(batch);
+                    long growth = aggregator.getMemoryUsage() - this.reservedBytes;
+                    if(growth > 0 && !this.budget.tryReserve(growth)){
+                        this.budget.forceReserve(growth); // They're already in there
+                        if(this.groupColumns.length > 0 && this.depth < MAXIMUM_PARTITIONING_DEPTH){
+                            this.budget.recordSpill();
+                            spilledRows = new Partitioner(inputColumnNames, DataTable.getIndicesInArrayOfItemsEquivalentTo(inputColumnNames, this.groupColumns), this.depth, true);
+                        }
+                    }
+                    this.reservedBytes += Math.max(0, growth);
+                }
+                this.input.close();
+                this.result = aggregator.getResult();
+
+                // The finished groups take a lot less than the hash table did, which leaves the partitions more room
+                this.budget.release(this.reservedBytes);
+                this.reservedBytes = this.result.getMemoryUsage();
+                this.budget.forceReserve(this.reservedBytes);
+
+                if(spilledRows != null){
+                    this.partitionedResult = this.aggregatePartitions(spilledRows);
+                    this.partitionedResult.open();
+                }
+            }
+            finally{
+                if(spilledRows != null){
+                    spilledRows.close();
+                }
+            }
+        }
+
+        /**
+         * Groups each partition into a spill file, with the row number each group first showed up at in front.
+         *
+         * @return The results of the partitions, merged.
+         */
+        private BatchIterator aggregatePartitions(final Partitioner spilledRows) throws DataFormatException, IOException{
+            String[] resultColumnNames = withRowNumberColumn(this.columnNames, this.depth);
+            ArrayList<HashAggregator.Aggregate> partitionAggregates = new ArrayList<>();
+            partitionAggregates.add(new HashAggregator.Aggregate(HashAggregator.Function.MIN, resultColumnNames[0], resultColumnNames[0]));
+            partitionAggregates.addAll(this.aggregates);
+
+            ArrayList<SpillFile> results = new ArrayList<>();
+            try{
+                for(int p = 0; p < NUMBER_OF_PARTITIONS; p++){
+                    if(spilledRows.getPartition(p).getRowCount() == 0){
+                        continue;
+                    }
+
+                    SpillFile result = new SpillFile(resultColumnNames);
+                    results.add(result);
+                    try(AggregateIterator partitionAggregate = new AggregateIterator(spilledRows.getPartition(p).read(), this.groupColumns, partitionAggregates, this.budget,
+                                                                                     this.batchSize, this.depth + 1)){
+                        partitionAggregate.open();
+                        for(DataTable batch = partitionAggregate.next(); batch != null; batch = partitionAggregate.next()){
+                            // The row numbers come out after the group columns, and they have to go first
+                            Column[] columns = new Column[resultColumnNames.length];
+                            columns[0] = batch.getColumn(this.groupColumns.length);
+                            for(int j = 1; j < columns.length; j++){
+                                columns[j] = batch.getColumn((j <= this.groupColumns.length) ? j - 1 : j);
+                            }
+                            result.write(new DataTable(resultColumnNames, columns));
+                        }
+                    }
+                }
+            }
+            catch(DataFormatException | IOException | RuntimeException exception){
+                for(SpillFile result : results){
+                    result.close();
+                }
+                throw exception;
+            }
+
+            return new MergeIterator(results, this.columnNames, this.batchSize);
+        }
+
+        @Override
+        public String[] getColumnNames(){
+            return this.columnNames.clone();
+        }
+
+        @Override
+        public DataTable next() throws DataFormatException, IOException{
+            if(this.result != null && this.nextResultRow < this.result.getRowCount()){
+                int fromRow = this.nextResultRow;
+                this.nextResultRow = Math.min(this.result.getRowCount(), fromRow + this.batchSize);
+                return (fromRow == 0 && this.nextResultRow == this.result.getRowCount()) ? this.result
+                                                                                          : this.result.gatherRows(Column.getRowsBetween(fromRow, this.nextResultRow));
+            }
+
+            return (this.partitionedResult == null) ? null : this.partitionedResult.next();
+        }
+
+        @Override
+        public void close(){
+            this.input.close();
+            if(this.partitionedResult != null){
+                this.partitionedResult.close();
+                this.partitionedResult = null;
+            }
+            this.result = null;
+            this.budget.release(this.reservedBytes);
+            this.reservedBytes = 0;
+        }
+    }
+
+    /**
+     * Builds a hash table on the whole right side when opened, then streams the left side through it.
+     * Does a natural join if no key columns are given, otherwise an equi-join on them.
+     * <p>
+     * If the right side doesn't fit in the budget, it's a grace hash join: both sides get partitioned by key, each pair of partitions gets
+     * joined on its own (by another of these, one level deeper), and the results get merged back into the left side's order.
+     */
+    static final class HashJoinIterator implements BatchIterator{
+        private final BatchIterator left;
+        private final BatchIterator right;
+        private final String[]      leftKeyColumns;
+        private final String[]      rightKeyColumns;
+        private final MemoryBudget  budget;
+        private final int           batchSize;
+        private final int           depth;
+        private       JoinHashTable rightHashTable;
+        private       long          reservedBytes = 0;
+        private       BatchIterator partitionedResult;
+        private       String[]      columnNames;
+
+        /**
+         * @param depth How many times the rows have been partitioned already.
+         */
+        HashJoinIterator(final BatchIterator left, final BatchIterator right, final String[] leftKeyColumns, final String[] rightKeyColumns, final MemoryBudget budget,
+                         final int batchSize, final int depth){
+            this.left = left;
+            this.right = right;
+            this.leftKeyColumns = leftKeyColumns;
+            this.rightKeyColumns = rightKeyColumns;
+            this.budget = budget;
+            this.batchSize = batchSize;
+            this.depth = depth;
+        }
+
+        @Override
+        public void open() throws DataFormatException, IOException{
+            this.right.open();
+            BufferedBatches bufferedRight = buffer(this.right, this.budget, true);
+            this.reservedBytes = bufferedRight.reservedBytes;
+
+            String[] rightColumnNames = this.right.getColumnNames();
+            if(!bufferedRight.isComplete && this.depth < MAXIMUM_PARTITIONING_DEPTH){
+                this.left.open();
+                this.setColumnNames(this.left.getColumnNames(), rightColumnNames);
+                this.partitionedResult = this.joinInPartitions(bufferedRight);
+                this.partitionedResult.open();
+                return;
+            }
+
+            if(!bufferedRight.isComplete){
+                // Partitioning hasn't split it up, so it's probably all one key. Nothing for it but to go over budget.
+                long lastBatchSize = MemoryBudget.getHashedSize(bufferedRight.batches.get(bufferedRight.batches.size() - 1));
+                this.budget.forceReserve(lastBatchSize);
+                this.reservedBytes += lastBatchSize;
+                for(DataTable batch = this.right.next(); batch != null; batch = this.right.next()){
+                    bufferedRight.batches.add(batch);
+                    this.budget.forceReserve(MemoryBudget.getHashedSize(batch));
+                    this.reservedBytes += MemoryBudget.getHashedSize(batch);
+                }
+            }
+            DataTable rightTable = DataTable.concatenate(rightColumnNames, bufferedRight.batches);
+            this.right.close();
+            this.left.open();
+
+            String[] leftColumnNames = this.left.getColumnNames();
+            this.setColumnNames(leftColumnNames, rightColumnNames);
+            this.rightHashTable = new JoinHashTable(rightTable, this.getRightKeys(leftColumnNames, rightColumnNames));
+        }
+
+        private void setColumnNames(final String[] leftColumnNames, final String[] rightColumnNames){
+            if(this.leftKeyColumns == null){
+                this.columnNames = DataTable.getCombinedArrayWithoutDuplicates(leftColumnNames, rightColumnNames);
+            }
+            else{
+                this.columnNames = Arrays.copyOf(leftColumnNames, leftColumnNames.length + rightColumnNames.length);
+                System.arraycopy(rightColumnNames, 0, this.columnNames, leftColumnNames.length, rightColumnNames.length);
+            }
+        }
+
+        private String[] getLeftKeys(final String[] leftColumnNames, final String[] rightColumnNames){
+            return (this.leftKeyColumns == null) ? DataTable.getCommonElementsInArrays(leftColumnNames, rightColumnNames) : this.leftKeyColumns;
+        }
+
+        private String[] getRightKeys(final String[] leftColumnNames, final String[] rightColumnNames){
+            return (this.rightKeyColumns == null) ? DataTable.getCommonElementsInArrays(leftColumnNames, rightColumnNames) : this.rightKeyColumns;
+        }
+
+        /**
+         * Partitions what's been buffered of the right side and the rest of both sides, and joins each pair of partitions into a spill file.
+         *
+         * @return The results of the partitions, merged.
+         */
+        private BatchIterator joinInPartitions(final BufferedBatches bufferedRight) throws DataFormatException, IOException{
+            this.budget.recordSpill();
+
+            String[] leftColumnNames = this.left.getColumnNames();
+            String[] rightColumnNames = this.right.getColumnNames();
+            int[] leftKeyIndices = DataTable.getIndicesInArrayOfItemsEquivalentTo(leftColumnNames, this.getLeftKeys(leftColumnNames, rightColumnNames));
+            int[] rightKeyIndices = DataTable.getIndicesInArrayOfItemsEquivalentTo(rightColumnNames, this.getRightKeys(leftColumnNames, rightColumnNames));
+
+            ArrayList<SpillFile> results = new ArrayList<>();
+            try(Partitioner rightPartitions = new Partitioner(rightColumnNames, rightKeyIndices, this.depth, false);
+                Partitioner leftPartitions = new Partitioner(leftColumnNames, leftKeyIndices, this.depth, true)){
+                for(DataTable batch : bufferedRight.batches){
+                    rightPartitions.add(batch);
+                }
+                bufferedRight.batches.clear();
+                this.budget.release(this.reservedBytes);
+                this.reservedBytes = 0;
+                for(DataTable batch = this.right.next(); batch != null; batch = this.right.next()){
+                    rightPartitions.add(batch);
+                }
+                this.right.close();
+
+                for(DataTable batch = this.left.next(); batch != null; batch = this.left.next()){
+                    leftPartitions.add(batch);
+                }
+                this.left.close();
+
+                for(int p = 0; p < NUMBER_OF_PARTITIONS; p++){
+                    if(leftPartitions.getPartition(p).getRowCount() == 0 || rightPartitions.getPartition(p).getRowCount() == 0){
+                        continue;
+                    }
+
+                    SpillFile result = new SpillFile(withRowNumberColumn(this.columnNames, this.depth));
+                    results.add(result);
+                    try(HashJoinIterator partitionJoin = new HashJoinIterator(leftPartitions.getPartition(p).read(), rightPartitions.getPartition(p).read(),
+                                                                              this.leftKeyColumns, this.rightKeyColumns, this.budget, this.batchSize, this.depth + 1)){
+                        partitionJoin.open();
+                        for(DataTable batch = partitionJoin.next(); batch != null; batch = partitionJoin.next()){
+                            result.write(batch);
+                        }
+                    }
+                }
+            }
+            catch(DataFormatException | IOException | RuntimeException exception){
+                for(SpillFile result : results){
+                    result.close();
+                }
+                throw exception;
+            }
+
+            return new MergeIterator(results, this.columnNames, this.batchSize);
+        }
+
+        @Override
+        public String[] getColumnNames(){
+            return this.columnNames.clone();
+        }
+
+        @Override
+        public DataTable next() throws DataFormatException, IOException{
+            if(this.partitionedResult != null){
+                return this.partitionedResult.next();
+            }
+
+            for(DataTable batch = this.left.next(); batch != null; batch = this.left.next()){
+                DataTable joinedRows = (this.leftKeyColumns == null) ? batch.joinWith(this.rightHashTable) : batch.equiJoinWith(this.rightHashTable, this.leftKeyColumns);
+                if(joinedRows.getRowCount() > 0){
+                    return joinedRows;
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public void close(){
+            this.left.close();
+            this.right.close();
+            if(this.partitionedResult != null){
+                this.partitionedResult.close();
+                this.partitionedResult = null;
+            }
+            this.rightHashTable = null;
+            this.budget.release(this.reservedBytes);
+            this.reservedBytes = 0;
+        }
+    }
+
+    /**
+     * Buffers the whole right side when opened, then crosses each batch of the left side with it. If the right side doesn't fit in the
+     * budget, it goes to a spill file instead, which gets read through once for every left row (so the rows still come out in the same order).
+     */
+    static final class CrossProductIterator implements BatchIterator{
+        private final BatchIterator left;
+        private final BatchIterator right;
+        private final MemoryBudget  budget;
+        private       DataTable     rightTable;
+        private       long          reservedBytes = 0;
+        private       SpillFile     spilledRight;
+        private       DataTable     currentLeftBatch;
+        private       int           currentLeftRow;
+        private       BatchIterator spilledRightReader;
+
+        CrossProductIterator(final BatchIterator left, final BatchIterator right, final MemoryBudget budget){
+            this.left = left;
+            this.right = right;
+            this.budget = budget;
+        }
+
+        @Override
+        public void open() throws DataFormatException, IOException{
+            this.right.open();
+            BufferedBatches bufferedRight = buffer(this.right, this.budget, false);
+            if(bufferedRight.isComplete){
+                this.rightTable = DataTable.concatenate(this.right.getColumnNames(), bufferedRight.batches);
+                this.reservedBytes = bufferedRight.reservedBytes;
+            }
+            else{
+                this.budget.recordSpill();
+                this.spilledRight = new SpillFile(this.right.getColumnNames());
+                for(DataTable batch : bufferedRight.batches){
+                    this.spilledRight.write(batch);
+                }
+                bufferedRight.batches.clear();
+                this.budget.release(bufferedRight.reservedBytes);
+                for(DataTable batch = this.right.next(); batch != null; batch = this.right.next()){
+                    this.spilledRight.write(batch);
+                }
+            }
+            this.right.close();
+            this.left.open();
+        }
+
+        @Override
+        public String[] getColumnNames(){
+            String[] leftColumnNames = this.left.getColumnNames();
+            String[] rightColumnNames = (this.rightTable == null) ? this.spilledRight.getColumnNames() : this.rightTable.getColumnNames();
+
+            String[] columnNames = Arrays.copyOf(leftColumnNames, leftColumnNames.length + rightColumnNames.length);
+            System.arraycopy(rightColumnNames, 0, columnNames, leftColumnNames.length, rightColumnNames.length);
+            return columnNames;
+        }
+
+        @Override
+        public DataTable next() throws DataFormatException, IOException{
+            if(this.spilledRight != null){
+                return this.nextFromSpilledRight();
+            }
+
+            for(DataTable batch = this.left.next(); batch != null; batch = this.left.next()){
+                DataTable crossedRows = batch.crossWith(this.rightTable);
+                if(crossedRows.getRowCount() > 0){
+                    return crossedRows;
+                }
+            }
+
+            return null;
+        }
+
+        private DataTable nextFromSpilledRight() throws DataFormatException, IOException{
+            while(true){
+                if(this.spilledRightReader == null){
+                    if(this.currentLeftBatch == null || ++this.currentLeftRow == this.currentLeftBatch.getRowCount()){
+                        this.currentLeftBatch = this.left.next();
+                        this.currentLeftRow = 0;
+                        if(this.currentLeftBatch == null){
+                            return null;
+                        }
+                    }
+                    this.spilledRightReader = this.spilledRight.read();
+                    this.spilledRightReader.open();
+                }
+
+                DataTable rightBatch = this.spilledRightReader.next();
+                if(rightBatch == null){
+                    this.spilledRightReader.close();
+                    this.spilledRightReader = null;
+                    continue;
+                }
+
+                return this.currentLeftBatch.gatherRows(new int[]{this.currentLeftRow}).crossWith(rightBatch);
+            }
+        }
+
+        @Override
+        public void close(){
+            this.left.close();
+            this.right.close();
+            this.rightTable = null;
+            this.budget.release(this.reservedBytes);
+            this.reservedBytes = 0;
+            if(this.spilledRightReader != null){
+                this.spilledRightReader.close();
+                this.spilledRightReader = null;
+            }
+            if(this.spilledRight != null){
+                this.spilledRight.close();
+                this.spilledRight = null;
+            }
+            this.currentLeftBatch = null;
+        }
+    }
+
+    /**
+     * MINUS (keepMatches = false) or INTERSECT (keepMatches = true). Hashes the whole right side when opened, then streams the left side past it.
+     * Like {@link DataTable#minus(DataTable)} and {@link DataTable#intersectWith(DataTable)}, each row comes out at most once,
+     * which means remembering the rows that have already come out.
+     * <p>
+     * If the right side, or the rows already returned, stop fitting in the budget, the rest of the left side and the rows it still has to be
+     * checked against get partitioned, each pair of partitions gets done on its own, and the results get merged back into the left side's order.
+     * Row number columns from partitioning further up get passed through without being compared.
+     */
+    static final class SetDifferenceIterator implements BatchIterator{
+        private final BatchIterator         left;
+        private final BatchIterator         right;
+        private final boolean               keepMatches;
+        private final MemoryBudget          budget;
+        private final int                   batchSize;
+        private final int                   depth;
+        private       HashSet<List<Object>> rightRows;
+        private       HashSet<List<Object>> rowsAlreadyReturned;
+        private       long                  reservedBytes = 0;
+        private       int[]                 comparedColumnIndices;
+        private       BatchIterator         partitionedResult;
+
+        SetDifferenceIterator(final BatchIterator left, final BatchIterator right, final boolean keepMatches, final MemoryBudget budget, final int batchSize,
+                              final int depth){
+            this.left = left;
+            this.right = right;
+            this.keepMatches = keepMatches;
+            this.budget = budget;
+            this.batchSize = batchSize;
+            this.depth = depth;
+        }
+
+        @Override
+        public void open() throws DataFormatException, IOException{
+            this.right.open();
+            this.left.open();
+
+            String[] leftColumnNames = this.left.getColumnNames();
+            String[] comparedColumnNames = Arrays.stream(leftColumnNames).filter(columnName -> !isRowNumberColumn(columnName)).toArray(String[]::new);
+            String[] rightColumnNames = this.right.getColumnNames();
+            if(comparedColumnNames.length != rightColumnNames.length
+               || DataTable.getCommonElementsInArrays(comparedColumnNames, rightColumnNames).length != comparedColumnNames.length){
+                throw new IllegalArgumentException("Cannot " + (this.keepMatches ? "intersect" : "subtract") + " tables if all columns don't match exactly.");
+            }
+
+            this.comparedColumnIndices = DataTable.getIndicesInArrayOfItemsEquivalentTo(leftColumnNames, comparedColumnNames);
+            int[] rightColumnIndices = DataTable.getIndicesInArrayOfItemsEquivalentTo(rightColumnNames, comparedColumnNames);
+            this.rightRows = new HashSet<>();
+            this.rowsAlreadyReturned = new HashSet<>();
+
+            BufferedBatches bufferedRight = buffer(this.right, this.budget, true);
+            this.reservedBytes = bufferedRight.reservedBytes;
+            if(!bufferedRight.isComplete && this.depth < MAXIMUM_PARTITIONING_DEPTH){
+                this.partitionedResult = this.finishInPartitions(bufferedRight.batches, null);
+                this.partitionedResult.open();
+                return;
+            }
+
+            if(!bufferedRight.isComplete){
+                this.budget.forceReserve(MemoryBudget.getHashedSize(bufferedRight.batches.get(bufferedRight.batches.size() - 1)));
+                this.reservedBytes += MemoryBudget.getHashedSize(bufferedRight.batches.get(bufferedRight.batches.size() - 1));
+            }
+            for(DataTable batch : bufferedRight.batches){
+                this.addRightRows(batch, rightColumnIndices);
+            }
+            for(DataTable batch = this.right.next(); batch != null; batch = this.right.next()){
+                this.budget.forceReserve(MemoryBudget.getHashedSize(batch));
+                this.reservedBytes += MemoryBudget.getHashedSize(batch);
+                this.addRightRows(batch, rightColumnIndices);
+            }
+            this.right.close();
+        }
+
+        private void addRightRows(final DataTable batch, final int[] rightColumnIndices){
+            for(int i = 0; i < batch.getRowCount(); i++){
+                this.rightRows.add(batch.getRowKey(i, rightColumnIndices));
+            }
+        }
+
+        /**
+         * Partitions the rest of the left side, and the rows it still has to be checked against, and does each pair of partitions into a spill file.
+         * For MINUS, those are the right side's rows plus the rows already returned (so they can't come out again), and for INTERSECT,
+         * the right side's rows minus them.
+         *
+         * @param unhashedRightBatches Rows of the right side that didn't make it into the hash set, with the rest of the right side still to be read.
+         * @param restOfLeftBatch Rows of the left side that haven't been looked at yet, with the rest of the left side still to be read. Can be null.
+         * @return The results of the partitions, merged.
+         */
+        private BatchIterator finishInPartitions(final List<DataTable> unhashedRightBatches, final DataTable restOfLeftBatch) throws DataFormatException, IOException{
+            this.budget.recordSpill();
+
+            String[] leftColumnNames = this.left.getColumnNames();
+            String[] comparedColumnNames = this.right.getColumnNames();
+            int[] allComparedColumnIndices = DataTable.getIndicesInArrayOfItemsEquivalentTo(comparedColumnNames, comparedColumnNames);
+
+            ArrayList<SpillFile> results = new ArrayList<>();
+            try(Partitioner rightPartitions = new Partitioner(comparedColumnNames, allComparedColumnIndices, this.depth, false);
+                Partitioner leftPartitions = new Partitioner(leftColumnNames, this.comparedColumnIndices, this.depth, true)){
+                if(this.keepMatches){
+                    this.rightRows.removeAll(this.rowsAlreadyReturned);
+                }
+                else{
+                    this.rightRows.addAll(this.rowsAlreadyReturned);
+                }
+                this.rowsAlreadyReturned = new HashSet<>();
+                ArrayList<String[]> rows = new ArrayList<>(this.batchSize);
+                for(Iterator<List<Object>> iterator = this.rightRows.iterator(); iterator.hasNext(); ){
+                    rows.add(toRow(iterator.next()));
+                    iterator.remove();
+                    if(rows.size() == this.batchSize || !iterator.hasNext()){
+                        rightPartitions.add(new DataTable(comparedColumnNames, rows));
+                        rows.clear();
+                    }
+                }
+
+                for(DataTable batch : unhashedRightBatches){
+                    rightPartitions.add(batch.project(comparedColumnNames));
+                }
+                unhashedRightBatches.clear();
+                this.budget.release(this.reservedBytes);
+                this.reservedBytes = 0;
+                for(DataTable batch = this.right.next(); batch != null; batch = this.right.next()){
+                    rightPartitions.add(batch.project(comparedColumnNames));
+                }
+                this.right.close();
+
+                if(restOfLeftBatch != null){
+                    leftPartitions.add(restOfLeftBatch);
+                }
+                for(DataTable batch = this.left.next(); batch != null; batch = this.left.next()){
+                    leftPartitions.add(batch);
+                }
+                this.left.close();
+
+                for(int p = 0; p < NUMBER_OF_PARTITIONS; p++){
+                    if(leftPartitions.getPartition(p).getRowCount() == 0){
+                        continue;
+                    }
+
+                    SpillFile result = new SpillFile(withRowNumberColumn(leftColumnNames, this.depth));
+                    results.add(result);
+                    try(SetDifferenceIterator partitionDifference = new SetDifferenceIterator(leftPartitions.getPartition(p).read(), rightPartitions.getPartition(p).read(),
+                                                                                              this.keepMatches, this.budget, this.batchSize, this.depth + 1)){
+                        partitionDifference.open();
+                        for(DataTable batch = partitionDifference.next(); batch != null; batch = partitionDifference.next()){
+                            result.write(batch);
+                        }
+                    }
+                }
+            }
+            catch(DataFormatException | IOException | RuntimeException exception){
+                for(SpillFile result : results){
+                    result.close();
+                }
+                throw exception;
+            }
+
+            return new MergeIterator(results, leftColumnNames, this.batchSize);
+        }
+
+        /**
+         * @return The row whose values are the key's, as the text they print as.
+         */
+        private static String[] toRow(final List<Object> key){
+            String[] row = new String[key.size()];
+            for(int j = 0; j < row.length; j++){
+                row[j] = (key.get(j) == null) ? null : key.get(j).toString();
+            }
+
+            return row;
+        }
+
+        @Override
+        public String[] getColumnNames(){
+            return this.left.getColumnNames();
+        }
+
+        @Override
+        public DataTable next() throws DataFormatException, IOException{
+            if(this.partitionedResult != null){
+                return this.partitionedResult.next();
+            }
+
+            for(DataTable batch = this.left.next(); batch != null; batch = this.left.next()){
+                // Make room for the worst case, which is every row of the batch coming out
+                long batchSize = MemoryBudget.getHashedSize(batch);
+                if(!this.budget.tryReserve(batchSize)){
+                    if(this.depth < MAXIMUM_PARTITIONING_DEPTH){
+                        this.partitionedResult = this.finishInPartitions(new ArrayList<>(), batch);
+                        this.partitionedResult.open();
+                        return this.partitionedResult.next();
+                    }
+                    this.budget.forceReserve(batchSize);
+                }
+
+                int[] keptRows = new int[batch.getRowCount()];
+                int numberOfKeptRows = 0;
+                for(int i = 0; i < batch.getRowCount(); i++){
+                    List<Object> rowKey = batch.getRowKey(i, this.comparedColumnIndices);
+                    if(this.rightRows.contains(rowKey) == this.keepMatches && this.rowsAlreadyReturned.add(rowKey)){
+                        keptRows[numberOfKeptRows++] = i;
+                    }
+                }
+
+                // Keep only the room the rows that came out take up
+                long usedBytes = (batch.getRowCount() == 0) ? 0 : batchSize * numberOfKeptRows / batch.getRowCount();
+                this.budget.release(batchSize - usedBytes);
+                this.reservedBytes += usedBytes;
+                if(numberOfKeptRows > 0){
+                    return batch.gatherRows(Arrays.copyOf(keptRows, numberOfKeptRows));
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public void close(){
+            this.left.close();
+            this.right.close();
+            if(this.partitionedResult != null){
+                this.partitionedResult.close();
+                this.partitionedResult = null;
+            }
+            this.rightRows = null;
+            this.rowsAlreadyReturned = null;
+            this.budget.release(this.reservedBytes);
+            this.reservedBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A column of text, for anything that isn't all numbers.
+ */
+public final class StringColumn extends Column{
+    /**
+     * What a String costs on top of its characters: its header, its hash, and the header of its byte array.
+     */
+    private static final int STRING_OVERHEAD = 40;
+
+    private final String[] values;
+
+    /**
+     * @param values The values. The array is kept, not copied, so don't change it afterwards.
+     */
+    public StringColumn(final String[] values){
+        this.values = values;
+    }
+
+    @Override
+    public Type getType(){
+        return Type.STRING;
+    }
+
+    @Override
+    public int size(){
+        return this.values.length;
+    }
+
+    @Override
+    public long getMemoryUsage(){
+        long memoryUsage = (long) this.values.length * Integer.BYTES; // A (compressed) reference per row
+        for(String value : this.values){
+            if(value != null){
+                memoryUsage += STRING_OVERHEAD + value.length();
+            }
+        }
+
+        return memoryUsage;
+    }
+
+    @Override
+    public double getDouble(final int row){
+        return Double.parseDouble(this.values[row]);
+    }
+
+    @Override
+    public String getString(final int row){
+        return this.values[row];
+    }
+
+    @Override
+    public Object getKey(final int row){
+        return getKeyOfText(this.values[row]);
+    }
+
+    @Override
+    public Column gather(final int[] rows){
+        String[] newValues = new String[rows.length];
+        for(int i = 0; i < rows.length; i++){
+            newValues[i] = this.values[rows[i]];
+        }
+
+        return new StringColumn(newValues);
+    }
+
+    @Override
+    protected int[] getRowsWhereCompared(final String operator, final String comparedValue, final int[] rows){
+        int[] selectedRows = new int[rows.length];
+        int numberOfSelectedRows = 0;
+
+        switch(operator){
+            case DataTable.GREATER_THAN -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(Double.parseDouble(this.values[row]) > comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.GREATER_THAN_OR_EQUAL -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(Double.parseDouble(this.values[row]) >= comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.LESS_THAN -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(Double.parseDouble(this.values[row]) < comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.LESS_THAN_OR_EQUAL -> {
+                double comparedNumber = parseComparedNumber(comparedValue, rows);
+                for(int row : rows){
+                    if(Double.parseDouble(this.values[row]) <= comparedNumber){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            case DataTable.EQUALS -> {
+                for(int row : rows){
+                    if(comparedValue.equals(this.values[row])){
+                        selectedRows[numberOfSelectedRows++] = row;
+                    }
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown comparison operator " + operator + ".");
+        }
+
+        return trim(selectedRows, numberOfSelectedRows);
+    }
+
+    @Override
+    protected int[] getRowsWhereIn(final List<String> comparedValues, final int[] rows){
+        HashSet<String> comparedValueSet = new HashSet<>(comparedValues);
+        int[] selectedRows = new int[rows.length];
+        int numberOfSelectedRows = 0;
+        for(int row : rows){
+            if(comparedValueSet.contains(this.values[row])){
+                selectedRows[numberOfSelectedRows++] = row;
+            }
+        }
+
+        return trim(selectedRows, numberOfSelectedRows);
+    }
+}
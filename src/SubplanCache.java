@@ -0,0 +1,317 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the results of subplans that show up more than once, in one query or across a whole batch of them, so they only get computed once.
+ * In RAqueries.txt, for example, {@code PROJ_{ANO} (SELE_{Payment > 80} Play)} is in both of the last two queries.
+ * <p>
+ * Plans are matched on a {@link #getCanonicalKey(PlanNode) canonical key}, so the same subplan written with different spacing still matches.
+ * Before running a batch, hand every plan in it to {@link #addUses(PlanNode)}; only the subplans that get used at least twice are worth
+ * keeping, and the rest are never stored. Results are kept up to a memory budget (least recently used first out), and a result is thrown
+ * away as soon as the file of any table it was computed from changes.
+ */
+public final class SubplanCache{
+    /**
+     * Unless told otherwise, the cache can use up to an eighth of the heap.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 8;
+
+    /**
+     * How many plans' keys get remembered, so the executor asking about the same plans over and over doesn't parse their conditions every time.
+     */
+    public static final int MAXIMUM_REMEMBERED_KEYS = 4096;
+
+    /**
+     * @param sourceFileVersions The length and last-modified time of each table file the result was computed from, when it was computed.
+     */
+    private record CachedResult(DataTable result, long memoryUsage, Map<File, long[]> sourceFileVersions){
+        private boolean isUpToDate(){
+            return areUpToDate(this.sourceFileVersions);
+        }
+    }
+
+    private final long                                memoryBudget;
+    private final HashMap<String, Integer>            useCountsByKey = new HashMap<>();
+    private final LinkedHashMap<String, CachedResult> resultsByKey   = new LinkedHashMap<>(16, 0.75f, true); // In order of last use
+    private final LinkedHashMap<PlanNode, String>     keysByPlan     = new LinkedHashMap<>(16, 0.75f, true); // In order of last use
+    private       long                                memoryUsage    = 0;
+    private       long                                hitCount       = 0;
+    private       long                                missCount      = 0;
+    private       long                                evictionCount  = 0;
+
+    public SubplanCache(){
+        this(DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * @param memoryBudget How many bytes of results to hold on to at most.
+     */
+    public SubplanCache(final long memoryBudget){
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Counts every subplan of the plan as one more use, so the ones that show up more than once (here or in other plans) get cached.
+     */
+    public void addUses(final PlanNode plan){
+        this.addUses(this.getSubplanKeys(plan));
+    }
+
+    /**
+     * Like {@link #addUses(PlanNode)}, for keys that were worked out ahead of time, so nothing gets parsed while anybody's holding a lock.
+     *
+     * @param subplanKeys What {@link #getSubplanKeys(PlanNode)} gave.
+     */
+    public synchronized void addUses(final List<String> subplanKeys){
+        for(String key : subplanKeys){
+            this.useCountsByKey.merge(key, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Takes back uses counted by {@link #addUses(List)}, for a plan that's not going to run anymore, so that something that keeps coming up
+     * with new plans (like a server) only keeps counts for the ones it's still holding on to.
+     */
+    public synchronized void removeUses(final List<String> subplanKeys){
+        for(String key : subplanKeys){
+            this.useCountsByKey.computeIfPresent(key, (unused, useCount) -> (useCount > 1) ? useCount - 1 : null);
+        }
+    }
+
+    /**
+     * @return The key of every subplan of the plan but the table scans, top down.
+     */
+    public List<String> getSubplanKeys(final PlanNode plan){
+        ArrayList<String> subplanKeys = new ArrayList<>();
+        this.addSubplanKeys(plan, subplanKeys);
+
+        return subplanKeys;
+    }
+
+    private void addSubplanKeys(final PlanNode plan, final List<String> subplanKeys){
+        if(!(plan instanceof PlanNode.Scan)){
+            subplanKeys.add(this.getKey(plan));
+        }
+        for(PlanNode child : plan.getChildren()){
+            this.addSubplanKeys(child, subplanKeys);
+        }
+    }
+
+    /**
+     * Table scans are never worth it, since {@link TableCatalog} already shares the tables themselves.
+     *
+     * @return Whether the plan is used more than once, so its result should be cached.
+     */
+    public boolean isWorthCaching(final PlanNode plan){
+        if(plan instanceof PlanNode.Scan){
+            return false;
+        }
+
+        String key = this.getKey(plan);
+        synchronized(this){
+            return this.useCountsByKey.getOrDefault(key, 0) > 1;
+        }
+    }
+
+    /**
+     * @return The cached result of an equivalent plan, or null if there isn't one that's still up to date with its tables' files.
+     */
+    public DataTable get(final PlanNode plan){
+        String key = this.getKey(plan);
+        synchronized(this){
+            return this.get(key);
+        }
+    }
+
+    private DataTable get(final String key){
+        CachedResult cachedResult = this.resultsByKey.get(key);
+        if(cachedResult != null && !cachedResult.isUpToDate()){
+            this.remove(key);
+            cachedResult = null;
+        }
+
+        if(cachedResult == null){
+            this.missCount++;
+            return null;
+        }
+
+        this.hitCount++;
+        return cachedResult.result();
+    }
+
+    /**
+     * Caches the result of a plan, if it fits. The result is shared with whoever asks for it later, so it mustn't be changed afterwards.
+     *
+     * @param sourceFileVersions The length and last-modified time of each table file the plan reads, from before it ran.
+     */
+    public void put(final PlanNode plan, final DataTable result, final Map<File, long[]> sourceFileVersions){
+        long resultMemoryUsage = result.getMemoryUsage();
+        if(resultMemoryUsage > this.memoryBudget){
+            return;
+        }
+
+        String key = this.getKey(plan);
+        synchronized(this){
+            this.put(key, result, resultMemoryUsage, sourceFileVersions);
+        }
+    }
+
+    private void put(final String key, final DataTable result, final long resultMemoryUsage, final Map<File, long[]> sourceFileVersions){
+        this.remove(key);
+        while(!this.resultsByKey.isEmpty() && this.memoryUsage + resultMemoryUsage > this.memoryBudget){
+            this.remove(this.resultsByKey.keySet().iterator().next());
+            this.evictionCount++;
+        }
+
+        this.resultsByKey.put(key, new CachedResult(result, resultMemoryUsage, Map.copyOf(sourceFileVersions)));
+        this.memoryUsage += resultMemoryUsage;
+    }
+
+    /**
+     * @return The length and last-modified time of the file of each table the plan reads, to hand to {@link #put(PlanNode, DataTable, Map)}.
+     */
+    public static Map<File, long[]> getSourceFileVersions(final PlanNode plan) throws FileNotFoundException{
+        HashMap<File, long[]> sourceFileVersions = new HashMap<>();
+        addSourceFileVersions(plan, sourceFileVersions);
+
+        return sourceFileVersions;
+    }
+
+    /**
+     * @param sourceFileVersions What {@link #getSourceFileVersions(PlanNode)} gave.
+     * @return Whether none of the files have changed since.
+     */
+    static boolean areUpToDate(final Map<File, long[]> sourceFileVersions){
+        for(Map.Entry<File, long[]> sourceFileVersion : sourceFileVersions.entrySet()){
+            File sourceFile = sourceFileVersion.getKey();
+            if(sourceFile.length() != sourceFileVersion.getValue()[0] || sourceFile.lastModified() != sourceFileVersion.getValue()[1]){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void addSourceFileVersions(final PlanNode plan, final Map<File, long[]> sourceFileVersions) throws FileNotFoundException{
+        if(plan instanceof PlanNode.Scan scan){
+            File tableFile = QueryExecutor.getTableFile(scan.tableName());
+            sourceFileVersions.put(tableFile, new long[]{tableFile.length(), tableFile.lastModified()});
+        }
+        for(PlanNode child : plan.getChildren()){
+            addSourceFileVersions(child, sourceFileVersions);
+        }
+    }
+
+    private void remove(final String key){
+        CachedResult removedResult = this.resultsByKey.remove(key);
+        if(removedResult != null){
+            this.memoryUsage -= removedResult.memoryUsage();
+        }
+    }
+
+    /**
+     * @return The {@link #getCanonicalKey(PlanNode) canonical key} of the plan, worked out just once for as long as it's remembered, and never
+     *         while holding the lock on the counts and results.
+     */
+    private String getKey(final PlanNode plan){
+        synchronized(this.keysByPlan){
+            String key = this.keysByPlan.get(plan);
+            if(key != null){
+                return key;
+            }
+        }
+
+        String key = getCanonicalKey(plan);
+        synchronized(this.keysByPlan){
+            this.keysByPlan.put(plan, key);
+            if(this.keysByPlan.size() > MAXIMUM_REMEMBERED_KEYS){
+                this.keysByPlan.remove(this.keysByPlan.keySet().iterator().next());
+            }
+        }
+
+        return key;
+    }
+
+    /**
+     * Two plans get the same key exactly when they're the same tree of operators on the same tables, with the same conditions and columns,
+     * however they were spaced out when they were written. The operands of U and INTE aren't swapped around, because that changes the order
+     * of the rows in the result.
+     */
+    public static String getCanonicalKey(final PlanNode plan){
+        if(plan instanceof PlanNode.Scan scan){
+            return scan.tableName();
+        }
+        if(plan instanceof PlanNode.Select select){
+            return Main.SELECT + "{" + SelectionPredicate.parse(select.condition()) + "}(" + getCanonicalKey(select.input()) + ")";
+        }
+        if(plan instanceof PlanNode.Project project){
+            StringBuilder key = new StringBuilder((project.isDistinct() ? Main.PROJECT : Main.BAG_PROJECT) + "{");
+            for(String column : project.columns()){
+                key.append(column.trim()).append(',');
+            }
+
+            return key.append("}(").append(getCanonicalKey(project.input())).append(")").toString();
+        }
+        if(plan instanceof PlanNode.Aggregate aggregate){
+            StringBuilder key = new StringBuilder(Main.AGGREGATE + "{");
+            for(String column : aggregate.groupColumns()){
+                key.append(column).append(',');
+            }
+            key.append(';');
+            for(HashAggregator.Aggregate eachAggregate : aggregate.aggregates()){
+                key.append(eachAggregate.function()).append('(').append(eachAggregate.columnName()).append(')').append(eachAggregate.outputName()).append(',');
+            }
+
+            return key.append("}(").append(getCanonicalKey(aggregate.input())).append(")").toString();
+        }
+        if(plan instanceof PlanNode.EquiJoin equiJoin){
+            return "EQUIJOIN{" + equiJoin.leftKeyColumns() + "=" + equiJoin.rightKeyColumns() + "}(" + getCanonicalKey(equiJoin.left()) + ")(" +
+                   getCanonicalKey(equiJoin.right()) + ")";
+        }
+
+        String operator;
+        if(plan instanceof PlanNode.Join){
+            operator = Main.JOIN;
+        }
+        else if(plan instanceof PlanNode.CrossProduct){
+            operator = Main.CROSS_PRODUCT;
+        }
+        else if(plan instanceof PlanNode.Union union){
+            operator = union.isDistinct() ? Main.UNION : Main.BAG_UNION;
+        }
+        else if(plan instanceof PlanNode.Minus){
+            operator = Main.MINUS;
+        }
+        else if(plan instanceof PlanNode.Intersect){
+            operator = Main.INTERSECT;
+        }
+        else{
+            throw new UnsupportedOperationException("There's no canonical key for a " + plan.getClass().getSimpleName() + " node.");
+        }
+
+        return "(" + getCanonicalKey(plan.getChildren().get(0)) + ")" + operator + "(" + getCanonicalKey(plan.getChildren().get(1)) + ")";
+    }
+
+    public synchronized long getHitCount(){
+        return this.hitCount;
+    }
+
+    public synchronized long getMissCount(){
+        return this.missCount;
+    }
+
+    public synchronized long getEvictionCount(){
+        return this.evictionCount;
+    }
+
+    @Override
+    public synchronized String toString(){
+        return "Subplan cache: " + this.resultsByKey.size() + " results in " + this.memoryUsage + " of " + this.memoryBudget + " bytes, " + this.hitCount +
+               " hits, " + this.missCount + " misses, " + this.evictionCount + " evictions.";
+    }
+}
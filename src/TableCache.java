@@ -0,0 +1,617 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+
+/**
+ * A binary, column-by-column copy of a table file, kept next to it (Play.txt gets a Play.cols), so that later runs can map the columns
+ * straight into memory instead of parsing the text all over again. Each column is stored with its type: ints, longs and doubles as raw
+ * arrays, text as one blob plus offsets, and dictionary-encoded text as its dictionary plus the codes.
+ * <p>
+ * Every block of {@link #BLOCK_SIZE} rows also gets the minimum and maximum of each numeric column, so {@link #readWhere(File, SelectionPredicate)}
+ * can skip the blocks where a SELE can't possibly match without reading them at all.
+ * <p>
+ * A cache belongs to one version of its table file. It's thrown away if the file's size changes, or if its last-modified time changes
+ * and its contents (going by a CRC32C of the whole file) did too. A file that was only touched gets its cache re-stamped instead of rebuilt.
+ * <p>
+ * Layout: a magic number and format version, then one section per column, then a footer with everything needed to find and check the
+ * sections (the source file's size, time and hash, the row count, and each column's name, type, section and block ranges), and finally
+ * the position of the footer and the magic number again.
+ */
+public final class TableCache{
+    public static final String CACHE_FILE_EXTENSION = ".cols";
+
+    /**
+     * How many rows share one minimum and maximum.
+     */
+    public static final int BLOCK_SIZE = 1 << 16;
+
+    private static final int  MAGIC_NUMBER   = 0x52414343; // "RACC"
+    private static final int  FORMAT_VERSION = 1;
+    private static final byte INT_COLUMN        = 0;
+    private static final byte LONG_COLUMN       = 1;
+    private static final byte DOUBLE_COLUMN     = 2;
+    private static final byte STRING_COLUMN     = 3;
+    private static final byte DICTIONARY_COLUMN = 4;
+
+    /**
+     * Where the source file's last-modified time is in the footer, so a touched file's cache can be re-stamped in place.
+     */
+    private static final int FOOTER_LAST_MODIFIED_POSITION = 8;
+
+    private record CachedColumn(String name, byte type, long sectionStart, long sectionLength, double[] blockMinimums, double[] blockMaximums){
+    }
+
+    private record Footer(long position, long sourceLength, long sourceLastModified, long sourceHash, int rowCount, List<CachedColumn> columns){
+    }
+
+    private TableCache(){
+    }
+
+    public static File getCacheFile(final File tableFile){
+        String tablePath = tableFile.getPath();
+        String withoutExtension = tablePath.endsWith(".txt") ? tablePath.substring(0, tablePath.length() - 4) : tablePath;
+
+        return new File(withoutExtension + CACHE_FILE_EXTENSION);
+    }
+
+    /**
+     * Loads a table from its cache if there's a good one, and otherwise from the text, writing the cache for next time.
+     * Not being able to write the cache isn't a problem; the table just gets parsed again next run.
+     */
+    public static DataTable load(final File tableFile) throws FileNotFoundException, DataFormatException{
+        DataTable table = read(tableFile);
+        if(table != null){
+            return table;
+        }
+
+        table = new DataTable(tableFile);
+        try{
+            write(tableFile, table);
+        }
+        catch(IOException exception){
+            // The cache is only there to save time, so there's nothing worth failing over.
+        }
+
+        return table;
+    }
+
+    /**
+     * Parses a table file and writes its cache, whether or not there already was a good one. This is what {@code --convert} runs,
+     * to build the caches of big tables ahead of time.
+     *
+     * @return How many rows the table has.
+     */
+    public static int convert(final File tableFile) throws DataFormatException, IOException{
+        DataTable table = new DataTable(tableFile);
+        write(tableFile, table);
+
+        return table.getRowCount();
+    }
+
+    /**
+     * @return The whole table from its cache, or null if there's no cache that's up to date with the table file.
+     */
+    public static DataTable read(final File tableFile){
+        return readBlocks(tableFile, null);
+    }
+
+    /**
+     * Reads only the blocks of the table where the predicate might be true, going by each block's minimum and maximum.
+     * The result still has to go through {@link DataTable#selectWhere(SelectionPredicate)}; this just skips the blocks where it would find nothing.
+     *
+     * @return Some of the table's rows (in their original order), or null if there's no cache that's up to date with the table file.
+     */
+    public static DataTable readWhere(final File tableFile, final SelectionPredicate predicate){
+        return readBlocks(tableFile, predicate);
+    }
+
+    private static DataTable readBlocks(final File tableFile, final SelectionPredicate predicate){
+        File cacheFile = getCacheFile(tableFile);
+        if(!cacheFile.exists()){
+            return null;
+        }
+
+        try(FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)){
+            Footer footer = readFooter(channel);
+            if(footer == null || !isUpToDate(footer, tableFile, cacheFile)){
+                return null;
+            }
+
+            boolean[] isBlockNeeded = getNeededBlocks(footer, predicate);
+
+            String[] columnNames = new String[footer.columns().size()];
+            Column[] columns = new Column[columnNames.length];
+            for(int j = 0; j < columns.length; j++){
+                CachedColumn cachedColumn = footer.columns().get(j);
+                columnNames[j] = cachedColumn.name();
+                columns[j] = readColumn(channel, cachedColumn, footer.rowCount(), isBlockNeeded);
+            }
+
+            return (columns.length == 0) ? new DataTable(columnNames, List.of()) : new DataTable(columnNames, columns);
+        }
+        catch(IOException | RuntimeException exception){
+            return null; // A broken cache is the same as no cache.
+        }
+    }
+
+    /**
+     * @return Which blocks could have rows where the predicate is true: the ones where every part of an AND could be, or any part of an OR.
+     */
+    private static boolean[] getNeededBlocks(final Footer footer, final SelectionPredicate predicate){
+        int numberOfBlocks = (footer.rowCount() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        boolean[] isBlockNeeded = new boolean[numberOfBlocks];
+        if(predicate instanceof SelectionPredicate.Comparison comparison){
+            return getNeededBlocks(footer, comparison.condition());
+        }
+        if(predicate instanceof SelectionPredicate.And and){
+            Arrays.fill(isBlockNeeded, true);
+            for(SelectionPredicate conjunct : and.predicates()){
+                boolean[] isBlockNeededByConjunct = getNeededBlocks(footer, conjunct);
+                for(int block = 0; block < numberOfBlocks; block++){
+                    isBlockNeeded[block] &= isBlockNeededByConjunct[block];
+                }
+            }
+        }
+        else if(predicate instanceof SelectionPredicate.Or or){
+            for(SelectionPredicate disjunct : or.predicates()){
+                boolean[] isBlockNeededByDisjunct = getNeededBlocks(footer, disjunct);
+                for(int block = 0; block < numberOfBlocks; block++){
+                    isBlockNeeded[block] |= isBlockNeededByDisjunct[block];
+                }
+            }
+        }
+        else{
+            Arrays.fill(isBlockNeeded, true); // No predicate at all, or a NOT, which a block's range doesn't say much about
+        }
+
+        return isBlockNeeded;
+    }
+
+    /**
+     * @return Which blocks could have rows where the condition is true. Every block, unless the condition compares a numeric column with numbers.
+     */
+    private static boolean[] getNeededBlocks(final Footer footer, final SelectionCondition condition){
+        int numberOfBlocks = (footer.rowCount() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        boolean[] isBlockNeeded = new boolean[numberOfBlocks];
+        Arrays.fill(isBlockNeeded, true);
+
+        CachedColumn column = null;
+        for(CachedColumn cachedColumn : footer.columns()){
+            if(cachedColumn.name().equals(condition.columnName())){
+                column = cachedColumn;
+            }
+            if(cachedColumn.name().equals(condition.comparedValue()) && !condition.operator().equals(DataTable.IN)){
+                return isBlockNeeded; // Comparing two columns, which block ranges don't say anything about
+            }
+        }
+        if(column == null || column.type() == STRING_COLUMN || column.type() == DICTIONARY_COLUMN || condition.operator().equals(DataTable.NOT_EQUALS)){
+            return isBlockNeeded;
+        }
+
+        double[] comparedNumbers;
+        try{
+            List<String> comparedValues = condition.operator().equals(DataTable.IN) ? SelectionCondition.parseValueList(condition.comparedValue()) : List.of(condition.comparedValue());
+            comparedNumbers = new double[comparedValues.size()];
+            for(int i = 0; i < comparedNumbers.length; i++){
+                comparedNumbers[i] = Double.parseDouble(comparedValues.get(i));
+            }
+        }
+        catch(NumberFormatException exception){
+            return isBlockNeeded; // Let the selection itself deal with it (and fail the same way it always has)
+        }
+
+        for(int block = 0; block < numberOfBlocks; block++){
+            double minimum = column.blockMinimums()[block];
+            double maximum = column.blockMaximums()[block];
+            isBlockNeeded[block] = false;
+            for(double comparedNumber : comparedNumbers){
+                isBlockNeeded[block] |= switch(condition.operator()){
+                    case DataTable.GREATER_THAN -> maximum > comparedNumber;
+                    case DataTable.GREATER_THAN_OR_EQUAL -> maximum >= comparedNumber;
+                    case DataTable.LESS_THAN -> minimum < comparedNumber;
+                    case DataTable.LESS_THAN_OR_EQUAL -> minimum <= comparedNumber;
+                    default -> minimum <= comparedNumber && comparedNumber <= maximum;
+                };
+            }
+        }
+
+        return isBlockNeeded;
+    }
+
+    private static boolean isUpToDate(final Footer footer, final File tableFile, final File cacheFile) throws IOException{
+        if(footer.sourceLength() != tableFile.length()){
+            return false;
+        }
+        if(footer.sourceLastModified() == tableFile.lastModified()){
+            return true;
+        }
+        if(footer.sourceHash() != hash(tableFile)){
+            return false;
+        }
+
+        // Same contents, new time: re-stamp the cache so the next run doesn't have to hash the file again
+        try(FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.WRITE)){
+            ByteBuffer lastModified = ByteBuffer.allocate(Long.BYTES).putLong(0, tableFile.lastModified());
+            channel.write(lastModified, footer.position() + FOOTER_LAST_MODIFIED_POSITION);
+        }
+        catch(IOException exception){
+            // Then it just gets hashed again next time
+        }
+
+        return true;
+    }
+
+    /**
+     * @return A CRC32C of the whole file.
+     */
+    private static long hash(final File file) throws IOException{
+        CRC32C crc = new CRC32C();
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            while(channel.read(buffer) > 0){
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    private static Footer readFooter(final FileChannel channel) throws IOException{
+        long cacheSize = channel.size();
+        if(cacheSize < 2 * Integer.BYTES + Long.BYTES + Integer.BYTES){
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+        channel.read(header, 0);
+        ByteBuffer tail = ByteBuffer.allocate(Long.BYTES + Integer.BYTES);
+        channel.read(tail, cacheSize - tail.capacity());
+        if(header.getInt(0) != MAGIC_NUMBER || header.getInt(Integer.BYTES) != FORMAT_VERSION || tail.getInt(Long.BYTES) != MAGIC_NUMBER){
+            return null;
+        }
+
+        long footerPosition = tail.getLong(0);
+        MappedByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerPosition, cacheSize - tail.capacity() - footerPosition);
+
+        long sourceLength = footer.getLong();
+        long sourceLastModified = footer.getLong();
+        long sourceHash = footer.getLong();
+        int rowCount = footer.getInt();
+        int numberOfBlocks = (rowCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        int numberOfColumns = footer.getInt();
+        ArrayList<CachedColumn> columns = new ArrayList<>(numberOfColumns);
+        for(int j = 0; j < numberOfColumns; j++){
+            String name = readString(footer);
+            byte type = footer.get();
+            long sectionStart = footer.getLong();
+            long sectionLength = footer.getLong();
+
+            double[] blockMinimums = new double[numberOfBlocks];
+            double[] blockMaximums = new double[numberOfBlocks];
+            for(int block = 0; block < numberOfBlocks; block++){
+                blockMinimums[block] = footer.getDouble();
+                blockMaximums[block] = footer.getDouble();
+            }
+
+            columns.add(new CachedColumn(name, type, sectionStart, sectionLength, blockMinimums, blockMaximums));
+        }
+
+        return new Footer(footerPosition, sourceLength, sourceLastModified, sourceHash, rowCount, columns);
+    }
+
+    private static String readString(final ByteBuffer buffer){
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the rows of the needed blocks of one column, straight out of the mapped section.
+     */
+    private static Column readColumn(final FileChannel channel, final CachedColumn cachedColumn, final int rowCount, final boolean[] isBlockNeeded) throws IOException{
+        MappedByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, cachedColumn.sectionStart(), cachedColumn.sectionLength());
+
+        int numberOfNeededRows = 0;
+        for(int block = 0; block < isBlockNeeded.length; block++){
+            if(isBlockNeeded[block]){
+                numberOfNeededRows += Math.min(BLOCK_SIZE, rowCount - block * BLOCK_SIZE);
+            }
+        }
+
+        switch(cachedColumn.type()){
+            case INT_COLUMN -> {
+                int[] values = new int[numberOfNeededRows];
+                int position = 0;
+                for(int block = 0; block < isBlockNeeded.length; block++){
+                    if(isBlockNeeded[block]){
+                        int blockLength = Math.min(BLOCK_SIZE, rowCount - block * BLOCK_SIZE);
+                        section.asIntBuffer().get(block * BLOCK_SIZE, values, position, blockLength);
+                        position += blockLength;
+                    }
+                }
+                return new IntColumn(values);
+            }
+            case LONG_COLUMN -> {
+                long[] values = new long[numberOfNeededRows];
+                int position = 0;
+                for(int block = 0; block < isBlockNeeded.length; block++){
+                    if(isBlockNeeded[block]){
+                        int blockLength = Math.min(BLOCK_SIZE, rowCount - block * BLOCK_SIZE);
+                        section.asLongBuffer().get(block * BLOCK_SIZE, values, position, blockLength);
+                        position += blockLength;
+                    }
+                }
+                return new LongColumn(values);
+            }
+            case DOUBLE_COLUMN -> {
+                double[] values = new double[numberOfNeededRows];
+                BitSet writtenAsWholeNumbers = new BitSet(numberOfNeededRows);
+                BitSet allWrittenAsWholeNumbers = BitSet.valueOf(section.slice(rowCount * Double.BYTES, section.limit() - rowCount * Double.BYTES));
+                int position = 0;
+                for(int block = 0; block < isBlockNeeded.length; block++){
+                    if(isBlockNeeded[block]){
+                        int blockLength = Math.min(BLOCK_SIZE, rowCount - block * BLOCK_SIZE);
+                        section.asDoubleBuffer().get(block * BLOCK_SIZE, values, position, blockLength);
+                        for(int i = 0; i < blockLength; i++){
+                            if(allWrittenAsWholeNumbers.get(block * BLOCK_SIZE + i)){
+                                writtenAsWholeNumbers.set(position + i);
+                            }
+                        }
+                        position += blockLength;
+                    }
+                }
+                return new DoubleColumn(values, writtenAsWholeNumbers);
+            }
+            case STRING_COLUMN -> {
+                // Which rows are null, then where each row's text starts in the blob (plus where the last one ends), then the blob
+                int nullsLength = ((rowCount + 63) / 64) * Long.BYTES;
+                BitSet isNull = BitSet.valueOf(section.slice(0, nullsLength));
+                int offsetsStart = nullsLength;
+                int blobStart = offsetsStart + (rowCount + 1) * Integer.BYTES;
+
+                String[] values = new String[numberOfNeededRows];
+                int position = 0;
+                for(int block = 0; block < isBlockNeeded.length; block++){
+                    if(isBlockNeeded[block]){
+                        int blockLength = Math.min(BLOCK_SIZE, rowCount - block * BLOCK_SIZE);
+                        for(int row = block * BLOCK_SIZE; row < block * BLOCK_SIZE + blockLength; row++){
+                            values[position++] = isNull.get(row) ? null : readText(section, blobStart, section.getInt(offsetsStart + row * Integer.BYTES),
+                                                                                     section.getInt(offsetsStart + (row + 1) * Integer.BYTES));
+                        }
+                    }
+                }
+                return new StringColumn(values);
+            }
+            case DICTIONARY_COLUMN -> {
+                // The column's own dictionary (a count, offsets and a blob, like a text column without nulls), then a code per row
+                int dictionarySize = section.getInt(0);
+                int offsetsStart = Integer.BYTES;
+                int blobStart = offsetsStart + (dictionarySize + 1) * Integer.BYTES;
+                int codesStart = blobStart + section.getInt(offsetsStart + dictionarySize * Integer.BYTES);
+
+                String[] dictionaryValues = new String[dictionarySize];
+                for(int code = 0; code < dictionarySize; code++){
+                    dictionaryValues[code] = readText(section, blobStart, section.getInt(offsetsStart + code * Integer.BYTES), section.getInt(offsetsStart + (code + 1) * Integer.BYTES));
+                }
+
+                int[] codes = new int[numberOfNeededRows];
+                int position = 0;
+                for(int block = 0; block < isBlockNeeded.length; block++){
+                    if(isBlockNeeded[block]){
+                        int blockLength = Math.min(BLOCK_SIZE, rowCount - block * BLOCK_SIZE);
+                        section.slice(codesStart, section.limit() - codesStart).asIntBuffer().get(block * BLOCK_SIZE, codes, position, blockLength);
+                        position += blockLength;
+                    }
+                }
+
+                // The codes in the file are the file's own, so they get translated to the codes of the shared dictionary for this column name
+                int[] sharedCodes = ColumnDictionary.getShared(cachedColumn.name()).encode(dictionaryValues);
+                if(sharedCodes == null){
+                    String[] values = new String[codes.length];
+                    for(int i = 0; i < codes.length; i++){
+                        values[i] = dictionaryValues[codes[i]];
+                    }
+                    return new StringColumn(values);
+                }
+
+                for(int i = 0; i < codes.length; i++){
+                    codes[i] = sharedCodes[codes[i]];
+                }
+                return new DictionaryColumn(ColumnDictionary.getShared(cachedColumn.name()), codes);
+            }
+            default -> throw new IllegalArgumentException("Unknown column type " + cachedColumn.type() + " in the table cache.");
+        }
+    }
+
+    private static String readText(final ByteBuffer section, final int blobStart, final int start, final int end){
+        byte[] bytes = new byte[end - start];
+        section.get(blobStart + start, bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the cache of a table that was just loaded from the given file. It's written to a temporary file first and then moved into place,
+     * so a half-written cache never gets read.
+     */
+    public static void write(final File tableFile, final DataTable table) throws IOException{
+        long sourceLength = tableFile.length();
+        long sourceLastModified = tableFile.lastModified();
+        long sourceHash = hash(tableFile);
+
+        File cacheFile = getCacheFile(tableFile);
+        File temporaryFile = new File(cacheFile.getPath() + ".tmp");
+        int rowCount = table.getRowCount();
+        String[] columnNames = table.getColumnNames();
+
+        try(FileChannel channel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            output.writeInt(MAGIC_NUMBER);
+            output.writeInt(FORMAT_VERSION);
+
+            byte[] types = new byte[columnNames.length];
+            long[] sectionStarts = new long[columnNames.length];
+            long[] sectionLengths = new long[columnNames.length];
+            for(int j = 0; j < columnNames.length; j++){
+                output.flush();
+                sectionStarts[j] = channel.position();
+                types[j] = writeColumn(output, table.getColumn(j));
+                output.flush();
+                sectionLengths[j] = channel.position() - sectionStarts[j];
+                if(sectionLengths[j] > Integer.MAX_VALUE){
+                    throw new IOException("Column " + columnNames[j] + " is too big to cache.");
+                }
+            }
+
+            output.flush();
+            long footerPosition = channel.position();
+            output.writeLong(sourceLength);
+            output.writeLong(sourceLastModified);
+            output.writeLong(sourceHash);
+            output.writeInt(rowCount);
+            output.writeInt(columnNames.length);
+            for(int j = 0; j < columnNames.length; j++){
+                byte[] name = columnNames[j].getBytes(StandardCharsets.UTF_8);
+                output.writeInt(name.length);
+                output.write(name);
+                output.writeByte(types[j]);
+                output.writeLong(sectionStarts[j]);
+                output.writeLong(sectionLengths[j]);
+                writeBlockRanges(output, table.getColumn(j));
+            }
+
+            output.writeLong(footerPosition);
+            output.writeInt(MAGIC_NUMBER);
+            output.flush();
+        }
+
+        Files.move(temporaryFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the column the same way a section of the cache is laid out, which {@link BinaryResultSink} uses too.
+     *
+     * @return The type the column was written as.
+     */
+    static byte writeColumn(final DataOutputStream output, final Column column) throws IOException{
+        int rowCount = column.size();
+
+        if(column instanceof IntColumn intColumn){
+            for(int i = 0; i < rowCount; i++){
+                output.writeInt(intColumn.getInt(i));
+            }
+            return INT_COLUMN;
+        }
+        if(column instanceof LongColumn){
+            for(int i = 0; i < rowCount; i++){
+                output.writeLong(column.getLong(i));
+            }
+            return LONG_COLUMN;
+        }
+        if(column instanceof DoubleColumn doubleColumn){
+            BitSet writtenAsWholeNumbers = new BitSet(rowCount);
+            for(int i = 0; i < rowCount; i++){
+                output.writeDouble(doubleColumn.getDouble(i));
+                if(doubleColumn.isWrittenAsWholeNumber(i)){
+                    writtenAsWholeNumbers.set(i);
+                }
+            }
+            writeBits(output, writtenAsWholeNumbers, rowCount);
+            return DOUBLE_COLUMN;
+        }
+        if(column instanceof DictionaryColumn dictionaryColumn){
+            // Only the values this column actually uses go in the file, numbered in the order they first show up
+            HashMap<Integer, Integer> fileCodes = new HashMap<>();
+            ArrayList<String> dictionaryValues = new ArrayList<>();
+            int[] codes = new int[rowCount];
+            for(int i = 0; i < rowCount; i++){
+                Integer fileCode = fileCodes.get(dictionaryColumn.getCode(i));
+                if(fileCode == null){
+                    fileCode = dictionaryValues.size();
+                    fileCodes.put(dictionaryColumn.getCode(i), fileCode);
+                    dictionaryValues.add(dictionaryColumn.getString(i));
+                }
+                codes[i] = fileCode;
+            }
+
+            output.writeInt(dictionaryValues.size());
+            writeTexts(output, dictionaryValues.toArray(new String[0]));
+            for(int code : codes){
+                output.writeInt(code);
+            }
+            return DICTIONARY_COLUMN;
+        }
+
+        String[] values = new String[rowCount];
+        BitSet isNull = new BitSet(rowCount);
+        for(int i = 0; i < rowCount; i++){
+            values[i] = column.getString(i);
+            if(values[i] == null){
+                isNull.set(i);
+            }
+        }
+        writeBits(output, isNull, rowCount);
+        writeTexts(output, values);
+        return STRING_COLUMN;
+    }
+
+    private static void writeBits(final DataOutputStream output, final BitSet bits, final int numberOfBits) throws IOException{
+        byte[] bytes = bits.toByteArray();
+        byte[] paddedBytes = new byte[((numberOfBits + 63) / 64) * Long.BYTES]; // Whole longs, so it can be found without storing its length
+        System.arraycopy(bytes, 0, paddedBytes, 0, bytes.length);
+        output.write(paddedBytes);
+    }
+
+    /**
+     * Writes where each text starts in the blob (and where the last one ends), then the blob. Nulls are written as empty texts.
+     */
+    private static void writeTexts(final DataOutputStream output, final String[] values) throws IOException{
+        byte[][] encodedValues = new byte[values.length][];
+        int offset = 0;
+        output.writeInt(offset);
+        for(int i = 0; i < values.length; i++){
+            encodedValues[i] = (values[i] == null) ? new byte[0] : values[i].getBytes(StandardCharsets.UTF_8);
+            offset = Math.addExact(offset, encodedValues[i].length);
+            output.writeInt(offset);
+        }
+
+        for(byte[] encodedValue : encodedValues){
+            output.write(encodedValue);
+        }
+    }
+
+    /**
+     * Writes the minimum and maximum of every block of a numeric column, or NaNs for a text column.
+     */
+    private static void writeBlockRanges(final DataOutputStream output, final Column column) throws IOException{
+        boolean isNumeric = column.getType() != Column.Type.STRING;
+        for(int blockStart = 0; blockStart < column.size(); blockStart += BLOCK_SIZE){
+            double minimum = isNumeric ? Double.POSITIVE_INFINITY : Double.NaN;
+            double maximum = isNumeric ? Double.NEGATIVE_INFINITY : Double.NaN;
+            for(int i = blockStart; isNumeric && i < Math.min(blockStart + BLOCK_SIZE, column.size()); i++){
+                minimum = Math.min(minimum, column.getDouble(i));
+                maximum = Math.max(maximum, column.getDouble(i));
+            }
+
+            output.writeDouble(minimum);
+            output.writeDouble(maximum);
+        }
+    }
+}
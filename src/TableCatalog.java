@@ -0,0 +1,221 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+/**
+ * Keeps the base tables that have already been loaded, so a table that shows up twice in a query (or in every line of RAqueries.txt) only
+ * gets read once. Tables never change after they're loaded, so every operator and every query can share the same one.
+ * <p>
+ * The catalog holds on to at most {@link #getMemoryBudget()} bytes of tables (going by {@link DataTable#getMemoryUsage()}). When a new table
+ * doesn't fit, older ones get dropped: the least recently used first, or the biggest first, depending on the {@link EvictionPolicy}.
+ * A table whose file has changed size or last-modified time since it was loaded gets loaded again.
+ * <p>
+ * A table's {@link TableIndex indexes} get loaded along with it, count towards its size, and are dropped along with it.
+ */
+public final class TableCatalog{
+    public enum EvictionPolicy{
+        /**
+         * Drop the table that was asked for longest ago.
+         */
+        LEAST_RECENTLY_USED,
+        /**
+         * Drop the biggest table, so as few tables as possible have to go.
+         */
+        LARGEST_FIRST
+    }
+
+    /**
+     * Unless told otherwise, the catalog can use up to a quarter of the heap.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+    private static TableCatalog sharedCatalog = new TableCatalog(DEFAULT_MEMORY_BUDGET, EvictionPolicy.LEAST_RECENTLY_USED);
+
+    private record CatalogEntry(DataTable table, List<TableIndex> indexes, long memoryUsage, long sourceFileLength, long sourceFileLastModified){
+        private boolean isUpToDateWith(final File tableFile){
+            return this.sourceFileLength == tableFile.length() && this.sourceFileLastModified == tableFile.lastModified();
+        }
+    }
+
+    private final long                                memoryBudget;
+    private final EvictionPolicy                      evictionPolicy;
+    private final LinkedHashMap<String, CatalogEntry> entriesByTablePath = new LinkedHashMap<>(16, 0.75f, true); // In order of last use
+    private       long                                memoryUsage        = 0;
+    private       long                                hitCount           = 0;
+    private       long                                missCount          = 0;
+    private       long                                reloadCount        = 0;
+    private       long                                evictionCount      = 0;
+
+    /**
+     * @param memoryBudget   How many bytes of tables to hold on to at most.
+     * @param evictionPolicy Which tables to drop when a new one doesn't fit.
+     */
+    public TableCatalog(final long memoryBudget, final EvictionPolicy evictionPolicy){
+        this.memoryBudget = memoryBudget;
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    /**
+     * @return The catalog every {@link QueryExecutor} uses unless it's given its own.
+     */
+    public static synchronized TableCatalog getShared(){
+        return sharedCatalog;
+    }
+
+    /**
+     * Replaces the shared catalog with an empty one with the given settings.
+     */
+    public static synchronized void configureShared(final long memoryBudget, final EvictionPolicy evictionPolicy){
+        sharedCatalog = new TableCatalog(memoryBudget, evictionPolicy);
+    }
+
+    /**
+     * @param tableFile     The file the table lives in.
+     * @param useTableCache Whether to load it through its {@link TableCache} if it isn't in the catalog yet.
+     * @return The table, from the catalog if it's there and its file hasn't changed since, or freshly loaded otherwise.
+     * Don't change it, since everybody else gets the same one.
+     */
+    public synchronized DataTable getTable(final File tableFile, final boolean useTableCache) throws DataFormatException, FileNotFoundException{
+        String tablePath = tableFile.getAbsolutePath();
+        CatalogEntry entry = this.entriesByTablePath.get(tablePath);
+        if(entry != null && entry.isUpToDateWith(tableFile)){
+            this.hitCount++;
+            return entry.table();
+        }
+
+        if(entry != null){
+            this.reloadCount++;
+            this.remove(tablePath);
+        }
+        else{
+            this.missCount++;
+        }
+
+        // Grab the file's size and time before reading it, so a change halfway through the read gets it loaded again next time
+        long sourceFileLength = tableFile.length();
+        long sourceFileLastModified = tableFile.lastModified();
+        DataTable table = useTableCache ? TableCache.load(tableFile) : new DataTable(tableFile);
+
+        long tableMemoryUsage = table.getMemoryUsage();
+        if(tableMemoryUsage <= this.memoryBudget){
+            // A table that doesn't fit doesn't get its indexes either, since they'd be thrown away along with it
+            List<TableIndex> indexes = TableIndex.hasDeclarations(tableFile) ? TableIndex.loadAll(tableFile, table, sourceFileLength, sourceFileLastModified) : List.of();
+            for(TableIndex index : indexes){
+                tableMemoryUsage += index.getMemoryUsage();
+            }
+            if(tableMemoryUsage > this.memoryBudget){
+                indexes = List.of();
+                tableMemoryUsage = table.getMemoryUsage();
+            }
+
+            this.makeRoomFor(tableMemoryUsage);
+            this.entriesByTablePath.put(tablePath, new CatalogEntry(table, indexes, tableMemoryUsage, sourceFileLength, sourceFileLastModified));
+            this.memoryUsage += tableMemoryUsage;
+        }
+
+        return table;
+    }
+
+    /**
+     * @return Whether the table is in the catalog and up to date with its file. Doesn't count as a hit or a miss.
+     */
+    public synchronized boolean contains(final File tableFile){
+        CatalogEntry entry = this.entriesByTablePath.get(tableFile.getAbsolutePath());
+        return entry != null && entry.isUpToDateWith(tableFile);
+    }
+
+    /**
+     * @param table The table as {@link #getTable(File, boolean)} returned it.
+     * @return The indexes of the table, or none if that table isn't in the catalog (any more).
+     */
+    public synchronized List<TableIndex> getIndexes(final File tableFile, final DataTable table){
+        CatalogEntry entry = this.entriesByTablePath.get(tableFile.getAbsolutePath());
+        return (entry != null && entry.table() == table) ? entry.indexes() : List.of();
+    }
+
+    private void makeRoomFor(final long tableMemoryUsage){
+        while(!this.entriesByTablePath.isEmpty() && this.memoryUsage + tableMemoryUsage > this.memoryBudget){
+            String evictedTablePath = switch(this.evictionPolicy){
+                case LEAST_RECENTLY_USED -> this.entriesByTablePath.keySet().iterator().next();
+                case LARGEST_FIRST -> this.getLargestTablePath();
+            };
+
+            this.remove(evictedTablePath);
+            this.evictionCount++;
+        }
+    }
+
+    private String getLargestTablePath(){
+        String largestTablePath = null;
+        long largestMemoryUsage = -1;
+        for(Map.Entry<String, CatalogEntry> entry : this.entriesByTablePath.entrySet()){
+            if(entry.getValue().memoryUsage() > largestMemoryUsage){
+                largestTablePath = entry.getKey();
+                largestMemoryUsage = entry.getValue().memoryUsage();
+            }
+        }
+
+        return largestTablePath;
+    }
+
+    private void remove(final String tablePath){
+        CatalogEntry removedEntry = this.entriesByTablePath.remove(tablePath);
+        if(removedEntry != null){
+            this.memoryUsage -= removedEntry.memoryUsage();
+        }
+    }
+
+    /**
+     * Drops every table.
+     */
+    public synchronized void clear(){
+        this.entriesByTablePath.clear();
+        this.memoryUsage = 0;
+    }
+
+    public long getMemoryBudget(){
+        return this.memoryBudget;
+    }
+
+    public synchronized long getMemoryUsage(){
+        return this.memoryUsage;
+    }
+
+    public synchronized int size(){
+        return this.entriesByTablePath.size();
+    }
+
+    /**
+     * @return How many times a table was found in the catalog.
+     */
+    public synchronized long getHitCount(){
+        return this.hitCount;
+    }
+
+    /**
+     * @return How many times a table had to be loaded because it wasn't in the catalog (including because it had been evicted).
+     */
+    public synchronized long getMissCount(){
+        return this.missCount;
+    }
+
+    /**
+     * @return How many times a table had to be loaded again because its file changed.
+     */
+    public synchronized long getReloadCount(){
+        return this.reloadCount;
+    }
+
+    public synchronized long getEvictionCount(){
+        return this.evictionCount;
+    }
+
+    @Override
+    public synchronized String toString(){
+        return "Table catalog: " + this.size() + " tables in " + this.memoryUsage + " of " + this.memoryBudget + " bytes, " + this.hitCount + " hits, " +
+               this.missCount + " misses, " + this.reloadCount + " reloads, " + this.evictionCount + " evictions.";
+    }
+}
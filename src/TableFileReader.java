@@ -0,0 +1,445 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+/**
+ * Loads table files without Scanner or regular expressions. The file is memory-mapped, so the operating system pages it straight in
+ * without copying it through a stream, and a hand-written loop over the bytes finds the commas and line breaks. Whole numbers get parsed
+ * right out of the mapped bytes and go straight into their column, so a numeric field never even becomes a String.
+ * <p>
+ * Big files get cut into chunks at line breaks, and the chunks are parsed in parallel on the {@link Morsels} pool (each into its own
+ * columns), then glued back together in order. Fields are split exactly the way {@code line.split(",\\s*")} splits them, so nothing about the result changes.
+ */
+public final class TableFileReader{
+    /**
+     * Files smaller than this are read on one thread, since splitting them up costs more than it saves.
+     */
+    public static final long MINIMUM_CHUNK_SIZE = 4L << 20;
+
+    /**
+     * No chunk gets bigger than this, so each one fits in a single mapping (which can't go past 2 GB).
+     */
+    public static final long MAXIMUM_CHUNK_SIZE = 256L << 20;
+
+    private TableFileReader(){
+    }
+
+    /**
+     * @return The table in the file, with typed columns (but no dictionaries yet).
+     * @throws FileNotFoundException if there is no such file.
+     * @throws DataFormatException   if the file is empty, so there isn't even a header.
+     * @throws UncheckedIOException  if the file can't be read for some other reason.
+     */
+    public static DataTable read(final File file) throws FileNotFoundException, DataFormatException{
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            long fileSize = channel.size();
+            if(fileSize == 0){
+                throw new DataFormatException("This file has no data.");
+            }
+
+            long endOfHeader = findEndOfLine(channel, 0, fileSize);
+            String[] columnNames = splitFields(readText(channel, 0, endOfHeader));
+            long startOfData = skipLineBreak(channel, endOfHeader, fileSize);
+
+            return readLines(channel, columnNames, startOfData, fileSize);
+        }
+        catch(NoSuchFileException exception){
+            throw new FileNotFoundException(file.getPath() + " (No such file or directory)");
+        }
+        catch(IOException exception){
+            throw new UncheckedIOException("Couldn't read " + file.getPath() + ".", exception);
+        }
+    }
+
+    /**
+     * The rows at the end of a table file, and where to pick up reading it from.
+     *
+     * @param end               Where the lines that are done with end. That's the end of the file, unless its last line didn't have a line
+     *                          break yet, in which case it's the start of that line, since it might still be being written.
+     * @param unfinishedLineEnd Where that unfinished last line ended, or the same as end if there wasn't one. Its row is in the rows all the
+     *                          same (like it is when the whole file gets read), but it gets read again next time, to make sure it didn't change.
+     */
+    public record Tail(DataTable rows, long end, long unfinishedLineEnd){
+    }
+
+    /**
+     * Reads the rows that were appended to a table file since the last read, for following a file that keeps growing. A last line without a
+     * line break gets read, so the rows are always what reading the whole file would give, but it gets read again the next time. If it's
+     * still the same length then (with or without a line break after it by now), just the lines after it are new. If it got longer, the
+     * append went onto the end of that line, which makes it a different row, so the file counts as rewritten.
+     *
+     * @param start             Where the last read ended (its {@link Tail#end()}), or 0 to read every row.
+     * @param unfinishedLineEnd The last read's {@link Tail#unfinishedLineEnd()}, or the same as start.
+     * @throws FileNotFoundException    if there is no such file.
+     * @throws DataFormatException      if the file is empty, so there isn't even a header.
+     * @throws IllegalArgumentException if the file got shorter or its unfinished last line changed, which means it got rewritten rather than
+     *                                  appended to.
+     * @throws UncheckedIOException     if the file can't be read for some other reason.
+     */
+    public static Tail readTail(final File file, final long start, final long unfinishedLineEnd) throws FileNotFoundException, DataFormatException{
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            long fileSize = channel.size();
+            if(fileSize == 0){
+                throw new DataFormatException("This file has no data.");
+            }
+            if(fileSize < unfinishedLineEnd){
+                throw new IllegalArgumentException(file.getPath() + " is shorter than it was (" + fileSize + " bytes instead of at least " + unfinishedLineEnd + "), so it wasn't just appended to.");
+            }
+
+            long endOfHeader = findEndOfLine(channel, 0, fileSize);
+            String[] columnNames = splitFields(readText(channel, 0, endOfHeader));
+            long startOfData = skipLineBreak(channel, endOfHeader, fileSize);
+            if(startOfData == endOfHeader){
+                return new Tail(new DataTable(columnNames, new ArrayList<>()), 0, 0); // Not even the header is finished, so it gets read again next time
+            }
+
+            long startOfNewLines = Math.max(start, startOfData);
+            if(unfinishedLineEnd > startOfNewLines){
+                long endOfUnfinishedLine = findEndOfLine(channel, startOfNewLines, fileSize);
+                if(endOfUnfinishedLine != unfinishedLineEnd){
+                    throw new IllegalArgumentException("The last line of " + file.getPath() + " didn't have a line break, and something got written onto the end of it, so it wasn't just appended to.");
+                }
+                if(endOfUnfinishedLine == fileSize){
+                    return new Tail(new DataTable(columnNames, new ArrayList<>()), startOfNewLines, unfinishedLineEnd); // Nothing new
+                }
+                startOfNewLines = skipLineBreak(channel, endOfUnfinishedLine, fileSize);
+            }
+            else if(startOfNewLines > startOfData && startOfNewLines < fileSize && readByte(channel, startOfNewLines - 1) == '\r' && readByte(channel, startOfNewLines) == '\n'){
+                startOfNewLines++; // The line break the last read ended on was the first half of a "\r\n"
+            }
+
+            long startOfLastLine = isLineBreak(readByte(channel, fileSize - 1)) ? fileSize : findStartOfLastLine(channel, startOfNewLines, fileSize);
+            return new Tail(readLines(channel, columnNames, startOfNewLines, fileSize), startOfLastLine, fileSize);
+        }
+        catch(NoSuchFileException exception){
+            throw new FileNotFoundException(file.getPath() + " (No such file or directory)");
+        }
+        catch(IOException exception){
+            throw new UncheckedIOException("Couldn't read " + file.getPath() + ".", exception);
+        }
+    }
+
+    /**
+     * Parses the lines between two positions, cutting them into chunks that get parsed in parallel (on the {@link Morsels} pool) if there are
+     * enough of them.
+     */
+    private static DataTable readLines(final FileChannel channel, final String[] columnNames, final long start, final long end) throws IOException{
+        long[] chunkBoundaries = findChunkBoundaries(channel, start, end);
+        int numberOfChunks = chunkBoundaries.length - 1;
+
+        List<DataTable> chunks = Morsels.map(numberOfChunks, i -> readChunk(channel, chunkBoundaries[i], chunkBoundaries[i + 1], columnNames));
+
+        return DataTable.concatenate(columnNames, chunks);
+    }
+
+    /**
+     * @return The position just after the last line break between the two positions, or the first position if there isn't one.
+     */
+    private static long findStartOfLastLine(final FileChannel channel, final long start, final long end) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(4 << 10);
+        for(long blockEnd = end; blockEnd > start; blockEnd -= buffer.limit()){
+            long blockStart = Math.max(start, blockEnd - buffer.capacity());
+            buffer.clear();
+            buffer.limit((int) (blockEnd - blockStart));
+            channel.read(buffer, blockStart);
+            buffer.flip();
+            for(int i = buffer.limit() - 1; i >= 0; i--){
+                if(isLineBreak(buffer.get(i))){
+                    return blockStart + i + 1;
+                }
+            }
+        }
+
+        return start;
+    }
+
+    private static byte readByte(final FileChannel channel, final long position) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        channel.read(buffer, position);
+        return buffer.get(0);
+    }
+
+    private static boolean isLineBreak(final byte character){
+        return character == '\n' || character == '\r';
+    }
+
+    /**
+     * Splits a line into fields the same way {@code line.split(",\\s*")} does (whitespace after a comma is dropped, and so are
+     * empty fields at the end), just without the regular expression.
+     */
+    public static String[] splitFields(final String line){
+        ArrayList<String> fields = new ArrayList<>();
+        int startOfField = 0;
+        for(int i = 0; i < line.length(); i++){
+            if(line.charAt(i) == ','){
+                fields.add(line.substring(startOfField, i));
+                while(i + 1 < line.length() && isRegexWhitespace(line.charAt(i + 1))){
+                    i++;
+                }
+                startOfField = i + 1;
+            }
+        }
+
+        if(fields.isEmpty()){
+            return new String[]{line}; // No commas at all, so the whole line is one field (even if it's empty)
+        }
+
+        fields.add(line.substring(startOfField));
+        int numberOfFields = fields.size();
+        while(numberOfFields > 0 && fields.get(numberOfFields - 1).isEmpty()){
+            numberOfFields--;
+        }
+
+        return fields.subList(0, numberOfFields).toArray(new String[0]);
+    }
+
+    /**
+     * The characters {@code \s} matches in a regular expression, which is fewer than {@link Character#isWhitespace(char)} allows.
+     */
+    private static boolean isRegexWhitespace(final int character){
+        return character == ' ' || character == '\t' || character == '\n' || character == 0x0B || character == '\f' || character == '\r';
+    }
+
+    /**
+     * Picks where each chunk starts: roughly evenly spaced, one per thread of the {@link Morsels} pool, but always right after a line break.
+     *
+     * @return The start of every chunk, followed by the end of the file.
+     */
+    private static long[] findChunkBoundaries(final FileChannel channel, final long startOfData, final long fileSize) throws IOException{
+        long dataSize = fileSize - startOfData;
+        long chunkSize = Math.max(MINIMUM_CHUNK_SIZE, dataSize / Morsels.getParallelism() + 1);
+        chunkSize = Math.min(chunkSize, MAXIMUM_CHUNK_SIZE);
+
+        ArrayList<Long> boundaries = new ArrayList<>();
+        boundaries.add(startOfData);
+        for(long boundary = startOfData + chunkSize; boundary < fileSize; boundary += chunkSize){
+            long startOfNextLine = findStartOfNextLine(channel, Math.max(boundary, boundaries.get(boundaries.size() - 1)), fileSize);
+            if(startOfNextLine >= fileSize){
+                break;
+            }
+            if(startOfNextLine - boundaries.get(boundaries.size() - 1) > Integer.MAX_VALUE){
+                throw new IOException("A single line is too long to be mapped.");
+            }
+
+            boundaries.add(startOfNextLine);
+            boundary = startOfNextLine;
+        }
+        boundaries.add(fileSize);
+
+        long[] boundaryArray = new long[boundaries.size()];
+        for(int i = 0; i < boundaryArray.length; i++){
+            boundaryArray[i] = boundaries.get(i);
+        }
+
+        return boundaryArray;
+    }
+
+    /**
+     * @return The position just after the first '\n' at or after the given position, or the end of the file.
+     */
+    private static long findStartOfNextLine(final FileChannel channel, final long position, final long fileSize) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(64 << 10);
+        for(long start = position; start < fileSize; start += buffer.limit()){
+            buffer.clear();
+            channel.read(buffer, start);
+            buffer.flip();
+            for(int i = 0; i < buffer.limit(); i++){
+                if(buffer.get(i) == '\n'){
+                    return start + i + 1;
+                }
+            }
+        }
+
+        return fileSize;
+    }
+
+    /**
+     * @return The position of the line break ('\n' or '\r') that ends the line starting at the given position, or the end of the file.
+     */
+    private static long findEndOfLine(final FileChannel channel, final long position, final long fileSize) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(64 << 10);
+        for(long start = position; start < fileSize; start += buffer.limit()){
+            buffer.clear();
+            channel.read(buffer, start);
+            buffer.flip();
+            for(int i = 0; i < buffer.limit(); i++){
+                if(buffer.get(i) == '\n' || buffer.get(i) == '\r'){
+                    return start + i;
+                }
+            }
+        }
+
+        return fileSize;
+    }
+
+    private static long skipLineBreak(final FileChannel channel, final long position, final long fileSize) throws IOException{
+        if(position >= fileSize){
+            return fileSize;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(2);
+        channel.read(buffer, position);
+        return (buffer.get(0) == '\r' && buffer.position() == 2 && buffer.get(1) == '\n') ? position + 2 : position + 1;
+    }
+
+    private static String readText(final FileChannel channel, final long start, final long end) throws IOException{
+        if(end - start > Integer.MAX_VALUE){
+            throw new IOException("The header line is too long.");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while(buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0){
+            // Keep reading until it's all there
+        }
+
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Maps one chunk of lines and parses it into columns. Runs on whichever thread the parallel stream hands it to.
+     */
+    private static DataTable readChunk(final FileChannel channel, final long start, final long end, final String[] columnNames){
+        MappedByteBuffer bytes;
+        try{
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+        catch(IOException exception){
+            throw new UncheckedIOException(exception);
+        }
+
+        return new ChunkParser(bytes, columnNames.length).parse(columnNames);
+    }
+
+    /**
+     * The byte scanner for one chunk. Keeps the positions of the current line's fields in reusable arrays, so a line costs no allocations
+     * beyond the Strings of its text fields.
+     */
+    private static final class ChunkParser{
+        private final MappedByteBuffer bytes;
+        private final ColumnBuilder[]  columnBuilders;
+        private       int[]            fieldStarts = new int[16];
+        private       int[]            fieldEnds   = new int[16];
+        private       byte[]           textBuffer  = new byte[256];
+
+        ChunkParser(final MappedByteBuffer bytes, final int numberOfColumns){
+            this.bytes = bytes;
+            this.columnBuilders = new ColumnBuilder[numberOfColumns];
+            int expectedNumberOfRows = Math.max(16, bytes.limit() / (8 * Math.max(1, numberOfColumns)));
+            for(int j = 0; j < numberOfColumns; j++){
+                this.columnBuilders[j] = new ColumnBuilder(expectedNumberOfRows);
+            }
+        }
+
+        DataTable parse(final String[] columnNames){
+            int size = this.bytes.limit();
+            int startOfLine = 0;
+            while(startOfLine < size){
+                int endOfLine = startOfLine;
+                while(endOfLine < size && this.bytes.get(endOfLine) != '\n' && this.bytes.get(endOfLine) != '\r'){
+                    endOfLine++;
+                }
+
+                this.parseLine(startOfLine, endOfLine);
+
+                startOfLine = endOfLine + 1;
+                if(endOfLine < size && this.bytes.get(endOfLine) == '\r' && startOfLine < size && this.bytes.get(startOfLine) == '\n'){
+                    startOfLine++; // "\r\n" is one line break, not two
+                }
+            }
+
+            Column[] columns = new Column[this.columnBuilders.length];
+            for(int j = 0; j < columns.length; j++){
+                columns[j] = this.columnBuilders[j].build();
+            }
+
+            return new DataTable(columnNames, columns);
+        }
+
+        private void parseLine(final int startOfLine, final int endOfLine){
+            int numberOfFields = 0;
+            int startOfField = startOfLine;
+            for(int i = startOfLine; i < endOfLine; i++){
+                if(this.bytes.get(i) == ','){
+                    numberOfFields = this.addField(numberOfFields, startOfField, i);
+                    while(i + 1 < endOfLine && isRegexWhitespace(this.bytes.get(i + 1))){
+                        i++;
+                    }
+                    startOfField = i + 1;
+                }
+            }
+            numberOfFields = this.addField(numberOfFields, startOfField, endOfLine);
+
+            if(numberOfFields > 1){ // Like split, drop empty fields at the end, unless there was never a comma to begin with
+                while(numberOfFields > 0 && this.fieldStarts[numberOfFields - 1] == this.fieldEnds[numberOfFields - 1]){
+                    numberOfFields--;
+                }
+            }
+
+            for(int j = 0; j < this.columnBuilders.length; j++){
+                if(j >= numberOfFields){
+                    this.columnBuilders[j].add(null);
+                }
+                else{
+                    this.addValue(this.columnBuilders[j], this.fieldStarts[j], this.fieldEnds[j]);
+                }
+            }
+        }
+
+        private int addField(final int numberOfFields, final int start, final int end){
+            if(numberOfFields == this.fieldStarts.length){
+                this.fieldStarts = Arrays.copyOf(this.fieldStarts, numberOfFields * 2);
+                this.fieldEnds = Arrays.copyOf(this.fieldEnds, numberOfFields * 2);
+            }
+
+            this.fieldStarts[numberOfFields] = start;
+            this.fieldEnds[numberOfFields] = end;
+            return numberOfFields + 1;
+        }
+
+        /**
+         * Whole numbers that are written the canonical way are parsed from the bytes, everything else goes in as text.
+         */
+        private void addValue(final ColumnBuilder columnBuilder, final int start, final int end){
+            if(columnBuilder.getType() != Column.Type.STRING){
+                int firstDigit = (start < end && this.bytes.get(start) == '-') ? start + 1 : start;
+                int numberOfDigits = end - firstDigit;
+                boolean isCanonical = numberOfDigits > 0 && numberOfDigits <= 18 && (this.bytes.get(firstDigit) != '0' || (numberOfDigits == 1 && firstDigit == start));
+
+                long value = 0;
+                for(int i = firstDigit; i < end && isCanonical; i++){
+                    byte digit = this.bytes.get(i);
+                    isCanonical = digit >= '0' && digit <= '9';
+                    value = value * 10 + (digit - '0');
+                }
+
+                if(isCanonical){
+                    columnBuilder.addWholeNumber((firstDigit == start) ? value : -value);
+                    return;
+                }
+            }
+
+            columnBuilder.add(this.decode(start, end));
+        }
+
+        private String decode(final int start, final int end){
+            int length = end - start;
+            if(length > this.textBuffer.length){
+                this.textBuffer = new byte[Math.max(length, this.textBuffer.length * 2)];
+            }
+
+            this.bytes.get(start, this.textBuffer, 0, length);
+            return new String(this.textBuffer, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,605 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+
+/**
+ * A secondary index on one column of a base table, so that a selective SELE only has to look at the rows it's going to keep instead of all of them.
+ * A {@link Kind#HASH} index finds the rows with a given value ({@code =} and IN), and a {@link Kind#SORTED} one the rows in a range of numbers
+ * ({@code <}, {@code <=}, {@code >}, {@code >=}, and {@code =} too). A hash index doubles as the ready-made build side of a hash join on its column.
+ * <p>
+ * Which indexes a table has is declared in a text file next to it, one per line, like "HASH MNO" or "SORTED Payment" in Play.indexes
+ * (see {@link #declare(File, Declaration)}). The indexes get built when the table is loaded into the {@link TableCatalog}, and each one is kept
+ * next to the table too (Play.MNO.hash.idx), so later runs only have to read it back. An index file whose table file has changed size or
+ * last-modified time since it was written just gets rebuilt.
+ * <p>
+ * Layout: a magic number and format version, the kind, the table file's size and time, the row count and the column name, then one int per row:
+ * the next row with the same value for a hash index (the chains of a {@link JoinHashTable}), or the rows in order of their values for a sorted one.
+ */
+public abstract class TableIndex{
+    public enum Kind{
+        /**
+         * Finds the rows with exactly a given value, on any type of column.
+         */
+        HASH,
+        /**
+         * Finds the rows whose values are in a range, on a numeric column.
+         */
+        SORTED
+    }
+
+    public static final String DECLARATIONS_FILE_EXTENSION = ".indexes";
+    public static final String INDEX_FILE_EXTENSION        = ".idx";
+
+    /**
+     * An index only gets used for a SELE if it narrows the table down to at most this fraction of its rows. Past that, a plain scan
+     * (on all the workers, a morsel at a time, and maybe {@link PredicateCompiler compiled}) is quicker than jumping around the table.
+     */
+    public static final double MAXIMUM_SELECTIVITY = 0.125;
+
+    private static final int MAGIC_NUMBER   = 0x52414958; // "RAIX"
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * One line of a table's declarations file.
+     */
+    public record Declaration(Kind kind, String columnName){
+        /**
+         * @param line Like "HASH MNO" or "SORTED Payment". The kind doesn't care about capitals; the column name does.
+         * @throws IllegalArgumentException if the line isn't a kind followed by a column name.
+         */
+        public static Declaration parse(final String line){
+            String trimmedLine = line.trim();
+            int endOfKind = 0;
+            while(endOfKind < trimmedLine.length() && !Character.isWhitespace(trimmedLine.charAt(endOfKind))){
+                endOfKind++;
+            }
+
+            String columnName = trimmedLine.substring(endOfKind).trim();
+            if(columnName.isEmpty()){
+                throw new IllegalArgumentException("An index has to be declared as a kind and a column, like \"HASH MNO\", not \"" + trimmedLine + "\".");
+            }
+
+            try{
+                return new Declaration(Kind.valueOf(trimmedLine.substring(0, endOfKind).toUpperCase(Locale.ROOT)), columnName);
+            }
+            catch(IllegalArgumentException exception){
+                throw new IllegalArgumentException("There's no such thing as a " + trimmedLine.substring(0, endOfKind) + " index. Use HASH or SORTED.");
+            }
+        }
+
+        @Override
+        public String toString(){
+            return this.kind + " " + this.columnName;
+        }
+    }
+
+    private final DataTable table;
+    private final String    columnName;
+    private final int       columnIndex;
+
+    private TableIndex(final DataTable table, final String columnName){
+        this.table = table;
+        this.columnName = columnName;
+        this.columnIndex = DataTable.getIndexInArrayOfItemEquivalentTo(table.getColumnNames(), columnName);
+    }
+
+    public DataTable getTable(){
+        return this.table;
+    }
+
+    public String getColumnName(){
+        return this.columnName;
+    }
+
+    public abstract Kind getKind();
+
+    /**
+     * @return How many rows {@link #getRowsWhere(SelectionCondition)} would find, or -1 if this index can't help with the condition.
+     */
+    public abstract int countRowsWhere(SelectionCondition condition);
+
+    /**
+     * @param condition A condition this index can help with, going by {@link #countRowsWhere(SelectionCondition)}.
+     * @return At least every row the condition is true for (and maybe a few more, so the condition still has to be checked on them), in ascending order.
+     */
+    public abstract int[] getRowsWhere(SelectionCondition condition);
+
+    /**
+     * @return Roughly how many bytes the index takes up on top of its table, so {@link TableCatalog} can count it.
+     */
+    public abstract long getMemoryUsage();
+
+    /**
+     * @return Whether the condition compares this index's column with a constant.
+     */
+    protected boolean isOnColumnOf(final SelectionCondition condition){
+        return condition.columnName().equals(this.columnName) && !condition.comparesTwoColumns(this.table.getColumnNames());
+    }
+
+    /**
+     * @return The one int per row that goes in the index file.
+     */
+    protected abstract int[] getRowNumbers();
+
+    /**
+     * Finds the rows equal to a value through the chains of a {@link JoinHashTable}.
+     */
+    public static final class HashIndex extends TableIndex{
+        private final JoinHashTable hashTable;
+
+        private HashIndex(final DataTable table, final String columnName, final int[] nextRowWithSameValue){
+            super(table, columnName);
+            this.hashTable = new JoinHashTable(table, new int[]{super.columnIndex}, nextRowWithSameValue);
+        }
+
+        /**
+         * @return A hash table on just this index's column, which a join on that column can use instead of building its own.
+         */
+        public JoinHashTable getHashTable(){
+            return this.hashTable;
+        }
+
+        @Override
+        public Kind getKind(){
+            return Kind.HASH;
+        }
+
+        @Override
+        public int countRowsWhere(final SelectionCondition condition){
+            List<String> values = this.getComparedValues(condition);
+            if(values == null){
+                return -1;
+            }
+
+            int numberOfRows = 0;
+            for(String value : values){
+                for(int row = this.hashTable.getFirstRowWithValue(value); row != -1; row = this.hashTable.getNextMatchingRow(row)){
+                    numberOfRows++;
+                }
+            }
+
+            return numberOfRows;
+        }
+
+        @Override
+        public int[] getRowsWhere(final SelectionCondition condition){
+            List<String> values = this.getComparedValues(condition);
+            int[] rows = new int[this.countRowsWhere(condition)];
+            int numberOfRows = 0;
+            for(String value : values){
+                for(int row = this.hashTable.getFirstRowWithValue(value); row != -1; row = this.hashTable.getNextMatchingRow(row)){
+                    rows[numberOfRows++] = row;
+                }
+            }
+
+            // Each chain is in order already, but with IN there's more than one of them (and maybe the same one twice)
+            if(values.size() > 1){
+                Arrays.sort(rows);
+                int numberOfDistinctRows = 0;
+                for(int i = 0; i < rows.length; i++){
+                    if(i == 0 || rows[i] != rows[i - 1]){
+                        rows[numberOfDistinctRows++] = rows[i];
+                    }
+                }
+                rows = Arrays.copyOf(rows, numberOfDistinctRows);
+            }
+
+            return rows;
+        }
+
+        /**
+         * @return The values the condition looks for, or null if it's not an {@code =} or IN on this index's column.
+         */
+        private List<String> getComparedValues(final SelectionCondition condition){
+            if(!this.isOnColumnOf(condition)){
+                return null;
+            }
+            if(condition.operator().equals(DataTable.EQUALS)){
+                return List.of(condition.comparedValue());
+            }
+
+            return condition.operator().equals(DataTable.IN) ? SelectionCondition.parseValueList(condition.comparedValue()) : null;
+        }
+
+        @Override
+        public long getMemoryUsage(){
+            return 16L * this.getTable().getRowCount(); // The chains, plus the first row of each of them in a map
+        }
+
+        @Override
+        protected int[] getRowNumbers(){
+            return this.hashTable.getNextRowsWithSameKey();
+        }
+    }
+
+    /**
+     * Finds the rows in a range of numbers by binary searching the rows sorted by their values.
+     */
+    public static final class SortedIndex extends TableIndex{
+        private final int[]    rowsInOrder;
+        private final double[] valuesInOrder;
+        private final int      numberOfNumbers;
+
+        /**
+         * @param rowsInOrder The rows, sorted by their values with {@link Double#compare(double, double)}, or null to sort them here.
+         */
+        private SortedIndex(final DataTable table, final String columnName, final int[] rowsInOrder){
+            super(table, columnName);
+            Column column = table.getColumn(super.columnIndex);
+            if(column.getType() == Column.Type.STRING){
+                throw new IllegalArgumentException("A sorted index has to be on a numeric column, and " + columnName + " has text in it.");
+            }
+
+            this.rowsInOrder = (rowsInOrder == null) ? sortRows(column) : rowsInOrder;
+            this.valuesInOrder = new double[this.rowsInOrder.length];
+            for(int i = 0; i < this.rowsInOrder.length; i++){
+                this.valuesInOrder[i] = column.getDouble(this.rowsInOrder[i]);
+            }
+
+            // NaN sorts after everything else, and isn't in any range
+            int numberOfNumbers = this.valuesInOrder.length;
+            while(numberOfNumbers > 0 && Double.isNaN(this.valuesInOrder[numberOfNumbers - 1])){
+                numberOfNumbers--;
+            }
+            this.numberOfNumbers = numberOfNumbers;
+        }
+
+        @Override
+        public Kind getKind(){
+            return Kind.SORTED;
+        }
+
+        @Override
+        public int countRowsWhere(final SelectionCondition condition){
+            int[] range = this.getRange(condition);
+            return (range == null) ? -1 : range[1] - range[0];
+        }
+
+        @Override
+        public int[] getRowsWhere(final SelectionCondition condition){
+            int[] range = this.getRange(condition);
+            int[] rows = Arrays.copyOfRange(this.rowsInOrder, range[0], range[1]);
+            Arrays.sort(rows);
+
+            return rows;
+        }
+
+        /**
+         * @return Where the rows that satisfy the condition start and end in {@link #rowsInOrder}, or null if it's not a comparison of this
+         * index's column with a number.
+         */
+        private int[] getRange(final SelectionCondition condition){
+            if(!this.isOnColumnOf(condition) || condition.operator().equals(DataTable.NOT_EQUALS) || condition.operator().equals(DataTable.IN)){
+                return null;
+            }
+
+            double comparedNumber;
+            try{
+                comparedNumber = Double.parseDouble(condition.comparedValue());
+            }
+            catch(NumberFormatException exception){
+                return null; // Let the scan fail the way it always has
+            }
+            if(Double.isNaN(comparedNumber)){
+                return new int[]{0, 0};
+            }
+
+            int firstAtLeast = this.getFirstPositionWhere(comparedNumber, false);
+            int firstGreater = this.getFirstPositionWhere(comparedNumber, true);
+            return switch(condition.operator()){
+                case DataTable.GREATER_THAN -> new int[]{firstGreater, this.numberOfNumbers};
+                case DataTable.GREATER_THAN_OR_EQUAL -> new int[]{firstAtLeast, this.numberOfNumbers};
+                case DataTable.LESS_THAN -> new int[]{0, firstAtLeast};
+                case DataTable.LESS_THAN_OR_EQUAL -> new int[]{0, firstGreater};
+                default -> new int[]{firstAtLeast, firstGreater}; // Equal as numbers, which might not be equal as texts
+            };
+        }
+
+        /**
+         * @param isStrictlyGreater Whether to look for the first value greater than the number, or the first one that's at least the number.
+         * @return The first position (among the ones that aren't NaN) whose value is that, or {@link #numberOfNumbers} if there isn't one.
+         */
+        private int getFirstPositionWhere(final double number, final boolean isStrictlyGreater){
+            int low = 0;
+            int high = this.numberOfNumbers;
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                boolean isFound = isStrictlyGreater ? this.valuesInOrder[middle] > number : this.valuesInOrder[middle] >= number;
+                if(isFound){
+                    high = middle;
+                }
+                else{
+                    low = middle + 1;
+                }
+            }
+
+            return low;
+        }
+
+        /**
+         * @return Every row of the column, sorted by value with a merge sort, so that nothing gets boxed.
+         */
+        private static int[] sortRows(final Column column){
+            double[] values = new double[column.size()];
+            int[] rows = new int[column.size()];
+            for(int i = 0; i < rows.length; i++){
+                values[i] = column.getDouble(i);
+                rows[i] = i;
+            }
+
+            int[] mergedRows = new int[rows.length];
+            for(int width = 1; width < rows.length; width *= 2){
+                for(int start = 0; start < rows.length; start += 2 * width){
+                    int middle = Math.min(start + width, rows.length);
+                    int end = Math.min(start + 2 * width, rows.length);
+                    int i = start;
+                    int j = middle;
+                    for(int k = start; k < end; k++){
+                        boolean isLeftNext = j == end || (i < middle && Double.compare(values[rows[i]], values[rows[j]]) <= 0);
+                        mergedRows[k] = isLeftNext ? rows[i++] : rows[j++];
+                    }
+                }
+
+                int[] swap = rows;
+                rows = mergedRows;
+                mergedRows = swap;
+            }
+
+            return rows;
+        }
+
+        @Override
+        public long getMemoryUsage(){
+            return (long) (Integer.BYTES + Double.BYTES) * this.rowsInOrder.length;
+        }
+
+        @Override
+        protected int[] getRowNumbers(){
+            return this.rowsInOrder;
+        }
+    }
+
+    /**
+     * Picks the index that narrows a SELE down the most, going by the conditions of its top-level AND (or the whole predicate, if it's a single comparison).
+     *
+     * @return At least every row the predicate is true for, in ascending order, or null if no index narrows it down to {@link #MAXIMUM_SELECTIVITY} or less.
+     */
+    public static int[] findCandidateRows(final List<TableIndex> indexes, final SelectionPredicate predicate){
+        TableIndex bestIndex = null;
+        SelectionCondition bestCondition = null;
+        int fewestRows = Integer.MAX_VALUE;
+        for(SelectionPredicate conjunct : predicate.getConjuncts()){
+            if(!(conjunct instanceof SelectionPredicate.Comparison comparison)){
+                continue;
+            }
+
+            for(TableIndex index : indexes){
+                int numberOfRows = index.countRowsWhere(comparison.condition());
+                if(numberOfRows >= 0 && numberOfRows < fewestRows){
+                    bestIndex = index;
+                    bestCondition = comparison.condition();
+                    fewestRows = numberOfRows;
+                }
+            }
+        }
+
+        if(bestIndex == null || fewestRows > MAXIMUM_SELECTIVITY * bestIndex.getTable().getRowCount()){
+            return null;
+        }
+
+        return bestIndex.getRowsWhere(bestCondition);
+    }
+
+    /**
+     * @return The index of the given kind on the given column, or null if there isn't one.
+     */
+    public static TableIndex find(final List<TableIndex> indexes, final String columnName, final Kind kind){
+        for(TableIndex index : indexes){
+            if(index.getKind() == kind && index.getColumnName().equals(columnName)){
+                return index;
+            }
+        }
+
+        return null;
+    }
+
+    public static File getDeclarationsFile(final File tableFile){
+        return new File(getPathWithoutExtension(tableFile) + DECLARATIONS_FILE_EXTENSION);
+    }
+
+    /**
+     * @return Where the index is kept. Anything in the column name that might not be safe in a file name is swapped for an underscore.
+     */
+    public static File getIndexFile(final File tableFile, final Declaration declaration){
+        String fileColumnName = declaration.columnName().replaceAll("[^A-Za-z0-9_-]", "_");
+        return new File(getPathWithoutExtension(tableFile) + "." + fileColumnName + "." + declaration.kind().name().toLowerCase(Locale.ROOT) + INDEX_FILE_EXTENSION);
+    }
+
+    private static String getPathWithoutExtension(final File tableFile){
+        String tablePath = tableFile.getPath();
+        return tablePath.endsWith(".txt") ? tablePath.substring(0, tablePath.length() - 4) : tablePath;
+    }
+
+    /**
+     * @return Whether the table has any indexes declared, which is cheap enough to check on every query.
+     */
+    public static boolean hasDeclarations(final File tableFile){
+        return getDeclarationsFile(tableFile).exists();
+    }
+
+    /**
+     * @return The indexes declared for the table, without the lines that don't make sense.
+     */
+    public static List<Declaration> readDeclarations(final File tableFile){
+        ArrayList<Declaration> declarations = new ArrayList<>();
+        File declarationsFile = getDeclarationsFile(tableFile);
+        if(!declarationsFile.exists()){
+            return declarations;
+        }
+
+        try{
+            for(String line : Files.readAllLines(declarationsFile.toPath(), StandardCharsets.UTF_8)){
+                if(line.isBlank()){
+                    continue;
+                }
+                try{
+                    Declaration declaration = Declaration.parse(line);
+                    if(!declarations.contains(declaration)){
+                        declarations.add(declaration);
+                    }
+                }
+                catch(IllegalArgumentException exception){
+                    // An index is only there to save time, so a line that makes no sense just doesn't get one
+                }
+            }
+        }
+        catch(IOException exception){
+            // Same for a declarations file that can't be read
+        }
+
+        return declarations;
+    }
+
+    /**
+     * Builds an index on the table, writes it next to the table, and adds it to the table's declarations (if it wasn't there already), so it
+     * gets loaded along with the table from now on. This is what {@code --index} runs.
+     *
+     * @return The new index.
+     * @throws IllegalArgumentException if the table doesn't have that column, or a sorted index is declared on text.
+     */
+    public static TableIndex declare(final File tableFile, final Declaration declaration) throws DataFormatException, IOException{
+        long sourceLength = tableFile.length();
+        long sourceLastModified = tableFile.lastModified();
+        DataTable table = new DataTable(tableFile);
+        if(!DataTable.containsItemEquivalentTo(table.getColumnNames(), declaration.columnName())){
+            throw new IllegalArgumentException(tableFile + " doesn't have a column called " + declaration.columnName() + ".");
+        }
+
+        TableIndex index = build(table, declaration, null);
+        write(index, getIndexFile(tableFile, declaration), sourceLength, sourceLastModified);
+
+        List<Declaration> declarations = readDeclarations(tableFile);
+        if(!declarations.contains(declaration)){
+            declarations.add(declaration);
+            ArrayList<String> lines = new ArrayList<>(declarations.size());
+            for(Declaration existingDeclaration : declarations){
+                lines.add(existingDeclaration.toString());
+            }
+            Files.write(getDeclarationsFile(tableFile).toPath(), lines, StandardCharsets.UTF_8);
+        }
+
+        return index;
+    }
+
+    /**
+     * Loads every index declared for a table that was just loaded from the given file: from its index file if there's one that's up to date,
+     * and otherwise by building it (and writing the file for next time). A declaration that doesn't fit the table, like one on a column it
+     * doesn't have, is skipped.
+     *
+     * @param sourceLength       The table file's size from before the table was read.
+     * @param sourceLastModified The table file's last-modified time from before the table was read.
+     */
+    public static List<TableIndex> loadAll(final File tableFile, final DataTable table, final long sourceLength, final long sourceLastModified){
+        ArrayList<TableIndex> indexes = new ArrayList<>();
+        for(Declaration declaration : readDeclarations(tableFile)){
+            if(!DataTable.containsItemEquivalentTo(table.getColumnNames(), declaration.columnName())){
+                continue;
+            }
+
+            File indexFile = getIndexFile(tableFile, declaration);
+            try{
+                TableIndex index = read(indexFile, table, declaration, sourceLength, sourceLastModified);
+                if(index == null){
+                    index = build(table, declaration, null);
+                    try{
+                        write(index, indexFile, sourceLength, sourceLastModified);
+                    }
+                    catch(IOException exception){
+                        // Then it just gets built again next time
+                    }
+                }
+                indexes.add(index);
+            }
+            catch(RuntimeException exception){
+                // A column with the same name twice, or a sorted index on a column that turned out to have text in it
+            }
+        }
+
+        return indexes;
+    }
+
+    private static TableIndex build(final DataTable table, final Declaration declaration, final int[] rowNumbers){
+        return switch(declaration.kind()){
+            case HASH -> new HashIndex(table, declaration.columnName(), rowNumbers);
+            case SORTED -> new SortedIndex(table, declaration.columnName(), rowNumbers);
+        };
+    }
+
+    /**
+     * @return The index from its file, or null if there's no file or it doesn't match the table file (or the declaration).
+     */
+    private static TableIndex read(final File indexFile, final DataTable table, final Declaration declaration, final long sourceLength, final long sourceLastModified){
+        if(!indexFile.exists()){
+            return null;
+        }
+
+        try(FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)){
+            MappedByteBuffer contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(contents.getInt() != MAGIC_NUMBER || contents.getInt() != FORMAT_VERSION || contents.get() != declaration.kind().ordinal() ||
+               contents.getLong() != sourceLength || contents.getLong() != sourceLastModified || contents.getInt() != table.getRowCount()){
+                return null;
+            }
+
+            byte[] columnName = new byte[contents.getInt()];
+            contents.get(columnName);
+            if(!new String(columnName, StandardCharsets.UTF_8).equals(declaration.columnName())){
+                return null;
+            }
+
+            int[] rowNumbers = new int[table.getRowCount()];
+            contents.asIntBuffer().get(rowNumbers);
+            return build(table, declaration, rowNumbers);
+        }
+        catch(IOException | RuntimeException exception){
+            return null; // A broken index is the same as no index
+        }
+    }
+
+    /**
+     * Writes the index to a temporary file first and then moves it into place, so a half-written index never gets read.
+     */
+    private static void write(final TableIndex index, final File indexFile, final long sourceLength, final long sourceLastModified) throws IOException{
+        File temporaryFile = new File(indexFile.getPath() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            output.writeInt(MAGIC_NUMBER);
+            output.writeInt(FORMAT_VERSION);
+            output.writeByte(index.getKind().ordinal());
+            output.writeLong(sourceLength);
+            output.writeLong(sourceLastModified);
+            output.writeInt(index.getTable().getRowCount());
+            byte[] columnName = index.getColumnName().getBytes(StandardCharsets.UTF_8);
+            output.writeInt(columnName.length);
+            output.write(columnName);
+            for(int rowNumber : index.getRowNumbers()){
+                output.writeInt(rowNumber);
+            }
+            output.flush();
+        }
+
+        Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
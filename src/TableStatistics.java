@@ -0,0 +1,223 @@
+import java.io.*;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+
+/**
+ * What the optimizer knows about a table without having to look at it again: how many rows it has, how many distinct values each column has,
+ * and the smallest and largest value of each numeric column.
+ * <p>
+ * Statistics for a table file are collected when {@link DataTable#DataTable(File)} loads it. They're kept in memory and also saved next to
+ * the table (Play.txt gets a Play.stats), so later runs don't have to load the table just to plan a query. Both copies are thrown away as soon
+ * as the table file's size or last-modified time changes.
+ */
+public final class TableStatistics{
+    public static final String STATISTICS_FILE_EXTENSION = ".stats";
+
+    private static final ConcurrentHashMap<String, TableStatistics> statisticsByTablePath = new ConcurrentHashMap<>();
+
+    private final long     rowCount;
+    private final String[] columnNames;
+    private final long[]   distinctCounts;
+    private final double[] minimums;
+    private final double[] maximums;
+    private       long     sourceFileLength       = -1;
+    private       long     sourceFileLastModified = -1;
+
+    private TableStatistics(final long rowCount, final String[] columnNames, final long[] distinctCounts, final double[] minimums, final double[] maximums){
+        this.rowCount = rowCount;
+        this.columnNames = columnNames;
+        this.distinctCounts = distinctCounts;
+        this.minimums = minimums;
+        this.maximums = maximums;
+    }
+
+    /**
+     * Goes through every column once, counting distinct values with a hash set of their keys and tracking the range of each column that's all numbers.
+     * Numeric columns are known to be all numbers already; text columns still get checked, since "080" is a number even though it's kept as text.
+     */
+    public static TableStatistics compute(final String[] columnNames, final Column[] columns, final int rowCount){
+        long[] distinctCounts = new long[columnNames.length];
+        double[] minimums = new double[columnNames.length];
+        double[] maximums = new double[columnNames.length];
+
+        for(int j = 0; j < columnNames.length; j++){
+            Column column = columns[j];
+            HashSet<Object> distinctValues = new HashSet<>();
+            double minimum = Double.POSITIVE_INFINITY;
+            double maximum = Double.NEGATIVE_INFINITY;
+            boolean isNumeric = rowCount > 0;
+
+            for(int i = 0; i < rowCount; i++){
+                distinctValues.add(column.getKey(i));
+
+                if(isNumeric){
+                    try{
+                        double value = (column.getType() == Column.Type.STRING) ? Double.parseDouble(column.getString(i)) : column.getDouble(i);
+                        minimum = Math.min(minimum, value);
+                        maximum = Math.max(maximum, value);
+                    }
+                    catch(NumberFormatException | NullPointerException exception){
+                        isNumeric = false;
+                    }
+                }
+            }
+
+            distinctCounts[j] = distinctValues.size();
+            minimums[j] = isNumeric ? minimum : Double.NaN;
+            maximums[j] = isNumeric ? maximum : Double.NaN;
+        }
+
+        return new TableStatistics(rowCount, columnNames.clone(), distinctCounts, minimums, maximums);
+    }
+
+    /**
+     * Hangs on to the statistics of a table that was just loaded from its file, in memory and in the file's .stats sidecar.
+     * Not being able to write the sidecar isn't a problem; the statistics just won't survive this run.
+     */
+    public static void record(final File tableFile, final TableStatistics statistics){
+        statistics.sourceFileLength = tableFile.length();
+        statistics.sourceFileLastModified = tableFile.lastModified();
+        statisticsByTablePath.put(tableFile.getAbsolutePath(), statistics);
+
+        try{
+            statistics.save(getStatisticsFile(tableFile));
+        }
+        catch(IOException exception){
+            // Statistics are only a planning hint, so there's nothing worth failing over.
+        }
+    }
+
+    /**
+     * Gets the statistics of a table file, from memory if they're there, otherwise from the .stats sidecar, and as a last resort by loading the table.
+     *
+     * @return Statistics that are up to date with the table file.
+     */
+    public static TableStatistics forTable(final File tableFile) throws FileNotFoundException, DataFormatException{
+        TableStatistics statistics = statisticsByTablePath.get(tableFile.getAbsolutePath());
+        if(statistics != null && statistics.isUpToDateWith(tableFile)){
+            return statistics;
+        }
+
+        File statisticsFile = getStatisticsFile(tableFile);
+        if(statisticsFile.exists()){
+            try{
+                statistics = load(statisticsFile);
+                if(statistics.isUpToDateWith(tableFile)){
+                    statisticsByTablePath.put(tableFile.getAbsolutePath(), statistics);
+                    return statistics;
+                }
+            }
+            catch(IOException | IllegalArgumentException exception){
+                // A broken sidecar is the same as no sidecar.
+            }
+        }
+
+        // Loading it records fresh statistics, and the table is already in the catalog when the query gets run
+        return TableCatalog.getShared().getTable(tableFile, false).getStatistics();
+    }
+
+    public static File getStatisticsFile(final File tableFile){
+        String tablePath = tableFile.getPath();
+        String withoutExtension = tablePath.endsWith(".txt") ? tablePath.substring(0, tablePath.length() - 4) : tablePath;
+
+        return new File(withoutExtension + STATISTICS_FILE_EXTENSION);
+    }
+
+    private boolean isUpToDateWith(final File tableFile){
+        return this.sourceFileLength == tableFile.length() && this.sourceFileLastModified == tableFile.lastModified();
+    }
+
+    private void save(final File statisticsFile) throws IOException{
+        Properties properties = new Properties();
+        properties.setProperty("source.length", Long.toString(this.sourceFileLength));
+        properties.setProperty("source.lastModified", Long.toString(this.sourceFileLastModified));
+        properties.setProperty("rowCount", Long.toString(this.rowCount));
+        properties.setProperty("columnCount", Integer.toString(this.columnNames.length));
+        for(int j = 0; j < this.columnNames.length; j++){
+            properties.setProperty("column." + j + ".name", this.columnNames[j]);
+            properties.setProperty("column." + j + ".distinct", Long.toString(this.distinctCounts[j]));
+            properties.setProperty("column." + j + ".min", Double.toString(this.minimums[j]));
+            properties.setProperty("column." + j + ".max", Double.toString(this.maximums[j]));
+        }
+
+        try(OutputStream outputStream = new FileOutputStream(statisticsFile)){
+            properties.store(outputStream, "Table statistics used for query planning. Safe to delete.");
+        }
+    }
+
+    private static TableStatistics load(final File statisticsFile) throws IOException{
+        Properties properties = new Properties();
+        try(InputStream inputStream = new FileInputStream(statisticsFile)){
+            properties.load(inputStream);
+        }
+
+        int columnCount = Integer.parseInt(getRequiredProperty(properties, "columnCount"));
+        String[] columnNames = new String[columnCount];
+        long[] distinctCounts = new long[columnCount];
+        double[] minimums = new double[columnCount];
+        double[] maximums = new double[columnCount];
+        for(int j = 0; j < columnCount; j++){
+            columnNames[j] = getRequiredProperty(properties, "column." + j + ".name");
+            distinctCounts[j] = Long.parseLong(getRequiredProperty(properties, "column." + j + ".distinct"));
+            minimums[j] = Double.parseDouble(getRequiredProperty(properties, "column." + j + ".min"));
+            maximums[j] = Double.parseDouble(getRequiredProperty(properties, "column." + j + ".max"));
+        }
+
+        TableStatistics statistics = new TableStatistics(Long.parseLong(getRequiredProperty(properties, "rowCount")), columnNames, distinctCounts, minimums, maximums);
+        statistics.sourceFileLength = Long.parseLong(getRequiredProperty(properties, "source.length"));
+        statistics.sourceFileLastModified = Long.parseLong(getRequiredProperty(properties, "source.lastModified"));
+
+        return statistics;
+    }
+
+    private static String getRequiredProperty(final Properties properties, final String key){
+        String value = properties.getProperty(key);
+        if(value == null){
+            throw new IllegalArgumentException("The statistics file is missing " + key + ".");
+        }
+
+        return value;
+    }
+
+    public long getRowCount(){
+        return this.rowCount;
+    }
+
+    public String[] getColumnNames(){
+        return this.columnNames.clone();
+    }
+
+    public long getDistinctCount(final String columnName){
+        return this.distinctCounts[DataTable.getIndexInArrayOfItemEquivalentTo(this.columnNames, columnName)];
+    }
+
+    /**
+     * @return Whether no two rows have the same value in the column (the counts are exact, so this is for sure).
+     */
+    public boolean isUnique(final String columnName){
+        return this.getDistinctCount(columnName) == this.rowCount;
+    }
+
+    /**
+     * @return Whether every value in the column is a number (so it has a minimum and maximum).
+     */
+    public boolean isNumeric(final String columnName){
+        return !Double.isNaN(this.getMinimum(columnName));
+    }
+
+    /**
+     * @return The smallest value in the column, or NaN if the column isn't numeric.
+     */
+    public double getMinimum(final String columnName){
+        return this.minimums[DataTable.getIndexInArrayOfItemEquivalentTo(this.columnNames, columnName)];
+    }
+
+    /**
+     * @return The largest value in the column, or NaN if the column isn't numeric.
+     */
+    public double getMaximum(final String columnName){
+        return this.maximums[DataTable.getIndexInArrayOfItemEquivalentTo(this.columnNames, columnName)];
+    }
+}
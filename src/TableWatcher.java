@@ -0,0 +1,327 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+/**
+ * Runs a batch of queries, then keeps watching the table files in the working directory (with a {@link WatchService}) and keeps the
+ * results up to date as rows get appended to them. Only the end of a table file that was appended to gets read, and each query that can
+ * be maintained that way has an {@link IncrementalView} that works out the rows its result gained from just those, so a refresh costs
+ * about as much as the rows that got appended, not the size of the tables. Queries with a MINUS, INTERSECT or AGGR in them (and EXPLAINs)
+ * get run again in full whenever one of their tables changes.
+ * <p>
+ * The output starts out exactly like a normal run's. After that it's a log of the changes: each refresh adds a block for each query
+ * whose result changed, made of a line with {@value #NEW_ROWS_PREFIX} and the query, followed by just the rows its result gained (with
+ * the column names first, like any result), or a line with {@value #NEW_RESULT_PREFIX} and the query, followed by its whole new result.
+ * <p>
+ * A table file that gets shorter, gets a new header, or gets something written onto the end of a last line that didn't have a line
+ * break was rewritten rather than appended to, so every table gets read again from the start and every query gets a whole new result.
+ */
+public final class TableWatcher{
+    /**
+     * Starts the line before the rows a query's result gained.
+     */
+    public static final String NEW_ROWS_PREFIX = "+ ";
+
+    /**
+     * Starts the line before a query's whole new result (or error), for queries that can't just gain rows.
+     */
+    public static final String NEW_RESULT_PREFIX = "= ";
+
+    /**
+     * A refresh waits until the table files have gone this long without changing, so that a bunch of appends in a row get read together.
+     */
+    public static final long QUIET_MILLISECONDS = 100;
+
+    private final List<String>                queries;
+    private final PrintWriter                 output;
+    private final PrintWriter                 console;
+    private final int                         maximumConsoleRows;
+    private final IncrementalView[]           views;
+    private final List<Set<String>>           tablesOfQueries     = new ArrayList<>();
+    private final boolean[]                   isParsed;
+    private final LinkedHashMap<String, Long> readPositions       = new LinkedHashMap<>();
+    private final HashMap<String, Long>       unfinishedLineEnds  = new HashMap<>();
+    private final HashMap<String, String[]>   columnNamesOfTables = new HashMap<>();
+
+    /**
+     * @param output             Where the results and then the changes to them get written, like RAoutput.csv.
+     * @param console            Where the results and changes get printed.
+     * @param maximumConsoleRows How many rows of each result or change to print at most.
+     */
+    public TableWatcher(final List<String> queries, final PrintWriter output, final PrintWriter console, final int maximumConsoleRows){
+        this.queries = List.copyOf(queries);
+        this.output = output;
+        this.console = console;
+        this.maximumConsoleRows = maximumConsoleRows;
+        this.views = new IncrementalView[this.queries.size()];
+        this.isParsed = new boolean[this.queries.size()];
+    }
+
+    /**
+     * Writes every query's result, then keeps watching for changes until the thread gets interrupted (or the directory goes away).
+     *
+     * @throws IOException          if the output can't be written to or the directory can't be watched.
+     * @throws InterruptedException if the thread got interrupted while waiting for a change.
+     */
+    public void run() throws IOException, InterruptedException{
+        Path directory = Path.of("").toAbsolutePath();
+        try(WatchService watchService = directory.getFileSystem().newWatchService()){
+            // Watching starts before anything gets read, so an append that comes in while the batch runs isn't missed
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            this.start("");
+            this.console.println("Watching " + directory + " for rows appended to " + String.join(", ", this.readPositions.keySet()) + ".");
+            this.console.flush();
+
+            while(true){
+                WatchKey key = watchService.take();
+                Set<String> changedTables = new LinkedHashSet<>();
+                while(key != null){
+                    for(WatchEvent<?> event : key.pollEvents()){
+                        if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+                            changedTables.addAll(this.getAllTableNames()); // Too much happened to keep track of, so check everything
+                        }
+                        else{
+                            String fileName = event.context().toString();
+                            if(fileName.endsWith(".txt")){
+                                changedTables.add(fileName.substring(0, fileName.length() - 4));
+                            }
+                        }
+                    }
+                    if(!key.reset()){
+                        this.console.println(directory + " can't be watched anymore.");
+                        this.console.flush();
+                        return;
+                    }
+
+                    key = watchService.poll(QUIET_MILLISECONDS, TimeUnit.MILLISECONDS);
+                }
+
+                changedTables.retainAll(this.getAllTableNames());
+                if(!changedTables.isEmpty()){
+                    this.refresh(changedTables);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets up the views, reads every table they need from the start, and writes each query's whole result.
+     *
+     * @param prefix What goes before each query on the line before its result, or nothing for no such line (just like a normal run).
+     */
+    void start(final String prefix) throws IOException{
+        this.readPositions.clear();
+        this.unfinishedLineEnds.clear();
+        this.columnNamesOfTables.clear();
+        this.tablesOfQueries.clear();
+        for(int q = 0; q < this.queries.size(); q++){
+            this.views[q] = null;
+            this.isParsed[q] = false;
+            this.tablesOfQueries.add(Set.of());
+
+            QueryProfiler.ExplainRequest explainRequest = QueryProfiler.ExplainRequest.parse(this.queries.get(q));
+            try{
+                PlanNode plan = QueryParser.parse((explainRequest != null) ? explainRequest.query() : this.queries.get(q));
+                this.isParsed[q] = true;
+                this.tablesOfQueries.set(q, IncrementalView.getTableNames(plan));
+                if(explainRequest == null && IncrementalView.isMaintainable(plan)){
+                    this.views[q] = new IncrementalView(plan);
+                    for(String tableName : this.views[q].getTablesRead()){
+                        this.readPositions.putIfAbsent(tableName, 0L);
+                    }
+                }
+            }
+            catch(DataFormatException | FileNotFoundException | RuntimeException exception){
+                // It gets run in full below, so the error gets written in its place
+            }
+        }
+
+        Map<String, DataTable> newRowsOfTables = this.readNewRows(this.readPositions.keySet());
+        for(int q = 0; q < this.queries.size(); q++){
+            if(this.views[q] != null && this.refreshView(q, newRowsOfTables, prefix, true)){
+                continue;
+            }
+
+            this.runInFull(q, prefix);
+        }
+        this.flush();
+    }
+
+    /**
+     * Reads what got appended to the tables, and writes what changed about the result of each query that reads any of them.
+     */
+    void refresh(final Set<String> changedTables) throws IOException{
+        Map<String, DataTable> newRowsOfTables;
+        try{
+            newRowsOfTables = this.readNewRows(getTablesIn(changedTables, this.readPositions.keySet()));
+        }
+        catch(IllegalArgumentException exception){
+            this.console.println(Main.getErrorMessage(exception) + " Reading every table again.");
+            this.start(NEW_RESULT_PREFIX); // Everything that depends on the rewritten table has to start over, and the simplest way to get there is from scratch
+            return;
+        }
+
+        for(int q = 0; q < this.queries.size(); q++){
+            if(getTablesIn(changedTables, this.tablesOfQueries.get(q)).isEmpty() || !this.isParsed[q]){
+                continue;
+            }
+
+            if(this.views[q] != null){
+                this.refreshView(q, newRowsOfTables, NEW_ROWS_PREFIX, false);
+            }
+            else{
+                this.runInFull(q, NEW_RESULT_PREFIX);
+            }
+        }
+        this.flush();
+    }
+
+    /**
+     * Reads the rows appended to each of the tables since they were last read, and moves their read positions past them.
+     *
+     * @return The new rows of each table that got any.
+     * @throws IllegalArgumentException if one of the tables was rewritten rather than appended to.
+     */
+    private Map<String, DataTable> readNewRows(final Collection<String> tableNames){
+        HashMap<String, TableFileReader.Tail> tails = new HashMap<>();
+        for(String tableName : tableNames){
+            try{
+                long readPosition = this.readPositions.get(tableName);
+                TableFileReader.Tail tail = TableFileReader.readTail(QueryExecutor.getTableFile(tableName), readPosition, this.unfinishedLineEnds.getOrDefault(tableName, readPosition));
+                String[] columnNames = this.columnNamesOfTables.putIfAbsent(tableName, tail.rows().getColumnNames());
+                if(columnNames != null && !Arrays.equals(columnNames, tail.rows().getColumnNames())){
+                    throw new IllegalArgumentException(tableName + " has different columns than it did.");
+                }
+
+                tails.put(tableName, tail);
+            }
+            catch(DataFormatException | FileNotFoundException exception){
+                // It's gone or empty for now, so it didn't get any rows. If it comes back, it'll be read from where it was
+                this.console.println("Couldn't read " + tableName + ": " + Main.getErrorMessage(exception));
+            }
+        }
+
+        // Only once every table was read fine, so a rewritten table leaves the read positions alone
+        HashMap<String, DataTable> newRowsOfTables = new HashMap<>();
+        for(Map.Entry<String, TableFileReader.Tail> tail : tails.entrySet()){
+            this.readPositions.put(tail.getKey(), tail.getValue().end());
+            this.unfinishedLineEnds.put(tail.getKey(), tail.getValue().unfinishedLineEnd());
+            if(tail.getValue().rows().getRowCount() > 0){
+                newRowsOfTables.put(tail.getKey(), tail.getValue().rows());
+            }
+        }
+
+        return newRowsOfTables;
+    }
+
+    /**
+     * Writes the rows the query's result gained. If its view trips over the new rows, it can't be trusted anymore, so the query gets run
+     * in full instead, from then on (starting with this change, unless it's the whole result, which the caller runs in full itself).
+     *
+     * @param isWholeResult Whether it's the view's first refresh, so the rows it gains are its whole result, which gets written even if it's empty.
+     * @return Whether the view could take the new rows.
+     */
+    private boolean refreshView(final int queryNumber, final Map<String, DataTable> newRowsOfTables, final String prefix, final boolean isWholeResult)
+            throws IOException{
+        DataTable newRows;
+        try{
+            newRows = this.views[queryNumber].refresh(newRowsOfTables);
+        }
+        catch(DataFormatException | RuntimeException exception){
+            this.views[queryNumber] = null;
+            if(!isWholeResult){
+                this.runInFull(queryNumber, NEW_RESULT_PREFIX);
+            }
+            return false;
+        }
+
+        if(newRows == null && !isWholeResult){
+            return true; // Nothing to say
+        }
+        if(newRows == null){
+            newRows = new DataTable(this.views[queryNumber].getColumnNames(), new ArrayList<>());
+        }
+
+        this.write(queryNumber, prefix, newRows, null);
+        return true;
+    }
+
+    private void runInFull(final int queryNumber, final String prefix) throws IOException{
+        try{
+            this.write(queryNumber, prefix, Main.executeQuery(this.queries.get(queryNumber)), null);
+        }
+        catch(DataFormatException | FileNotFoundException | RuntimeException exception){
+            this.write(queryNumber, prefix, null, exception);
+        }
+    }
+
+    /**
+     * Writes a result (or error) the same way a normal run does, after a line saying what it is if there's a prefix.
+     */
+    private void write(final int queryNumber, final String prefix, final DataTable rows, final Exception error) throws IOException{
+        if(!prefix.isEmpty()){
+            String heading = prefix + this.queries.get(queryNumber).trim();
+            this.console.println(heading);
+            this.output.write(heading + System.lineSeparator());
+        }
+
+        if(error == null){
+            rows.writeTo(new TextResultSink(this.console, TextResultSink.ALL_ROWS, this.maximumConsoleRows));
+            this.console.println();
+            this.console.println();
+            rows.writeTo(new CsvResultSink(this.output));
+            this.output.write(System.lineSeparator());
+        }
+        else{
+            this.console.println(Main.getErrorMessage(error));
+            this.console.println();
+            this.output.write(Main.ERROR_PREFIX + Main.getErrorMessage(error) + System.lineSeparator());
+        }
+    }
+
+    private void flush(){
+        this.output.flush();
+        this.console.flush();
+    }
+
+    private Set<String> getAllTableNames(){
+        LinkedHashSet<String> tableNames = new LinkedHashSet<>(this.readPositions.keySet());
+        for(Set<String> tablesOfQuery : this.tablesOfQueries){
+            tableNames.addAll(tablesOfQuery);
+        }
+
+        return tableNames;
+    }
+
+    private static Set<String> getTablesIn(final Set<String> tableNames, final Set<String> otherTableNames){
+        LinkedHashSet<String> commonTableNames = new LinkedHashSet<>(tableNames);
+        commonTableNames.retainAll(otherTableNames);
+        return commonTableNames;
+    }
+
+    /**
+     * @return How many bytes of each table have been read so far.
+     */
+    public Map<String, Long> getReadPositions(){
+        return Collections.unmodifiableMap(this.readPositions);
+    }
+
+    @Override
+    public String toString(){
+        long memoryUsage = 0;
+        int numberOfViews = 0;
+        for(IncrementalView view : this.views){
+            if(view != null){
+                memoryUsage += view.getMemoryUsage();
+                numberOfViews++;
+            }
+        }
+
+        return "TableWatcher[" + numberOfViews + " of " + this.queries.size() + " queries maintained incrementally, " + memoryUsage + " bytes held, read " +
+               this.readPositions + "]";
+    }
+}
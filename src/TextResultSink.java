@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Writes a result as a table for people to read: every column but the last one padded to the width of its longest value, with tabs in between.
+ * <p>
+ * The widths have to be known before the first row goes out, so the first rows get held back until there are enough of them to go by:
+ * with {@link #ALL_ROWS} it's all of them (two passes, exact widths), and with anything less, later rows that are wider than the sample
+ * just stick out a bit. Held back rows are just references to the batches, so writing a whole table that's already in memory
+ * costs nothing extra either way.
+ * <p>
+ * Past {@link #getMaximumRows()} rows it stops writing rows and just says how many more there were, so a huge result doesn't flood the console.
+ */
+public final class TextResultSink implements ResultSink{
+    /**
+     * Go by every row for the column widths, and write every row.
+     */
+    public static final int ALL_ROWS = Integer.MAX_VALUE;
+
+    private final Writer               writer;
+    private final int                  numberOfSampledRows;
+    private final int                  maximumRows;
+    private final ArrayList<DataTable> heldBackBatches         = new ArrayList<>();
+    private       int                  numberOfHeldBackRows    = 0;
+    private       String[]             columnNames;
+    private       int[]                columnWidths            = null;
+    private       long                 numberOfRows            = 0;
+
+    /**
+     * A sink that goes by every row for the widths and writes every row, which is what {@link DataTable#toString()} prints.
+     */
+    public TextResultSink(final Writer writer){
+        this(writer, ALL_ROWS, ALL_ROWS);
+    }
+
+    /**
+     * @param writer              Where to write to. Give it a buffered one, since it gets written to a value at a time.
+     * @param numberOfSampledRows How many of the first rows to go by for the column widths, or {@link #ALL_ROWS}.
+     * @param maximumRows         How many rows to write before just counting the rest, or {@link #ALL_ROWS}.
+     */
+    public TextResultSink(final Writer writer, final int numberOfSampledRows, final int maximumRows){
+        this.writer = writer;
+        this.numberOfSampledRows = numberOfSampledRows;
+        this.maximumRows = maximumRows;
+    }
+
+    public int getMaximumRows(){
+        return this.maximumRows;
+    }
+
+    @Override
+    public void start(final String[] columnNames) throws IOException{
+        this.columnNames = columnNames.clone();
+    }
+
+    @Override
+    public void write(final DataTable rows) throws IOException{
+        if(this.columnWidths != null){
+            this.writeRows(rows);
+            return;
+        }
+
+        this.heldBackBatches.add(rows);
+        this.numberOfHeldBackRows += rows.getRowCount();
+        if(this.numberOfHeldBackRows >= this.numberOfSampledRows){
+            this.writeHeldBackRows();
+        }
+    }
+
+    @Override
+    public long finish() throws IOException{
+        if(this.columnWidths == null){
+            this.writeHeldBackRows();
+        }
+        if(this.numberOfRows > this.maximumRows){
+            this.writer.write(System.lineSeparator() + "... and " + (this.numberOfRows - this.maximumRows) + " more rows.");
+        }
+
+        this.writer.flush();
+        return this.numberOfRows;
+    }
+
+    /**
+     * Works out the widths from the rows held back so far, then writes the header and those rows.
+     */
+    private void writeHeldBackRows() throws IOException{
+        // The last column doesn't get padded, so its width stays 0
+        this.columnWidths = new int[this.columnNames.length];
+        for(int j = 0; j < this.columnNames.length - 1; j++){
+            this.columnWidths[j] = this.columnNames[j].length();
+            int numberOfRowsLeftToWrite = this.maximumRows; // The ones that won't be written don't get a say
+            for(DataTable batch : this.heldBackBatches){
+                Column column = batch.getColumn(j);
+                for(int i = 0; i < batch.getRowCount() && i < numberOfRowsLeftToWrite; i++){
+                    String value = column.getString(i);
+                    if(value != null && value.length() > this.columnWidths[j]){
+                        this.columnWidths[j] = value.length();
+                    }
+                }
+                numberOfRowsLeftToWrite -= Math.min(numberOfRowsLeftToWrite, batch.getRowCount());
+            }
+        }
+
+        for(int j = 0; j < this.columnNames.length; j++){
+            this.writePadded(this.columnNames[j], j);
+        }
+        for(DataTable batch : this.heldBackBatches){
+            this.writeRows(batch);
+        }
+
+        this.heldBackBatches.clear();
+    }
+
+    private void writeRows(final DataTable rows) throws IOException{
+        for(int i = 0; i < rows.getRowCount(); i++){
+            if(this.numberOfRows++ >= this.maximumRows){
+                continue; // Still counted, for the "more rows" line
+            }
+
+            this.writer.write(System.lineSeparator());
+            for(int j = 0; j < this.columnNames.length; j++){
+                String value = rows.getColumn(j).getString(i);
+                if(value != null){
+                    this.writePadded(value, j);
+                }
+            }
+        }
+    }
+
+    private void writePadded(final String value, final int columnIndex) throws IOException{
+        this.writer.write(value);
+        this.writer.write(" ".repeat(Math.max(0, this.columnWidths[columnIndex] - value.length())));
+        if(columnIndex != (this.columnNames.length - 1)){
+            this.writer.write('\t');
+        }
+    }
+}
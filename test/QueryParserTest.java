@@ -0,0 +1,67 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pins down how queries group: two-table operators left to right, and SELE, PROJ and AGGR over everything after them.
+ */
+class QueryParserTest{
+    @Test
+    void binaryOperatorsGroupLeftToRight(){
+        assertEquals(QueryParser.parse("(A - B) U C"), QueryParser.parse("A - B U C"));
+        assertEquals(QueryParser.parse("((A * B) X C) INTE D"), QueryParser.parse("A * B X C INTE D"));
+        assertEquals(QueryParser.parse("A U_ALL (B - C)"), QueryParser.parse("A U_ALL (B - C)"));
+        assertNotEquals(QueryParser.parse("A - (B U C)"), QueryParser.parse("A - B U C"));
+    }
+
+    @Test
+    void binaryOperatorsAllHaveTheSamePrecedence(){
+        assertEquals(new PlanNode.Minus(new PlanNode.Join(new PlanNode.Scan("A"), new PlanNode.Scan("B")), new PlanNode.Scan("C")),
+                     QueryParser.parse("A * B - C"));
+        assertEquals(new PlanNode.Join(new PlanNode.Minus(new PlanNode.Scan("A"), new PlanNode.Scan("B")), new PlanNode.Scan("C")),
+                     QueryParser.parse("A - B * C"));
+    }
+
+    @Test
+    void unaryOperatorsApplyToTheRestOfTheQuery(){
+        assertEquals(QueryParser.parse("SELE_{Payment > 85} (ACTORS * Play)"), QueryParser.parse("SELE_{Payment > 85} ACTORS * Play"));
+        assertEquals(QueryParser.parse("PROJ_{ANO} (ACTORS * Play)"), QueryParser.parse("PROJ_{ANO} ACTORS * Play"));
+        assertEquals(QueryParser.parse("AGGR_{ANO; COUNT(*)} (ACTORS * Play)"), QueryParser.parse("AGGR_{ANO; COUNT(*)} ACTORS * Play"));
+        assertEquals(QueryParser.parse("A - (PROJ_{ANO} (B U C))"), QueryParser.parse("A - PROJ_{ANO} B U C"));
+    }
+
+    @Test
+    void unaryOperatorsStopAtTheEndOfTheirGroup(){
+        assertEquals(new PlanNode.Join(new PlanNode.Select("Payment > 85", new PlanNode.Scan("Play")), new PlanNode.Scan("ACTORS")),
+                     QueryParser.parse("(SELE_{Payment > 85} Play) * ACTORS"));
+        assertEquals(new PlanNode.Project(List.of("ANO"), new PlanNode.Select("Payment > 80", new PlanNode.Scan("Play")), true),
+                     QueryParser.parse("PROJ_{ANO} SELE_{Payment > 80} Play"));
+    }
+
+    @Test
+    void unaryOperatorOverAJoinRuns() throws DataFormatException, FileNotFoundException{
+        assertEquals(4, Main.executeQuery("SELE_{Payment > 85} ACTORS * Play").getRowCount());
+        assertArrayEquals(new String[]{"ANO"}, Main.executeQuery("PROJ_{ANO} ACTORS * Play").getColumnNames());
+    }
+
+    @Test
+    void toStringParsesBackToTheSameTree(){
+        for(String query : List.of("A - B U C", "SELE_{Payment > 85} ACTORS * Play", "A - PROJ_ALL_{ANO} B U_ALL C", "AGGR_{SUM(Payment)} (A X B) INTE C")){
+            PlanNode plan = QueryParser.parse(query);
+            assertEquals(plan, QueryParser.parse(plan.toString()), query);
+        }
+    }
+
+    @Test
+    void malformedQueriesSayWhatWentWrong(){
+        assertThrows(IllegalArgumentException.class, () -> QueryParser.parse("U Play"));
+        assertThrows(IllegalArgumentException.class, () -> QueryParser.parse("(Play * ACTORS"));
+        assertThrows(IllegalArgumentException.class, () -> QueryParser.parse("SELE Play"));
+        assertThrows(IllegalArgumentException.class, () -> QueryParser.parse("Play ACTORS"));
+        assertThrows(IllegalArgumentException.class, () -> QueryParser.parse(" "));
+    }
+}
@@ -0,0 +1,74 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs prepared queries on a server (that nothing connects to), checking that each value only ever gets compared as a value.
+ */
+class QueryServerTest{
+    private QueryServer server;
+
+    @BeforeEach
+    void startServer() throws IOException{
+        this.server = new QueryServer(0, 1, 4);
+    }
+
+    @AfterEach
+    void closeServer() throws IOException{
+        this.server.close();
+    }
+
+    @Test
+    void boundValueGivesTheSameResultAsWritingItIn() throws DataFormatException, FileNotFoundException{
+        QueryServer.PreparedQuery query = QueryServer.PreparedQuery.parse("SELE_{ANO = ? AND Payment > ?} Play");
+
+        assertEquals(Main.executeQuery("SELE_{ANO = A4 AND Payment > 60} Play").toCSV(), this.server.execute(query, List.of("A4", "60")).toCSV());
+        assertEquals(Main.executeQuery("SELE_{ANO = A2 AND Payment > 85} Play").toCSV(), this.server.execute(query, List.of("A2", "85")).toCSV());
+    }
+
+    @Test
+    void valueCantBeAColumn(){
+        QueryServer.PreparedQuery query = QueryServer.PreparedQuery.parse("SELE_{ANO = ?} Play");
+
+        assertThrows(IllegalArgumentException.class, () -> this.server.execute(query, List.of("ANO")));
+        assertThrows(IllegalArgumentException.class, () -> this.server.execute(query, List.of("MNO")));
+    }
+
+    @Test
+    void valueInAnInListIsJustAValue() throws DataFormatException, FileNotFoundException{
+        QueryServer.PreparedQuery query = QueryServer.PreparedQuery.parse("SELE_{ANO IN (?, ?)} Play");
+
+        assertEquals(Main.executeQuery("SELE_{ANO = A1} Play").toCSV(), this.server.execute(query, List.of("A1", "MNO")).toCSV());
+    }
+
+    @Test
+    void valueCantAddToTheCondition(){
+        QueryServer.PreparedQuery query = QueryServer.PreparedQuery.parse("SELE_{ANO = ?} Play");
+
+        assertThrows(IllegalArgumentException.class, () -> this.server.execute(query, List.of("A1 OR ANO = A2")));
+        assertThrows(IllegalArgumentException.class, () -> this.server.execute(query, List.of("A1) U (Play")));
+        assertThrows(IllegalArgumentException.class, () -> this.server.execute(query, List.of("OR")));
+        assertThrows(IllegalArgumentException.class, () -> this.server.execute(query, List.of("")));
+    }
+
+    @Test
+    void valueForAColumnOfNumbersHasToBeANumber() throws DataFormatException, FileNotFoundException{
+        QueryServer.PreparedQuery query = QueryServer.PreparedQuery.parse("SELE_{Payment > ?} Play");
+
+        assertThrows(IllegalArgumentException.class, () -> this.server.execute(query, List.of("A1")));
+        assertEquals(Main.executeQuery("SELE_{Payment > 85} Play").getRowCount(), this.server.execute(query, List.of("85")).getRowCount());
+    }
+
+    @Test
+    void parameterHasToBeAComparedValue(){
+        assertThrows(IllegalArgumentException.class, () -> this.server.execute(QueryServer.PreparedQuery.parse("SELE_{? = A1} Play"), List.of("ANO")));
+        assertThrows(IllegalArgumentException.class, () -> this.server.execute(QueryServer.PreparedQuery.parse("PROJ_{?} Play"), List.of("ANO")));
+    }
+}
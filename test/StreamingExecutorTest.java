@@ -0,0 +1,115 @@
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that streaming a query, in batches of any size and whether or not it spills, gives exactly what running it in memory does.
+ */
+class StreamingExecutorTest{
+    private static final List<String> QUERIES = List.of(
+            "SELE_{Payment > 80} Play",
+            "PROJ_{ANO, MNO} Play",
+            "PROJ_ALL_{ANO} Play",
+            "ACTORS * Play",
+            "PROJ_{ANAME, MNAME} ((ACTORS * Play) * MOVIES)",
+            "(PROJ_{ANO} (SELE_{Payment > 80} Play)) - (PROJ_{ANO} (SELE_{Payment < 70} Play))",
+            "(PROJ_{ANO} (SELE_{Payment > 80} Play)) INTE (PROJ_{ANO} (SELE_{Payment < 70} Play))",
+            "(PROJ_{ANO} (SELE_{Payment > 80} Play)) U (PROJ_{ANO} (SELE_{Payment < 70} Play))",
+            "(PROJ_{ANO} (SELE_{Payment > 80} Play)) U_ALL (PROJ_{ANO} (SELE_{Payment < 70} Play))",
+            "(PROJ_{MNO} MOVIES) X (PROJ_{ANO} ACTORS)",
+            "AGGR_{ANO; SUM(Payment), COUNT(*), MAX(Payment)} Play",
+            "AGGR_{COUNT(*), AVG(Payment)} (ACTORS * Play)");
+
+    /**
+     * The same queries on generated tables big enough to be cut into many batches and partitions.
+     */
+    private static final List<String> GENERATED_QUERIES = List.of(
+            "SELE_{Payment > 90} GeneratedPlay",
+            "PROJ_{ANO} GeneratedPlay",
+            "GeneratedACTORS * GeneratedPlay",
+            "PROJ_{ANAME, MNAME} ((GeneratedACTORS * GeneratedPlay) * GeneratedMOVIES)",
+            "(PROJ_{ANO} (SELE_{Payment > 50} GeneratedPlay)) - (PROJ_{ANO} (SELE_{Payment < 20} GeneratedPlay))",
+            "(PROJ_{ANO} (SELE_{Payment > 50} GeneratedPlay)) INTE (PROJ_{ANO} (SELE_{Payment < 20} GeneratedPlay))",
+            "(PROJ_ALL_{ANO} GeneratedACTORS) U (PROJ_ALL_{ANO} GeneratedPlay)",
+            "AGGR_{MNO; SUM(Payment), COUNT(*)} GeneratedPlay",
+            "(PROJ_{MNO} (SELE_{Payment = 3} GeneratedPlay)) X (PROJ_{ANO} (SELE_{Payment = 97} GeneratedPlay))");
+
+    @BeforeAll
+    static void generateTables() throws IOException{
+        Path directory = Files.createTempDirectory("generated");
+        new DataGenerator(20_000, 0.8, DataGenerator.DEFAULT_SEED).writeTables(directory.toFile());
+        for(String tableName : List.of("ACTORS", "MOVIES", "Play")){
+            Files.move(directory.resolve(tableName + ".txt"), Path.of("Generated" + tableName + ".txt"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void streamedResultsMatchInMemoryResults() throws DataFormatException, IOException{
+        for(String query : QUERIES){
+            for(int batchSize : new int[]{1, 3, StreamingExecutor.DEFAULT_BATCH_SIZE}){
+                assertEquals(runInMemory(query), new StreamingExecutor(batchSize).execute(plan(query)).toCSV(), query + " in batches of " + batchSize);
+            }
+        }
+    }
+
+    @Test
+    void spilledResultsMatchInMemoryResults() throws DataFormatException, IOException{
+        for(String query : QUERIES){
+            assertEquals(runInMemory(query), runWithBudget(query, 2, new MemoryBudget(0)), query);
+        }
+    }
+
+    @Test
+    void bigSpilledResultsMatchInMemoryResults() throws DataFormatException, IOException{
+        for(String query : GENERATED_QUERIES){
+            String expected = runInMemory(query);
+            assertEquals(expected, new StreamingExecutor().execute(plan(query)).toCSV(), query);
+
+            MemoryBudget budget = new MemoryBudget(64 << 10);
+            assertEquals(expected, runWithBudget(query, 256, budget), query + " with " + budget);
+        }
+    }
+
+    @Test
+    void blockingOperatorsSpillWhenNothingFits() throws DataFormatException, IOException{
+        for(String query : List.of("GeneratedACTORS * GeneratedPlay", "(PROJ_{ANO} GeneratedACTORS) - (PROJ_{ANO} GeneratedPlay)", "AGGR_{ANO; COUNT(*)} GeneratedPlay")){
+            MemoryBudget budget = new MemoryBudget(16 << 10);
+            runWithBudget(query, 256, budget);
+            assertTrue(budget.getNumberOfSpills() > 0, query + " didn't spill with " + budget);
+        }
+    }
+
+    @Test
+    void csvIsWrittenTheWayItIsInMemory() throws DataFormatException, IOException{
+        StringWriter writer = new StringWriter();
+        long numberOfRows = new StreamingExecutor(4).executeToCSV(plan("ACTORS * Play"), writer);
+
+        assertEquals(Main.executeQuery("ACTORS * Play").getRowCount(), numberOfRows);
+        assertEquals(runInMemory("ACTORS * Play"), writer.toString());
+    }
+
+    private static PlanNode plan(final String query) throws DataFormatException, IOException{
+        return new QueryOptimizer().optimize(QueryParser.parse(query));
+    }
+
+    private static String runInMemory(final String query) throws DataFormatException, IOException{
+        return new QueryExecutor().execute(plan(query)).toCSV();
+    }
+
+    private static String runWithBudget(final String query, final int batchSize, final MemoryBudget budget) throws DataFormatException, IOException{
+        try(BatchIterator iterator = new StreamingExecutor(batchSize).createIterator(plan(query), budget)){
+            iterator.open();
+            return StreamingExecutor.drain(iterator).toCSV();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the same queries on two copies of a table, one with indexes and one without, which have to give the same results, before and after
+ * rows get appended.
+ */
+class TableIndexTest{
+    private static final String INDEXED_TABLE   = "IndexedRows";
+    private static final String UNINDEXED_TABLE = "UnindexedRows";
+
+    /**
+     * Each one has the table's name where the %s is.
+     */
+    private static final List<String> QUERIES = List.of(
+            "SELE_{G = g7} %s",
+            "SELE_{G IN (g1, g2, g49, nope)} %s",
+            "SELE_{G != g7 AND V = 12} %s",
+            "SELE_{V < 20} %s",
+            "SELE_{V >= 990 AND G = g3} %s",
+            "SELE_{V = 5 OR G = g8} %s",
+            "SELE_{V > 499.5 AND V <= 510} %s",
+            "(PROJ_{G} (SELE_{V = 5} %1$s)) * %1$s");
+
+    @BeforeEach
+    void writeTables() throws DataFormatException, IOException{
+        List<String> rows = makeRows(0, 4000);
+        TestTables.write(INDEXED_TABLE, "K, G, V", rows);
+        TestTables.write(UNINDEXED_TABLE, "K, G, V", rows);
+
+        File tableFile = QueryExecutor.getTableFile(INDEXED_TABLE);
+        TableIndex.getDeclarationsFile(tableFile).delete();
+        TableIndex.declare(tableFile, TableIndex.Declaration.parse("HASH G"));
+        TableIndex.declare(tableFile, TableIndex.Declaration.parse("SORTED V"));
+    }
+
+    @Test
+    void indexedResultsMatchUnindexedResults() throws DataFormatException, IOException{
+        assertSameResults();
+    }
+
+    @Test
+    void indexedResultsMatchAfterAnAppend() throws DataFormatException, IOException{
+        assertSameResults(); // So the indexes are built and cached before the table changes
+
+        List<String> newRows = makeRows(4000, 4300);
+        TestTables.appendRows(INDEXED_TABLE, newRows);
+        TestTables.appendRows(UNINDEXED_TABLE, newRows);
+
+        assertSameResults();
+        assertEquals(Main.executeQuery("SELE_{G = g7} " + UNINDEXED_TABLE).getRowCount(), Main.executeQuery("SELE_{G = g7} " + INDEXED_TABLE).getRowCount());
+    }
+
+    @Test
+    void indexesNarrowTheRowsDown() throws DataFormatException, IOException{
+        File tableFile = QueryExecutor.getTableFile(INDEXED_TABLE);
+        DataTable table = TableCatalog.getShared().getTable(tableFile, false);
+        List<TableIndex> indexes = TableCatalog.getShared().getIndexes(tableFile, table);
+        assertEquals(2, indexes.size());
+
+        int[] candidateRows = TableIndex.findCandidateRows(indexes, SelectionPredicate.parse("G = g7"));
+        assertNotNull(candidateRows);
+        assertEquals(table.getRowCount() / 50, candidateRows.length);
+        assertNotNull(TableIndex.findCandidateRows(indexes, SelectionPredicate.parse("V < 20")));
+        assertNull(TableIndex.findCandidateRows(indexes, SelectionPredicate.parse("V > 20")), "An index shouldn't get used for most of the table.");
+    }
+
+    private static void assertSameResults() throws DataFormatException, IOException{
+        for(String query : QUERIES){
+            String indexedQuery = String.format(query, INDEXED_TABLE);
+            String unindexedQuery = String.format(query, UNINDEXED_TABLE);
+            assertEquals(Main.executeQuery(unindexedQuery).toCSV(), Main.executeQuery(indexedQuery).toCSV(), indexedQuery);
+        }
+    }
+
+    private static List<String> makeRows(final int from, final int to){
+        ArrayList<String> rows = new ArrayList<>(to - from);
+        for(int i = from; i < to; i++){
+            rows.add("k" + i + ", g" + (i % 50) + ", " + (i % 1000));
+        }
+
+        return rows;
+    }
+}
@@ -0,0 +1,217 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Appends rows to tables a watcher is following, and checks that each query's result, put together from the changes the watcher writes,
+ * is what running the query again in full gives, including when the last line of a table didn't have a line break yet.
+ */
+class TableWatcherTest{
+    private static final List<String> QUERIES = List.of(
+            "SELE_{Payment > 80} WatchedPlay",
+            "PROJ_{ANO, MNO} WatchedPlay",
+            "PROJ_ALL_{ANO} WatchedPlay",
+            "WatchedACTORS * WatchedPlay",
+            "PROJ_{ANAME, MNAME} ((WatchedACTORS * WatchedPlay) * WatchedMOVIES)",
+            "(PROJ_{ANO} (SELE_{Payment > 80} WatchedPlay)) U (PROJ_{ANO} (SELE_{Payment < 70} WatchedPlay))",
+            "(PROJ_ALL_{ANO} (SELE_{Payment > 90} WatchedPlay)) U_ALL (PROJ_ALL_{ANO} WatchedACTORS)",
+            "(PROJ_{MNO} (SELE_{MNO = M7} WatchedMOVIES)) X (PROJ_{ANO} (SELE_{Payment > 95} WatchedPlay))",
+            "(PROJ_{ANO} WatchedPlay) - (PROJ_{ANO} WatchedACTORS)",
+            "AGGR_{ANO; SUM(Payment), COUNT(*)} WatchedPlay");
+
+    @BeforeEach
+    void writeTables() throws DataFormatException, IOException{
+        for(String tableName : List.of("ACTORS", "MOVIES", "Play")){
+            DataTable table = Main.executeQuery(tableName);
+            ArrayList<String> rows = new ArrayList<>();
+            for(String[] row : table.getData()){
+                rows.add(String.join(", ", row));
+            }
+            TestTables.write("Watched" + tableName, String.join(", ", table.getColumnNames()), rows);
+        }
+    }
+
+    @Test
+    void resultsMatchAFullRunAfterAppends() throws DataFormatException, IOException{
+        List<Watch> watches = watchAll(QUERIES);
+
+        TestTables.appendRows("WatchedPlay", List.of("A1, M3, 91", "A7, M1, 99", "A2, M2, 83", "A8, M7, 60"));
+        refreshAll(watches, Set.of("WatchedPlay"));
+
+        TestTables.appendRows("WatchedACTORS", List.of("Ava, A7", "Ben, A8"));
+        TestTables.appendRows("WatchedMOVIES", List.of("Seven, M7"));
+        refreshAll(watches, Set.of("WatchedACTORS", "WatchedMOVIES"));
+
+        TestTables.appendRows("WatchedPlay", List.of("A7, M7, 96", "A8, M7, 97"));
+        TestTables.appendRows("WatchedACTORS", List.of("Cal, A9"));
+        refreshAll(watches, Set.of("WatchedPlay", "WatchedACTORS"));
+    }
+
+    @Test
+    void appendingNothingChangesNothing() throws IOException{
+        Watch watch = new Watch("SELE_{Payment > 80} WatchedPlay");
+        String output = watch.output.toString();
+
+        watch.watcher.refresh(Set.of("WatchedPlay"));
+        assertEquals(output, watch.output.toString());
+    }
+
+    @Test
+    void appendingOntoALastLineWithoutALineBreakMatchesAFullRun() throws DataFormatException, IOException{
+        removeLastLineBreak("WatchedPlay");
+        List<Watch> watches = watchAll(QUERIES);
+
+        TestTables.append("WatchedPlay", "A9, M1, 99\n"); // Which makes the last row "A6, M4, 54A9, M1, 99"
+        refreshAll(watches, Set.of("WatchedPlay"));
+    }
+
+    @Test
+    void linesAppendedAfterALastLineWithoutALineBreakAreJustNewRows() throws DataFormatException, IOException{
+        removeLastLineBreak("WatchedPlay");
+        List<Watch> watches = watchAll(QUERIES);
+        Watch selection = watches.get(0);
+
+        TestTables.append("WatchedPlay", "\nA7, M1, 99\nA2, M2, 83");
+        refreshAll(watches, Set.of("WatchedPlay"));
+        assertFalse(selection.output.toString().contains(TableWatcher.NEW_RESULT_PREFIX), "The new lines should have been read as new rows.");
+
+        TestTables.append("WatchedPlay", "\n"); // Finishes the last line off, without changing its row
+        refreshAll(watches, Set.of("WatchedPlay"));
+        TestTables.append("WatchedPlay", "A8, M7, 9"); // A line that's only half written so far
+        refreshAll(watches, Set.of("WatchedPlay"));
+        TestTables.append("WatchedPlay", "7\n");
+        refreshAll(watches, Set.of("WatchedPlay"));
+        TestTables.appendRows("WatchedPlay", List.of("A1, M3, 91"));
+        refreshAll(watches, Set.of("WatchedPlay"));
+    }
+
+    @Test
+    void readingStopsAtTheStartOfAnUnfinishedLastLine() throws DataFormatException, IOException{
+        removeLastLineBreak("WatchedPlay");
+        File file = QueryExecutor.getTableFile("WatchedPlay");
+        long length = file.length();
+
+        TableFileReader.Tail tail = TableFileReader.readTail(file, 0, 0);
+        assertEquals(Main.executeQuery("WatchedPlay").toCSV(), tail.rows().toCSV());
+        assertEquals(length - "A6, M4, 54".length(), tail.end());
+        assertEquals(length, tail.unfinishedLineEnd());
+
+        TestTables.append("WatchedPlay", "\n");
+        tail = TableFileReader.readTail(file, tail.end(), tail.unfinishedLineEnd());
+        assertEquals(0, tail.rows().getRowCount());
+        assertEquals(length + 1, tail.end());
+        assertEquals(tail.end(), tail.unfinishedLineEnd());
+
+        TestTables.append("WatchedPlay", "A7, M1, 9");
+        tail = TableFileReader.readTail(file, tail.end(), tail.unfinishedLineEnd());
+        TestTables.append("WatchedPlay", "9");
+        long end = tail.end();
+        long unfinishedLineEnd = tail.unfinishedLineEnd();
+        assertThrows(IllegalArgumentException.class, () -> TableFileReader.readTail(file, end, unfinishedLineEnd));
+    }
+
+    /**
+     * A watcher following one query, so its output is easy to take apart.
+     */
+    private static final class Watch{
+        private final String       query;
+        private final StringWriter output = new StringWriter();
+        private final TableWatcher watcher;
+
+        Watch(final String query) throws IOException{
+            this.query = query;
+            this.watcher = new TableWatcher(List.of(query), new PrintWriter(this.output, true), new PrintWriter(new StringWriter()), 0);
+            this.watcher.start("");
+        }
+
+        /**
+         * @return The rows of the result (or its error), put together from the whole result at the start, each block of rows it gained, and
+         * each whole new result, in the order the watcher wrote them.
+         */
+        List<String> getResult(){
+            ArrayList<String> rows = new ArrayList<>();
+            boolean isAtStartOfResult = true;
+            for(String line : this.output.toString().split("\\R")){
+                if(line.startsWith(TableWatcher.NEW_RESULT_PREFIX)){
+                    rows.clear();
+                    isAtStartOfResult = true;
+                }
+                else if(line.startsWith(TableWatcher.NEW_ROWS_PREFIX)){
+                    isAtStartOfResult = true;
+                }
+                else if(isAtStartOfResult){
+                    isAtStartOfResult = false;
+                    if(line.startsWith(Main.ERROR_PREFIX)){
+                        rows.add(line); // Otherwise it's the column names
+                    }
+                }
+                else{
+                    rows.add(line);
+                }
+            }
+            Collections.sort(rows);
+
+            return rows;
+        }
+    }
+
+    /**
+     * Takes the line break off the end of the table, like the sample tables have it.
+     */
+    private static void removeLastLineBreak(final String tableName) throws IOException{
+        Path path = QueryExecutor.getTableFile(tableName).toPath();
+        String text = Files.readString(path);
+        Files.writeString(path, text.substring(0, text.length() - 1));
+    }
+
+    private static List<Watch> watchAll(final List<String> queries) throws DataFormatException, IOException{
+        ArrayList<Watch> watches = new ArrayList<>();
+        for(String query : queries){
+            Watch watch = new Watch(query);
+            assertEquals(runInFull(query), watch.getResult(), query);
+            watches.add(watch);
+        }
+
+        return watches;
+    }
+
+    private static void refreshAll(final List<Watch> watches, final Set<String> changedTables) throws IOException{
+        for(Watch watch : watches){
+            watch.watcher.refresh(changedTables);
+            assertEquals(runInFull(watch.query), watch.getResult(), watch.query + " after " + changedTables + " changed");
+        }
+    }
+
+    /**
+     * @return The rows of the query's result (or its error) when it's run from scratch, sorted.
+     */
+    private static List<String> runInFull(final String query){
+        try{
+            DataTable result = Main.executeQuery(query);
+            ArrayList<String> rows = new ArrayList<>();
+            for(String line : result.toCSV().split("\\R")){
+                rows.add(line);
+            }
+            rows.remove(0);
+            Collections.sort(rows);
+
+            return rows;
+        }
+        catch(DataFormatException | IOException | RuntimeException exception){
+            return List.of(Main.ERROR_PREFIX + Main.getErrorMessage(exception));
+        }
+    }
+}
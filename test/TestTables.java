@@ -0,0 +1,44 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the tables the tests make for themselves into the working directory, where the queries look for them.
+ */
+final class TestTables{
+    private TestTables(){
+    }
+
+    /**
+     * Writes the table, a line per row and a line break after each one, replacing it if it's already there.
+     */
+    static File write(final String tableName, final String header, final List<String> rows) throws IOException{
+        File tableFile = new File(tableName + ".txt");
+        Files.writeString(tableFile.toPath(), header + "\n" + String.join("", withLineBreaks(rows)), StandardCharsets.UTF_8);
+        return tableFile;
+    }
+
+    /**
+     * Adds the text to the end of the table file just as it is, line breaks and all.
+     */
+    static void append(final String tableName, final String text) throws IOException{
+        Files.writeString(new File(tableName + ".txt").toPath(), text, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    static void appendRows(final String tableName, final List<String> rows) throws IOException{
+        append(tableName, String.join("", withLineBreaks(rows)));
+    }
+
+    private static List<String> withLineBreaks(final List<String> rows){
+        ArrayList<String> lines = new ArrayList<>(rows.size());
+        for(String row : rows){
+            lines.add(row + "\n");
+        }
+
+        return lines;
+    }
+}
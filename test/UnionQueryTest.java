@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs U and U_ALL queries on the sample tables.
+ */
+class UnionQueryTest{
+    @Test
+    void unionDropsDuplicateRows() throws DataFormatException, FileNotFoundException{
+        DataTable play = Main.executeQuery("Play");
+        DataTable union = Main.executeQuery("Play U Play");
+
+        assertEquals(play.getRowCount(), union.getRowCount());
+        assertEquals(play.toCSV(), union.toCSV());
+    }
+
+    @Test
+    void bagUnionKeepsEveryRow() throws DataFormatException, FileNotFoundException{
+        DataTable play = Main.executeQuery("Play");
+        DataTable union = Main.executeQuery("Play U_ALL Play");
+
+        assertEquals(2 * play.getRowCount(), union.getRowCount());
+    }
+
+    @Test
+    void unionOfProjectionsGivesEachActorOnce() throws DataFormatException, FileNotFoundException{
+        // The last query of RAqueries.txt, where A4 and A6 are paid both over 80 and under 70
+        DataTable union = Main.executeQuery("(PROJ_{ANO} (SELE_{Payment > 80} Play)) U (PROJ_{ANO} (SELE_{Payment < 70} Play))");
+        DataTable bagUnion = Main.executeQuery("(PROJ_{ANO} (SELE_{Payment > 80} Play)) U_ALL (PROJ_{ANO} (SELE_{Payment < 70} Play))");
+
+        List<String[]> rows = union.getData();
+        HashSet<String> actors = new HashSet<>();
+        for(String[] row : rows){
+            assertTrue(actors.add(row[0]), row[0] + " shows up more than once.");
+        }
+        assertTrue(actors.containsAll(List.of("A4", "A6")));
+        assertEquals(rows.size() + 2, bagUnion.getRowCount());
+    }
+
+    @Test
+    void unionMatchesColumnsByName() throws DataFormatException, FileNotFoundException{
+        DataTable union = Main.executeQuery("(PROJ_{ANO, MNO} Play) U (PROJ_{MNO, ANO} Play)");
+
+        assertArrayEquals(new String[]{"ANO", "MNO"}, union.getColumnNames());
+        assertEquals(Main.executeQuery("PROJ_{ANO, MNO} Play").getRowCount(), union.getRowCount());
+    }
+}